@@ -22,42 +22,69 @@ CREATE TABLE IF NOT EXISTS users (
     INDEX idx_username (username)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='用户表';
 
--- 2. 客户表（customers）
+-- 2. 编码表（customer_sources、followup_methods）
+-- 客户来源和跟进方式取值不多，业务表中只存SMALLINT编码，名称由应用缓存并转换
+CREATE TABLE IF NOT EXISTS customer_sources (
+    id SMALLINT AUTO_INCREMENT PRIMARY KEY COMMENT '来源编码，自增主键',
+    label VARCHAR(50) NOT NULL UNIQUE COMMENT '来源名称'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='客户来源编码表';
+
+CREATE TABLE IF NOT EXISTS followup_methods (
+    id SMALLINT AUTO_INCREMENT PRIMARY KEY COMMENT '跟进方式编码，自增主键',
+    label VARCHAR(20) NOT NULL UNIQUE COMMENT '跟进方式名称'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='跟进方式编码表';
+
+INSERT IGNORE INTO customer_sources (label) VALUES ('网络'), ('推荐'), ('线下'), ('其他');
+INSERT IGNORE INTO followup_methods (label) VALUES ('电话'), ('微信'), ('面谈');
+
+-- 3. 客户表（customers）
 -- 存储客户基本信息，是CRM系统的核心表
 CREATE TABLE IF NOT EXISTS customers (
-    id INT AUTO_INCREMENT PRIMARY KEY COMMENT '客户ID，自增主键',
+    id INT AUTO_INCREMENT PRIMARY KEY COMMENT '客户ID，由应用按号段分配（对分片数取模为所在分片）',
     name VARCHAR(50) NOT NULL COMMENT '客户姓名',
     phone VARCHAR(20) NOT NULL COMMENT '手机号',
+    phone_key BIGINT COMMENT '规范化手机号打包键，由应用根据phone计算，用于来电查号',
     email VARCHAR(100) COMMENT '邮箱',
     company VARCHAR(100) COMMENT '公司名称',
     position VARCHAR(50) COMMENT '职位',
-    source VARCHAR(50) COMMENT '客户来源',
+    source_id SMALLINT COMMENT '客户来源编码，关联customer_sources表',
     notes TEXT COMMENT '备注信息',
     created_by INT COMMENT '创建人ID，关联users表',
     created_at DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    version INT NOT NULL DEFAULT 0 COMMENT '版本号，乐观锁',
+    deleted TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否已删除（软删除）',
+    deleted_at DATETIME COMMENT '删除时间',
     -- 外键约束：关联创建人
     FOREIGN KEY (created_by) REFERENCES users(id) ON DELETE SET NULL,
     -- 索引优化：
-    -- 1. 姓名、手机号是常用查询条件，添加索引提高查询速度
-    -- 2. 来源字段用于筛选，添加索引
+    -- 1. 姓名、手机号是常用查询条件，添加索引提高查询速度（精确和前缀匹配可用索引）
+    -- 2. 来源、创建人与创建时间组合索引，筛选后可直接按创建时间倒序分页
+    -- 3. 手机号打包键等值查询（允许多个客户同号，因此不是唯一索引）
     INDEX idx_name_phone (name, phone),
-    INDEX idx_source (source),
-    INDEX idx_created_at (created_at)
+    INDEX idx_phone (phone),
+    INDEX idx_phone_key (phone_key),
+    INDEX idx_company (company),
+    INDEX idx_source_id_created_at (source_id, created_at),
+    INDEX idx_created_by_created_at (created_by, created_at),
+    INDEX idx_created_at (created_at),
+    INDEX idx_deleted_at (deleted_at)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='客户表';
 
--- 3. 跟进记录表（followups）
+-- 4. 跟进记录表（followups）
 -- 存储客户跟进的详细记录
 CREATE TABLE IF NOT EXISTS followups (
-    id INT AUTO_INCREMENT PRIMARY KEY COMMENT '跟进记录ID，自增主键',
+    id INT AUTO_INCREMENT PRIMARY KEY COMMENT '跟进记录ID，由应用按号段分配（与所属客户在同一分片）',
     customer_id INT NOT NULL COMMENT '客户ID，关联customers表',
     user_id INT NOT NULL COMMENT '跟进人ID，关联users表',
     follow_time DATETIME NOT NULL COMMENT '跟进时间',
-    follow_method VARCHAR(20) NOT NULL COMMENT '跟进方式：电话、微信、面谈',
+    method_id SMALLINT NOT NULL DEFAULT 0 COMMENT '跟进方式编码，关联followup_methods表',
     content TEXT NOT NULL COMMENT '跟进内容',
     next_follow_reminder DATETIME COMMENT '下次跟进提醒时间',
     created_at DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    deleted TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否已删除（软删除）',
+    deleted_at DATETIME COMMENT '删除时间',
     -- 外键约束：关联客户和跟进人
     FOREIGN KEY (customer_id) REFERENCES customers(id) ON DELETE CASCADE,
     FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
@@ -66,9 +93,117 @@ CREATE TABLE IF NOT EXISTS followups (
     -- 2. 跟进时间用于排序和筛选，添加索引
     INDEX idx_customer_id (customer_id),
     INDEX idx_follow_time (follow_time),
-    INDEX idx_user_id (user_id)
+    INDEX idx_user_id (user_id),
+    INDEX idx_deleted_at (deleted_at)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='跟进记录表';
 
+-- 5. 跟进记录归档表（followups_archive）
+-- 跟进时间早于归档期限的记录由应用定时从followups表搬迁过来（ID不变），followups表只保留活跃数据
+-- 说明：InnoDB分区表不支持外键，因此采用应用管理的活跃表/归档表拆分代替按月RANGE分区
+CREATE TABLE IF NOT EXISTS followups_archive (
+    id INT PRIMARY KEY COMMENT '跟进记录ID，沿用followups表中的ID',
+    customer_id INT NOT NULL COMMENT '客户ID',
+    user_id INT NOT NULL COMMENT '跟进人ID',
+    follow_time DATETIME NOT NULL COMMENT '跟进时间',
+    method_id SMALLINT NOT NULL DEFAULT 0 COMMENT '跟进方式编码，关联followup_methods表',
+    content TEXT NOT NULL COMMENT '跟进内容',
+    next_follow_reminder DATETIME COMMENT '下次跟进提醒时间',
+    created_at DATETIME NOT NULL COMMENT '创建时间',
+    updated_at DATETIME NOT NULL COMMENT '更新时间',
+    deleted TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否已删除（软删除）',
+    deleted_at DATETIME COMMENT '删除时间',
+    -- 索引优化：按客户查询并按跟进时间排序，按跟进时间范围统计
+    INDEX idx_customer_id_follow_time (customer_id, follow_time),
+    INDEX idx_follow_time (follow_time),
+    INDEX idx_deleted_at (deleted_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='跟进记录归档表';
+
+-- 6. 转化漏斗统计结果表（funnel_statistics）
+-- 由应用定时单次遍历客户和跟进记录计算，按来源和创建人两个维度保存各指标的分布
+CREATE TABLE IF NOT EXISTS funnel_statistics (
+    id INT AUTO_INCREMENT PRIMARY KEY COMMENT '统计结果ID，自增主键',
+    dimension VARCHAR(20) NOT NULL COMMENT '统计维度：source、user',
+    dimension_value VARCHAR(50) NOT NULL COMMENT '维度取值：客户来源或创建人ID',
+    label VARCHAR(50) COMMENT '显示名称：客户来源或创建人昵称',
+    metric VARCHAR(40) NOT NULL COMMENT '指标：first_followup_hours、followups_to_reminder',
+    customer_count BIGINT NOT NULL COMMENT '该维度下的客户数量',
+    sample_count BIGINT NOT NULL COMMENT '有该指标样本的客户数量',
+    avg_value DOUBLE NOT NULL COMMENT '平均值',
+    p50 DOUBLE NOT NULL COMMENT '中位数',
+    p90 DOUBLE NOT NULL COMMENT '90分位数',
+    p99 DOUBLE NOT NULL COMMENT '99分位数',
+    max_value DOUBLE NOT NULL COMMENT '最大值',
+    computed_at DATETIME NOT NULL COMMENT '计算时间',
+    INDEX idx_dimension_metric (dimension, metric)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='转化漏斗统计结果表';
+
+-- 7. 预写日志检查点表（wal_checkpoints）
+-- 写后入库模式下记录已写入数据库的最大预写日志序号，与批量插入在同一事务中更新
+CREATE TABLE IF NOT EXISTS wal_checkpoints (
+    name VARCHAR(50) PRIMARY KEY COMMENT '预写日志名称',
+    last_seq BIGINT NOT NULL COMMENT '已写入数据库的最大序号',
+    updated_at DATETIME NOT NULL COMMENT '更新时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='预写日志检查点表';
+
+-- 8. 变更日志表（change_outbox）
+-- 每次写操作在同一事务中记录一行，各实例据此读取其他实例的变更；事件总线的订阅者落后或重建时按ID重放
+CREATE TABLE IF NOT EXISTS change_outbox (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '变更日志ID',
+    entity_type VARCHAR(20) NOT NULL COMMENT '实体类型：CUSTOMER、FOLLOWUP、USER',
+    action VARCHAR(10) NOT NULL COMMENT '变更类型：CREATE、UPDATE、DELETE',
+    entity_id INT NOT NULL COMMENT '实体ID',
+    origin VARCHAR(36) COMMENT '写入实例标识',
+    created_at DATETIME NOT NULL COMMENT '写入时间',
+    INDEX idx_created_at (created_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='变更日志表';
+
+-- 9. ID号段表（id_blocks）
+-- 每个序列一行，应用每次把next_value推进一个号段，在内存中发放号段内的序号；启用水平分片时只使用全局分片上的这张表
+CREATE TABLE IF NOT EXISTS id_blocks (
+    name VARCHAR(50) PRIMARY KEY COMMENT '序列名：customers、followups',
+    next_value BIGINT NOT NULL COMMENT '下一个未分配的序号',
+    updated_at DATETIME NOT NULL COMMENT '更新时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='ID号段表';
+
+-- 已有数据库升级：应用启动时由db/migration/V7__upgrade_existing_schema.sql自动补齐下面的版本号、软删除、
+-- 编码列和组合索引（已存在则跳过），不需要手工执行；以下语句仅供参考
+
+-- 已有数据库升级：补充客户筛选组合索引（idx_source被idx_source_created_at覆盖）
+-- ALTER TABLE customers ADD INDEX idx_phone (phone), ADD INDEX idx_company (company),
+--     ADD INDEX idx_source_created_at (source, created_at), ADD INDEX idx_created_by_created_at (created_by, created_at),
+--     DROP INDEX idx_source;
+
+-- 已有数据库升级：客户表增加乐观锁版本号
+-- ALTER TABLE customers ADD COLUMN version INT NOT NULL DEFAULT 0 COMMENT '版本号，乐观锁';
+
+-- 已有数据库升级：客户和跟进记录增加软删除标记
+-- ALTER TABLE customers ADD COLUMN deleted TINYINT(1) NOT NULL DEFAULT 0, ADD COLUMN deleted_at DATETIME, ADD INDEX idx_deleted_at (deleted_at);
+-- ALTER TABLE followups ADD COLUMN deleted TINYINT(1) NOT NULL DEFAULT 0, ADD COLUMN deleted_at DATETIME, ADD INDEX idx_deleted_at (deleted_at);
+
+-- 已有数据库升级：来源和跟进方式改为编码（应用启动时在任何profile下都会给旧列设置默认值，并在后台
+-- 按ID从新到旧分批回填编码，回填完成前编码为空的行从旧列读取；旧列由管理员调用
+-- POST /api/admin/lookups/migrate 在线删除；也可以手工执行下面的语句）
+-- ALTER TABLE followups ALTER COLUMN follow_method SET DEFAULT '';
+-- ALTER TABLE followups_archive ALTER COLUMN follow_method SET DEFAULT '';
+-- INSERT IGNORE INTO customer_sources (label) SELECT DISTINCT source FROM customers WHERE source IS NOT NULL;
+-- ALTER TABLE customers ADD COLUMN source_id SMALLINT, ADD INDEX idx_source_id_created_at (source_id, created_at);
+-- UPDATE customers c JOIN customer_sources s ON c.source = s.label SET c.source_id = s.id;
+-- ALTER TABLE customers DROP INDEX idx_source_created_at, DROP COLUMN source;
+-- INSERT IGNORE INTO followup_methods (label) SELECT DISTINCT follow_method FROM followups WHERE follow_method IS NOT NULL;
+-- ALTER TABLE followups ADD COLUMN method_id SMALLINT NOT NULL DEFAULT 0;
+-- UPDATE followups f JOIN followup_methods m ON f.follow_method = m.label SET f.method_id = m.id;
+-- ALTER TABLE followups DROP COLUMN follow_method;
+-- （followups_archive与followups相同）
+
+-- 已有数据库升级：客户表增加手机号打包键（应用启动时CallerIdService会回填已有数据）
+-- ALTER TABLE customers ADD COLUMN phone_key BIGINT AFTER phone, ADD INDEX idx_phone_key (phone_key);
+
+-- 已有数据库升级：归档跟进记录增加软删除标记
+-- ALTER TABLE followups_archive ADD COLUMN deleted TINYINT(1) NOT NULL DEFAULT 0, ADD COLUMN deleted_at DATETIME, ADD INDEX idx_deleted_at (deleted_at);
+
+-- 已有数据库升级：变更日志增加写入实例标识（多实例之间分发变更时跳过自己写入的行）
+-- ALTER TABLE change_outbox ADD COLUMN origin VARCHAR(36) COMMENT '写入实例标识' AFTER entity_id;
+
 -- 插入初始管理员账号
 -- 密码：123456，使用MD5加密
 INSERT INTO users (username, password, nickname, role) 
@@ -77,12 +212,20 @@ ON DUPLICATE KEY UPDATE password = MD5('123456');
 
 -- 表结构说明：
 -- 1. 用户表（users）：存储系统登录用户信息，包含管理员和普通用户
--- 2. 客户表（customers）：存储客户基本信息，是CRM系统的核心数据
--- 3. 跟进记录表（followups）：存储与客户的沟通记录，关联到具体客户
+-- 2. 编码表（customer_sources、followup_methods）：客户来源和跟进方式的编码与名称
+-- 3. 客户表（customers）：存储客户基本信息，是CRM系统的核心数据
+-- 4. 跟进记录表（followups）：存储与客户的沟通记录，关联到具体客户
+-- 5. 跟进记录归档表（followups_archive）：存储已归档的历史跟进记录
+-- 6. 转化漏斗统计结果表（funnel_statistics）：存储定时计算的漏斗指标分布
+-- 7. 预写日志检查点表（wal_checkpoints）：记录写后入库的进度
+-- 8. 变更日志表（change_outbox）：记录每次写操作，用于事件重放
+-- 9. ID号段表（id_blocks）：客户和跟进记录的全局唯一ID号段
 
 -- 索引优化说明：
 -- 1. 用户表：为username添加索引，优化登录查询
--- 2. 客户表：为name+phone组合添加索引，优化客户查询；为source添加索引，优化来源筛选
+-- 2. 客户表：为name+phone组合、phone、company添加索引，优化精确/前缀查询；
+--    source_id+created_at、created_by+created_at组合索引，优化筛选后按创建时间排序分页；
+--    phone_key索引，优化来电查号
 -- 3. 跟进记录表：为customer_id添加索引，优化按客户查询跟进记录；为follow_time添加索引，优化时间排序
 
 -- 数据安全说明：
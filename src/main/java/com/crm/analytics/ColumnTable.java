@@ -0,0 +1,324 @@
+package com.crm.analytics;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * 内存列存储表：一个按ID升序的int[]主键列加若干int[]数据列（日期用epoch day，字符串用字典编码）
+ * 扫描时按行区间切块并行计数，每块使用独立的计数数组，最后合并，不需要任何装箱对象。
+ * 增量修改（新增、更新、删除标记）持写锁，扫描持读锁。
+ * 数值列的null（如日期为空）存为NULL_VALUE，range()忽略它，按该列分组时这些行超出分组范围而被跳过
+ */
+public class ColumnTable {
+
+    public static final int NULL_VALUE = Integer.MIN_VALUE;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final String[] columnNames;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int[] ids;
+    private int[][] columns;
+    private boolean[] deleted;
+    private int size;  // 行数（含删除标记的行）
+    private int liveSize;  // 有效行数
+    private boolean sorted = true;  // 主键列是否有序
+
+    public ColumnTable(String... columnNames) {
+        this(INITIAL_CAPACITY, columnNames);
+    }
+
+    /**
+     * @param capacity 初始行容量，批量加载前按预计行数预分配，避免加载过程中反复翻倍复制
+     * @param columnNames 列名
+     */
+    public ColumnTable(int capacity, String... columnNames) {
+        int initial = Math.max(capacity, INITIAL_CAPACITY);
+        this.columnNames = columnNames;
+        this.ids = new int[initial];
+        this.deleted = new boolean[initial];
+        this.columns = new int[columnNames.length][initial];
+    }
+
+    /**
+     * 获取列下标
+     * @param name 列名
+     * @return 列下标
+     */
+    public int columnIndex(String name) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("未知的列：" + name);
+    }
+
+    /**
+     * 批量加载时追加一行，不检查主键顺序，加载完成后调用seal()排序
+     * @param id 主键
+     * @param values 各列取值
+     */
+    public void append(int id, int... values) {
+        lock.writeLock().lock();
+        try {
+            if (size > 0 && id <= ids[size - 1]) {
+                sorted = false;
+            }
+            insertAt(size, id, values);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 批量加载完成后按主键排序（主键和行号打包成long排序，再按行号逐列重排，同一时刻只多占用一列的内存）
+     */
+    public void seal() {
+        lock.writeLock().lock();
+        try {
+            if (sorted) {
+                return;
+            }
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = ((long) ids[i] << 32) | i;
+            }
+            Arrays.sort(keys);
+            boolean[] newDeleted = new boolean[deleted.length];
+            for (int i = 0; i < size; i++) {
+                newDeleted[i] = deleted[(int) keys[i]];
+            }
+            deleted = newDeleted;
+            ids = reorder(ids, keys);
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = reorder(columns[c], keys);
+            }
+            sorted = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 新增或更新一行：主键存在时覆盖各列，否则按主键顺序插入
+     * @param id 主键
+     * @param values 各列取值
+     */
+    public void upsert(int id, int... values) {
+        lock.writeLock().lock();
+        try {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                for (int c = 0; c < columns.length; c++) {
+                    columns[c][pos] = values[c];
+                }
+                if (deleted[pos]) {
+                    deleted[pos] = false;
+                    liveSize++;
+                }
+            } else {
+                // 新记录通常ID最大，只在末尾追加；事务乱序提交时才需要移动少量尾部元素
+                insertAt(-pos - 1, id, values);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 标记删除一行
+     * @param id 主键
+     * @return 是否存在并已标记删除
+     */
+    public boolean remove(int id) {
+        lock.writeLock().lock();
+        try {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0 || deleted[pos]) {
+                return false;
+            }
+            deleted[pos] = true;
+            liveSize--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 对账：删除主键不在集合中的行，同时把所有已标记删除的行原地压缩掉（有效行前移，不分配新数组）
+     * @param liveIds 应保留的主键
+     * @return 本次删除的行数（不含之前已标记删除的行）
+     */
+    public int retainOnly(BitSet liveIds) {
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (deleted[i]) {
+                    continue;
+                }
+                if (!liveIds.get(ids[i])) {
+                    removed++;
+                    continue;
+                }
+                if (kept != i) {
+                    ids[kept] = ids[i];
+                    for (int c = 0; c < columns.length; c++) {
+                        columns[c][kept] = columns[c][i];
+                    }
+                }
+                deleted[kept] = false;
+                kept++;
+            }
+            Arrays.fill(deleted, kept, size, false);
+            size = kept;
+            liveSize = kept;
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 获取有效行数
+     * @return 有效行数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取某列在有效行中的最小值和最大值（忽略NULL_VALUE）
+     * @param column 列下标
+     * @return [最小值, 最大值]，没有非null的有效行时返回null
+     */
+    public int[] range(int column) {
+        lock.readLock().lock();
+        try {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            int[] values = columns[column];
+            for (int i = 0; i < size; i++) {
+                if (!deleted[i] && values[i] != NULL_VALUE) {
+                    min = Math.min(min, values[i]);
+                    max = Math.max(max, values[i]);
+                }
+            }
+            return min > max ? null : new int[]{min, max};
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 并行扫描：按过滤条件筛选行，再按分组列计数
+     * 分组键为各分组列 (取值 - base) 的混合进制组合，取值超出 [base, base + cardinality) 的行被忽略
+     * @param filterColumns 过滤列下标
+     * @param filterMin 过滤列最小值（含）
+     * @param filterMax 过滤列最大值（含）
+     * @param groupColumns 分组列下标
+     * @param groupBase 分组列取值基准
+     * @param groupCardinality 分组列取值个数
+     * @return 计数数组，长度为各分组列取值个数之积
+     */
+    public long[] groupCount(int[] filterColumns, int[] filterMin, int[] filterMax,
+                             int[] groupColumns, int[] groupBase, int[] groupCardinality) {
+        int groups = 1;
+        for (int cardinality : groupCardinality) {
+            groups *= cardinality;
+        }
+        int totalGroups = groups;
+
+        lock.readLock().lock();
+        try {
+            int rows = size;
+            int chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * 2, rows / 65536 + 1));
+            int chunkSize = (rows + chunks - 1) / chunks;
+            return IntStream.range(0, chunks).parallel()
+                    .mapToObj(chunk -> scanChunk(chunk * chunkSize, Math.min(rows, (chunk + 1) * chunkSize),
+                            filterColumns, filterMin, filterMax, groupColumns, groupBase, groupCardinality, totalGroups))
+                    .reduce((a, b) -> {
+                        for (int i = 0; i < a.length; i++) {
+                            a[i] += b[i];
+                        }
+                        return a;
+                    })
+                    .orElse(new long[totalGroups]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long[] scanChunk(int from, int to, int[] filterColumns, int[] filterMin, int[] filterMax,
+                             int[] groupColumns, int[] groupBase, int[] groupCardinality, int totalGroups) {
+        long[] counts = new long[totalGroups];
+        rows:
+        for (int i = from; i < to; i++) {
+            if (deleted[i]) {
+                continue;
+            }
+            for (int f = 0; f < filterColumns.length; f++) {
+                int value = columns[filterColumns[f]][i];
+                if (value < filterMin[f] || value > filterMax[f]) {
+                    continue rows;
+                }
+            }
+            int key = 0;
+            for (int g = 0; g < groupColumns.length; g++) {
+                int offset = columns[groupColumns[g]][i] - groupBase[g];
+                if (offset < 0 || offset >= groupCardinality[g]) {
+                    continue rows;
+                }
+                key = key * groupCardinality[g] + offset;
+            }
+            counts[key]++;
+        }
+        return counts;
+    }
+
+    private int[] reorder(int[] values, long[] keys) {
+        int[] reordered = new int[values.length];
+        for (int i = 0; i < size; i++) {
+            reordered[i] = values[(int) keys[i]];
+        }
+        return reordered;
+    }
+
+    private void insertAt(int pos, int id, int[] values) {
+        if (size == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            deleted = Arrays.copyOf(deleted, capacity);
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = Arrays.copyOf(columns[c], capacity);
+            }
+        }
+        int moved = size - pos;
+        if (moved > 0) {
+            System.arraycopy(ids, pos, ids, pos + 1, moved);
+            System.arraycopy(deleted, pos, deleted, pos + 1, moved);
+            for (int c = 0; c < columns.length; c++) {
+                System.arraycopy(columns[c], pos, columns[c], pos + 1, moved);
+            }
+        }
+        ids[pos] = id;
+        deleted[pos] = false;
+        for (int c = 0; c < columns.length; c++) {
+            columns[c][pos] = values[c];
+        }
+        size++;
+        liveSize++;
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.crm.analytics;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 百分位直方图，用于流式计算分布的百分位数
+ * 数值按0.01精度取整后只保留3位有效数字作为桶，桶的数量与样本数量无关（每个数量级最多900个桶），
+ * 相对误差小于1%，适合在单次遍历中为大量分组同时统计分布
+ */
+public class PercentileHistogram {
+
+    private static final double SCALE = 100.0;  // 数值精度：0.01
+
+    private final TreeMap<Long, Long> buckets = new TreeMap<>();
+    private long count;  // 样本数量
+    private double sum;  // 样本总和
+    private double max;  // 最大值
+
+    /**
+     * 记录一个样本，负数按0处理
+     * @param value 样本值
+     */
+    public void record(double value) {
+        double v = Math.max(0, value);
+        buckets.merge(bucketOf(v), 1L, Long::sum);
+        count++;
+        sum += v;
+        max = Math.max(max, v);
+    }
+
+    /**
+     * 获取样本数量
+     * @return 样本数量
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * 获取平均值
+     * @return 平均值，无样本时返回0
+     */
+    public double getAverage() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * 获取最大值
+     * @return 最大值
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * 计算百分位数（取所在桶的下界）
+     * @param percentile 百分位，取值0到100
+     * @return 百分位数，无样本时返回0
+     */
+    public double getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (Map.Entry<Long, Long> entry : buckets.entrySet()) {
+            seen += entry.getValue();
+            if (seen >= rank) {
+                return entry.getKey() / SCALE;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 计算数值所在的桶：按0.01精度取整，1000以上只保留3位有效数字
+     */
+    private static long bucketOf(double value) {
+        long scaled = Math.round(value * SCALE);
+        long unit = 1;
+        while (scaled / unit >= 1000) {
+            unit *= 10;
+        }
+        return scaled / unit * unit;
+    }
+
+}
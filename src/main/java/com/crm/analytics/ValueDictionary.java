@@ -0,0 +1,72 @@
+package com.crm.analytics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 字典编码：把取值不多的列（来源、跟进方式、用户ID）映射为从0开始的连续整数编码，
+ * 列存储只保存int编码，分组统计可以直接用编码作为计数数组下标。编码0固定表示null
+ * @param <T> 取值类型
+ */
+public class ValueDictionary<T> {
+
+    public static final int NULL_CODE = 0;
+
+    private final Map<T, Integer> codes = new HashMap<>();
+    private final List<T> values = new ArrayList<>();
+
+    public ValueDictionary() {
+        values.add(null);
+    }
+
+    /**
+     * 获取取值的编码，不存在时分配新编码
+     * @param value 取值
+     * @return 编码
+     */
+    public synchronized int encode(T value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            codes.put(value, code);
+            values.add(value);
+        }
+        return code;
+    }
+
+    /**
+     * 查询取值的编码，不分配新编码
+     * @param value 取值
+     * @return 编码，不存在时返回-1
+     */
+    public synchronized int lookup(T value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * 根据编码获取取值
+     * @param code 编码
+     * @return 取值
+     */
+    public synchronized T decode(int code) {
+        return values.get(code);
+    }
+
+    /**
+     * 获取已分配的编码数量（含null）
+     * @return 编码数量
+     */
+    public synchronized int size() {
+        return values.size();
+    }
+
+}
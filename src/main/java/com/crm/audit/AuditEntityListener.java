@@ -0,0 +1,162 @@
+package com.crm.audit;
+
+import com.crm.event.EntityChangeEvent;
+import com.crm.model.Customer;
+import com.crm.model.Followup;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 审计实体监听器，注册为Hibernate的插入、更新、删除后事件监听器
+ * 更新时从Hibernate脏检查已有的新旧状态中取出变化的字段，不额外查询数据库；
+ * 记录交给Sink在事务提交后写入审计日志。批量UPDATE（部分更新、合并客户）不经过实体事件，由服务层直接记录
+ */
+public class AuditEntityListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 不审计的属性：时间戳、版本号、软删除标记（删除本身单独记录）
+     */
+    private static final Set<String> IGNORED = new HashSet<>(Arrays.asList("createdAt", "updatedAt", "version", "deleted", "deletedAt"));
+
+    /**
+     * 审计记录接收方
+     */
+    public interface Sink {
+        /**
+         * 记录一次实体变更
+         * @param entityType 实体类型
+         * @param action 变更类型
+         * @param entityId 实体ID
+         * @param changes 字段变更
+         */
+        void record(EntityChangeEvent.EntityType entityType, EntityChangeEvent.Action action, int entityId,
+                    List<AuditRecord.FieldChange> changes);
+    }
+
+    private final Sink sink;
+    private final int maxValueChars;  // 字段值超过该长度时截断
+
+    public AuditEntityListener(Sink sink, int maxValueChars) {
+        this.sink = sink;
+        this.maxValueChars = Math.min(maxValueChars, 10000);  // 编码后的字段值不能超过32767字节
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        EntityChangeEvent.EntityType type = typeOf(event.getEntity());
+        if (type == null) {
+            return;
+        }
+        List<AuditRecord.FieldChange> changes = new ArrayList<>();
+        String[] names = event.getPersister().getPropertyNames();
+        Type[] types = event.getPersister().getPropertyTypes();
+        Object[] state = event.getState();
+        for (int i = 0; i < names.length; i++) {
+            if (audited(names[i], types[i]) && state[i] != null) {
+                changes.add(new AuditRecord.FieldChange(names[i], false, null, format(state[i])));
+            }
+        }
+        sink.record(type, EntityChangeEvent.Action.CREATE, (Integer) event.getId(), changes);
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        EntityChangeEvent.EntityType type = typeOf(event.getEntity());
+        if (type == null) {
+            return;
+        }
+        String[] names = event.getPersister().getPropertyNames();
+        Type[] types = event.getPersister().getPropertyTypes();
+        Object[] state = event.getState();
+        Object[] oldState = event.getOldState();
+        int[] dirty = event.getDirtyProperties();
+        if (dirty == null) {
+            dirty = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                dirty[i] = i;
+            }
+        }
+
+        List<AuditRecord.FieldChange> changes = new ArrayList<>();
+        for (int i : dirty) {
+            if (!audited(names[i], types[i])) {
+                continue;
+            }
+            if (oldState == null) {
+                // 没有加载时的快照（直接更新游离对象），只能记录新值
+                changes.add(new AuditRecord.FieldChange(names[i], false, null, format(state[i])));
+            } else if (!Objects.equals(oldState[i], state[i])) {
+                changes.add(new AuditRecord.FieldChange(names[i], true, format(oldState[i]), format(state[i])));
+            }
+        }
+        if (!changes.isEmpty()) {
+            sink.record(type, EntityChangeEvent.Action.UPDATE, (Integer) event.getId(), changes);
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        EntityChangeEvent.EntityType type = typeOf(event.getEntity());
+        if (type != null) {
+            sink.record(type, EntityChangeEvent.Action.DELETE, (Integer) event.getId(), Collections.emptyList());
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    /**
+     * 旧版本拼写错误的方法名，Hibernate 5.x中仍是抽象方法，委托给requiresPostCommitHandling
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    /**
+     * 把字段值转换为审计日志中的字符串
+     * @param value 字段值
+     * @return 字符串，超过长度上限时截断
+     */
+    public String format(Object value) {
+        if (value == null) {
+            return null;
+        }
+        String text = value.toString();
+        return text.length() > maxValueChars ? text.substring(0, maxValueChars) + "…" : text;
+    }
+
+    private static boolean audited(String name, Type type) {
+        return !IGNORED.contains(name) && !type.isAssociationType();
+    }
+
+    private static EntityChangeEvent.EntityType typeOf(Object entity) {
+        if (entity instanceof Customer) {
+            return EntityChangeEvent.EntityType.CUSTOMER;
+        }
+        if (entity instanceof Followup) {
+            return EntityChangeEvent.EntityType.FOLLOWUP;
+        }
+        return null;
+    }
+
+}
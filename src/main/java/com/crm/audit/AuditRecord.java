@@ -0,0 +1,242 @@
+package com.crm.audit;
+
+import com.crm.event.EntityChangeEvent;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 审计记录：谁在何时修改了哪个实体的哪些字段
+ * 二进制格式（大端）：序号(8) 时间戳(8) 实体类型(1) 变更类型(1) 实体ID(4) 操作人ID(4) 字段数(2)，
+ * 每个字段：字段名 标志(1，bit0=有旧值) 新值 [旧值]；字符串为长度(2，-1表示null)+UTF-8字节
+ */
+public class AuditRecord {
+
+    private static final int HEADER_BYTES = 8 + 8 + 1 + 1 + 4 + 4 + 2;
+    private static final byte HAS_OLD = 1;
+
+    /**
+     * 字段变更，旧值未知（批量部分更新不读取原值）时hasOld为false
+     */
+    public static class FieldChange {
+        private final String field;
+        private final boolean hasOld;
+        private final String oldValue;
+        private final String newValue;
+
+        public FieldChange(String field, boolean hasOld, String oldValue, String newValue) {
+            this.field = field;
+            this.hasOld = hasOld;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public boolean hasOld() {
+            return hasOld;
+        }
+
+        public String getOldValue() {
+            return oldValue;
+        }
+
+        public String getNewValue() {
+            return newValue;
+        }
+    }
+
+    private long seq;  // 序号，写入日志时分配
+    private final long timestamp;  // 变更时间（毫秒）
+    private final EntityChangeEvent.EntityType entityType;
+    private final EntityChangeEvent.Action action;
+    private final int entityId;
+    private final int userId;  // 操作人ID，后台任务为0
+    private final List<FieldChange> changes;
+
+    public AuditRecord(long timestamp, EntityChangeEvent.EntityType entityType, EntityChangeEvent.Action action,
+                       int entityId, int userId, List<FieldChange> changes) {
+        this.timestamp = timestamp;
+        this.entityType = entityType;
+        this.action = action;
+        this.entityId = entityId;
+        this.userId = userId;
+        this.changes = changes;
+    }
+
+    /**
+     * 索引键：实体类型和实体ID
+     */
+    public static long key(EntityChangeEvent.EntityType entityType, int entityId) {
+        return ((long) entityType.ordinal() << 32) | (entityId & 0xFFFFFFFFL);
+    }
+
+    public long key() {
+        return key(entityType, entityId);
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public EntityChangeEvent.EntityType getEntityType() {
+        return entityType;
+    }
+
+    public EntityChangeEvent.Action getAction() {
+        return action;
+    }
+
+    public int getEntityId() {
+        return entityId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public List<FieldChange> getChanges() {
+        return changes;
+    }
+
+    /**
+     * 编码为二进制
+     */
+    public byte[] encode() {
+        List<byte[]> strings = new ArrayList<>();
+        int size = HEADER_BYTES;
+        for (FieldChange change : changes) {
+            size += 1 + add(strings, change.field) + add(strings, change.newValue);
+            if (change.hasOld) {
+                size += add(strings, change.oldValue);
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putLong(seq).putLong(timestamp)
+                .put((byte) entityType.ordinal()).put((byte) action.ordinal())
+                .putInt(entityId).putInt(userId).putShort((short) changes.size());
+        int i = 0;
+        for (FieldChange change : changes) {
+            putString(buffer, strings.get(i++));
+            buffer.put(change.hasOld ? HAS_OLD : 0);
+            putString(buffer, strings.get(i++));
+            if (change.hasOld) {
+                putString(buffer, strings.get(i++));
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 只读取索引键（实体类型和实体ID），不解码字段
+     * @param buffer 定位在记录开头的缓冲区，读取后位置不变
+     */
+    static long peekKey(ByteBuffer buffer) {
+        int start = buffer.position();
+        EntityChangeEvent.EntityType type = EntityChangeEvent.EntityType.values()[buffer.get(start + 16)];
+        return key(type, buffer.getInt(start + 18));
+    }
+
+    /**
+     * 读取序号
+     * @param buffer 定位在记录开头的缓冲区，读取后位置不变
+     */
+    static long peekSeq(ByteBuffer buffer) {
+        return buffer.getLong(buffer.position());
+    }
+
+    /**
+     * 从二进制解码
+     * @param buffer 定位在记录开头的缓冲区
+     */
+    static AuditRecord decode(ByteBuffer buffer) {
+        long seq = buffer.getLong();
+        long timestamp = buffer.getLong();
+        EntityChangeEvent.EntityType type = EntityChangeEvent.EntityType.values()[buffer.get()];
+        EntityChangeEvent.Action action = EntityChangeEvent.Action.values()[buffer.get()];
+        int entityId = buffer.getInt();
+        int userId = buffer.getInt();
+        int count = buffer.getShort();
+        List<FieldChange> changes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String field = getString(buffer);
+            boolean hasOld = (buffer.get() & HAS_OLD) != 0;
+            String newValue = getString(buffer);
+            String oldValue = hasOld ? getString(buffer) : null;
+            changes.add(new FieldChange(field, hasOld, oldValue, newValue));
+        }
+        AuditRecord record = new AuditRecord(timestamp, type, action, entityId, userId, changes);
+        record.seq = seq;
+        return record;
+    }
+
+    /**
+     * 转换为接口返回的Map
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("seq", seq);
+        map.put("time", LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()));
+        map.put("userId", userId);
+        map.put("entityType", entityType);
+        map.put("entityId", entityId);
+        map.put("action", action);
+        List<Map<String, Object>> fields = new ArrayList<>(changes.size());
+        for (FieldChange change : changes) {
+            Map<String, Object> field = new LinkedHashMap<>();
+            field.put("field", change.field);
+            if (change.hasOld) {
+                field.put("old", change.oldValue);
+            }
+            field.put("new", change.newValue);
+            fields.add(field);
+        }
+        map.put("changes", fields);
+        return map;
+    }
+
+    private static int add(List<byte[]> strings, String value) {
+        byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        if (bytes != null && bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("审计字段值过长：" + bytes.length + "字节");
+        }
+        strings.add(bytes);
+        return 2 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putShort((short) -1);
+        } else {
+            buffer.putShort((short) bytes.length).put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,356 @@
+package com.crm.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 审计日志段文件（只追加，内存映射）
+ * 记录依次追加到当前段文件的内存映射区，写满后切换到新段，超过保留段数时删除最旧的段。
+ * 追加只是一次内存拷贝，由定时任务批量fsync（force），崩溃时最多丢失最近一个fsync间隔内的记录。
+ * 每条记录带长度和CRC32，启动时顺序扫描各段重建索引；只有最后一个段可能有写入中断的记录，只对它校验CRC，
+ * 遇到不完整的记录即认为是写入中断处（之前的段在切换时已fsync，只按长度遍历）。
+ * 稀疏索引：每个段按blockRecords条记录分块，每块保存一个布隆过滤器（约每条记录10位），
+ * 按实体查询时只扫描过滤器命中的块
+ */
+public class AuditSegmentLog {
+
+    private static final int MAGIC = 0x41554454;  // "AUDT"
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER = 16;  // 魔数(4) 格式版本(4) 首条记录序号(8)
+    private static final int FRAME_HEADER = 8;  // 记录长度(4) CRC32(4)
+    private static final String PREFIX = "audit-";
+    private static final String SUFFIX = ".seg";
+    private static final int BLOOM_BITS_PER_RECORD = 10;
+    private static final int BLOOM_HASHES = 3;
+
+    /**
+     * 索引块：从start开始的最多blockRecords条记录
+     */
+    private static final class Block {
+        final int start;
+        final long[] bloom;
+        int count;
+
+        Block(int start, int bloomWords) {
+            this.start = start;
+            this.bloom = new long[bloomWords];
+        }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final MappedByteBuffer buffer;
+        final List<Block> blocks = new ArrayList<>();
+        int writePos = SEGMENT_HEADER;
+        long records;
+
+        Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        long firstSeq() {
+            return buffer.getLong(8);
+        }
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final int blockRecords;
+    private final int bloomBits;
+
+    private final List<Segment> segments = new ArrayList<>();  // 按序号从旧到新
+    private Segment current;
+    private long nextSeq = 1;
+    private boolean dirty;  // 当前段有尚未fsync的记录
+    private long appended;  // 本次启动后追加的记录数
+    private volatile long lastForceMillis;
+
+    /**
+     * @param dir 段文件目录
+     * @param segmentBytes 每个段文件的大小
+     * @param maxSegments 最多保留的段数
+     * @param blockRecords 每个索引块的记录数
+     */
+    public AuditSegmentLog(Path dir, int segmentBytes, int maxSegments, int blockRecords) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.blockRecords = Math.max(1, blockRecords);
+        this.bloomBits = (this.blockRecords * BLOOM_BITS_PER_RECORD + 63) / 64 * 64;
+    }
+
+    /**
+     * 打开已有段文件并重建索引
+     */
+    public synchronized void open() throws IOException {
+        Files.createDirectories(dir);
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        Collections.sort(paths);  // 文件名中的序号定长补零，按名称排序即按序号排序
+        for (int i = 0; i < paths.size(); i++) {
+            boolean last = i == paths.size() - 1;
+            Segment segment = map(paths.get(i), 0);
+            if (segment.buffer.capacity() < SEGMENT_HEADER
+                    || segment.buffer.getInt(0) != MAGIC || segment.buffer.getInt(4) != FORMAT_VERSION) {
+                System.err.println("审计日志段格式无法识别，已忽略：" + paths.get(i));
+                continue;
+            }
+            scan(segment, last);
+            segments.add(segment);
+            current = segment;
+        }
+        System.out.println("审计日志已打开：" + segments.size() + "个段，下一条记录序号" + nextSeq);
+    }
+
+    /**
+     * 追加一条记录（只写入内存映射区，由{@link #force()}定期落盘）
+     * @param record 审计记录，序号在此分配
+     */
+    public synchronized void append(AuditRecord record) throws IOException {
+        record.setSeq(nextSeq);
+        byte[] payload = record.encode();
+        int frame = FRAME_HEADER + payload.length;
+        if (frame > segmentBytes - SEGMENT_HEADER) {
+            throw new IllegalArgumentException("审计记录过大：" + payload.length + "字节");
+        }
+        if (current == null || current.writePos + frame > current.buffer.capacity()) {
+            rotate();
+        }
+
+        int pos = current.writePos;
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buffer = current.buffer.duplicate();
+        buffer.position(pos + FRAME_HEADER);
+        buffer.put(payload);
+        buffer.putInt(pos + 4, (int) crc.getValue());
+        buffer.putInt(pos, payload.length);  // 最后写长度，读取方看到非0长度时记录已完整
+        current.writePos = pos + frame;
+        index(current, pos, record.key());
+        nextSeq++;
+        appended++;
+        dirty = true;
+    }
+
+    /**
+     * 把当前段已追加的记录刷到磁盘，在锁外执行，不阻塞追加
+     */
+    public void force() {
+        Segment segment;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            segment = current;
+            dirty = false;
+        }
+        segment.buffer.force();
+        lastForceMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * 按实体查询审计记录（从新到旧）
+     * @param key 索引键（见{@link AuditRecord#key}）
+     * @param limit 最多返回的记录数
+     * @return 审计记录
+     */
+    public List<AuditRecord> find(long key, int limit) {
+        // 在锁内取快照：快照位置之前的记录不再变化，锁外读取无需同步
+        List<Segment> segmentSnapshot;
+        Map<Segment, List<Block>> blockSnapshot = new HashMap<>();
+        Map<Segment, Integer> endSnapshot = new HashMap<>();
+        synchronized (this) {
+            segmentSnapshot = new ArrayList<>(segments);
+            for (Segment segment : segmentSnapshot) {
+                blockSnapshot.put(segment, new ArrayList<>(segment.blocks));
+                endSnapshot.put(segment, segment.writePos);
+            }
+        }
+
+        List<AuditRecord> result = new ArrayList<>();
+        for (int s = segmentSnapshot.size() - 1; s >= 0 && result.size() < limit; s--) {
+            Segment segment = segmentSnapshot.get(s);
+            List<Block> blocks = blockSnapshot.get(segment);
+            ByteBuffer buffer = segment.buffer.duplicate();
+            for (int b = blocks.size() - 1; b >= 0 && result.size() < limit; b--) {
+                Block block = blocks.get(b);
+                if (!mightContain(block.bloom, key)) {
+                    continue;
+                }
+                int end = b + 1 < blocks.size() ? blocks.get(b + 1).start : endSnapshot.get(segment);
+                List<AuditRecord> matches = new ArrayList<>();
+                for (int pos = block.start; pos < end; ) {
+                    int length = buffer.getInt(pos);
+                    buffer.limit(pos + FRAME_HEADER + length).position(pos + FRAME_HEADER);
+                    ByteBuffer payload = buffer.slice();
+                    buffer.clear();
+                    if (AuditRecord.peekKey(payload) == key) {
+                        matches.add(AuditRecord.decode(payload));
+                    }
+                    pos += FRAME_HEADER + length;
+                }
+                Collections.reverse(matches);
+                result.addAll(matches);
+            }
+        }
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * 获取日志状态
+     * @return 段数、占用字节、索引大小等
+     */
+    public synchronized Map<String, Object> getStatus() {
+        long bytes = 0;
+        long records = 0;
+        long indexBytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.writePos;
+            records += segment.records;
+            indexBytes += (long) segment.blocks.size() * (bloomBits / 8 + 16);
+        }
+        Map<String, Object> status = new HashMap<>();
+        status.put("dir", dir.toAbsolutePath().toString());
+        status.put("segments", segments.size());
+        status.put("maxSegments", maxSegments);
+        status.put("segmentBytes", segmentBytes);
+        status.put("usedBytes", bytes);
+        status.put("records", records);
+        status.put("indexBytes", indexBytes);
+        status.put("oldestSeq", segments.isEmpty() ? nextSeq : segments.get(0).firstSeq());
+        status.put("nextSeq", nextSeq);
+        status.put("appendedSinceStart", appended);
+        status.put("unflushed", dirty);
+        status.put("lastForceMillis", lastForceMillis);
+        return status;
+    }
+
+    /**
+     * 切换到新的段文件，删除超出保留数量的旧段
+     */
+    private void rotate() throws IOException {
+        if (current != null) {
+            current.buffer.force();
+        }
+        Path path = dir.resolve(PREFIX + String.format("%020d", nextSeq) + SUFFIX);
+        Segment segment = map(path, segmentBytes);
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(4, FORMAT_VERSION);
+        segment.buffer.putLong(8, nextSeq);
+        segments.add(segment);
+        current = segment;
+        dirty = true;
+
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.remove(0);
+            // 映射区在没有引用后由GC释放，删除文件不影响正在进行的查询
+            Files.deleteIfExists(oldest.path);
+            System.out.println("审计日志段超过保留数量，已删除：" + oldest.path.getFileName());
+        }
+    }
+
+    /**
+     * 映射段文件
+     * @param size 映射大小，为0时使用文件现有大小
+     */
+    private Segment map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long length = size > 0 ? size : channel.size();
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+        }
+    }
+
+    /**
+     * 顺序扫描段文件中的记录，重建索引并确定写入位置
+     * @param last 是否为最后一个段（其中可能有写入中断的记录，逐条校验CRC）
+     */
+    private void scan(Segment segment, boolean last) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int capacity = buffer.capacity();
+        int pos = SEGMENT_HEADER;
+        boolean torn = false;
+        while (pos + FRAME_HEADER <= capacity) {
+            int length = buffer.getInt(pos);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || pos + FRAME_HEADER + length > capacity) {
+                torn = true;
+                break;
+            }
+            buffer.limit(pos + FRAME_HEADER + length).position(pos + FRAME_HEADER);
+            ByteBuffer payload = buffer.slice();
+            buffer.clear();
+            if (last) {
+                CRC32 crc = new CRC32();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != buffer.getInt(pos + 4)) {
+                    torn = true;
+                    break;
+                }
+            }
+            index(segment, pos, AuditRecord.peekKey(payload));
+            nextSeq = AuditRecord.peekSeq(payload) + 1;
+            pos += FRAME_HEADER + length;
+        }
+        segment.writePos = pos;
+        if (torn) {
+            System.err.println("审计日志段" + segment.path.getFileName() + "在位置" + pos + "处有不完整的记录，之后的内容已丢弃");
+            if (last) {
+                // 清除中断处之后的残留字节，避免之后追加的记录与残留内容拼接
+                for (int i = pos; i < capacity; i++) {
+                    buffer.put(i, (byte) 0);
+                }
+            }
+        }
+    }
+
+    private void index(Segment segment, int pos, long key) {
+        Block block = segment.blocks.isEmpty() ? null : segment.blocks.get(segment.blocks.size() - 1);
+        if (block == null || block.count >= blockRecords) {
+            block = new Block(pos, bloomBits / 64);
+            segment.blocks.add(block);
+        }
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bloomBits;
+            block.bloom[bit >>> 6] |= 1L << bit;
+        }
+        block.count++;
+        segment.records++;
+    }
+
+    private boolean mightContain(long[] bloom, long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bloomBits;
+            if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.crm.callerid;
+
+/**
+ * long -> long 开放寻址哈希表（线性探测，删除时把后续元素前移补位，不留删除标记）
+ * 键和值交替存放在同一个long数组中，一次查找通常只访问一个缓存行，没有装箱对象和链表节点。
+ * 键0表示空槽，不能作为键；查不到时返回0。
+ * 非线程安全：写操作由调用方串行化；读操作只读取一次数组引用并限制探测次数，与写操作并发时不会越界或死循环，
+ * 但结果可能不准确，调用方需配合StampedLock乐观读校验
+ */
+public class LongLongHashMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+    private static final int MIN_SLOTS = 16;
+    private static final int MAX_SLOTS = 1 << 29;
+
+    private long[] table;  // [键0, 值0, 键1, 值1, ...]，槽数为2的幂
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * @param expectedSize 预计元素数量，超过后自动扩容
+     */
+    public LongLongHashMap(int expectedSize) {
+        allocate(slotsFor(expectedSize));
+    }
+
+    /**
+     * 查询
+     * @param key 键（非0）
+     * @return 值，不存在时返回0
+     */
+    public long get(long key) {
+        long[] tab = table;
+        int slots = tab.length >> 1;
+        int mask = slots - 1;
+        int slot = hash(key) & mask;
+        for (int probes = 0; probes < slots; probes++) {
+            long current = tab[slot << 1];
+            if (current == key) {
+                return tab[(slot << 1) + 1];
+            }
+            if (current == 0) {
+                return 0;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * 写入
+     * @param key 键（非0）
+     * @param value 值
+     * @return 原来的值，不存在时返回0
+     */
+    public long put(long key, long value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("键不能为0");
+        }
+        int mask = (table.length >> 1) - 1;
+        int slot = hash(key) & mask;
+        long current;
+        while ((current = table[slot << 1]) != 0) {
+            if (current == key) {
+                long previous = table[(slot << 1) + 1];
+                table[(slot << 1) + 1] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // 先写值再写键，并发读到键时值已就位
+        table[(slot << 1) + 1] = value;
+        table[slot << 1] = key;
+        if (++size > resizeThreshold) {
+            resize();
+        }
+        return 0;
+    }
+
+    /**
+     * 删除
+     * @param key 键
+     * @return 原来的值，不存在时返回0
+     */
+    public long remove(long key) {
+        if (key == 0) {
+            return 0;
+        }
+        int mask = (table.length >> 1) - 1;
+        int hole = hash(key) & mask;
+        long current;
+        while ((current = table[hole << 1]) != key) {
+            if (current == 0) {
+                return 0;
+            }
+            hole = (hole + 1) & mask;
+        }
+        long previous = table[(hole << 1) + 1];
+
+        // 后移补位：同一探测链上理想位置不在(hole, next]区间内的元素前移到空位，保证后续查找不会提前遇到空槽
+        int next = (hole + 1) & mask;
+        while ((current = table[next << 1]) != 0) {
+            int home = hash(current) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[(hole << 1) + 1] = table[(next << 1) + 1];
+                table[hole << 1] = current;
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[hole << 1] = 0;
+        table[(hole << 1) + 1] = 0;
+        size--;
+        return previous;
+    }
+
+    /**
+     * @return 元素数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 槽数
+     */
+    public int capacity() {
+        return table.length >> 1;
+    }
+
+    private void resize() {
+        long[] old = table;
+        if ((old.length >> 1) >= MAX_SLOTS) {
+            throw new IllegalStateException("哈希表已达到最大容量：" + MAX_SLOTS);
+        }
+        long[] tab = new long[old.length << 1];
+        int mask = (tab.length >> 1) - 1;
+        for (int i = 0; i < old.length; i += 2) {
+            long key = old[i];
+            if (key != 0) {
+                int slot = hash(key) & mask;
+                while (tab[slot << 1] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                tab[(slot << 1) + 1] = old[i + 1];
+                tab[slot << 1] = key;
+            }
+        }
+        // 新数组填好后再发布，并发读看到的总是完整的数组
+        resizeThreshold = (int) ((tab.length >> 1) * LOAD_FACTOR);
+        table = tab;
+    }
+
+    private void allocate(int slots) {
+        table = new long[slots << 1];
+        resizeThreshold = (int) (slots * LOAD_FACTOR);
+    }
+
+    private static int slotsFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR);
+        int slots = MIN_SLOTS;
+        while (slots < needed && slots < MAX_SLOTS) {
+            slots <<= 1;
+        }
+        return slots;
+    }
+
+    /**
+     * 乘法散列，取高位混合，避免打包手机号低位规律导致聚集
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.crm.callerid;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 手机号打包键 -> 客户ID 内存索引（重复客户检测和来电查号共用一份）
+ * 号码 -> 客户ID、客户ID -> 号码两张原始类型哈希表。读取用StampedLock乐观读，不加锁、不分配对象；
+ * 写操作持有写锁，多个写操作之间的顺序由调用方保证。
+ * 同一号码对应多个客户时只记录MULTIPLE标记，调用方回退到customers.phone_key索引查询
+ */
+public class PhoneIndex {
+
+    /**
+     * 号码对应多个客户
+     */
+    public static final long MULTIPLE = -1;
+
+    private final StampedLock lock = new StampedLock();
+    private final LongLongHashMap phones;  // 手机号打包键 -> 客户ID（多个客户时为MULTIPLE）
+    private final LongLongHashMap customers;  // 客户ID -> 手机号打包键
+
+    /**
+     * @param expectedSize 预计客户数量，用于确定哈希表初始容量
+     */
+    public PhoneIndex(int expectedSize) {
+        phones = new LongLongHashMap(expectedSize);
+        customers = new LongLongHashMap(expectedSize);
+    }
+
+    /**
+     * 按号码查询
+     * @param key 手机号打包键
+     * @return 客户ID，没有匹配时为0，多个客户时为MULTIPLE
+     */
+    public long get(long key) {
+        long stamp = lock.tryOptimisticRead();
+        long id = phones.get(key);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                id = phones.get(key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * 更新客户的号码
+     * @param id 客户ID
+     * @param key 手机号打包键，为null时只移除
+     */
+    public void put(int id, Long key) {
+        long stamp = lock.writeLock();
+        try {
+            long previous = customers.remove(id);
+            // 只由本客户占用的号码直接移除；多客户标记保留，查询时回退数据库得到准确结果
+            if (previous != 0 && phones.get(previous) == id) {
+                phones.remove(previous);
+            }
+            if (key != null) {
+                long existing = phones.get(key);
+                phones.put(key, existing == 0 || existing == id ? id : MULTIPLE);
+                customers.put(id, key);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 客户是否有已索引的号码
+     * @param id 客户ID
+     * @return 是否已索引
+     */
+    public boolean contains(int id) {
+        long stamp = lock.readLock();
+        try {
+            return customers.get(id) != 0;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return 号码数
+     */
+    public int phoneCount() {
+        long stamp = lock.readLock();
+        try {
+            return phones.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return 有号码的客户数
+     */
+    public int customerCount() {
+        long stamp = lock.readLock();
+        try {
+            return customers.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return 号码哈希表的槽数
+     */
+    public int capacity() {
+        long stamp = lock.readLock();
+        try {
+            return phones.capacity();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+}
@@ -2,28 +2,33 @@ package com.crm.config;
 
 import com.crm.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationListener;
-import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.stereotype.Component;
 
+import java.lang.management.ManagementFactory;
+
 /**
  * 应用启动监听器，用于在应用启动时执行初始化操作
+ * 监听ApplicationReadyEvent（每次启动只触发一次），ContextRefreshedEvent在存在子上下文或刷新时会触发多次
  */
 @Component
-public class ApplicationStartupListener implements ApplicationListener<ContextRefreshedEvent> {
+public class ApplicationStartupListener implements ApplicationListener<ApplicationReadyEvent> {
 
     @Autowired
     private UserService userService;
 
     /**
-     * 应用启动时执行
-     * @param event 上下文刷新事件
+     * 应用启动完成时执行
+     * @param event 应用就绪事件
      */
     @Override
-    public void onApplicationEvent(ContextRefreshedEvent event) {
+    public void onApplicationEvent(ApplicationReadyEvent event) {
         // 创建默认管理员账号（如果不存在）
         userService.createDefaultAdmin();
-        System.out.println("应用启动完成，默认管理员账号已初始化");
+        // 启动耗时：Spring上下文启动用时，以及从JVM启动算起的总用时（含类加载）
+        System.out.println("应用启动完成，用时" + event.getTimeTaken().toMillis() + "ms（JVM启动至今"
+                + ManagementFactory.getRuntimeMXBean().getUptime() + "ms）");
     }
 
 }
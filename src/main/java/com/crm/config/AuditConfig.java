@@ -0,0 +1,49 @@
+package com.crm.config;
+
+import com.crm.audit.AuditEntityListener;
+import com.crm.service.AuditLogService;
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collections;
+
+/**
+ * 审计配置，crm.audit.enabled=true时生效
+ * 通过Hibernate集成器把审计实体监听器注册为插入、更新、删除后事件监听器
+ */
+@Configuration
+@ConditionalOnProperty(name = "crm.audit.enabled", havingValue = "true", matchIfMissing = true)
+public class AuditConfig {
+
+    /**
+     * 注册审计实体监听器
+     */
+    @Bean
+    public HibernatePropertiesCustomizer auditListenerCustomizer(AuditLogService auditLogService) {
+        AuditEntityListener listener = auditLogService.getEntityListener();
+        Integrator integrator = new Integrator() {
+            @Override
+            public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+                EventListenerRegistry registry = serviceRegistry.getService(EventListenerRegistry.class);
+                registry.appendListeners(EventType.POST_INSERT, listener);
+                registry.appendListeners(EventType.POST_UPDATE, listener);
+                registry.appendListeners(EventType.POST_DELETE, listener);
+            }
+
+            @Override
+            public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+            }
+        };
+        return properties -> properties.put("hibernate.integrator_provider",
+                (IntegratorProvider) () -> Collections.singletonList(integrator));
+    }
+}
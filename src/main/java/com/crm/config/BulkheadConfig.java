@@ -0,0 +1,70 @@
+package com.crm.config;
+
+import com.crm.datasource.DataSourceRoutingContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * 舱壁线程池配置
+ * 导出、统计、测试数据生成分别使用独立的有界线程池，每个线程最多占用一个数据库连接，
+ * 线程数即该组可用的连接份额，三组之和应小于spring.datasource.hikari.maximum-pool-size，
+ * 保证交互式的客户/跟进记录增删改查始终有连接可用
+ */
+@Configuration
+public class BulkheadConfig {
+
+    /**
+     * 客户导出线程池
+     */
+    @Bean
+    public ThreadPoolTaskExecutor exportExecutor(@Value("${crm.bulkhead.export.pool-size:2}") int poolSize,
+                                                 @Value("${crm.bulkhead.export.queue-capacity:4}") int queueCapacity) {
+        return createExecutor("crm-export-", poolSize, queueCapacity);
+    }
+
+    /**
+     * 统计查询线程池
+     */
+    @Bean
+    public ThreadPoolTaskExecutor statisticsExecutor(@Value("${crm.bulkhead.statistics.pool-size:4}") int poolSize,
+                                                     @Value("${crm.bulkhead.statistics.queue-capacity:50}") int queueCapacity) {
+        return createExecutor("crm-statistics-", poolSize, queueCapacity);
+    }
+
+    /**
+     * 维护任务线程池（测试数据生成）
+     */
+    @Bean
+    public ThreadPoolTaskExecutor maintenanceExecutor(@Value("${crm.bulkhead.maintenance.pool-size:1}") int poolSize,
+                                                      @Value("${crm.bulkhead.maintenance.queue-capacity:0}") int queueCapacity) {
+        return createExecutor("crm-maintenance-", poolSize, queueCapacity);
+    }
+
+    /**
+     * 创建固定大小、有界队列的线程池，队列满时抛出TaskRejectedException
+     * 任务执行时沿用提交线程的数据源路由上下文（读己之写）
+     */
+    private ThreadPoolTaskExecutor createExecutor(String threadNamePrefix, int poolSize, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setTaskDecorator(task -> {
+            Integer userId = DataSourceRoutingContext.getCurrentUser();
+            return () -> {
+                DataSourceRoutingContext.setCurrentUser(userId);
+                try {
+                    task.run();
+                } finally {
+                    DataSourceRoutingContext.clear();
+                }
+            };
+        });
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
@@ -0,0 +1,95 @@
+package com.crm.config;
+
+import com.crm.datasource.DataSourceRoutingInterceptor;
+import com.crm.datasource.ReadWriteRoutingDataSource;
+import com.crm.datasource.ReplicaLagMonitor;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+
+/**
+ * 读写分离数据源配置，crm.datasource.replica.enabled=true时生效
+ * 主库沿用spring.datasource.*配置，从库使用crm.datasource.replica.*配置（HikariCP属性）
+ * 本地测试时可将从库指向另一个独立的本地数据库
+ */
+@Configuration
+@ConditionalOnProperty(name = "crm.datasource.replica.enabled", havingValue = "true")
+public class DataSourceRoutingConfig {
+
+    /**
+     * 主库连接池
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("crm-primary");
+        return dataSource;
+    }
+
+    /**
+     * 从库连接池
+     */
+    @Bean
+    @ConfigurationProperties("crm.datasource.replica")
+    public HikariDataSource replicaDataSource() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("crm-replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    /**
+     * 读写路由数据源
+     */
+    @Bean
+    public ReadWriteRoutingDataSource routingDataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                                        @Qualifier("replicaDataSource") DataSource replica,
+                                                        @Value("${crm.datasource.replica.sticky-ms:5000}") long stickyMillis) {
+        return new ReadWriteRoutingDataSource(primary, replica, stickyMillis);
+    }
+
+    /**
+     * 应用实际使用的数据源：延迟到第一条语句执行时才获取物理连接，
+     * 此时事务的只读标记已生效，路由才能正确选择主库或从库
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    /**
+     * 从库复制延迟监控
+     */
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(@Qualifier("replicaDataSource") DataSource replica,
+                                               ReadWriteRoutingDataSource routingDataSource,
+                                               @Value("${crm.datasource.replica.max-lag-seconds:5}") long maxLagSeconds) {
+        return new ReplicaLagMonitor(replica, routingDataSource, maxLagSeconds);
+    }
+
+    /**
+     * 注册路由拦截器，用于读己之写判断
+     */
+    @Bean
+    public WebMvcConfigurer dataSourceRoutingConfigurer() {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(new DataSourceRoutingInterceptor()).addPathPatterns("/api/**");
+            }
+        };
+    }
+}
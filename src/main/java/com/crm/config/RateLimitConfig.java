@@ -0,0 +1,42 @@
+package com.crm.config;
+
+import com.crm.ratelimit.RateLimitInterceptor;
+import com.crm.ratelimit.RateLimitProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * 限流配置，crm.rate-limit.enabled=true时生效
+ * 按用户和接口组限流，防止单个客户端（例如带有效会话的脚本）反复导出或遍历分页拖垮数据库
+ */
+@Configuration
+@EnableConfigurationProperties(RateLimitProperties.class)
+@ConditionalOnProperty(name = "crm.rate-limit.enabled", havingValue = "true", matchIfMissing = true)
+public class RateLimitConfig {
+
+    /**
+     * 限流拦截器
+     */
+    @Bean
+    public RateLimitInterceptor rateLimitInterceptor(RateLimitProperties properties, ObjectMapper objectMapper) {
+        return new RateLimitInterceptor(properties, objectMapper);
+    }
+
+    /**
+     * 注册限流拦截器
+     */
+    @Bean
+    public WebMvcConfigurer rateLimitConfigurer(RateLimitInterceptor rateLimitInterceptor) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(rateLimitInterceptor).addPathPatterns("/api/**");
+            }
+        };
+    }
+}
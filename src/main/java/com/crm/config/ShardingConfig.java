@@ -0,0 +1,144 @@
+package com.crm.config;
+
+import com.crm.migration.SchemaMigrator;
+import com.crm.shard.ShardRoutingDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 水平分片数据源配置，crm.shard.enabled=true时生效
+ * 0号分片（全局分片）沿用spring.datasource.*配置，存放全部不分片的表；
+ * 1号及以后的分片使用crm.shard.datasources.{分片编号}.*配置（HikariCP属性），分片编号必须从1开始连续。
+ * 客户按ID、跟进记录随所属客户分布到各分片，分片数量确定后不能修改（ID对分片数取模即所在分片）。
+ * 在已有的单库上启用分片时，启动会检查各分片上的客户和跟进记录是否都在ID对应的分片，
+ * 有不在对应分片的行时拒绝启动（需先按id % 分片数把客户及其跟进记录导出到对应分片，旧的跟进记录ID须与所属客户同余）。
+ * 与读写分离（crm.datasource.replica.enabled）不能同时启用
+ */
+@Configuration
+@ConditionalOnProperty(name = "crm.shard.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    public ShardingConfig(@Value("${crm.datasource.replica.enabled:false}") boolean replicaEnabled) {
+        if (replicaEnabled) {
+            throw new IllegalStateException("分片（crm.shard.enabled）与读写分离（crm.datasource.replica.enabled）不能同时启用");
+        }
+    }
+
+    /**
+     * 全局分片连接池
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource globalShardDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("crm-shard-0");
+        return dataSource;
+    }
+
+    /**
+     * 分片路由数据源；启动时对1号及以后的分片执行版本化迁移（全局分片的表结构仍按原方式维护），
+     * 并检查已有数据是否都在ID对应的分片
+     */
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(HikariDataSource globalShardDataSource, Environment environment,
+                                                         @Value("${crm.shard.migrate-on-startup:true}") boolean migrate,
+                                                         @Value("${crm.shard.check-placement-on-startup:true}") boolean checkPlacement) throws Exception {
+        Map<Integer, HikariConfig> configs = Binder.get(environment)
+                .bind("crm.shard.datasources", Bindable.mapOf(Integer.class, HikariConfig.class))
+                .orElse(Collections.emptyMap());
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(globalShardDataSource);
+        for (int shard = 1; shard <= configs.size(); shard++) {
+            HikariConfig config = configs.get(shard);
+            if (config == null) {
+                throw new IllegalStateException("分片编号必须从1开始连续，缺少crm.shard.datasources." + shard);
+            }
+            config.setPoolName("crm-shard-" + shard);
+            HikariDataSource dataSource = new HikariDataSource(config);
+            if (migrate) {
+                System.out.println("分片" + shard + "数据库迁移");
+                new SchemaMigrator(dataSource).afterPropertiesSet();
+            }
+            shards.add(dataSource);
+        }
+        if (checkPlacement) {
+            for (int shard = 0; shard < shards.size(); shard++) {
+                checkPlacement(new JdbcTemplate(shards.get(shard)), shard, shards.size());
+            }
+        }
+        System.out.println("水平分片已启用：共" + shards.size() + "个分片");
+        return new ShardRoutingDataSource(shards);
+    }
+
+    /**
+     * 应用实际使用的数据源：延迟到第一条语句执行时才获取物理连接，
+     * 此时服务方法已经把事务绑定到目标分片
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+    /**
+     * 跨分片并行查询线程池：列表和统计查询在每个分片上各占一个线程和一个连接
+     */
+    @Bean
+    public ThreadPoolTaskExecutor shardScatterExecutor(@Value("${crm.shard.scatter-pool-size:16}") int poolSize,
+                                                       @Value("${crm.shard.scatter-queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("crm-shard-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * 检查一个分片上的客户、跟进记录和归档记录是否都属于该分片（ID和客户ID对分片数取模等于分片编号），
+     * 有不属于的行时拒绝启动：这些行按ID路由时会被查到其他分片上，表现为数据丢失
+     */
+    private static void checkPlacement(JdbcTemplate jdbc, int shard, int shardCount) {
+        String id = "MOD(id, " + shardCount + ") <> " + shard;
+        String customerId = "MOD(customer_id, " + shardCount + ") <> " + shard;
+        String[][] checks = {
+                {"customers", id},
+                {"followups", id + " OR " + customerId},
+                {"followups_archive", id + " OR " + customerId}
+        };
+        for (String[] check : checks) {
+            Long tables = jdbc.queryForObject("SELECT COUNT(*) FROM information_schema.tables"
+                    + " WHERE table_schema = DATABASE() AND table_name = ?", Long.class, check[0]);
+            if (tables == null || tables == 0) {
+                continue;
+            }
+            List<Integer> misplaced = jdbc.queryForList("SELECT id FROM " + check[0] + " WHERE " + check[1] + " LIMIT 1", Integer.class);
+            if (!misplaced.isEmpty()) {
+                throw new IllegalStateException("分片" + shard + "的" + check[0] + "中有不属于该分片的行（如ID " + misplaced.get(0)
+                        + "），请先按id % " + shardCount + "把已有客户及其跟进记录搬到对应分片再启用分片，"
+                        + "或设置crm.shard.check-placement-on-startup=false跳过检查");
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.crm.config;
+
+import com.crm.migration.SchemaMigrator;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ReflectionUtils;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+
+/**
+ * 启动配置
+ * 1. 开启延迟初始化（spring.main.lazy-initialization=true）时，带有定时任务、事件监听或初始化方法的Bean
+ *    仍在启动时创建，否则定时清理/归档不会运行、编码表和事件订阅不会加载
+ * 2. crm.migration.enabled=true时在JPA初始化之前执行版本化数据库迁移
+ */
+@Configuration
+public class StartupConfig {
+
+    /**
+     * 延迟初始化排除规则：有后台职责的Bean始终在启动时创建
+     */
+    @Bean
+    public static LazyInitializationExcludeFilter backgroundBeansExcludeFilter() {
+        return (beanName, beanDefinition, beanType) -> beanType != null && hasBackgroundWork(beanType);
+    }
+
+    private static boolean hasBackgroundWork(Class<?> beanType) {
+        boolean[] found = {false};
+        ReflectionUtils.doWithMethods(beanType, method -> found[0] = true, StartupConfig::isBackgroundMethod);
+        return found[0];
+    }
+
+    private static boolean isBackgroundMethod(Method method) {
+        // @TransactionalEventListener以@EventListener为元注解，也在此匹配
+        return AnnotatedElementUtils.hasAnnotation(method, Scheduled.class)
+                || AnnotatedElementUtils.hasAnnotation(method, EventListener.class)
+                || method.isAnnotationPresent(PostConstruct.class);
+    }
+
+    /**
+     * 版本化数据库迁移
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "crm.migration.enabled", havingValue = "true")
+    static class SchemaMigrationConfiguration {
+
+        @Bean
+        public SchemaMigrator schemaMigrator(DataSource dataSource) {
+            return new SchemaMigrator(dataSource);
+        }
+    }
+
+    /**
+     * 让EntityManagerFactory依赖迁移Bean，保证Hibernate启动时表结构已是最新
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "crm.migration.enabled", havingValue = "true")
+    static class SchemaMigrationJpaDependencyConfiguration extends EntityManagerFactoryDependsOnPostProcessor {
+
+        SchemaMigrationJpaDependencyConfiguration() {
+            super("schemaMigrator");
+        }
+    }
+
+}
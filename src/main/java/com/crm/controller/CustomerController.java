@@ -1,23 +1,47 @@
 package com.crm.controller;
 
 import com.crm.model.Customer;
+import com.crm.model.CustomerFilter;
+import com.crm.model.FunnelStatistic;
+import com.crm.profiling.ExportJobEvent;
+import com.crm.profiling.JfrSupport;
+import com.crm.service.AnalyticsSnapshotService;
+import com.crm.service.CallerIdService;
+import com.crm.service.CustomerDuplicateService;
 import com.crm.service.CustomerService;
 import com.crm.service.FollowupService;
+import com.crm.service.FunnelAnalyticsService;
+import com.crm.service.QueryCoalescingService;
+import com.crm.service.StatisticsPushService;
+import com.crm.util.BulkheadUtils;
+import com.crm.util.ContactUtils;
+import com.crm.util.FieldSelectionUtils;
 import com.crm.util.ResponseUtils;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.data.domain.Page;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.servlet.http.HttpSession;
 import java.io.ByteArrayOutputStream;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -28,19 +52,63 @@ import java.util.Map;
 @RequestMapping("/api")
 public class CustomerController {
 
+    // 允许部分更新的字段
+    private static final List<String> PATCHABLE_FIELDS = Arrays.asList("name", "phone", "email", "company", "position", "source", "notes");
+
     @Autowired
     private CustomerService customerService;
     
     @Autowired
     private FollowupService followupService;
 
+    @Autowired
+    private StatisticsPushService statisticsPushService;
+
+    @Autowired
+    private FunnelAnalyticsService funnelAnalyticsService;
+
+    @Autowired
+    private AnalyticsSnapshotService analyticsSnapshotService;
+
+    @Autowired
+    private CustomerDuplicateService customerDuplicateService;
+
+    @Autowired
+    private QueryCoalescingService queryCoalescingService;
+
+    @Autowired
+    private CallerIdService callerIdService;
+
+    @Autowired
+    @Qualifier("exportExecutor")
+    private AsyncTaskExecutor exportExecutor;
+
+    @Autowired
+    @Qualifier("statisticsExecutor")
+    private AsyncTaskExecutor statisticsExecutor;
+
+    @Value("${crm.bulkhead.export.timeout-ms:120000}")
+    private long exportTimeoutMs;  // 导出超时时间（毫秒）
+
+    @Value("${crm.bulkhead.statistics.timeout-ms:30000}")
+    private long statisticsTimeoutMs;  // 统计查询超时时间（毫秒）
+
+    @Value("${crm.customer-cache.max-batch-ids:500}")
+    private int maxBatchIds;  // 批量获取客户时一次最多的ID数量
+
     /**
-     * 获取客户列表，支持分页和筛选
+     * 获取客户列表，支持分页和组合筛选
      * @param page 页码（默认1）
      * @param limit 每页数量（默认10）
-     * @param name 客户姓名（模糊查询）
-     * @param phone 客户手机号（模糊查询）
+     * @param name 客户姓名
+     * @param phone 客户手机号
+     * @param company 公司名称
+     * @param match 姓名、手机号、公司的匹配方式：contains（默认，模糊）、prefix（前缀）、exact（精确）
      * @param source 客户来源
+     * @param createdBy 创建人ID
+     * @param createdFrom 创建日期起（yyyy-MM-dd，包含）
+     * @param createdTo 创建日期止（yyyy-MM-dd，包含）
+     * @param fields 逗号分隔的返回字段（如id,name,phone），只查询和返回这些字段，不提供时返回完整客户对象
      * @param session HTTP会话
      * @return 客户列表响应
      */
@@ -50,7 +118,13 @@ public class CustomerController {
             @RequestParam(value = "limit", defaultValue = "10") int limit,
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "phone", required = false) String phone,
+            @RequestParam(value = "company", required = false) String company,
+            @RequestParam(value = "match", required = false) String match,
             @RequestParam(value = "source", required = false) String source,
+            @RequestParam(value = "created_by", required = false) Integer createdBy,
+            @RequestParam(value = "created_from", required = false) String createdFrom,
+            @RequestParam(value = "created_to", required = false) String createdTo,
+            @RequestParam(value = "fields", required = false) String fields,
             HttpSession session) {
 
         // 检查登录状态
@@ -58,8 +132,23 @@ public class CustomerController {
             return ResponseUtils.unauthorized("请先登录");
         }
 
-        // 获取客户列表
-        Page<Customer> customerPage = customerService.getCustomers(page, limit, name, phone, source);
+        // 构建筛选条件和返回字段
+        CustomerFilter filter;
+        List<String> selectedFields;
+        try {
+            filter = buildFilter(name, phone, company, match, source, createdBy, createdFrom, createdTo);
+            selectedFields = FieldSelectionUtils.parse(fields, CustomerService.SELECTABLE_FIELDS);
+        } catch (IllegalArgumentException e) {
+            return ResponseUtils.badRequest(e.getMessage());
+        }
+
+        // 获取客户列表（相同参数的并发请求共享一次查询）
+        String key = QueryCoalescingService.key("customers", page, limit, filter.getName(), filter.getPhone(),
+                filter.getCompany(), filter.getMatchMode(), filter.getSource(), filter.getCreatedBy(),
+                filter.getCreatedFrom(), filter.getCreatedTo(), selectedFields);
+        Page<?> customerPage = queryCoalescingService.executePage(key, () -> selectedFields == null
+                ? customerService.getCustomers(page, limit, filter)
+                : customerService.getCustomerFields(page, limit, filter, selectedFields));
 
         // 构建响应数据
         Map<String, Object> responseData = new HashMap<>();
@@ -103,6 +192,14 @@ public class CustomerController {
             return ResponseUtils.badRequest("姓名和手机号不能为空");
         }
 
+        // 检查疑似重复客户（手机号或邮箱相同），确认后可传force=true强制添加
+        if (!Boolean.TRUE.equals(customerData.get("force"))) {
+            List<Customer> duplicates = customerService.findDuplicateCandidates(customer);
+            if (!duplicates.isEmpty()) {
+                return ResponseUtils.conflict("存在手机号或邮箱相同的客户", duplicates);
+            }
+        }
+
         // 添加客户
         Customer savedCustomer = customerService.addCustomer(customer);
 
@@ -113,19 +210,108 @@ public class CustomerController {
         return ResponseUtils.success("添加成功", responseData);
     }
 
+    /**
+     * 批量获取客户（先查本地缓存，未命中的一次IN查询加载）
+     * @param ids 逗号分隔的客户ID
+     * @param session HTTP会话
+     * @return 按请求顺序排列的客户列表和不存在的客户ID
+     */
+    @GetMapping("/customers/batch")
+    public ResponseEntity<Map<String, Object>> getCustomersBatch(@RequestParam(value = "ids", required = false) String ids, HttpSession session) {
+        // 检查登录状态
+        if (session.getAttribute("userId") == null) {
+            return ResponseUtils.unauthorized("请先登录");
+        }
+
+        List<Integer> customerIds = new ArrayList<>();
+        if (ids != null) {
+            for (String id : ids.split(",")) {
+                if (id.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    customerIds.add(Integer.valueOf(id.trim()));
+                } catch (NumberFormatException e) {
+                    return ResponseUtils.badRequest("客户ID格式错误：" + id.trim());
+                }
+            }
+        }
+        if (customerIds.isEmpty()) {
+            return ResponseUtils.badRequest("客户ID不能为空");
+        }
+        if (customerIds.size() > maxBatchIds) {
+            return ResponseUtils.badRequest("一次最多查询" + maxBatchIds + "个客户");
+        }
+
+        return ResponseUtils.success(customerService.getCustomersByIds(customerIds));
+    }
+
+    /**
+     * 来电查号：按规范化手机号在内存索引中查出客户ID，再从客户本地缓存读取客户
+     * @param phone 来电号码（可带国家码、空格、横线等，规范化后精确匹配）
+     * @param session HTTP会话
+     * @return 匹配的客户列表（同一号码可能对应多个客户）
+     */
+    @GetMapping("/customers/lookup")
+    public ResponseEntity<Map<String, Object>> lookupByPhone(@RequestParam(value = "phone", required = false) String phone, HttpSession session) {
+        // 检查登录状态
+        if (session.getAttribute("userId") == null) {
+            return ResponseUtils.unauthorized("请先登录");
+        }
+
+        List<Integer> customerIds;
+        try {
+            customerIds = callerIdService.lookup(phone);
+        } catch (IllegalArgumentException e) {
+            return ResponseUtils.badRequest(e.getMessage());
+        }
+        if (customerIds.isEmpty()) {
+            return ResponseUtils.notFound("未找到该号码的客户");
+        }
+
+        // 内存索引可能落后于客户的当前号码：只返回号码确实匹配的客户，有不匹配的客户时改查数据库索引
+        long key = ContactUtils.packPhone(phone);
+        List<Customer> customers = matchPhoneKey(customerIds, key);
+        if (customers.size() < customerIds.size()) {
+            customers = matchPhoneKey(callerIdService.lookupInDatabase(key), key);
+        }
+        if (customers.isEmpty()) {
+            return ResponseUtils.notFound("未找到该号码的客户");
+        }
+        return ResponseUtils.success(customers);
+    }
+
     /**
      * 获取客户详情
      * @param id 客户ID
+     * @param fields 逗号分隔的返回字段，只查询和返回这些字段，不提供时返回完整客户对象
      * @param session HTTP会话
      * @return 客户详情响应
      */
     @GetMapping("/customers/{id}")
-    public ResponseEntity<Map<String, Object>> getCustomer(@PathVariable Integer id, HttpSession session) {
+    public ResponseEntity<Map<String, Object>> getCustomer(@PathVariable Integer id,
+                                                           @RequestParam(value = "fields", required = false) String fields,
+                                                           HttpSession session) {
         // 检查登录状态
         if (session.getAttribute("userId") == null) {
             return ResponseUtils.unauthorized("请先登录");
         }
 
+        // 只查询指定字段
+        List<String> selectedFields;
+        try {
+            selectedFields = FieldSelectionUtils.parse(fields, CustomerService.SELECTABLE_FIELDS);
+        } catch (IllegalArgumentException e) {
+            return ResponseUtils.badRequest(e.getMessage());
+        }
+        if (selectedFields != null) {
+            Map<String, Object> customerFields = customerService.getCustomerFieldsById(id, selectedFields);
+            if (customerFields == null) {
+                return ResponseUtils.notFound("客户不存在");
+            }
+            return ResponseUtils.success(customerFields);
+        }
+
         // 获取客户信息
         Customer customer = customerService.getCustomerById(id);
         if (customer == null) {
@@ -183,12 +369,75 @@ public class CustomerController {
             return ResponseUtils.badRequest("姓名和手机号不能为空");
         }
 
+        // 客户端提供版本号时按该版本校验，避免覆盖他人的修改
+        if (customerData.get("version") instanceof Number) {
+            customer.setVersion(((Number) customerData.get("version")).intValue());
+        }
+
         // 更新客户
-        customerService.updateCustomer(customer);
+        try {
+            customerService.updateCustomer(customer);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return ResponseUtils.conflict("客户已被他人修改，请刷新后重试", null);
+        }
 
         return ResponseUtils.success("更新成功");
     }
 
+    /**
+     * 部分更新客户信息：只更新请求中提供的字段，必须提供读取时的version做乐观锁校验
+     * @param id 客户ID
+     * @param customerData 要更新的字段及version
+     * @param session HTTP会话
+     * @return 更新响应（包含新的版本号），版本冲突时返回409
+     */
+    @PatchMapping("/customers/{id}")
+    public ResponseEntity<Map<String, Object>> patchCustomer(@PathVariable Integer id, @RequestBody Map<String, Object> customerData, HttpSession session) {
+        // 检查登录状态
+        if (session.getAttribute("userId") == null) {
+            return ResponseUtils.unauthorized("请先登录");
+        }
+
+        if (!(customerData.get("version") instanceof Number)) {
+            return ResponseUtils.badRequest("版本号不能为空");
+        }
+        Integer version = ((Number) customerData.get("version")).intValue();
+
+        // 收集要更新的字段
+        Map<String, Object> changes = new LinkedHashMap<>();
+        for (String field : PATCHABLE_FIELDS) {
+            if (customerData.containsKey(field)) {
+                Object value = customerData.get(field);
+                if (value != null && !(value instanceof String)) {
+                    return ResponseUtils.badRequest("字段" + field + "格式错误");
+                }
+                changes.put(field, value);
+            }
+        }
+        if (changes.isEmpty()) {
+            return ResponseUtils.badRequest("没有要更新的字段");
+        }
+
+        // 验证必填字段
+        for (String field : Arrays.asList("name", "phone")) {
+            if (changes.containsKey(field) && (changes.get(field) == null || ((String) changes.get(field)).isEmpty())) {
+                return ResponseUtils.badRequest("姓名和手机号不能为空");
+            }
+        }
+
+        Customer customer;
+        try {
+            customer = customerService.patchCustomer(id, version, changes);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return ResponseUtils.conflict("客户已被他人修改，请刷新后重试", null);
+        }
+        if (customer == null) {
+            return ResponseUtils.notFound("客户不存在");
+        }
+
+        return ResponseUtils.success("更新成功", customer);
+    }
+
     /**
      * 删除客户
      * @param id 客户ID
@@ -212,28 +461,169 @@ public class CustomerController {
     }
 
     /**
-     * 导出客户列表为Excel文件
+     * 合并重复客户，被合并客户的跟进记录转移到目标客户后删除被合并客户
+     * @param id 保留的目标客户ID
+     * @param mergeData 合并数据（ids为被合并的客户ID列表）
+     * @param session HTTP会话
+     * @return 合并响应
+     */
+    @PostMapping("/customers/{id}/merge")
+    public ResponseEntity<Map<String, Object>> mergeCustomers(@PathVariable Integer id, @RequestBody Map<String, Object> mergeData, HttpSession session) {
+        // 检查登录状态
+        if (session.getAttribute("userId") == null) {
+            return ResponseUtils.unauthorized("请先登录");
+        }
+
+        List<Integer> sourceIds = new ArrayList<>();
+        if (mergeData.get("ids") instanceof List) {
+            for (Object sourceId : (List<?>) mergeData.get("ids")) {
+                if (sourceId instanceof Number) {
+                    sourceIds.add(((Number) sourceId).intValue());
+                }
+            }
+        }
+        if (sourceIds.isEmpty()) {
+            return ResponseUtils.badRequest("被合并的客户ID不能为空");
+        }
+
+        int moved;
+        try {
+            moved = customerService.mergeCustomers(id, sourceIds);
+        } catch (IllegalArgumentException e) {
+            return ResponseUtils.badRequest(e.getMessage());
+        }
+        if (moved < 0) {
+            return ResponseUtils.notFound("客户不存在");
+        }
+
+        Map<String, Object> responseData = new HashMap<>();
+        responseData.put("movedFollowups", moved);
+        return ResponseUtils.success("合并成功", responseData);
+    }
+
+    /**
+     * 启动重复客户全表扫描
+     * @param session HTTP会话
+     * @return 提交结果
+     */
+    @PostMapping("/customers/duplicates/scan")
+    public ResponseEntity<Map<String, Object>> scanDuplicates(HttpSession session) {
+        // 检查登录状态
+        if (session.getAttribute("userId") == null) {
+            return ResponseUtils.unauthorized("请先登录");
+        }
+
+        if (!customerDuplicateService.startScan()) {
+            return ResponseUtils.serviceUnavailable("扫描正在进行或维护任务繁忙，请稍后重试");
+        }
+        return ResponseUtils.success("重复客户扫描已开始");
+    }
+
+    /**
+     * 获取最近一次重复客户扫描报告
+     * @param session HTTP会话
+     * @return 扫描报告（重复簇列表）
+     */
+    @GetMapping("/customers/duplicates")
+    public ResponseEntity<Map<String, Object>> getDuplicateReport(HttpSession session) {
+        // 检查登录状态
+        if (session.getAttribute("userId") == null) {
+            return ResponseUtils.unauthorized("请先登录");
+        }
+
+        return ResponseUtils.success(customerDuplicateService.getLastReport());
+    }
+
+    /**
+     * 导出客户列表为Excel文件，筛选参数与客户列表相同
      * @param name 客户姓名（可选）
      * @param phone 客户手机号（可选）
+     * @param company 公司名称（可选）
+     * @param match 匹配方式（可选）
      * @param source 客户来源（可选）
+     * @param createdBy 创建人ID（可选）
+     * @param createdFrom 创建日期起（可选）
+     * @param createdTo 创建日期止（可选）
      * @param session HTTP会话
      * @return Excel文件响应
      */
     @GetMapping("/customers/export")
-    public ResponseEntity<byte[]> exportCustomersToExcel(
+    public DeferredResult<ResponseEntity<byte[]>> exportCustomersToExcel(
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "phone", required = false) String phone,
+            @RequestParam(value = "company", required = false) String company,
+            @RequestParam(value = "match", required = false) String match,
             @RequestParam(value = "source", required = false) String source,
+            @RequestParam(value = "created_by", required = false) Integer createdBy,
+            @RequestParam(value = "created_from", required = false) String createdFrom,
+            @RequestParam(value = "created_to", required = false) String createdTo,
             HttpSession session) {
         // 检查登录状态
         if (session.getAttribute("userId") == null) {
-            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+            return BulkheadUtils.completed(new ResponseEntity<>(HttpStatus.UNAUTHORIZED));
         }
 
+        CustomerFilter filter;
+        try {
+            filter = buildFilter(name, phone, company, match, source, createdBy, createdFrom, createdTo);
+        } catch (IllegalArgumentException e) {
+            return BulkheadUtils.completed(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+
+        // 在导出线程池中生成Excel，线程池已满时返回503
+        return BulkheadUtils.submit(exportExecutor, exportTimeoutMs,
+                () -> buildCustomerExcel(filter),
+                new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE));
+    }
+
+    /**
+     * 构建客户筛选条件
+     * @throws IllegalArgumentException 匹配方式或日期格式错误
+     */
+    private CustomerFilter buildFilter(String name, String phone, String company, String match, String source,
+                                       Integer createdBy, String createdFrom, String createdTo) {
+        CustomerFilter filter = new CustomerFilter();
+        filter.setName(name);
+        filter.setPhone(phone);
+        filter.setCompany(company);
+        filter.setSource(source);
+        filter.setCreatedBy(createdBy);
+        if (match != null && !match.isEmpty()) {
+            try {
+                filter.setMatchMode(CustomerFilter.MatchMode.valueOf(match.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("匹配方式只能是contains、prefix或exact");
+            }
+        }
+        try {
+            if (createdFrom != null && !createdFrom.isEmpty()) {
+                filter.setCreatedFrom(LocalDate.parse(createdFrom).atStartOfDay());
+            }
+            if (createdTo != null && !createdTo.isEmpty()) {
+                filter.setCreatedTo(LocalDate.parse(createdTo).plusDays(1).atStartOfDay());
+            }
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("日期格式错误，应为yyyy-MM-dd");
+        }
+        return filter;
+    }
+
+    /**
+     * 生成客户列表Excel文件
+     * @param filter 筛选条件
+     * @return Excel文件响应
+     */
+    private ResponseEntity<byte[]> buildCustomerExcel(CustomerFilter filter) {
+        ExportJobEvent event = JfrSupport.isAvailable() ? new ExportJobEvent("customers", filter.toString()) : null;
+        if (event != null) {
+            event.begin();
+        }
+        int exported = 0;
         try {
             // 获取客户列表
-            Page<Customer> customerPage = customerService.getCustomers(1, Integer.MAX_VALUE, name, phone, source);
+            Page<Customer> customerPage = customerService.getCustomers(1, Integer.MAX_VALUE, filter);
             List<Customer> customers = customerPage.getContent();
+            exported = customers.size();
 
             // 创建Excel工作簿
             Workbook workbook = new XSSFWorkbook();
@@ -286,9 +676,15 @@ public class CustomerController {
             headers.setContentDispositionFormData("attachment", "customers_" + System.currentTimeMillis() + ".xlsx");
             headers.setContentLength(bytes.length);
 
+            if (event != null) {
+                event.finish(exported, bytes.length);
+            }
             return new ResponseEntity<>(bytes, headers, HttpStatus.OK);
         } catch (Exception e) {
             e.printStackTrace();
+            if (event != null) {
+                event.finish(exported, -1);
+            }
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
@@ -299,19 +695,22 @@ public class CustomerController {
      * @return 客户来源分布统计数据
      */
     @GetMapping("/statistics/customer/source")
-    public ResponseEntity<Map<String, Object>> getCustomerSourceStatistics(HttpSession session) {
+    public DeferredResult<ResponseEntity<Map<String, Object>>> getCustomerSourceStatistics(HttpSession session) {
         // 检查登录状态
         if (session.getAttribute("userId") == null) {
-            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+            return BulkheadUtils.completed(new ResponseEntity<>(HttpStatus.UNAUTHORIZED));
         }
 
-        try {
-            Map<String, Long> statistics = customerService.getCustomerSourceStatistics();
-            return ResponseUtils.success(statistics);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseUtils.serverError("获取客户来源分布统计失败");
-        }
+        return BulkheadUtils.submit(statisticsExecutor, statisticsTimeoutMs, () -> {
+            try {
+                Map<String, Long> statistics = queryCoalescingService.execute(QueryCoalescingService.key("customerSource"),
+                        customerService::getCustomerSourceStatistics);
+                return ResponseUtils.success(statistics);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return ResponseUtils.serverError("获取客户来源分布统计失败");
+            }
+        }, ResponseUtils.serviceUnavailable("系统繁忙，请稍后重试"));
     }
 
     /**
@@ -321,21 +720,24 @@ public class CustomerController {
      * @return 客户数量统计数据
      */
     @GetMapping("/statistics/customer/count")
-    public ResponseEntity<Map<String, Object>> getCustomerCountStatistics(
+    public DeferredResult<ResponseEntity<Map<String, Object>>> getCustomerCountStatistics(
             @RequestParam(value = "days", defaultValue = "7") int days,
             HttpSession session) {
         // 检查登录状态
         if (session.getAttribute("userId") == null) {
-            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+            return BulkheadUtils.completed(new ResponseEntity<>(HttpStatus.UNAUTHORIZED));
         }
 
-        try {
-            Map<String, Long> statistics = customerService.getCustomerCountStatistics(days);
-            return ResponseUtils.success(statistics);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseUtils.serverError("获取客户数量统计失败");
-        }
+        return BulkheadUtils.submit(statisticsExecutor, statisticsTimeoutMs, () -> {
+            try {
+                Map<String, Long> statistics = queryCoalescingService.execute(QueryCoalescingService.key("customerCount", days),
+                        () -> customerService.getCustomerCountStatistics(days));
+                return ResponseUtils.success(statistics);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return ResponseUtils.serverError("获取客户数量统计失败");
+            }
+        }, ResponseUtils.serviceUnavailable("系统繁忙，请稍后重试"));
     }
 
     /**
@@ -344,19 +746,22 @@ public class CustomerController {
      * @return 跟进方式分布统计数据
      */
     @GetMapping("/statistics/followup/method")
-    public ResponseEntity<Map<String, Object>> getFollowupMethodStatistics(HttpSession session) {
+    public DeferredResult<ResponseEntity<Map<String, Object>>> getFollowupMethodStatistics(HttpSession session) {
         // 检查登录状态
         if (session.getAttribute("userId") == null) {
-            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+            return BulkheadUtils.completed(new ResponseEntity<>(HttpStatus.UNAUTHORIZED));
         }
 
-        try {
-            Map<String, Long> statistics = followupService.getFollowupMethodStatistics();
-            return ResponseUtils.success(statistics);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseUtils.serverError("获取跟进方式分布统计失败");
-        }
+        return BulkheadUtils.submit(statisticsExecutor, statisticsTimeoutMs, () -> {
+            try {
+                Map<String, Long> statistics = queryCoalescingService.execute(QueryCoalescingService.key("followupMethod"),
+                        followupService::getFollowupMethodStatistics);
+                return ResponseUtils.success(statistics);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return ResponseUtils.serverError("获取跟进方式分布统计失败");
+            }
+        }, ResponseUtils.serviceUnavailable("系统繁忙，请稍后重试"));
     }
 
     /**
@@ -366,21 +771,166 @@ public class CustomerController {
      * @return 跟进记录数量统计数据
      */
     @GetMapping("/statistics/followup/count")
-    public ResponseEntity<Map<String, Object>> getFollowupCountStatistics(
+    public DeferredResult<ResponseEntity<Map<String, Object>>> getFollowupCountStatistics(
             @RequestParam(value = "days", defaultValue = "7") int days,
             HttpSession session) {
         // 检查登录状态
         if (session.getAttribute("userId") == null) {
-            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+            return BulkheadUtils.completed(new ResponseEntity<>(HttpStatus.UNAUTHORIZED));
+        }
+
+        return BulkheadUtils.submit(statisticsExecutor, statisticsTimeoutMs, () -> {
+            try {
+                Map<String, Long> statistics = queryCoalescingService.execute(QueryCoalescingService.key("followupCount", days),
+                        () -> followupService.getFollowupCountStatistics(days));
+                return ResponseUtils.success(statistics);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return ResponseUtils.serverError("获取跟进记录数量统计失败");
+            }
+        }, ResponseUtils.serviceUnavailable("系统繁忙，请稍后重试"));
+    }
+
+    /**
+     * 获取转化漏斗统计（客户创建到首次跟进的小时数、首次设置跟进提醒前的跟进次数的分布）
+     * 读取定时计算好的结果表，不扫描客户和跟进记录
+     * @param dimension 统计维度：source（按来源）、user（按创建人）
+     * @param session HTTP会话
+     * @return 漏斗统计数据
+     */
+    @GetMapping("/statistics/funnel")
+    public DeferredResult<ResponseEntity<Map<String, Object>>> getFunnelStatistics(
+            @RequestParam(value = "dimension", defaultValue = FunnelAnalyticsService.DIMENSION_SOURCE) String dimension,
+            HttpSession session) {
+        // 检查登录状态
+        if (session.getAttribute("userId") == null) {
+            return BulkheadUtils.completed(new ResponseEntity<>(HttpStatus.UNAUTHORIZED));
+        }
+        if (!FunnelAnalyticsService.DIMENSION_SOURCE.equals(dimension) && !FunnelAnalyticsService.DIMENSION_USER.equals(dimension)) {
+            return BulkheadUtils.completed(ResponseUtils.badRequest("dimension只能是source或user"));
+        }
+
+        return BulkheadUtils.submit(statisticsExecutor, statisticsTimeoutMs, () -> {
+            try {
+                List<FunnelStatistic> statistics = funnelAnalyticsService.getStatistics(dimension);
+                return ResponseUtils.success(statistics);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return ResponseUtils.serverError("获取转化漏斗统计失败");
+            }
+        }, ResponseUtils.serviceUnavailable("系统繁忙，请稍后重试"));
+    }
+
+    /**
+     * 自定义分组统计，在内存列存储快照上并行扫描，不访问数据库
+     * 例如近90天各用户各跟进方式的跟进次数：table=followups&group_by=user,method&days=90
+     * @param table 统计对象：customers（按创建时间）、followups（按跟进时间）
+     * @param groupBy 分组维度，逗号分隔：day、user，以及customers的source或followups的method
+     * @param days 最近天数（含今天），与from/to二选一
+     * @param from 开始日期（yyyy-MM-dd）
+     * @param to 结束日期（yyyy-MM-dd）
+     * @param source 客户来源（仅customers）
+     * @param method 跟进方式（仅followups）
+     * @param userId 用户ID（customers为创建人，followups为跟进人）
+     * @param session HTTP会话
+     * @return 分组统计结果
+     */
+    @GetMapping("/statistics/query")
+    public ResponseEntity<Map<String, Object>> queryStatistics(
+            @RequestParam(value = "table", defaultValue = AnalyticsSnapshotService.TABLE_FOLLOWUPS) String table,
+            @RequestParam(value = "group_by", required = false) String groupBy,
+            @RequestParam(value = "days", required = false) Integer days,
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to,
+            @RequestParam(value = "source", required = false) String source,
+            @RequestParam(value = "method", required = false) String method,
+            @RequestParam(value = "user_id", required = false) String userId,
+            HttpSession session) {
+        // 检查登录状态
+        if (session.getAttribute("userId") == null) {
+            return ResponseUtils.unauthorized("请先登录");
+        }
+        if (!analyticsSnapshotService.isReady()) {
+            return ResponseUtils.serviceUnavailable("分析快照正在加载，请稍后重试");
         }
 
         try {
-            Map<String, Long> statistics = followupService.getFollowupCountStatistics(days);
-            return ResponseUtils.success(statistics);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseUtils.serverError("获取跟进记录数量统计失败");
+            List<String> dimensions = new ArrayList<>();
+            if (groupBy != null && !groupBy.trim().isEmpty()) {
+                for (String dimension : groupBy.split(",")) {
+                    dimensions.add(dimension.trim());
+                }
+            }
+            LocalDate fromDate;
+            LocalDate toDate;
+            try {
+                fromDate = from == null || from.isEmpty() ? null : LocalDate.parse(from);
+                toDate = to == null || to.isEmpty() ? null : LocalDate.parse(to);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("日期格式错误，应为yyyy-MM-dd");
+            }
+            if (days != null) {
+                if (days < 1) {
+                    throw new IllegalArgumentException("天数必须大于0");
+                }
+                toDate = LocalDate.now();
+                fromDate = toDate.minusDays(days - 1);
+            }
+            Map<String, String> filters = new LinkedHashMap<>();
+            if (source != null && !source.isEmpty()) {
+                filters.put("source", source);
+            }
+            if (method != null && !method.isEmpty()) {
+                filters.put("method", method);
+            }
+            if (userId != null && !userId.isEmpty()) {
+                filters.put("user", userId);
+            }
+            Map<String, Object> result = analyticsSnapshotService.query(table, dimensions, fromDate, toDate, filters);
+            if (result == null) {
+                return ResponseUtils.serviceUnavailable("分析快照正在加载，请稍后重试");
+            }
+            return ResponseUtils.success(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseUtils.badRequest(e.getMessage());
+        }
+    }
+
+    /**
+     * 订阅仪表盘实时统计推送（SSE）
+     * 连接建立后立即推送一次，之后在客户或跟进记录变更时合并推送，最多每秒一次
+     * @param session HTTP会话
+     * @return SSE事件流
+     */
+    @GetMapping(value = "/statistics/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamStatistics(HttpSession session) {
+        // 检查登录状态
+        if (session.getAttribute("userId") == null) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        return new ResponseEntity<>(statisticsPushService.subscribe(), HttpStatus.OK);
+    }
+
+    /**
+     * 加载客户并只保留当前手机号与打包键一致的客户
+     * @param customerIds 客户ID列表
+     * @param key 手机号打包键
+     * @return 号码匹配的客户列表
+     */
+    @SuppressWarnings("unchecked")
+    private List<Customer> matchPhoneKey(List<Integer> customerIds, long key) {
+        List<Customer> matched = new ArrayList<>();
+        if (customerIds.isEmpty()) {
+            return matched;
+        }
+        for (Customer customer : (List<Customer>) customerService.getCustomersByIds(customerIds).get("customers")) {
+            Long phoneKey = ContactUtils.packPhone(customer.getPhone());
+            if (phoneKey != null && phoneKey == key) {
+                matched.add(customer);
+            }
         }
+        return matched;
     }
 
 }
@@ -1,7 +1,10 @@
 package com.crm.controller;
 
 import com.crm.model.Followup;
+import com.crm.service.FollowupIngestService;
 import com.crm.service.FollowupService;
+import com.crm.service.QueryCoalescingService;
+import com.crm.util.FieldSelectionUtils;
 import com.crm.util.ResponseUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -10,10 +13,14 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpSession;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 跟进记录控制器，处理跟进记录相关的HTTP请求
@@ -25,11 +32,18 @@ public class FollowupController {
     @Autowired
     private FollowupService followupService;
 
+    @Autowired
+    private FollowupIngestService followupIngestService;
+
+    @Autowired
+    private QueryCoalescingService queryCoalescingService;
+
     /**
      * 获取跟进记录列表，支持分页和按客户筛选
      * @param page 页码（默认1）
      * @param limit 每页数量（默认10）
      * @param customerId 客户ID
+     * @param fields 逗号分隔的返回字段（如id,followTime,followMethod），只查询和返回这些字段，不提供时返回完整跟进记录对象
      * @param session HTTP会话
      * @return 跟进记录列表响应
      */
@@ -38,6 +52,7 @@ public class FollowupController {
             @RequestParam(value = "page", defaultValue = "1") int page,
             @RequestParam(value = "limit", defaultValue = "10") int limit,
             @RequestParam(value = "customer_id", required = false) String customerIdStr,
+            @RequestParam(value = "fields", required = false) String fields,
             HttpSession session) {
 
         // 检查登录状态
@@ -45,6 +60,14 @@ public class FollowupController {
             return ResponseUtils.unauthorized("请先登录");
         }
 
+        // 解析返回字段
+        List<String> selectedFields;
+        try {
+            selectedFields = FieldSelectionUtils.parse(fields, FollowupService.SELECTABLE_FIELDS);
+        } catch (IllegalArgumentException e) {
+            return ResponseUtils.badRequest(e.getMessage());
+        }
+
         // 处理customer_id参数
         Integer customerId = null;
         if (customerIdStr != null && !customerIdStr.isEmpty()) {
@@ -56,8 +79,12 @@ public class FollowupController {
             }
         }
 
-        // 获取跟进记录列表
-        Page<Followup> followupPage = followupService.getFollowups(page, limit, customerId);
+        // 获取跟进记录列表（相同参数的并发请求共享一次查询）
+        Integer filterCustomerId = customerId;
+        Page<?> followupPage = queryCoalescingService.executePage(QueryCoalescingService.key("followups", page, limit, customerId, selectedFields),
+                () -> selectedFields == null
+                        ? followupService.getFollowups(page, limit, filterCustomerId)
+                        : followupService.getFollowupFields(page, limit, filterCustomerId, selectedFields));
 
         // 构建响应数据
         Map<String, Object> responseData = new HashMap<>();
@@ -74,11 +101,14 @@ public class FollowupController {
     /**
      * 添加跟进记录
      * @param followupData 跟进记录数据
+     * @param idempotencyKey 幂等键（写后入库模式下使用，可选；重试时带上前一次响应中的request_key，不会重复写入）
      * @param session HTTP会话
      * @return 添加响应
      */
     @PostMapping("/followups")
-    public ResponseEntity<Map<String, Object>> addFollowup(@RequestBody Map<String, Object> followupData, HttpSession session) {
+    public ResponseEntity<Map<String, Object>> addFollowup(@RequestBody Map<String, Object> followupData,
+                                                           @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                                           HttpSession session) {
         // 检查登录状态
         Integer userId = (Integer) session.getAttribute("userId");
         if (userId == null) {
@@ -124,6 +154,33 @@ public class FollowupController {
             return ResponseUtils.badRequest("客户ID、跟进时间、跟进方式和内容不能为空");
         }
 
+        // 写后入库模式：写入本地预写日志即返回，由后台批量入库（ID在入库后才分配）
+        if (followupIngestService.isEnabled()) {
+            if (idempotencyKey != null && idempotencyKey.length() > 64) {
+                return ResponseUtils.badRequest("幂等键长度不能超过64");
+            }
+            // 幂等键按用户隔离；未提供时生成一个，客户端可以用它重试
+            String requestKey = idempotencyKey == null || idempotencyKey.isEmpty() ? UUID.randomUUID().toString() : idempotencyKey;
+            try {
+                Long seq = followupIngestService.submit(followup, userId + ":" + requestKey);
+                Map<String, Object> responseData = new HashMap<>();
+                responseData.put("id", null);
+                responseData.put("queued", true);
+                responseData.put("seq", seq);
+                responseData.put("request_key", requestKey);
+                if (seq == null) {
+                    // 确认超时：记录仍在队列中，结果未确定，客户端应带同一幂等键重试而不是重新提交
+                    return ResponseUtils.accepted("已接收，落盘确认超时，请使用相同的Idempotency-Key重试查询结果", responseData);
+                }
+                return ResponseUtils.success("已接收", responseData);
+            } catch (RejectedExecutionException e) {
+                return ResponseUtils.serviceUnavailable("系统繁忙，请稍后重试");
+            } catch (IOException e) {
+                e.printStackTrace();
+                return ResponseUtils.serverError("添加跟进记录失败");
+            }
+        }
+
         // 添加跟进记录
         Followup savedFollowup = followupService.addFollowup(followup);
 
@@ -0,0 +1,499 @@
+package com.crm.controller;
+
+import com.crm.event.EntityChangeEvent;
+import com.crm.model.User;
+import com.crm.monitor.SlowQueryRecorder;
+import com.crm.ratelimit.RateLimitInterceptor;
+import com.crm.service.AnalyticsSnapshotService;
+import com.crm.service.AuditLogService;
+import com.crm.service.CallerIdService;
+import com.crm.service.ChangeEventBusService;
+import com.crm.service.CustomerCacheService;
+import com.crm.service.FollowupArchiveService;
+import com.crm.service.FollowupIngestService;
+import com.crm.service.FunnelAnalyticsService;
+import com.crm.service.LookupService;
+import com.crm.service.ProfilingService;
+import com.crm.service.PurgeService;
+import com.crm.service.QueryCoalescingService;
+import com.crm.service.ShardService;
+import com.crm.service.UserService;
+import com.crm.util.ResponseUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 运行监控控制器（仅管理员）
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class MonitorController {
+
+    @Autowired
+    private SlowQueryRecorder slowQueryRecorder;
+
+    @Autowired
+    private PurgeService purgeService;
+
+    @Autowired
+    private FollowupArchiveService followupArchiveService;
+
+    @Autowired
+    private FunnelAnalyticsService funnelAnalyticsService;
+
+    @Autowired
+    private AnalyticsSnapshotService analyticsSnapshotService;
+
+    @Autowired
+    private LookupService lookupService;
+
+    @Autowired
+    private FollowupIngestService followupIngestService;
+
+    @Autowired
+    private ChangeEventBusService changeEventBusService;
+
+    @Autowired
+    private QueryCoalescingService queryCoalescingService;
+
+    @Autowired
+    private CustomerCacheService customerCacheService;
+
+    @Autowired
+    private CallerIdService callerIdService;
+
+    @Autowired
+    private AuditLogService auditLogService;
+
+    @Autowired
+    private ProfilingService profilingService;
+
+    @Autowired
+    private ShardService shardService;
+
+    @Autowired(required = false)
+    private RateLimitInterceptor rateLimitInterceptor;  // 限流关闭时不存在
+
+    @Autowired
+    private UserService userService;
+
+    /**
+     * 获取慢查询报告
+     * @param session HTTP会话
+     * @return 最慢的SQL形态及执行计划分析、最近的慢执行记录
+     */
+    @GetMapping("/slow-queries")
+    public ResponseEntity<Map<String, Object>> getSlowQueries(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        return ResponseUtils.success(slowQueryRecorder.getReport());
+    }
+
+    /**
+     * 清空慢查询统计
+     * @param session HTTP会话
+     * @return 操作响应
+     */
+    @DeleteMapping("/slow-queries")
+    public ResponseEntity<Map<String, Object>> resetSlowQueries(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        slowQueryRecorder.reset();
+        return ResponseUtils.success("慢查询统计已清空");
+    }
+
+    /**
+     * 获取最近一次软删除数据清理结果
+     * @param session HTTP会话
+     * @return 清理结果
+     */
+    @GetMapping("/purge")
+    public ResponseEntity<Map<String, Object>> getPurgeStatus(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        return ResponseUtils.success(purgeService.getLastRun());
+    }
+
+    /**
+     * 立即执行一次软删除数据清理
+     * @param session HTTP会话
+     * @return 清理结果
+     */
+    @PostMapping("/purge")
+    public ResponseEntity<Map<String, Object>> purge(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        Map<String, Object> result = purgeService.purge();
+        if (result == null) {
+            return ResponseUtils.serviceUnavailable("清理任务正在运行，请稍后重试");
+        }
+        return ResponseUtils.success(result);
+    }
+
+    /**
+     * 获取跟进记录归档状态
+     * @param session HTTP会话
+     * @return 归档状态
+     */
+    @GetMapping("/followup-archive")
+    public ResponseEntity<Map<String, Object>> getArchiveStatus(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        return ResponseUtils.success(followupArchiveService.getStatus());
+    }
+
+    /**
+     * 立即执行一次跟进记录归档
+     * @param session HTTP会话
+     * @return 归档结果
+     */
+    @PostMapping("/followup-archive")
+    public ResponseEntity<Map<String, Object>> archiveFollowups(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        Map<String, Object> result = followupArchiveService.archive();
+        if (result == null) {
+            return ResponseUtils.serviceUnavailable("归档任务正在运行，请稍后重试");
+        }
+        return ResponseUtils.success(result);
+    }
+
+    /**
+     * 立即重新计算转化漏斗统计
+     * @param session HTTP会话
+     * @return 计算结果摘要
+     */
+    @PostMapping("/funnel")
+    public ResponseEntity<Map<String, Object>> computeFunnel(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        Map<String, Object> result = funnelAnalyticsService.compute();
+        if (result == null) {
+            return ResponseUtils.serviceUnavailable("漏斗统计正在计算，请稍后重试");
+        }
+        return ResponseUtils.success(result);
+    }
+
+    /**
+     * 获取内存分析快照状态
+     * @param session HTTP会话
+     * @return 快照状态
+     */
+    @GetMapping("/analytics-snapshot")
+    public ResponseEntity<Map<String, Object>> getSnapshotStatus(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        return ResponseUtils.success(analyticsSnapshotService.getStatus());
+    }
+
+    /**
+     * 在后台重建内存分析快照，重建期间旧快照继续提供查询
+     * @param session HTTP会话
+     * @return 提交结果
+     */
+    @PostMapping("/analytics-snapshot")
+    public ResponseEntity<Map<String, Object>> rebuildSnapshot(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        analyticsSnapshotService.buildInBackground();
+        return ResponseUtils.success("分析快照已开始重建");
+    }
+
+    /**
+     * 获取编码表内容（客户来源、跟进方式）
+     * @param session HTTP会话
+     * @return 编码表内容
+     */
+    @GetMapping("/lookups")
+    public ResponseEntity<Map<String, Object>> getLookups(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        return ResponseUtils.success(lookupService.getLookups());
+    }
+
+    /**
+     * 在后台把旧版本的客户来源、跟进方式字符串列迁移为编码列（分批回填后在线删除旧列），应在业务低峰期执行。
+     * 编码回填在应用启动后自动执行，这里只需在回填完成后删除旧列
+     * @param session HTTP会话
+     * @return 提交结果
+     */
+    @PostMapping("/lookups/migrate")
+    public ResponseEntity<Map<String, Object>> migrateLookups(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        if (!lookupService.migrateLegacyColumnsInBackground()) {
+            return ResponseUtils.serviceUnavailable("编码列迁移正在执行，请稍后重试");
+        }
+        return ResponseUtils.success("编码列迁移已开始，进度见应用日志");
+    }
+
+    /**
+     * 获取跟进记录写后入库状态（缓冲区、预写日志序号和检查点）
+     * @param session HTTP会话
+     * @return 写后入库状态
+     */
+    @GetMapping("/ingest")
+    public ResponseEntity<Map<String, Object>> getIngestStatus(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        return ResponseUtils.success(followupIngestService.getStatus());
+    }
+
+    /**
+     * 获取变更事件总线状态（各订阅者的消费进度、积压和延迟）
+     * @param session HTTP会话
+     * @return 事件总线状态
+     */
+    @GetMapping("/event-bus")
+    public ResponseEntity<Map<String, Object>> getEventBusStatus(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        return ResponseUtils.success(changeEventBusService.getStatus());
+    }
+
+    /**
+     * 从变更日志重放事件到所有订阅者
+     * @param fromId 起始变更日志ID（不含），用于未单独给出游标的分片
+     * @param fromIds 逗号分隔的各分片起始ID（不含），按分片编号排列，可直接使用上次重放结果中的toIds
+     * @param session HTTP会话
+     * @return 重放结果
+     */
+    @PostMapping("/event-bus/replay")
+    public ResponseEntity<Map<String, Object>> replayEvents(@RequestParam(value = "from_id", defaultValue = "0") long fromId,
+                                                           @RequestParam(value = "from_ids", required = false) String fromIds,
+                                                           HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        List<Long> shardFromIds = new ArrayList<>();
+        if (fromIds != null) {
+            for (String id : fromIds.split(",")) {
+                if (id.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    shardFromIds.add(Long.valueOf(id.trim()));
+                } catch (NumberFormatException e) {
+                    return ResponseUtils.badRequest("起始ID格式错误：" + id.trim());
+                }
+            }
+        }
+        if (shardFromIds.size() > shardService.getShardCount()) {
+            return ResponseUtils.badRequest("起始ID数量超过分片数：" + shardService.getShardCount());
+        }
+        Map<String, Object> result = changeEventBusService.replay(fromId, shardFromIds);
+        if (result == null) {
+            return ResponseUtils.serviceUnavailable("重放正在运行，请稍后重试");
+        }
+        return ResponseUtils.success(result);
+    }
+
+    /**
+     * 获取查询合并统计（实际执行次数和合并次数）
+     * @param session HTTP会话
+     * @return 查询合并统计
+     */
+    @GetMapping("/coalescing")
+    public ResponseEntity<Map<String, Object>> getCoalescingStatus(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        return ResponseUtils.success(queryCoalescingService.getStatus());
+    }
+
+    /**
+     * 获取客户本地缓存统计（条目数、命中和未命中次数）
+     * @param session HTTP会话
+     * @return 缓存统计
+     */
+    @GetMapping("/customer-cache")
+    public ResponseEntity<Map<String, Object>> getCustomerCacheStatus(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        return ResponseUtils.success(customerCacheService.getStatus());
+    }
+
+    /**
+     * 获取来电查号索引状态（号码数、哈希表容量、查询和回退数据库次数）
+     * @param session HTTP会话
+     * @return 索引状态
+     */
+    @GetMapping("/caller-id")
+    public ResponseEntity<Map<String, Object>> getCallerIdStatus(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        return ResponseUtils.success(callerIdService.getStatus());
+    }
+
+    /**
+     * 按实体查询审计记录（谁在何时修改了哪些字段，从新到旧）
+     * @param entityType 实体类型：customer或followup
+     * @param entityId 实体ID
+     * @param limit 最多返回的记录数（默认50，最大1000）
+     * @param session HTTP会话
+     * @return 审计记录
+     */
+    @GetMapping("/audit")
+    public ResponseEntity<Map<String, Object>> getAuditRecords(@RequestParam("entity_type") String entityType,
+                                                               @RequestParam("entity_id") int entityId,
+                                                               @RequestParam(value = "limit", defaultValue = "50") int limit,
+                                                               HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        EntityChangeEvent.EntityType type;
+        if ("customer".equalsIgnoreCase(entityType)) {
+            type = EntityChangeEvent.EntityType.CUSTOMER;
+        } else if ("followup".equalsIgnoreCase(entityType)) {
+            type = EntityChangeEvent.EntityType.FOLLOWUP;
+        } else {
+            return ResponseUtils.badRequest("entity_type只能是customer或followup");
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("records", auditLogService.find(type, entityId, Math.max(1, Math.min(limit, 1000))));
+        return ResponseUtils.success(result);
+    }
+
+    /**
+     * 获取审计日志状态（段文件数量、记录数、索引大小）
+     * @param session HTTP会话
+     * @return 审计日志状态
+     */
+    @GetMapping("/audit/status")
+    public ResponseEntity<Map<String, Object>> getAuditStatus(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        return ResponseUtils.success(auditLogService.getStatus());
+    }
+
+    /**
+     * 获取JFR持续记录状态
+     * @param session HTTP会话
+     * @return 记录状态和保留设置
+     */
+    @GetMapping("/jfr")
+    public ResponseEntity<Map<String, Object>> getJfrStatus(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        return ResponseUtils.success(profilingService.getStatus());
+    }
+
+    /**
+     * 导出最近N分钟的JFR记录到服务器本地文件，用JDK Mission Control分析
+     * @param minutes 导出最近多少分钟
+     * @param session HTTP会话
+     * @return 导出文件路径和大小
+     */
+    @PostMapping("/jfr/dump")
+    public ResponseEntity<Map<String, Object>> dumpJfr(@RequestParam(defaultValue = "10") int minutes, HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        try {
+            Map<String, Object> result = profilingService.dump(minutes);
+            if (result == null) {
+                return ResponseUtils.serviceUnavailable("JFR数据正在导出，请稍后重试");
+            }
+            if (result.isEmpty()) {
+                return ResponseUtils.badRequest("未开启JFR持续记录");
+            }
+            return ResponseUtils.success(result);
+        } catch (IOException e) {
+            System.err.println("JFR数据导出失败：" + e.getMessage());
+            return ResponseUtils.serverError("JFR数据导出失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取水平分片状态
+     * @param session HTTP会话
+     * @return 分片数量、ID号段使用情况和各分片连接池
+     */
+    @GetMapping("/shards")
+    public ResponseEntity<Map<String, Object>> getShardStatus(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        return ResponseUtils.success(shardService.getStatus());
+    }
+
+    /**
+     * 获取各接口组的限流指标（放行、拒绝次数和拒绝最多的客户端）
+     * @param session HTTP会话
+     * @return 限流指标
+     */
+    @GetMapping("/rate-limits")
+    public ResponseEntity<Map<String, Object>> getRateLimits(HttpSession session) {
+        ResponseEntity<Map<String, Object>> denied = checkAdmin(session);
+        if (denied != null) {
+            return denied;
+        }
+        return ResponseUtils.success(rateLimitInterceptor != null ? rateLimitInterceptor.getMetrics() : new HashMap<>());
+    }
+
+    /**
+     * 检查当前用户是否为管理员
+     * @param session HTTP会话
+     * @return 无权限时的错误响应，有权限时返回null
+     */
+    private ResponseEntity<Map<String, Object>> checkAdmin(HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseUtils.unauthorized("请先登录");
+        }
+
+        User currentUser = userService.getUserById(userId);
+        if (currentUser == null || !"admin".equals(currentUser.getRole())) {
+            return ResponseUtils.forbidden("权限不足");
+        }
+        return null;
+    }
+
+}
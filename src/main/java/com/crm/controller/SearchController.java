@@ -0,0 +1,105 @@
+package com.crm.controller;
+
+import com.crm.model.User;
+import com.crm.service.SearchService;
+import com.crm.service.UserService;
+import com.crm.util.ResponseUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpSession;
+import java.util.Map;
+
+/**
+ * 全文搜索控制器，搜索客户备注和跟进内容
+ */
+@RestController
+@RequestMapping("/api")
+public class SearchController {
+
+    @Autowired
+    private SearchService searchService;
+
+    @Autowired
+    private UserService userService;
+
+    /**
+     * 全文搜索
+     * @param q 查询语句
+     * @param page 页码（默认1）
+     * @param limit 每页数量（默认10）
+     * @param session HTTP会话
+     * @return 按相关度排序的命中列表
+     */
+    @GetMapping("/search")
+    public ResponseEntity<Map<String, Object>> search(
+            @RequestParam(value = "q") String q,
+            @RequestParam(value = "page", defaultValue = "1") int page,
+            @RequestParam(value = "limit", defaultValue = "10") int limit,
+            HttpSession session) {
+        // 检查登录状态
+        if (session.getAttribute("userId") == null) {
+            return ResponseUtils.unauthorized("请先登录");
+        }
+
+        if (q.trim().isEmpty()) {
+            return ResponseUtils.badRequest("查询内容不能为空");
+        }
+        if (page < 1 || limit < 1 || limit > 100) {
+            return ResponseUtils.badRequest("分页参数错误");
+        }
+
+        Map<String, Object> responseData = searchService.search(q, page, limit);
+        responseData.put("code", 200);
+        responseData.put("message", "操作成功");
+        responseData.put("page", page);
+        responseData.put("limit", limit);
+        return new ResponseEntity<>(responseData, HttpStatus.OK);
+    }
+
+    /**
+     * 获取索引状态（仅管理员）
+     * @param session HTTP会话
+     * @return 索引状态
+     */
+    @GetMapping("/search/status")
+    public ResponseEntity<Map<String, Object>> getStatus(HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseUtils.unauthorized("请先登录");
+        }
+
+        User currentUser = userService.getUserById(userId);
+        if (!"admin".equals(currentUser.getRole())) {
+            return ResponseUtils.forbidden("权限不足");
+        }
+
+        return ResponseUtils.success(searchService.getStatus());
+    }
+
+    /**
+     * 从数据库重建索引（仅管理员）
+     * @param session HTTP会话
+     * @return 提交结果
+     */
+    @PostMapping("/search/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuild(HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseUtils.unauthorized("请先登录");
+        }
+
+        User currentUser = userService.getUserById(userId);
+        if (!"admin".equals(currentUser.getRole())) {
+            return ResponseUtils.forbidden("权限不足");
+        }
+
+        if (!searchService.startRebuild()) {
+            return ResponseUtils.serviceUnavailable("索引正在重建或维护任务繁忙，请稍后重试");
+        }
+        return ResponseUtils.success("索引重建已开始");
+    }
+
+}
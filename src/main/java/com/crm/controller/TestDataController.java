@@ -1,12 +1,17 @@
 package com.crm.controller;
 
+import com.crm.util.BulkheadUtils;
 import com.crm.util.TestDataGenerator;
 import com.crm.util.ResponseUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.servlet.http.HttpSession;
 import java.util.Map;
@@ -21,24 +26,34 @@ public class TestDataController {
     @Autowired
     private TestDataGenerator testDataGenerator;
 
+    @Autowired
+    @Qualifier("maintenanceExecutor")
+    private AsyncTaskExecutor maintenanceExecutor;
+
+    @Value("${crm.bulkhead.maintenance.timeout-ms:300000}")
+    private long maintenanceTimeoutMs;  // 维护任务超时时间（毫秒）
+
     /**
      * 生成测试数据
      * @param session HTTP会话
      * @return 生成结果响应
      */
     @GetMapping("/test/generate-data")
-    public ResponseEntity<Map<String, Object>> generateTestData(HttpSession session) {
+    public DeferredResult<ResponseEntity<Map<String, Object>>> generateTestData(HttpSession session) {
         // 检查登录状态
         if (session.getAttribute("userId") == null) {
-            return ResponseUtils.unauthorized("请先登录");
+            return BulkheadUtils.completed(ResponseUtils.unauthorized("请先登录"));
         }
 
-        try {
-            testDataGenerator.generateTestData();
-            return ResponseUtils.success("测试数据生成成功");
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseUtils.serverError("生成测试数据失败");
-        }
+        // 在维护线程池中执行，已有生成任务在运行时返回503
+        return BulkheadUtils.submit(maintenanceExecutor, maintenanceTimeoutMs, () -> {
+            try {
+                testDataGenerator.generateTestData();
+                return ResponseUtils.success("测试数据生成成功");
+            } catch (Exception e) {
+                e.printStackTrace();
+                return ResponseUtils.serverError("生成测试数据失败");
+            }
+        }, ResponseUtils.serviceUnavailable("测试数据正在生成中，请稍后重试"));
     }
 }
@@ -1,6 +1,7 @@
 package com.crm.controller;
 
 import com.crm.model.User;
+import com.crm.ratelimit.RateLimitInterceptor;
 import com.crm.service.UserService;
 import com.crm.util.ResponseUtils;
 import com.crm.util.PasswordUtils;
@@ -9,6 +10,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 import java.util.HashMap;
 import java.util.List;
@@ -24,14 +26,21 @@ public class UserController {
     @Autowired
     private UserService userService;
 
+    @Autowired(required = false)
+    private RateLimitInterceptor rateLimitInterceptor;  // 限流关闭时不存在
+
     /**
      * 用户登录
+     * 按提交的用户名和客户端IP限流（login组）：同一代理或NAT之后的其他用户不受影响，
+     * 对同一账号的反复尝试仍然受限
      * @param loginData 登录数据（包含username和password）
      * @param session HTTP会话
+     * @param request HTTP请求（取客户端IP）
      * @return 登录响应
      */
     @PostMapping("/login")
-    public ResponseEntity<Map<String, Object>> login(@RequestBody Map<String, String> loginData, HttpSession session) {
+    public ResponseEntity<Map<String, Object>> login(@RequestBody Map<String, String> loginData, HttpSession session,
+                                                     HttpServletRequest request) {
         String username = loginData.get("username");
         String password = loginData.get("password");
 
@@ -39,6 +48,13 @@ public class UserController {
             return ResponseUtils.badRequest("用户名和密码不能为空");
         }
 
+        if (rateLimitInterceptor != null) {
+            long retryAfterMs = rateLimitInterceptor.tryAcquire("login", "login:" + username + "@" + request.getRemoteAddr());
+            if (retryAfterMs > 0) {
+                return ResponseUtils.tooManyRequests("登录尝试过于频繁，请稍后重试", retryAfterMs);
+            }
+        }
+
         User user = userService.login(username, password);
         if (user != null) {
             // 登录成功，将用户信息存储到会话中
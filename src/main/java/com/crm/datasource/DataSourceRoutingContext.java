@@ -0,0 +1,39 @@
+package com.crm.datasource;
+
+/**
+ * 数据源路由上下文，保存当前请求的登录用户ID，用于读己之写（read-your-writes）判断
+ */
+public final class DataSourceRoutingContext {
+
+    private static final ThreadLocal<Integer> CURRENT_USER = new ThreadLocal<>();
+
+    private DataSourceRoutingContext() {
+    }
+
+    /**
+     * 设置当前线程的用户ID
+     * @param userId 用户ID（未登录为null）
+     */
+    public static void setCurrentUser(Integer userId) {
+        if (userId == null) {
+            CURRENT_USER.remove();
+        } else {
+            CURRENT_USER.set(userId);
+        }
+    }
+
+    /**
+     * 获取当前线程的用户ID
+     * @return 用户ID，未设置时为null
+     */
+    public static Integer getCurrentUser() {
+        return CURRENT_USER.get();
+    }
+
+    /**
+     * 清除当前线程的路由上下文
+     */
+    public static void clear() {
+        CURRENT_USER.remove();
+    }
+}
@@ -0,0 +1,32 @@
+package com.crm.datasource;
+
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+/**
+ * 数据源路由拦截器，把会话中的用户ID放入路由上下文，请求结束后清除
+ * 异步请求（DeferredResult）的首次分发不会调用afterCompletion，需在afterConcurrentHandlingStarted中清除，
+ * 避免路由上下文残留在容器线程上；异步结果的再次分发会重新经过preHandle
+ */
+public class DataSourceRoutingInterceptor implements AsyncHandlerInterceptor {
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        HttpSession session = request.getSession(false);
+        DataSourceRoutingContext.setCurrentUser(session != null ? (Integer) session.getAttribute("userId") : null);
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        DataSourceRoutingContext.clear();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        DataSourceRoutingContext.clear();
+    }
+}
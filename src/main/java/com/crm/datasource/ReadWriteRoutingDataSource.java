@@ -0,0 +1,128 @@
+package com.crm.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 读写分离路由数据源
+ * 只读事务路由到从库，其余（读写事务、无事务）路由到主库。以下情况只读事务也回退到主库：
+ * 1. 从库复制延迟超过阈值或不可用（由ReplicaLagMonitor维护）
+ * 2. 当前用户在粘滞时间窗口内刚提交过写事务（读己之写）
+ * 需配合LazyConnectionDataSourceProxy使用，保证获取连接时事务的只读标记已经生效
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String PRIMARY = "primary";
+    public static final String REPLICA = "replica";
+
+    private final long stickyMillis;  // 写后读主库的粘滞时间（毫秒）
+    private final Map<Integer, Long> stickyUntil = new ConcurrentHashMap<>();  // 用户ID -> 粘滞截止时间
+    private volatile boolean replicaAvailable = true;  // 从库当前是否可用
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, long stickyMillis) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        targets.put(REPLICA, replica);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        this.stickyMillis = stickyMillis;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            registerStickinessAfterCommit();
+            return PRIMARY;
+        }
+        if (!replicaAvailable || isSticky(DataSourceRoutingContext.getCurrentUser())) {
+            return PRIMARY;
+        }
+        return REPLICA;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Object key = determineCurrentLookupKey();
+        DataSource target = getResolvedDataSources().get(key);
+        if (REPLICA.equals(key)) {
+            try {
+                return target.getConnection();
+            } catch (SQLException e) {
+                // 从库获取连接失败，标记不可用并回退主库，等待延迟检测恢复
+                markReplicaAvailable(false);
+                return getResolvedDataSources().get(PRIMARY).getConnection();
+            }
+        }
+        return target.getConnection();
+    }
+
+    /**
+     * 设置从库是否可用
+     * @param available 是否可用
+     */
+    public void markReplicaAvailable(boolean available) {
+        if (this.replicaAvailable != available) {
+            System.out.println("从库状态变更：" + (available ? "可用，恢复读写分离" : "不可用，只读查询回退主库"));
+        }
+        this.replicaAvailable = available;
+    }
+
+    /**
+     * 从库当前是否可用
+     * @return 是否可用
+     */
+    public boolean isReplicaAvailable() {
+        return replicaAvailable;
+    }
+
+    /**
+     * 清理已过期的粘滞记录
+     */
+    public void evictExpiredStickiness() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Integer, Long>> iterator = stickyUntil.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue() < now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 判断用户是否处于写后读主库的粘滞窗口内
+     * @param userId 用户ID
+     * @return 是否粘滞
+     */
+    private boolean isSticky(Integer userId) {
+        if (userId == null) {
+            return false;
+        }
+        Long until = stickyUntil.get(userId);
+        return until != null && until >= System.currentTimeMillis();
+    }
+
+    /**
+     * 读写事务提交后，让当前用户在粘滞窗口内的只读查询继续走主库
+     */
+    private void registerStickinessAfterCommit() {
+        final Integer userId = DataSourceRoutingContext.getCurrentUser();
+        if (userId == null || stickyMillis <= 0 || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                stickyUntil.put(userId, System.currentTimeMillis() + stickyMillis);
+            }
+        });
+    }
+}
@@ -0,0 +1,56 @@
+package com.crm.datasource;
+
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * 从库复制延迟监控
+ * 定期执行SHOW SLAVE STATUS读取Seconds_Behind_Master，延迟超过阈值、复制中断或连接失败时
+ * 将从库标记为不可用，只读查询回退主库；恢复后自动切回
+ * 若从库并非复制节点（例如本地用两个独立库测试），SHOW SLAVE STATUS返回空结果，视为无延迟
+ */
+public class ReplicaLagMonitor {
+
+    private final DataSource replica;
+    private final ReadWriteRoutingDataSource routingDataSource;
+    private final long maxLagSeconds;  // 允许的最大复制延迟（秒）
+
+    public ReplicaLagMonitor(DataSource replica, ReadWriteRoutingDataSource routingDataSource, long maxLagSeconds) {
+        this.replica = replica;
+        this.routingDataSource = routingDataSource;
+        this.maxLagSeconds = maxLagSeconds;
+    }
+
+    /**
+     * 定时检测从库延迟
+     */
+    @Scheduled(fixedDelayString = "${crm.datasource.replica.lag-check-interval-ms:5000}")
+    public void checkLag() {
+        routingDataSource.evictExpiredStickiness();
+        long lag = readLagSeconds();
+        routingDataSource.markReplicaAvailable(lag >= 0 && lag <= maxLagSeconds);
+    }
+
+    /**
+     * 读取从库复制延迟
+     * @return 延迟秒数；非复制节点返回0；复制中断或连接失败返回-1
+     */
+    private long readLagSeconds() {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SHOW SLAVE STATUS")) {
+            if (!rs.next()) {
+                return 0;
+            }
+            long lag = rs.getLong("Seconds_Behind_Master");
+            return rs.wasNull() ? -1 : lag;
+        } catch (Exception e) {
+            System.out.println("从库延迟检测失败：" + e.getMessage());
+            return -1;
+        }
+    }
+}
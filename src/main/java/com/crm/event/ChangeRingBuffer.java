@@ -0,0 +1,248 @@
+package com.crm.event;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 变更事件无锁环形缓冲区
+ * 多个生产者（提交事务的请求线程）通过原子递增的序号认领槽位，CAS写入；每个订阅者在自己的线程上按序号顺序读取，
+ * 只维护自己的读取位置，互不影响。生产者从不等待消费者：消费者落后超过容量时旧事件被覆盖，
+ * 消费者发现后跳到最早仍可读的位置，并通过补偿回调从变更日志表补齐
+ */
+public class ChangeRingBuffer {
+
+    private static final int SPIN_TRIES = 100;  // 进入休眠前的让出次数
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);  // 单次休眠上限，防止错过唤醒
+
+    /**
+     * 覆盖补偿回调
+     */
+    public interface OverrunHandler {
+        /**
+         * 订阅者落后超过容量、有事件被覆盖时在订阅者线程上调用
+         * @param subscriber 订阅者
+         * @param sinceMillis 最后一个已处理事件的时间戳（尚未处理过事件时为订阅时间）
+         */
+        void onOverrun(Subscriber subscriber, long sinceMillis);
+    }
+
+    private static final class Entry {
+        final long seq;
+        final EntityChangeEvent event;
+
+        Entry(long seq, EntityChangeEvent event) {
+            this.seq = seq;
+            this.event = event;
+        }
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicLong cursor = new AtomicLong(-1);  // 最后认领的序号
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param capacity 容量，向上取整为2的幂
+     */
+    public ChangeRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * 发布一个事件（无锁，从不阻塞）
+     * @param event 变更事件
+     * @return 事件序号
+     */
+    public long publish(EntityChangeEvent event) {
+        long seq = cursor.incrementAndGet();
+        int index = (int) (seq & mask);
+        Entry entry = new Entry(seq, event);
+        while (true) {
+            Entry current = slots.get(index);
+            // 槽位已被绕过一圈的更新事件占用时放弃写入，落后的订阅者会按覆盖处理
+            if (current != null && current.seq > seq) {
+                break;
+            }
+            if (slots.compareAndSet(index, current, entry)) {
+                break;
+            }
+        }
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.waiting) {
+                LockSupport.unpark(subscriber.thread);
+            }
+        }
+        return seq;
+    }
+
+    /**
+     * 注册订阅者并启动其消费线程，从下一个发布的事件开始读取
+     * @param name 订阅者名称
+     * @param handler 事件处理函数
+     * @param overrunHandler 覆盖补偿回调
+     * @return 订阅者
+     */
+    public Subscriber subscribe(String name, Consumer<EntityChangeEvent> handler, OverrunHandler overrunHandler) {
+        Subscriber subscriber = new Subscriber(name, handler, overrunHandler, cursor.get() + 1);
+        subscribers.add(subscriber);
+        subscriber.thread.start();
+        return subscriber;
+    }
+
+    /**
+     * 停止所有订阅者线程
+     */
+    public void shutdown() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.running = false;
+            LockSupport.unpark(subscriber.thread);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 获取最后发布的事件序号
+     * @return 序号，尚未发布过事件时为-1
+     */
+    public long getPublishedSeq() {
+        return cursor.get();
+    }
+
+    /**
+     * 获取各订阅者的消费指标
+     * @return 指标列表
+     */
+    public List<Map<String, Object>> getSubscriberMetrics() {
+        List<Map<String, Object>> metrics = new ArrayList<>();
+        long published = cursor.get();
+        for (Subscriber subscriber : subscribers) {
+            metrics.add(subscriber.metrics(published));
+        }
+        return metrics;
+    }
+
+    /**
+     * 订阅者：一个独立的消费线程和它的读取位置
+     */
+    public final class Subscriber implements Runnable {
+
+        private final String name;
+        private final Consumer<EntityChangeEvent> handler;
+        private final OverrunHandler overrunHandler;
+        private final Thread thread;
+        private final long startedAt = System.currentTimeMillis();
+        private long next;  // 下一个要读取的序号，仅消费线程访问
+        private long lastEventAt;  // 最后处理的事件时间戳，仅消费线程访问
+        private volatile long consumedSeq;  // 最后处理完的序号
+        private volatile boolean waiting;  // 是否正在休眠等待新事件
+        private volatile boolean running = true;
+        private volatile long processed;  // 已处理事件数
+        private volatile long errors;  // 处理失败的事件数
+        private volatile long overruns;  // 被覆盖的次数
+        private volatile long skipped;  // 被覆盖跳过的事件数
+        private volatile long lastDelayMs;  // 最近一个事件从产生到处理完成的延迟
+        private volatile long maxDelayMs;  // 最大延迟
+
+        private Subscriber(String name, Consumer<EntityChangeEvent> handler, OverrunHandler overrunHandler, long start) {
+            this.name = name;
+            this.handler = handler;
+            this.overrunHandler = overrunHandler;
+            this.next = start;
+            this.consumedSeq = start - 1;
+            this.thread = new Thread(this, "crm-event-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (running) {
+                Entry entry = slots.get((int) (next & mask));
+                if (entry != null && entry.seq == next) {
+                    deliver(entry.event);
+                    consumedSeq = next;
+                    next++;
+                    idle = 0;
+                } else if (entry != null && entry.seq > next) {
+                    // 槽位已被绕圈覆盖：跳到最早仍可读的位置，由补偿回调从变更日志表补齐中间的事件
+                    long oldest = Math.max(next + 1, cursor.get() - capacity + 1);
+                    skipped += oldest - next;
+                    overruns++;
+                    next = oldest;
+                    System.err.println("变更事件订阅者" + name + "落后超过" + capacity + "个事件，开始从变更日志补偿");
+                    try {
+                        overrunHandler.onOverrun(this, lastEventAt > 0 ? lastEventAt : startedAt);
+                    } catch (Exception e) {
+                        System.err.println("变更事件订阅者" + name + "补偿失败：" + e.getMessage());
+                    }
+                } else if (++idle < SPIN_TRIES) {
+                    Thread.yield();
+                } else {
+                    // 先声明休眠再复查槽位，避免与生产者的唤醒错过
+                    waiting = true;
+                    Entry recheck = slots.get((int) (next & mask));
+                    if (running && (recheck == null || recheck.seq < next)) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    waiting = false;
+                }
+            }
+        }
+
+        /**
+         * 在当前线程上处理一个事件并记录指标（补偿回调中也使用）
+         * @param event 变更事件
+         */
+        public void deliver(EntityChangeEvent event) {
+            try {
+                handler.accept(event);
+            } catch (Exception e) {
+                errors++;
+                System.err.println("变更事件订阅者" + name + "处理" + event + "失败：" + e.getMessage());
+            }
+            long now = System.currentTimeMillis();
+            long delay = now - event.getTimestamp();
+            lastDelayMs = delay;
+            if (delay > maxDelayMs) {
+                maxDelayMs = delay;
+            }
+            lastEventAt = event.getTimestamp();
+            processed++;
+        }
+
+        private Map<String, Object> metrics(long published) {
+            Map<String, Object> metrics = new HashMap<>();
+            metrics.put("name", name);
+            metrics.put("consumedSeq", consumedSeq);
+            metrics.put("lag", Math.max(0, published - consumedSeq));
+            metrics.put("processed", processed);
+            metrics.put("errors", errors);
+            metrics.put("overruns", overruns);
+            metrics.put("skipped", skipped);
+            metrics.put("lastDelayMs", lastDelayMs);
+            metrics.put("maxDelayMs", maxDelayMs);
+            metrics.put("alive", thread.isAlive());
+            return metrics;
+        }
+    }
+
+}
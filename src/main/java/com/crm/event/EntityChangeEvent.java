@@ -0,0 +1,81 @@
+package com.crm.event;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 实体变更事件，在客户、跟进记录、用户写操作后发布
+ */
+public class EntityChangeEvent extends ApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 实体类型
+     */
+    public enum EntityType {
+        CUSTOMER, FOLLOWUP, USER
+    }
+
+    /**
+     * 变更类型
+     */
+    public enum Action {
+        CREATE, UPDATE, DELETE
+    }
+
+    private final EntityType entityType;  // 实体类型
+    private final Action action;  // 变更类型
+    private final Integer entityId;  // 实体ID
+    private final Object entity;  // 变更后的实体（删除时为null）
+    private volatile Long outboxId;  // 变更日志ID（change_outbox表），提交前写入
+    private volatile int outboxShard;  // 变更日志所在的分片（未启用分片时为0），变更日志ID只在分片内有序
+
+    public EntityChangeEvent(Object source, EntityType entityType, Action action, Integer entityId) {
+        this(source, entityType, action, entityId, null);
+    }
+
+    public EntityChangeEvent(Object source, EntityType entityType, Action action, Integer entityId, Object entity) {
+        super(source);
+        this.entityType = entityType;
+        this.action = action;
+        this.entityId = entityId;
+        this.entity = entity;
+    }
+
+    public EntityType getEntityType() {
+        return entityType;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public Integer getEntityId() {
+        return entityId;
+    }
+
+    public Object getEntity() {
+        return entity;
+    }
+
+    public Long getOutboxId() {
+        return outboxId;
+    }
+
+    public void setOutboxId(Long outboxId) {
+        this.outboxId = outboxId;
+    }
+
+    public int getOutboxShard() {
+        return outboxShard;
+    }
+
+    public void setOutboxShard(int outboxShard) {
+        this.outboxShard = outboxShard;
+    }
+
+    @Override
+    public String toString() {
+        return "EntityChangeEvent{" + entityType + " " + action + " id=" + entityId + "}";
+    }
+}
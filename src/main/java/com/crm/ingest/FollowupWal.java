@@ -0,0 +1,221 @@
+package com.crm.ingest;
+
+import com.crm.model.Followup;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 跟进记录预写日志文件
+ * 每条记录编码为[长度][负载][CRC32]，负载依次为序号、客户ID、跟进人ID、跟进时间、跟进方式、内容、下次提醒时间、创建时间。
+ * 追加和截断由调用方保证只在一个线程中执行
+ */
+public class FollowupWal implements Closeable {
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private final Path path;
+    private final FileChannel channel;
+
+    /**
+     * 一条预写日志记录
+     */
+    public static class Record {
+        private long seq;
+        private final Followup followup;
+
+        public Record(long seq, Followup followup) {
+            this.seq = seq;
+            this.followup = followup;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public void setSeq(long seq) {
+            this.seq = seq;
+        }
+
+        public Followup getFollowup() {
+            return followup;
+        }
+    }
+
+    /**
+     * 打开（不存在时创建）预写日志文件
+     * @param path 文件路径
+     * @throws IOException 打开失败
+     */
+    public FollowupWal(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * 追加已编码的一组记录并fsync一次（组提交）
+     * @param frames encode输出的字节
+     * @throws IOException 写入失败
+     */
+    public void append(byte[] frames) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(frames);
+        while (data.hasRemaining()) {
+            channel.write(data, channel.size());
+        }
+        channel.force(false);
+    }
+
+    /**
+     * 从头读取全部完整记录；遇到不完整或校验失败的尾部记录时停止，并把文件截断到最后一条完整记录之后
+     * @param consumer 记录处理
+     * @return 读取的记录数
+     * @throws IOException 读取失败
+     */
+    public int replay(Consumer<Record> consumer) throws IOException {
+        int count = 0;
+        long validBytes = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                Record record;
+                int length;
+                try {
+                    length = in.readInt();
+                    if (length < 0 || length > MAX_RECORD_BYTES) {
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    int crc = in.readInt();
+                    CRC32 checksum = new CRC32();
+                    checksum.update(payload);
+                    if ((int) checksum.getValue() != crc) {
+                        break;
+                    }
+                    record = decode(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                validBytes += 8 + length;
+                consumer.accept(record);
+                count++;
+            }
+        }
+        if (validBytes < channel.size()) {
+            System.err.println("预写日志尾部不完整，截断" + (channel.size() - validBytes) + "字节");
+            channel.truncate(validBytes);
+            channel.force(true);
+        }
+        return count;
+    }
+
+    /**
+     * 清空文件（全部记录已入库后调用）
+     * @throws IOException 截断失败
+     */
+    public void truncate() throws IOException {
+        channel.truncate(0);
+        channel.force(true);
+    }
+
+    /**
+     * @return 文件字节数
+     * @throws IOException 读取失败
+     */
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 编码一条记录，追加到target
+     * @param record 记录
+     * @param target 输出
+     * @throws IOException 编码失败
+     */
+    public static void encode(Record record, ByteArrayOutputStream target) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Followup followup = record.followup;
+        out.writeLong(record.seq);
+        out.writeInt(followup.getCustomerId());
+        out.writeInt(followup.getUserId());
+        out.writeLong(toEpochSecond(followup.getFollowTime()));
+        writeString(out, followup.getFollowMethod());
+        writeString(out, followup.getContent());
+        out.writeLong(toEpochSecond(followup.getNextFollowReminder()));
+        out.writeLong(toEpochSecond(followup.getCreatedAt()));
+        byte[] payload = bytes.toByteArray();
+
+        CRC32 checksum = new CRC32();
+        checksum.update(payload);
+        DataOutputStream frame = new DataOutputStream(target);
+        frame.writeInt(payload.length);
+        frame.write(payload);
+        frame.writeInt((int) checksum.getValue());
+    }
+
+    private static Record decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long seq = in.readLong();
+        Followup followup = new Followup();
+        followup.setCustomerId(in.readInt());
+        followup.setUserId(in.readInt());
+        followup.setFollowTime(fromEpochSecond(in.readLong()));
+        followup.setFollowMethod(readString(in));
+        followup.setContent(readString(in));
+        followup.setNextFollowReminder(fromEpochSecond(in.readLong()));
+        followup.setCreatedAt(fromEpochSecond(in.readLong()));
+        followup.setUpdatedAt(followup.getCreatedAt());
+        return new Record(seq, followup);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime == null ? NO_TIME : dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime fromEpochSecond(long seconds) {
+        return seconds == NO_TIME ? null : LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.crm.lookup;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+/**
+ * 客户来源转换器：实体和接口中使用名称，customers表中存储customer_sources表的编码
+ */
+@Converter
+public class CustomerSourceConverter implements AttributeConverter<String, Integer> {
+
+    @Override
+    public Integer convertToDatabaseColumn(String label) {
+        return LabelDictionary.CUSTOMER_SOURCE.encode(label);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer code) {
+        return LabelDictionary.CUSTOMER_SOURCE.decode(code);
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.crm.lookup;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+/**
+ * 跟进方式转换器：实体和接口中使用名称，followups表中存储followup_methods表的编码
+ */
+@Converter
+public class FollowupMethodConverter implements AttributeConverter<String, Integer> {
+
+    @Override
+    public Integer convertToDatabaseColumn(String label) {
+        return LabelDictionary.FOLLOW_METHOD.encode(label);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer code) {
+        return LabelDictionary.FOLLOW_METHOD.decode(code);
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.crm.lookup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 编码表缓存：客户来源、跟进方式等取值不多的字符串在业务表中只存SMALLINT编码，
+ * 编码与名称的对应关系保存在各自的编码表中，并在应用内缓存，供JPA属性转换器双向转换。
+ * 缓存未命中时（如其他实例新增的编码）通过LookupService注册的加载器补查数据库
+ */
+public class LabelDictionary {
+
+    public static final LabelDictionary CUSTOMER_SOURCE = new LabelDictionary("customer_sources");
+    public static final LabelDictionary FOLLOW_METHOD = new LabelDictionary("followup_methods");
+
+    /**
+     * 查询条件中使用了不存在的名称时的编码，不会匹配任何行
+     */
+    public static final int UNKNOWN_CODE = -1;
+
+    /**
+     * 没有名称的编码（NOT NULL编码列的默认值，如升级前尚未回填编码的旧行），编码表中不存在
+     */
+    public static final int EMPTY_CODE = 0;
+
+    private static volatile Loader loader;
+
+    private final String table;
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private final Map<Integer, String> labels = new ConcurrentHashMap<>();
+
+    /**
+     * 编码表加载器，由LookupService实现
+     */
+    public interface Loader {
+
+        /**
+         * 查询名称对应的编码，不存在时返回null
+         */
+        Integer findCode(LabelDictionary dictionary, String label);
+
+        /**
+         * 查询编码对应的名称，不存在时返回null
+         */
+        String findLabel(LabelDictionary dictionary, int code);
+
+        /**
+         * 注册名称，不存在时插入编码表
+         */
+        int register(LabelDictionary dictionary, String label);
+
+        /**
+         * 查询旧版本字符串列中的名称（升级后编码列回填完成前，编码为空的旧行使用），不存在或已回填完成时返回null
+         */
+        String findLegacyLabel(LabelDictionary dictionary, String table, int id);
+    }
+
+    private LabelDictionary(String table) {
+        this.table = table;
+    }
+
+    /**
+     * 设置编码表加载器
+     * @param dictionaryLoader 加载器
+     */
+    public static void setLoader(Loader dictionaryLoader) {
+        loader = dictionaryLoader;
+    }
+
+    /**
+     * 获取编码表名
+     * @return 表名
+     */
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * 名称转换为编码（用于写入和查询条件），不会新增编码
+     * @param label 名称
+     * @return 编码，名称不存在时返回UNKNOWN_CODE
+     */
+    public Integer encode(String label) {
+        if (label == null) {
+            return null;
+        }
+        Integer code = codes.get(label);
+        if (code == null && loader != null) {
+            code = loader.findCode(this, label);
+            if (code != null) {
+                put(code, label);
+            }
+        }
+        return code == null ? UNKNOWN_CODE : code;
+    }
+
+    /**
+     * 编码转换为名称
+     * @param code 编码
+     * @return 名称，编码不存在时返回null
+     */
+    public String decode(Integer code) {
+        if (code == null || code == EMPTY_CODE || code == UNKNOWN_CODE) {
+            return null;
+        }
+        String label = labels.get(code);
+        if (label == null && loader != null) {
+            label = loader.findLabel(this, code);
+            if (label != null) {
+                put(code, label);
+            }
+        }
+        return label;
+    }
+
+    /**
+     * 读取旧版本字符串列中的名称：升级后编码列回填完成前，编码为空的旧行用它代替编码列的名称
+     * @param table 业务表名
+     * @param id 行ID
+     * @return 名称，没有或已回填完成时返回null
+     */
+    public String legacyLabel(String table, Integer id) {
+        if (id == null || loader == null) {
+            return null;
+        }
+        return loader.findLegacyLabel(this, table, id);
+    }
+
+    /**
+     * 确保名称已有编码，没有时插入编码表（写入实体前调用）
+     * @param label 名称
+     */
+    public void register(String label) {
+        if (label == null || codes.containsKey(label)) {
+            return;
+        }
+        if (loader == null) {
+            throw new IllegalStateException("编码表" + table + "尚未加载");
+        }
+        put(loader.register(this, label), label);
+    }
+
+    /**
+     * 缓存一条编码
+     * @param code 编码
+     * @param label 名称
+     */
+    public void put(int code, String label) {
+        codes.put(label, code);
+        labels.putIfAbsent(code, label);
+    }
+
+    /**
+     * 获取缓存的编码数量
+     * @return 编码数量
+     */
+    public int size() {
+        return labels.size();
+    }
+
+}
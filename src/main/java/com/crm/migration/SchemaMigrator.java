@@ -0,0 +1,219 @@
+package com.crm.migration;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.util.StreamUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * 版本化数据库迁移
+ * 按版本号顺序执行classpath:db/migration/V{版本}__{说明}.sql中尚未执行的脚本，每个脚本执行一次，
+ * 执行记录（含校验和）写入schema_migrations表。已执行脚本的内容被修改时启动失败
+ * （发布后只更正了注释的脚本登记在SUPERSEDED_CHECKSUMS中，库中记录为旧校验和时更新为新值）。
+ * 多个实例同时启动时通过MySQL命名锁串行执行；没有新脚本时只有一次查询
+ */
+public class SchemaMigrator implements InitializingBean {
+
+    private static final String LOCATION = "classpath*:db/migration/V*__*.sql";
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+    private static final String LOCK_NAME = "crm_schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 300;
+
+    /**
+     * 发布后只修改了注释的脚本：版本 -> 修改前的校验和
+     */
+    private static final Map<Integer, Long> SUPERSEDED_CHECKSUMS = new HashMap<>();
+
+    static {
+        // V1文件头中已过时的升级说明（改为由V7迁移补齐旧库的列和索引）
+        SUPERSEDED_CHECKSUMS.put(1, 2080217124L);
+    }
+
+    private final DataSource dataSource;
+
+    /**
+     * 一个迁移脚本
+     */
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final Resource resource;
+        private final long checksum;
+
+        Migration(int version, String description, Resource resource, long checksum) {
+            this.version = version;
+            this.description = description;
+            this.resource = resource;
+            this.checksum = checksum;
+        }
+    }
+
+    public SchemaMigrator(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        long start = System.currentTimeMillis();
+        TreeMap<Integer, Migration> migrations = scan();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(true);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS schema_migrations ("
+                        + "version INT PRIMARY KEY, description VARCHAR(200) NOT NULL, checksum BIGINT NOT NULL, "
+                        + "installed_at DATETIME NOT NULL, execution_ms INT NOT NULL"
+                        + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='数据库迁移记录表'");
+            }
+
+            Map<Integer, Long> applied = loadApplied(connection);
+            acceptSuperseded(connection, migrations, applied);
+            if (verify(migrations, applied)) {
+                System.out.println("数据库迁移：已是最新版本V" + migrations.lastKey() + "，用时" + (System.currentTimeMillis() - start) + "ms");
+                return;
+            }
+
+            lock(connection);
+            try {
+                // 获得锁后重新读取，其他实例可能已经执行完毕
+                applied = loadApplied(connection);
+                verify(migrations, applied);
+                for (Migration migration : migrations.values()) {
+                    if (!applied.containsKey(migration.version)) {
+                        apply(connection, migration);
+                    }
+                }
+            } finally {
+                unlock(connection);
+            }
+        }
+    }
+
+    /**
+     * 扫描迁移脚本
+     */
+    private TreeMap<Integer, Migration> scan() throws IOException {
+        TreeMap<Integer, Migration> migrations = new TreeMap<>();
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources(LOCATION)) {
+            Matcher matcher = FILE_NAME.matcher(resource.getFilename());
+            if (!matcher.matches()) {
+                continue;
+            }
+            int version = Integer.parseInt(matcher.group(1));
+            CRC32 crc = new CRC32();
+            try (InputStream in = resource.getInputStream()) {
+                crc.update(StreamUtils.copyToByteArray(in));
+            }
+            Migration previous = migrations.put(version, new Migration(version, matcher.group(2).replace('_', ' '), resource, crc.getValue()));
+            if (previous != null) {
+                throw new IllegalStateException("数据库迁移版本号重复：V" + version);
+            }
+        }
+        if (migrations.isEmpty()) {
+            throw new IllegalStateException("未找到数据库迁移脚本：" + LOCATION);
+        }
+        return migrations;
+    }
+
+    private Map<Integer, Long> loadApplied(Connection connection) throws SQLException {
+        Map<Integer, Long> applied = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT version, checksum FROM schema_migrations")) {
+            while (rs.next()) {
+                applied.put(rs.getInt(1), rs.getLong(2));
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * 库中记录的是只修改过注释的脚本的旧校验和时，更新为当前校验和
+     */
+    private void acceptSuperseded(Connection connection, TreeMap<Integer, Migration> migrations, Map<Integer, Long> applied) throws SQLException {
+        for (Map.Entry<Integer, Long> superseded : SUPERSEDED_CHECKSUMS.entrySet()) {
+            Migration migration = migrations.get(superseded.getKey());
+            if (migration == null || !superseded.getValue().equals(applied.get(migration.version))) {
+                continue;
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "UPDATE schema_migrations SET checksum = ? WHERE version = ? AND checksum = ?")) {
+                statement.setLong(1, migration.checksum);
+                statement.setInt(2, migration.version);
+                statement.setLong(3, superseded.getValue());
+                statement.executeUpdate();
+            }
+            applied.put(migration.version, migration.checksum);
+            System.out.println("数据库迁移脚本V" + migration.version + "只更正了注释，已更新校验和");
+        }
+    }
+
+    /**
+     * 校验已执行脚本未被修改
+     * @return 是否所有脚本都已执行
+     */
+    private boolean verify(TreeMap<Integer, Migration> migrations, Map<Integer, Long> applied) {
+        boolean upToDate = true;
+        for (Migration migration : migrations.values()) {
+            Long checksum = applied.get(migration.version);
+            if (checksum == null) {
+                upToDate = false;
+            } else if (checksum != migration.checksum) {
+                throw new IllegalStateException("数据库迁移脚本V" + migration.version + "在执行后被修改，请新增版本而不是修改已执行的脚本");
+            }
+        }
+        return upToDate;
+    }
+
+    private void apply(Connection connection, Migration migration) throws SQLException {
+        long start = System.currentTimeMillis();
+        System.out.println("执行数据库迁移：V" + migration.version + " " + migration.description);
+        ScriptUtils.executeSqlScript(connection, new EncodedResource(migration.resource, StandardCharsets.UTF_8));
+        long elapsed = System.currentTimeMillis() - start;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO schema_migrations (version, description, checksum, installed_at, execution_ms) VALUES (?, ?, ?, NOW(), ?)")) {
+            statement.setInt(1, migration.version);
+            statement.setString(2, migration.description);
+            statement.setLong(3, migration.checksum);
+            statement.setLong(4, elapsed);
+            statement.executeUpdate();
+        }
+        System.out.println("数据库迁移V" + migration.version + "完成，用时" + elapsed + "ms");
+    }
+
+    private void lock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new IllegalStateException("等待数据库迁移锁超时");
+                }
+            }
+        }
+    }
+
+    private void unlock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.executeQuery().close();
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.crm.model;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 变更日志实体类，对应change_outbox表
+ * 每次写操作在同一事务中记录一行（实体类型、变更类型、实体ID），事件丢失或消费者重建后可按ID重放
+ */
+@Data
+@Entity
+@Table(name = "change_outbox", indexes = {
+        @Index(name = "idx_created_at", columnList = "created_at")
+})
+public class ChangeOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;  // 变更日志ID，插入时分配（不是提交顺序：先插入的事务可能后提交），按ID读取时需向前多读一段时间
+
+    @Column(name = "entity_type", nullable = false, length = 20)
+    private String entityType;  // 实体类型：CUSTOMER、FOLLOWUP、USER
+
+    @Column(name = "action", nullable = false, length = 10)
+    private String action;  // 变更类型：CREATE、UPDATE、DELETE
+
+    @Column(name = "entity_id", nullable = false)
+    private Integer entityId;  // 实体ID
+
+    @Column(name = "origin", length = 36)
+    private String origin;  // 写入实例的标识，其他实例读取变更日志时据此跳过自己写入的行（升级前的行为null）
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;  // 写入时间
+}
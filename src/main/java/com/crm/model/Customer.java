@@ -1,8 +1,17 @@
 package com.crm.model;
 
+import com.crm.lookup.CustomerSourceConverter;
+import com.crm.lookup.LabelDictionary;
+import com.crm.shard.ShardIdGenerator;
+import com.crm.util.ContactUtils;
 import lombok.Data;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.SQLDelete;
 import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.annotations.Where;
 
 import javax.persistence.*;
 import java.time.LocalDateTime;
@@ -12,16 +21,26 @@ import java.time.LocalDateTime;
  */
 @Data
 @Entity
+@DynamicUpdate
+@SQLDelete(sql = "UPDATE customers SET deleted = 1, deleted_at = NOW() WHERE id = ? AND version = ?")
+@Where(clause = "deleted = 0")
 @Table(name = "customers", indexes = {
     @Index(name = "idx_name_phone", columnList = "name, phone"),
-    @Index(name = "idx_source", columnList = "source"),
-    @Index(name = "idx_created_at", columnList = "created_at")
+    @Index(name = "idx_phone", columnList = "phone"),
+    @Index(name = "idx_phone_key", columnList = "phone_key"),
+    @Index(name = "idx_company", columnList = "company"),
+    @Index(name = "idx_source_id_created_at", columnList = "source_id, created_at"),
+    @Index(name = "idx_created_by_created_at", columnList = "created_by, created_at"),
+    @Index(name = "idx_created_at", columnList = "created_at"),
+    @Index(name = "idx_deleted_at", columnList = "deleted_at")
 })
 public class Customer {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private Integer id;  // 客户ID，自增主键
+    @GeneratedValue(generator = "customerId")
+    @GenericGenerator(name = "customerId", strategy = "com.crm.shard.ShardIdGenerator",
+            parameters = @Parameter(name = ShardIdGenerator.SEQUENCE, value = "customers"))
+    private Integer id;  // 客户ID，全局唯一（对分片数取模为所在分片）
 
     @Column(name = "name", length = 50, nullable = false)
     private String name;  // 客户姓名
@@ -29,6 +48,9 @@ public class Customer {
     @Column(name = "phone", length = 20, nullable = false)
     private String phone;  // 手机号
 
+    @Column(name = "phone_key")
+    private Long phoneKey;  // 规范化后打包的手机号（ContactUtils.packPhone），写入前由phone计算，用于来电查号
+
     @Column(name = "email", length = 100)
     private String email;  // 邮箱
 
@@ -38,8 +60,9 @@ public class Customer {
     @Column(name = "position", length = 50)
     private String position;  // 职位
 
-    @Column(name = "source", length = 50)
-    private String source;  // 客户来源
+    @Convert(converter = CustomerSourceConverter.class)
+    @Column(name = "source_id", columnDefinition = "smallint")
+    private String source;  // 客户来源（存储customer_sources表的编码）
 
     @Column(name = "notes", columnDefinition = "text")
     private String notes;  // 备注信息
@@ -55,6 +78,34 @@ public class Customer {
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;  // 更新时间
 
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "int not null default 0")
+    private Integer version;  // 版本号，乐观锁
+
+    @Column(name = "deleted", nullable = false, columnDefinition = "tinyint(1) not null default 0")
+    private Boolean deleted = false;  // 是否已删除（软删除，由后台任务分批物理删除）
+
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;  // 删除时间
+
+    /**
+     * 客户来源；升级前的旧数据在编码列回填完成前从旧的字符串列读取（Hibernate按字段访问，不影响脏检查）
+     * @return 客户来源名称
+     */
+    public String getSource() {
+        return source != null ? source : LabelDictionary.CUSTOMER_SOURCE.legacyLabel("customers", id);
+    }
+
+    /**
+     * 写入前确保来源名称已有编码，并由手机号计算打包键
+     */
+    @PrePersist
+    @PreUpdate
+    private void beforeWrite() {
+        LabelDictionary.CUSTOMER_SOURCE.register(source);
+        phoneKey = ContactUtils.packPhone(phone);
+    }
+
     // 外键约束：关联创建人
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "created_by", referencedColumnName = "id", insertable = false, updatable = false)
@@ -0,0 +1,31 @@
+package com.crm.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 客户筛选条件，未设置（null或空字符串）的条件不参与查询
+ */
+@Data
+public class CustomerFilter {
+
+    /**
+     * 文本匹配方式
+     * EXACT：精确匹配，可使用索引
+     * PREFIX：前缀匹配（LIKE 'xx%'），可使用索引
+     * CONTAINS：包含匹配（LIKE '%xx%'），无法使用索引，为兼容原有接口的默认方式
+     */
+    public enum MatchMode {
+        EXACT, PREFIX, CONTAINS
+    }
+
+    private String name;  // 客户姓名
+    private String phone;  // 手机号
+    private String company;  // 公司名称
+    private MatchMode matchMode = MatchMode.CONTAINS;  // 姓名、手机号、公司的匹配方式
+    private String source;  // 客户来源（精确匹配）
+    private Integer createdBy;  // 创建人ID
+    private LocalDateTime createdFrom;  // 创建时间起（包含）
+    private LocalDateTime createdTo;  // 创建时间止（不包含）
+}
@@ -0,0 +1,22 @@
+package com.crm.model;
+
+import lombok.Data;
+
+import javax.persistence.*;
+
+/**
+ * 客户来源编码表实体类，对应customer_sources表
+ */
+@Data
+@Entity
+@Table(name = "customer_sources")
+public class CustomerSource {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", columnDefinition = "smallint")
+    private Integer id;  // 来源编码，自增主键
+
+    @Column(name = "label", length = 50, nullable = false, unique = true)
+    private String label;  // 来源名称
+}
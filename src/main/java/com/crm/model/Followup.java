@@ -1,8 +1,15 @@
 package com.crm.model;
 
+import com.crm.lookup.FollowupMethodConverter;
+import com.crm.lookup.LabelDictionary;
+import com.crm.shard.ShardIdGenerator;
 import lombok.Data;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.SQLDelete;
 import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.annotations.Where;
 
 import javax.persistence.*;
 import java.time.LocalDateTime;
@@ -12,16 +19,21 @@ import java.time.LocalDateTime;
  */
 @Data
 @Entity
+@SQLDelete(sql = "UPDATE followups SET deleted = 1, deleted_at = NOW() WHERE id = ?")
+@Where(clause = "deleted = 0")
 @Table(name = "followups", indexes = {
     @Index(name = "idx_customer_id", columnList = "customer_id"),
     @Index(name = "idx_follow_time", columnList = "follow_time"),
-    @Index(name = "idx_user_id", columnList = "user_id")
+    @Index(name = "idx_user_id", columnList = "user_id"),
+    @Index(name = "idx_deleted_at", columnList = "deleted_at")
 })
 public class Followup {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private Integer id;  // 跟进记录ID，自增主键
+    @GeneratedValue(generator = "followupId")
+    @GenericGenerator(name = "followupId", strategy = "com.crm.shard.ShardIdGenerator",
+            parameters = @Parameter(name = ShardIdGenerator.SEQUENCE, value = "followups"))
+    private Integer id;  // 跟进记录ID，全局唯一（与所属客户在同一分片）
 
     @Column(name = "customer_id", nullable = false)
     private Integer customerId;  // 客户ID，关联customers表
@@ -32,8 +44,9 @@ public class Followup {
     @Column(name = "follow_time", nullable = false)
     private LocalDateTime followTime;  // 跟进时间
 
-    @Column(name = "follow_method", length = 20, nullable = false)
-    private String followMethod;  // 跟进方式：电话、微信、面谈
+    @Convert(converter = FollowupMethodConverter.class)
+    @Column(name = "method_id", nullable = false, columnDefinition = "smallint not null default 0")
+    private String followMethod;  // 跟进方式：电话、微信、面谈（存储followup_methods表的编码）
 
     @Column(name = "content", columnDefinition = "text", nullable = false)
     private String content;  // 跟进内容
@@ -49,6 +62,29 @@ public class Followup {
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;  // 更新时间
 
+    @Column(name = "deleted", nullable = false, columnDefinition = "tinyint(1) not null default 0")
+    private Boolean deleted = false;  // 是否已删除（软删除，由后台任务分批物理删除）
+
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;  // 删除时间
+
+    /**
+     * 跟进方式；升级前的旧数据在编码列回填完成前从旧的字符串列读取（Hibernate按字段访问，不影响脏检查）
+     * @return 跟进方式名称
+     */
+    public String getFollowMethod() {
+        return followMethod != null ? followMethod : LabelDictionary.FOLLOW_METHOD.legacyLabel("followups", id);
+    }
+
+    /**
+     * 写入前确保跟进方式名称已有编码
+     */
+    @PrePersist
+    @PreUpdate
+    private void registerLabels() {
+        LabelDictionary.FOLLOW_METHOD.register(followMethod);
+    }
+
     // 外键约束：关联客户和跟进人
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "customer_id", referencedColumnName = "id", insertable = false, updatable = false)
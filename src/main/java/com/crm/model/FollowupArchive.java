@@ -0,0 +1,67 @@
+package com.crm.model;
+
+import com.crm.lookup.FollowupMethodConverter;
+import com.crm.lookup.LabelDictionary;
+import lombok.Data;
+import org.hibernate.annotations.Where;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 归档跟进记录实体类，对应followups_archive表
+ * 跟进时间早于归档期限的记录由FollowupArchiveService从followups表整行搬迁过来，ID保持不变
+ * 删除客户时与活跃表一样先软删除，由PurgeService分批物理删除
+ */
+@Data
+@Entity
+@Where(clause = "deleted = 0")
+@Table(name = "followups_archive", indexes = {
+    @Index(name = "idx_customer_id_follow_time", columnList = "customer_id, follow_time"),
+    @Index(name = "idx_follow_time", columnList = "follow_time"),
+    @Index(name = "idx_deleted_at", columnList = "deleted_at")
+})
+public class FollowupArchive {
+
+    @Id
+    private Integer id;  // 跟进记录ID，沿用followups表中的ID
+
+    @Column(name = "customer_id", nullable = false)
+    private Integer customerId;  // 客户ID
+
+    @Column(name = "user_id", nullable = false)
+    private Integer userId;  // 跟进人ID
+
+    @Column(name = "follow_time", nullable = false)
+    private LocalDateTime followTime;  // 跟进时间
+
+    @Convert(converter = FollowupMethodConverter.class)
+    @Column(name = "method_id", nullable = false, columnDefinition = "smallint not null default 0")
+    private String followMethod;  // 跟进方式：电话、微信、面谈（存储followup_methods表的编码）
+
+    @Column(name = "content", columnDefinition = "text", nullable = false)
+    private String content;  // 跟进内容
+
+    @Column(name = "next_follow_reminder")
+    private LocalDateTime nextFollowReminder;  // 下次跟进提醒时间
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;  // 创建时间
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;  // 更新时间
+
+    @Column(name = "deleted", nullable = false, columnDefinition = "tinyint(1) not null default 0")
+    private Boolean deleted = false;  // 是否已删除（软删除，由后台任务分批物理删除）
+
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;  // 删除时间
+
+    /**
+     * 跟进方式；升级前的旧数据在编码列回填完成前从旧的字符串列读取（Hibernate按字段访问，不影响脏检查）
+     * @return 跟进方式名称
+     */
+    public String getFollowMethod() {
+        return followMethod != null ? followMethod : LabelDictionary.FOLLOW_METHOD.legacyLabel("followups_archive", id);
+    }
+}
@@ -0,0 +1,22 @@
+package com.crm.model;
+
+import lombok.Data;
+
+import javax.persistence.*;
+
+/**
+ * 跟进方式编码表实体类，对应followup_methods表
+ */
+@Data
+@Entity
+@Table(name = "followup_methods")
+public class FollowupMethod {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", columnDefinition = "smallint")
+    private Integer id;  // 跟进方式编码，自增主键
+
+    @Column(name = "label", length = 20, nullable = false, unique = true)
+    private String label;  // 跟进方式名称
+}
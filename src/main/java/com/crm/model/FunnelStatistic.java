@@ -0,0 +1,58 @@
+package com.crm.model;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 转化漏斗统计结果实体类，对应funnel_statistics表
+ * 由FunnelAnalyticsService定时全量计算后整体替换
+ */
+@Data
+@Entity
+@Table(name = "funnel_statistics", indexes = {
+    @Index(name = "idx_dimension_metric", columnList = "dimension, metric")
+})
+public class FunnelStatistic {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;  // 统计结果ID，自增主键
+
+    @Column(name = "dimension", length = 20, nullable = false)
+    private String dimension;  // 统计维度：source、user
+
+    @Column(name = "dimension_value", length = 50, nullable = false)
+    private String dimensionValue;  // 维度取值：客户来源或创建人ID
+
+    @Column(name = "label", length = 50)
+    private String label;  // 显示名称：客户来源或创建人昵称
+
+    @Column(name = "metric", length = 40, nullable = false)
+    private String metric;  // 指标：first_followup_hours、followups_to_reminder
+
+    @Column(name = "customer_count", nullable = false)
+    private Long customerCount;  // 该维度下的客户数量
+
+    @Column(name = "sample_count", nullable = false)
+    private Long sampleCount;  // 有该指标样本的客户数量
+
+    @Column(name = "avg_value", nullable = false)
+    private Double avgValue;  // 平均值
+
+    @Column(name = "p50", nullable = false)
+    private Double p50;  // 中位数
+
+    @Column(name = "p90", nullable = false)
+    private Double p90;  // 90分位数
+
+    @Column(name = "p99", nullable = false)
+    private Double p99;  // 99分位数
+
+    @Column(name = "max_value", nullable = false)
+    private Double maxValue;  // 最大值
+
+    @Column(name = "computed_at", nullable = false)
+    private LocalDateTime computedAt;  // 计算时间
+}
@@ -0,0 +1,26 @@
+package com.crm.model;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 预写日志检查点实体类，对应wal_checkpoints表
+ * 记录每个预写日志中已写入数据库的最大序号，与批量写入在同一事务中更新，重启重放时跳过已写入的记录
+ */
+@Data
+@Entity
+@Table(name = "wal_checkpoints")
+public class WalCheckpoint {
+
+    @Id
+    @Column(name = "name", length = 50)
+    private String name;  // 预写日志名称
+
+    @Column(name = "last_seq", nullable = false)
+    private Long lastSeq;  // 已写入数据库的最大序号
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;  // 更新时间
+}
@@ -0,0 +1,108 @@
+package com.crm.monitor;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * JDBC计时代理：包装DataSource -> Connection -> Statement，记录每条语句的执行耗时和绑定参数，
+ * 交给SlowQueryRecorder统计
+ */
+public final class JdbcTimingProxy {
+
+    private JdbcTimingProxy() {
+    }
+
+    /**
+     * 包装数据源
+     * @param target 原始数据源
+     * @param recorder 慢查询记录器
+     * @return 代理数据源
+     */
+    public static DataSource wrap(DataSource target, SlowQueryRecorder recorder) {
+        return (DataSource) Proxy.newProxyInstance(JdbcTimingProxy.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(target, method, args);
+                    if (result instanceof Connection && method.getName().equals("getConnection")) {
+                        return wrapConnection((Connection) result, recorder);
+                    }
+                    return result;
+                });
+    }
+
+    private static Connection wrapConnection(Connection target, SlowQueryRecorder recorder) {
+        return (Connection) Proxy.newProxyInstance(JdbcTimingProxy.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(target, method, args);
+                    String name = method.getName();
+                    if (result instanceof CallableStatement && name.equals("prepareCall")) {
+                        return wrapStatement(result, CallableStatement.class, (String) args[0], recorder);
+                    }
+                    if (result instanceof PreparedStatement && name.equals("prepareStatement")) {
+                        return wrapStatement(result, PreparedStatement.class, (String) args[0], recorder);
+                    }
+                    if (result instanceof Statement && name.equals("createStatement")) {
+                        return wrapStatement(result, Statement.class, null, recorder);
+                    }
+                    return result;
+                });
+    }
+
+    private static Object wrapStatement(Object target, Class<?> type, String preparedSql, SlowQueryRecorder recorder) {
+        return Proxy.newProxyInstance(JdbcTimingProxy.class.getClassLoader(), new Class<?>[]{type},
+                new StatementHandler(target, preparedSql, recorder));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * 语句代理：记录绑定参数，对execute*方法计时
+     */
+    private static final class StatementHandler implements InvocationHandler {
+        private final Object target;
+        private final String preparedSql;
+        private final SlowQueryRecorder recorder;
+        private final Map<Integer, Object> parameters = new TreeMap<>();
+
+        StatementHandler(Object target, String preparedSql, SlowQueryRecorder recorder) {
+            this.target = target;
+            this.preparedSql = preparedSql;
+            this.recorder = recorder;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                parameters.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                parameters.clear();
+            } else if (name.startsWith("execute")) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+                long start = System.nanoTime();
+                try {
+                    return JdbcTimingProxy.invoke(target, method, args);
+                } finally {
+                    if (sql != null) {
+                        recorder.record(sql, sql == preparedSql ? parameters : null, System.nanoTime() - start);
+                    }
+                }
+            }
+            return JdbcTimingProxy.invoke(target, method, args);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.crm.monitor;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * 为应用使用的数据源（名为dataSource的Bean）套上JDBC计时代理
+ */
+@Component
+@ConditionalOnProperty(name = "crm.slow-query.enabled", havingValue = "true", matchIfMissing = true)
+public class SlowQueryDataSourcePostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<SlowQueryRecorder> recorderProvider;
+
+    public SlowQueryDataSourcePostProcessor(ObjectProvider<SlowQueryRecorder> recorderProvider) {
+        this.recorderProvider = recorderProvider;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource && "dataSource".equals(beanName)) {
+            SlowQueryRecorder recorder = recorderProvider.getObject();
+            recorder.setExplainDataSource((DataSource) bean);
+            return JdbcTimingProxy.wrap((DataSource) bean, recorder);
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,395 @@
+package com.crm.monitor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 慢查询记录器
+ * 1. 按规范化后的SQL形态（字面量替换为?、IN列表合并）汇总每条语句的次数和耗时，形态数量有上限
+ * 2. 超过阈值的单次执行写入固定大小的环形缓冲区
+ * 3. 后台定时对最慢的若干形态执行EXPLAIN（使用采样时的绑定参数），标记全表扫描、临时表、文件排序、
+ *    前导通配符LIKE等问题，并给出索引建议
+ */
+@Component
+public class SlowQueryRecorder {
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.)*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern TABLE_ALIAS = Pattern.compile("\\b(?:from|join|update)\\s+(\\w+)\\s+(?:as\\s+)?(\\w+)");
+    private static final Pattern COLUMN_PREDICATE = Pattern.compile("(\\w+)\\.(\\w+)\\s*(?:=|<>|!=|<=|>=|<|>|like\\b|in\\b|between\\b)");
+    private static final Pattern COLUMN_REF = Pattern.compile("(\\w+)\\.(\\w+)");
+
+    @Value("${crm.slow-query.threshold-ms:200}")
+    private long thresholdMs;  // 慢查询阈值（毫秒）
+
+    @Value("${crm.slow-query.top-n:20}")
+    private int topN;  // 报告和EXPLAIN的形态数量
+
+    @Value("${crm.slow-query.max-shapes:1000}")
+    private int maxShapes;  // 最多汇总的SQL形态数量
+
+    private final Map<String, ShapeStats> shapes = new ConcurrentHashMap<>();
+    private final SlowExecution[] ring;
+    private final AtomicLong ringPosition = new AtomicLong();
+    private final AtomicLong totalStatements = new AtomicLong();
+    private volatile DataSource explainDataSource;  // 执行EXPLAIN使用的原始数据源（不计时）
+
+    public SlowQueryRecorder(@Value("${crm.slow-query.ring-size:200}") int ringSize) {
+        this.ring = new SlowExecution[ringSize];
+    }
+
+    /**
+     * 设置执行EXPLAIN使用的原始数据源
+     * @param dataSource 未经计时代理包装的数据源
+     */
+    public void setExplainDataSource(DataSource dataSource) {
+        this.explainDataSource = dataSource;
+    }
+
+    /**
+     * 记录一次语句执行
+     * @param sql 原始SQL
+     * @param parameters 绑定参数（序号 -> 值），普通Statement为null
+     * @param elapsedNanos 执行耗时（纳秒）
+     */
+    public void record(String sql, Map<Integer, Object> parameters, long elapsedNanos) {
+        totalStatements.incrementAndGet();
+        String shape = normalize(sql);
+        ShapeStats stats = shapes.get(shape);
+        if (stats == null) {
+            if (shapes.size() >= maxShapes) {
+                evictFastest();
+            }
+            stats = shapes.computeIfAbsent(shape, ShapeStats::new);
+        }
+        stats.add(sql, parameters, elapsedNanos);
+
+        if (elapsedNanos >= thresholdMs * 1_000_000L) {
+            int slot = (int) (ringPosition.getAndIncrement() % ring.length);
+            ring[slot] = new SlowExecution(shape, elapsedNanos, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 后台对最慢的若干形态执行EXPLAIN
+     */
+    @Scheduled(fixedDelayString = "${crm.slow-query.explain-interval-ms:30000}")
+    public void explainSlowest() {
+        DataSource dataSource = explainDataSource;
+        if (dataSource == null) {
+            return;
+        }
+        for (ShapeStats stats : slowest()) {
+            if (stats.maxNanos < thresholdMs * 1_000_000L || stats.explainedMaxNanos == stats.maxNanos) {
+                continue;
+            }
+            explain(dataSource, stats);
+        }
+    }
+
+    /**
+     * 获取慢查询报告
+     * @return 报告（最慢的形态及其执行计划、问题和索引建议，以及最近的慢执行记录）
+     */
+    public Map<String, Object> getReport() {
+        List<Map<String, Object>> top = new ArrayList<>();
+        for (ShapeStats stats : slowest()) {
+            top.add(stats.toMap());
+        }
+
+        List<Map<String, Object>> recent = new ArrayList<>();
+        for (SlowExecution execution : ring) {
+            if (execution != null) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("sql", execution.shape);
+                item.put("elapsedMs", execution.elapsedNanos / 1_000_000.0);
+                item.put("timestamp", execution.timestamp);
+                recent.add(item);
+            }
+        }
+        recent.sort(Comparator.comparing((Map<String, Object> m) -> (Long) m.get("timestamp")).reversed());
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("thresholdMs", thresholdMs);
+        report.put("totalStatements", totalStatements.get());
+        report.put("shapeCount", shapes.size());
+        report.put("slowest", top);
+        report.put("recentSlow", recent);
+        return report;
+    }
+
+    /**
+     * 清空统计数据
+     */
+    public void reset() {
+        shapes.clear();
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = null;
+        }
+        totalStatements.set(0);
+    }
+
+    /**
+     * 规范化SQL：转小写、字面量替换为?、IN列表合并为单个?、合并空白
+     * @param sql 原始SQL
+     * @return SQL形态
+     */
+    static String normalize(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = shape.toLowerCase(Locale.ROOT);
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = WHITESPACE.matcher(shape).replaceAll(" ").trim();
+        return IN_LIST.matcher(shape).replaceAll("in (?)");
+    }
+
+    private List<ShapeStats> slowest() {
+        List<ShapeStats> all = new ArrayList<>(shapes.values());
+        all.sort(Comparator.comparingLong((ShapeStats s) -> s.maxNanos).reversed());
+        return all.size() > topN ? all.subList(0, topN) : all;
+    }
+
+    private void evictFastest() {
+        ShapeStats fastest = null;
+        for (ShapeStats stats : shapes.values()) {
+            if (fastest == null || stats.maxNanos < fastest.maxNanos) {
+                fastest = stats;
+            }
+        }
+        if (fastest != null) {
+            shapes.remove(fastest.shape);
+        }
+    }
+
+    /**
+     * 执行EXPLAIN并分析执行计划
+     */
+    private void explain(DataSource dataSource, ShapeStats stats) {
+        String sql;
+        Map<Integer, Object> parameters;
+        long maxNanos;
+        synchronized (stats) {
+            sql = stats.sampleSql;
+            parameters = stats.sampleParameters;
+            maxNanos = stats.maxNanos;
+        }
+        String lower = sql.trim().toLowerCase(Locale.ROOT);
+        if (!lower.startsWith("select") && !lower.startsWith("update") && !lower.startsWith("delete")) {
+            return;
+        }
+
+        List<Map<String, Object>> plan = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            if (parameters != null) {
+                for (Map.Entry<Integer, Object> entry : parameters.entrySet()) {
+                    statement.setObject(entry.getKey(), entry.getValue());
+                }
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                while (rs.next()) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    for (int i = 1; i <= meta.getColumnCount(); i++) {
+                        row.put(meta.getColumnLabel(i), rs.getObject(i));
+                    }
+                    plan.add(row);
+                }
+            }
+        } catch (Exception e) {
+            synchronized (stats) {
+                stats.explainError = e.getMessage();
+                stats.explainedMaxNanos = maxNanos;
+            }
+            return;
+        }
+
+        Set<String> flags = new LinkedHashSet<>();
+        Set<String> recommendations = new LinkedHashSet<>();
+        analyze(stats.shape, parameters, plan, flags, recommendations);
+        synchronized (stats) {
+            stats.plan = plan;
+            stats.flags = new ArrayList<>(flags);
+            stats.recommendations = new ArrayList<>(recommendations);
+            stats.explainError = null;
+            stats.explainedMaxNanos = maxNanos;
+        }
+    }
+
+    /**
+     * 根据SQL形态、绑定参数和执行计划给出问题标记和索引建议
+     */
+    static void analyze(String shape, Map<Integer, Object> parameters, List<Map<String, Object>> plan,
+                        Set<String> flags, Set<String> recommendations) {
+        if (parameters != null && shape.contains(" like ?")) {
+            for (Object value : parameters.values()) {
+                if (value instanceof String && ((String) value).startsWith("%")) {
+                    flags.add("LIKE使用前导通配符（'%...'），无法使用索引");
+                    recommendations.add("改用前缀或精确匹配（客户列表match=prefix|exact），备注和跟进内容改用全文搜索/api/search");
+                    break;
+                }
+            }
+        }
+
+        Map<String, String> aliasToTable = new HashMap<>();
+        Matcher aliasMatcher = TABLE_ALIAS.matcher(shape);
+        while (aliasMatcher.find()) {
+            aliasToTable.put(aliasMatcher.group(2), aliasMatcher.group(1));
+        }
+        // 列按SQL中的表别名归类，EXPLAIN结果的table列也是别名
+        Map<String, Set<String>> whereColumns = columnsByAlias(clause(shape, " where ", " group by ", " order by ", " limit "),
+                COLUMN_PREDICATE);
+        Map<String, Set<String>> groupColumns = columnsByAlias(clause(shape, " group by ", " having ", " order by ", " limit "),
+                COLUMN_REF);
+        Map<String, Set<String>> orderColumns = columnsByAlias(clause(shape, " order by ", " limit "),
+                COLUMN_REF);
+
+        for (Map<String, Object> row : plan) {
+            String alias = String.valueOf(row.get("table")).toLowerCase(Locale.ROOT);
+            String table = aliasToTable.getOrDefault(alias, alias);
+            String type = String.valueOf(row.get("type"));
+            String extra = String.valueOf(row.get("Extra"));
+            Object rows = row.get("rows");
+
+            if ("ALL".equalsIgnoreCase(type)) {
+                flags.add("表" + table + "全表扫描（预估" + rows + "行）");
+                suggestIndex(recommendations, table, whereColumns.get(alias), "为WHERE条件列建立索引");
+            } else if ("index".equalsIgnoreCase(type)) {
+                flags.add("表" + table + "全索引扫描（预估" + rows + "行）");
+            }
+            if (extra.contains("Using temporary")) {
+                flags.add("表" + table + "使用临时表（GROUP BY/DISTINCT）");
+                suggestIndex(recommendations, table, groupColumns.get(alias), "为GROUP BY列建立索引，使分组可按索引顺序完成");
+            }
+            if (extra.contains("Using filesort")) {
+                flags.add("表" + table + "使用文件排序");
+                Set<String> columns = new LinkedHashSet<>();
+                if (whereColumns.get(alias) != null) {
+                    columns.addAll(whereColumns.get(alias));
+                }
+                if (orderColumns.get(alias) != null) {
+                    columns.addAll(orderColumns.get(alias));
+                }
+                suggestIndex(recommendations, table, columns, "建立筛选列+排序列的组合索引，避免排序");
+            }
+        }
+    }
+
+    private static void suggestIndex(Set<String> recommendations, String table, Set<String> columns, String reason) {
+        if (columns == null || columns.isEmpty()) {
+            return;
+        }
+        String columnList = String.join(", ", columns);
+        recommendations.add(reason + "：ALTER TABLE " + table + " ADD INDEX idx_" + String.join("_", columns) + " (" + columnList + ")");
+    }
+
+    private static String clause(String shape, String start, String... ends) {
+        int from = shape.indexOf(start);
+        if (from < 0) {
+            return "";
+        }
+        from += start.length();
+        int to = shape.length();
+        for (String end : ends) {
+            int index = shape.indexOf(end, from);
+            if (index >= 0 && index < to) {
+                to = index;
+            }
+        }
+        return shape.substring(from, to);
+    }
+
+    private static Map<String, Set<String>> columnsByAlias(String clause, Pattern pattern) {
+        Map<String, Set<String>> result = new HashMap<>();
+        Matcher matcher = pattern.matcher(clause);
+        while (matcher.find()) {
+            result.computeIfAbsent(matcher.group(1), a -> new LinkedHashSet<>()).add(matcher.group(2));
+        }
+        return result;
+    }
+
+    /**
+     * 单个SQL形态的统计
+     */
+    private static final class ShapeStats {
+        final String shape;
+        long count;
+        long totalNanos;
+        long maxNanos;
+        String sampleSql;  // 最慢一次执行的原始SQL
+        Map<Integer, Object> sampleParameters;  // 最慢一次执行的绑定参数
+        long explainedMaxNanos = -1;  // 执行计划对应的最大耗时，最大耗时变化后重新EXPLAIN
+        List<Map<String, Object>> plan = Collections.emptyList();
+        List<String> flags = Collections.emptyList();
+        List<String> recommendations = Collections.emptyList();
+        String explainError;
+
+        ShapeStats(String shape) {
+            this.shape = shape;
+        }
+
+        synchronized void add(String sql, Map<Integer, Object> parameters, long elapsedNanos) {
+            count++;
+            totalNanos += elapsedNanos;
+            if (elapsedNanos > maxNanos || sampleSql == null) {
+                maxNanos = Math.max(maxNanos, elapsedNanos);
+                sampleSql = sql;
+                sampleParameters = parameters == null ? null : new TreeMap<>(parameters);
+            }
+        }
+
+        synchronized Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("sql", shape);
+            map.put("count", count);
+            map.put("avgMs", count == 0 ? 0 : totalNanos / count / 1_000_000.0);
+            map.put("maxMs", maxNanos / 1_000_000.0);
+            map.put("totalMs", totalNanos / 1_000_000.0);
+            map.put("flags", flags);
+            map.put("recommendations", recommendations);
+            map.put("plan", plan);
+            if (explainError != null) {
+                map.put("explainError", explainError);
+            }
+            return map;
+        }
+    }
+
+    /**
+     * 单次慢执行记录
+     */
+    private static final class SlowExecution {
+        final String shape;
+        final long elapsedNanos;
+        final long timestamp;
+
+        SlowExecution(String shape, long elapsedNanos, long timestamp) {
+            this.shape = shape;
+            this.elapsedNanos = elapsedNanos;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.crm.profiling;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * 常驻的JFR记录，封装ProfilingService对jdk.jfr的全部调用
+ * ProfilingService是Spring Bean，Spring反射读取其字段和方法时不能出现jdk.jfr类型，
+ * 否则在不提供JFR的运行时上创建Bean就会抛出NoClassDefFoundError；只在JfrSupport.isAvailable()时创建本类
+ */
+public class ContinuousRecording {
+
+    private final Recording recording;
+
+    /**
+     * 按配置创建并开启记录，同时开启CRM自定义事件
+     * @param name 记录名称
+     * @param settings JFR内置配置名：default或profile
+     * @param maxAge 滚动保留的时长
+     * @param maxSizeBytes 滚动保留的大小
+     * @param repositoryThreshold 仓库调用耗时超过该值才记录
+     * @throws IOException 读取配置失败
+     * @throws ParseException 配置格式错误
+     */
+    public ContinuousRecording(String name, String settings, Duration maxAge, long maxSizeBytes, Duration repositoryThreshold)
+            throws IOException, ParseException {
+        recording = new Recording(Configuration.getConfiguration(settings));
+        recording.setName(name);
+        recording.setToDisk(true);
+        recording.setMaxAge(maxAge);
+        recording.setMaxSize(maxSizeBytes);
+        recording.enable(RepositoryCallEvent.class).withThreshold(repositoryThreshold);
+        recording.enable(ExportJobEvent.class).withStackTrace();
+        recording.enable(LoginEvent.class);
+        recording.enable(StatisticsEvent.class).withStackTrace();
+        recording.start();
+    }
+
+    /**
+     * 导出最近一段时间的数据：快照包含磁盘仓库中现有的数据块并切换当前块，不影响持续记录
+     * @param file 导出文件
+     * @param maxAge 导出的时长
+     * @throws IOException 写入失败
+     */
+    public void dump(Path file, Duration maxAge) throws IOException {
+        try (Recording snapshot = FlightRecorder.getFlightRecorder().takeSnapshot()) {
+            snapshot.setMaxAge(maxAge);
+            snapshot.dump(file);
+        }
+    }
+
+    public String getState() {
+        return recording.getState().name();
+    }
+
+    public Instant getStartTime() {
+        return recording.getStartTime();
+    }
+
+    public long getSize() {
+        return recording.getSize();
+    }
+
+    public void close() {
+        recording.close();
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.crm.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 导出任务事件
+ */
+@Name("com.crm.ExportJob")
+@Label("Export Job")
+@Category({"CRM", "Export"})
+@Description("Excel导出任务")
+public class ExportJobEvent extends jdk.jfr.Event {
+
+    @Label("Export")
+    String export;  // 导出类型
+
+    @Label("Parameters")
+    String parameters;  // 筛选条件
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+
+    @Label("Failed")
+    boolean failed;
+
+    public ExportJobEvent(String export, String parameters) {
+        this.export = export;
+        this.parameters = parameters;
+    }
+
+    /**
+     * 结束并提交事件
+     * @param rows 导出行数
+     * @param bytes 文件大小，失败时为-1
+     */
+    public void finish(int rows, long bytes) {
+        this.rows = rows;
+        this.bytes = bytes;
+        this.failed = bytes < 0;
+        commit();
+    }
+
+}
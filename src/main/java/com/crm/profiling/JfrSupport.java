@@ -0,0 +1,32 @@
+package com.crm.profiling;
+
+/**
+ * JFR可用性探测
+ * 不包含jdk.jfr的运行时（如JDK 8u262之前的版本、未打包jdk.jfr模块的精简运行时）上，
+ * 加载任何CRM事件类都会抛出NoClassDefFoundError，创建事件和开启记录前先检查
+ */
+public final class JfrSupport {
+
+    private static final boolean AVAILABLE = probe();
+
+    private JfrSupport() {
+    }
+
+    /**
+     * 当前运行时是否提供JFR
+     * @return 是否可用
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    private static boolean probe() {
+        try {
+            Class.forName("jdk.jfr.Recording", false, JfrSupport.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.crm.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 登录验证事件（不记录密码）
+ */
+@Name("com.crm.Login")
+@Label("Login Verification")
+@Category({"CRM", "Security"})
+@Description("用户登录验证（查询用户和校验密码）")
+public class LoginEvent extends jdk.jfr.Event {
+
+    @Label("Username")
+    String username;
+
+    @Label("Success")
+    boolean success;
+
+    public LoginEvent(String username) {
+        this.username = username;
+    }
+
+    /**
+     * 结束并提交事件
+     * @param success 是否验证通过
+     */
+    public void finish(boolean success) {
+        this.success = success;
+        commit();
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.crm.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 数据访问调用事件（Spring Data仓库方法），耗时超过阈值时记录
+ * 高频事件，不记录调用栈
+ */
+@Name("com.crm.RepositoryCall")
+@Label("Repository Call")
+@Category({"CRM", "Repository"})
+@Description("Spring Data仓库方法调用")
+@StackTrace(false)
+public class RepositoryCallEvent extends jdk.jfr.Event {
+
+    @Label("Repository")
+    String repository;  // 仓库接口名
+
+    @Label("Method")
+    String method;  // 方法名
+
+    @Label("Parameters")
+    String parameters;  // 参数摘要
+
+    @Label("Rows")
+    @Description("返回的行数，非集合结果为-1")
+    int rows;
+
+    @Label("Failed")
+    boolean failed;
+
+}
@@ -0,0 +1,97 @@
+package com.crm.profiling;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 仓库方法拦截器，为每次调用记录RepositoryCallEvent
+ * 未开启JFR记录时直接调用；参数摘要和行数只在事件超过阈值、确定要提交时才计算
+ */
+public class RepositoryEventInterceptor implements MethodInterceptor {
+
+    private static final int MAX_PARAMETERS_CHARS = 200;
+
+    private final String repository;
+
+    public RepositoryEventInterceptor(String repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        RepositoryCallEvent event = new RepositoryCallEvent();
+        if (!event.isEnabled()) {
+            return invocation.proceed();
+        }
+        event.begin();
+        Object result = null;
+        boolean failed = true;
+        try {
+            result = invocation.proceed();
+            failed = false;
+            return result;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.repository = repository;
+                event.method = invocation.getMethod().getName();
+                event.parameters = summarize(invocation.getArguments());
+                event.rows = failed ? -1 : rows(result);
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+
+    private static int rows(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Page) {
+            return ((Page<?>) result).getNumberOfElements();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        if (result instanceof Integer) {
+            return (Integer) result;  // 批量UPDATE/DELETE影响的行数
+        }
+        return -1;
+    }
+
+    /**
+     * 参数摘要：简单值直接输出，集合只输出大小，实体等对象只输出类名
+     */
+    private static String summarize(Object[] arguments) {
+        StringBuilder sb = new StringBuilder();
+        for (Object argument : arguments) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            if (argument == null || argument instanceof Number || argument instanceof CharSequence
+                    || argument instanceof Boolean || argument instanceof Enum || argument instanceof java.time.temporal.Temporal) {
+                sb.append(argument);
+            } else if (argument instanceof Collection) {
+                sb.append(argument.getClass().getSimpleName()).append('[').append(((Collection<?>) argument).size()).append(']');
+            } else if (argument instanceof Map) {
+                sb.append("Map[").append(((Map<?, ?>) argument).size()).append(']');
+            } else if (argument instanceof Pageable) {
+                Pageable pageable = (Pageable) argument;
+                sb.append(pageable.isPaged() ? "page=" + pageable.getPageNumber() + ",size=" + pageable.getPageSize() : "unpaged");
+            } else {
+                sb.append(argument.getClass().getSimpleName());
+            }
+            if (sb.length() > MAX_PARAMETERS_CHARS) {
+                return sb.substring(0, MAX_PARAMETERS_CHARS) + "…";
+            }
+        }
+        return sb.toString();
+    }
+
+}
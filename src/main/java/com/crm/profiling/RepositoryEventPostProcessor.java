@@ -0,0 +1,24 @@
+package com.crm.profiling;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.stereotype.Component;
+
+/**
+ * 为所有Spring Data仓库代理加上RepositoryEventInterceptor（运行时不提供JFR时不添加）
+ */
+@Component
+@ConditionalOnProperty(name = "crm.jfr.enabled", havingValue = "true", matchIfMissing = true)
+public class RepositoryEventPostProcessor implements BeanPostProcessor {
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof RepositoryFactoryBeanSupport && JfrSupport.isAvailable()) {
+            ((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(factory ->
+                    factory.addRepositoryProxyPostProcessor((proxyFactory, information) ->
+                            proxyFactory.addAdvice(new RepositoryEventInterceptor(information.getRepositoryInterface().getSimpleName()))));
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,41 @@
+package com.crm.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 统计计算事件
+ */
+@Name("com.crm.Statistics")
+@Label("Statistics Computation")
+@Category({"CRM", "Statistics"})
+@Description("统计查询和漏斗、分析快照计算")
+public class StatisticsEvent extends jdk.jfr.Event {
+
+    @Label("Statistic")
+    String statistic;  // 统计名称
+
+    @Label("Parameters")
+    String parameters;
+
+    @Label("Rows")
+    @Description("参与计算或返回的行数")
+    long rows;
+
+    public StatisticsEvent(String statistic, String parameters) {
+        this.statistic = statistic;
+        this.parameters = parameters;
+    }
+
+    /**
+     * 结束并提交事件
+     * @param rows 行数
+     */
+    public void finish(long rows) {
+        this.rows = rows;
+        commit();
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.crm.ratelimit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 限流拦截器：按请求路径找到最具体的接口组，从当前用户（未登录时按客户端IP）在该组的令牌桶取令牌，
+ * 取不到时直接返回429和Retry-After，不进入控制器，不占用数据库连接。
+ * 客户端IP取自getRemoteAddr，部署在反向代理之后时需配置server.forward-headers-strategy才是真实IP。
+ * 不配置路径的组（如login）不在这里计数，由控制器按自己的客户端标识调用tryAcquire。
+ * 只对首次分派计数，异步请求完成后的再次分派（ASYNC）和错误页分派不再取令牌
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private static final int TOP_CLIENTS = 10;
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final ObjectMapper objectMapper;
+    private final List<Route> routes = new ArrayList<>();
+    private final Map<String, RateLimiter> limiters = new LinkedHashMap<>();
+
+    /**
+     * 一个路径模式到限流器的映射
+     */
+    private static class Route {
+        private final String pattern;
+        private final List<String> methods;
+        private final RateLimiter limiter;
+
+        Route(String pattern, List<String> methods, RateLimiter limiter) {
+            this.pattern = pattern;
+            this.methods = methods;
+            this.limiter = limiter;
+        }
+    }
+
+    public RateLimitInterceptor(RateLimitProperties properties, ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        for (Map.Entry<String, RateLimitProperties.Group> entry : properties.getGroups().entrySet()) {
+            RateLimitProperties.Group group = entry.getValue();
+            RateLimiter limiter = new RateLimiter(entry.getKey(), group.getRatePerSecond(), group.getBurst(),
+                    properties.getMaxBucketsPerGroup());
+            limiters.put(entry.getKey(), limiter);
+            for (String pattern : group.getPaths()) {
+                routes.add(new Route(pattern, group.getMethods(), limiter));
+            }
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if (request.getDispatcherType() != DispatcherType.REQUEST) {
+            return true;
+        }
+        // CORS预检请求不计数
+        RateLimiter limiter = "OPTIONS".equals(request.getMethod()) ? null : match(request);
+        if (limiter == null) {
+            return true;
+        }
+        HttpSession session = request.getSession(false);
+        Object userId = session != null ? session.getAttribute("userId") : null;
+        String client = userId != null ? "user:" + userId : "ip:" + request.getRemoteAddr();
+
+        long retryAfterMs = limiter.tryAcquire(client);
+        if (retryAfterMs == 0) {
+            return true;
+        }
+        Map<String, Object> body = new HashMap<>();
+        body.put("code", 429);
+        body.put("message", "请求过于频繁，请稍后重试");
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader("Retry-After", String.valueOf((retryAfterMs + 999) / 1000));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getOutputStream(), body);
+        return false;
+    }
+
+    /**
+     * 从指定接口组的令牌桶取一个令牌（供按请求内容区分客户端的控制器使用）
+     * @param group 接口组名
+     * @param client 客户端标识
+     * @return 0表示放行，否则为建议的重试等待毫秒数；组未配置时放行
+     */
+    public long tryAcquire(String group, String client) {
+        RateLimiter limiter = limiters.get(group);
+        return limiter == null ? 0 : limiter.tryAcquire(client);
+    }
+
+    /**
+     * 定时回收已装满的令牌桶
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdle() {
+        for (RateLimiter limiter : limiters.values()) {
+            limiter.evictIdle();
+        }
+    }
+
+    /**
+     * 获取各接口组的限流指标
+     * @return 组名 -> 指标
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        for (RateLimiter limiter : limiters.values()) {
+            metrics.put(limiter.getName(), limiter.getMetrics(TOP_CLIENTS));
+        }
+        return metrics;
+    }
+
+    /**
+     * 找到与请求匹配的最具体的路径模式所属的限流器
+     */
+    private RateLimiter match(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String method = request.getMethod();
+        Comparator<String> specificity = pathMatcher.getPatternComparator(path);
+        Route best = null;
+        for (Route route : routes) {
+            if ((route.methods.isEmpty() || route.methods.contains(method)) && pathMatcher.match(route.pattern, path)
+                    && (best == null || specificity.compare(route.pattern, best.pattern) < 0)) {
+                best = route;
+            }
+        }
+        return best == null ? null : best.limiter;
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.crm.ratelimit;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 限流配置（crm.rate-limit.*）
+ * 每个接口组配置路径模式、每秒令牌数和桶容量，每个用户（未登录时按客户端IP）在每个组各有一个令牌桶
+ */
+@Data
+@ConfigurationProperties(prefix = "crm.rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;  // 是否启用限流
+    private int maxBucketsPerGroup = 100000;  // 每组最多保留的令牌桶数量，超出时新客户端散列到共享桶
+    private Map<String, Group> groups = new LinkedHashMap<>();  // 接口组名 -> 组配置
+
+    /**
+     * 接口组配置
+     */
+    @Data
+    public static class Group {
+        private List<String> paths = new ArrayList<>();  // 路径模式（Ant风格），请求匹配最具体的模式所属的组
+        private List<String> methods = new ArrayList<>();  // HTTP方法，为空时不限
+        private double ratePerSecond = 10;  // 每秒发放的令牌数，必须大于0
+        private int burst = 20;  // 桶容量（允许的突发请求数）
+    }
+}
@@ -0,0 +1,136 @@
+package com.crm.ratelimit;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个接口组的限流器：每个客户端一个令牌桶，存放在ConcurrentHashMap中，已装满的桶定期回收。
+ * 令牌桶数量达到上限时先立即回收一次已装满的桶，仍然没有空位的新客户端按标识散列到固定数量的共享桶，
+ * 不会因为桶数量达到上限而拒绝所有新客户端
+ */
+public class RateLimiter {
+
+    private static final int OVERFLOW_BUCKETS = 1024;
+    private static final long EVICT_ON_FULL_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String name;
+    private final double ratePerSecond;
+    private final int burst;
+    private final long intervalNanos;
+    private final int maxBuckets;
+    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final TokenBucket[] overflowBuckets = new TokenBucket[OVERFLOW_BUCKETS];  // 令牌桶数量达到上限后新客户端共享的桶
+    private final AtomicLong lastEvictOnFull = new AtomicLong(System.nanoTime() - EVICT_ON_FULL_INTERVAL_NANOS);
+    private final LongAdder overflowed = new LongAdder();  // 使用共享桶的次数
+    private final LongAdder allowed = new LongAdder();  // 放行次数
+    private final LongAdder rejected = new LongAdder();  // 拒绝次数
+    private final Map<String, LongAdder> rejectedByClient = new ConcurrentHashMap<>();  // 各客户端的拒绝次数，随桶一起回收
+
+    /**
+     * @param name 接口组名
+     * @param ratePerSecond 每秒发放的令牌数，必须大于0
+     * @param burst 桶容量
+     * @param maxBuckets 最多保留的令牌桶数量
+     * @throws IllegalArgumentException 每秒令牌数不大于0或过小（桶容量对应的时长溢出）
+     */
+    public RateLimiter(String name, double ratePerSecond, int burst, int maxBuckets) {
+        if (!(ratePerSecond > 0) || Double.isInfinite(ratePerSecond)) {
+            throw new IllegalArgumentException("限流组" + name + "的每秒令牌数必须大于0：" + ratePerSecond);
+        }
+        this.name = name;
+        this.ratePerSecond = ratePerSecond;
+        this.burst = Math.max(1, burst);
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        if (intervalNanos > Long.MAX_VALUE / 4 / this.burst) {
+            throw new IllegalArgumentException("限流组" + name + "的每秒令牌数过小：" + ratePerSecond);
+        }
+        this.maxBuckets = maxBuckets;
+        long now = System.nanoTime();
+        for (int i = 0; i < OVERFLOW_BUCKETS; i++) {
+            overflowBuckets[i] = new TokenBucket(intervalNanos, this.burst, now);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 为客户端取一个令牌
+     * @param client 客户端标识（用户ID或IP）
+     * @return 0表示放行，大于0表示被拒绝，值为建议的重试等待毫秒数
+     */
+    public long tryAcquire(String client) {
+        long now = System.nanoTime();
+        TokenBucket bucket = buckets.get(client);
+        if (bucket == null) {
+            if (buckets.size() >= maxBuckets) {
+                evictOnFull(now);
+            }
+            if (buckets.size() >= maxBuckets) {
+                // 客户端数量异常（例如伪造大量IP）：不再分配独立的桶，按标识散列到共享桶
+                overflowed.increment();
+                bucket = overflowBuckets[(client.hashCode() & 0x7fffffff) % OVERFLOW_BUCKETS];
+            } else {
+                bucket = buckets.computeIfAbsent(client, key -> new TokenBucket(intervalNanos, burst, now));
+            }
+        }
+        long waitNanos = bucket.tryAcquire(now);
+        if (waitNanos == 0) {
+            allowed.increment();
+            return 0;
+        }
+        rejected.increment();
+        rejectedByClient.computeIfAbsent(client, key -> new LongAdder()).increment();
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1;
+    }
+
+    /**
+     * 回收已装满的令牌桶（等价于新建的桶，删除不影响限流效果）
+     * @return 回收的数量
+     */
+    public int evictIdle() {
+        long now = System.nanoTime();
+        int before = buckets.size();
+        buckets.entrySet().removeIf(entry -> entry.getValue().isFull(now));
+        rejectedByClient.keySet().retainAll(buckets.keySet());
+        return before - buckets.size();
+    }
+
+    /**
+     * 获取限流指标
+     * @param topN 返回拒绝次数最多的前N个客户端
+     * @return 放行次数、拒绝次数、当前令牌桶数量和拒绝最多的客户端
+     */
+    public Map<String, Object> getMetrics(int topN) {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("ratePerSecond", ratePerSecond);
+        metrics.put("burst", burst);
+        metrics.put("allowed", allowed.sum());
+        metrics.put("rejected", rejected.sum());
+        metrics.put("buckets", buckets.size());
+        metrics.put("overflowed", overflowed.sum());
+        Map<String, Long> topClients = new HashMap<>();
+        rejectedByClient.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+                .limit(topN)
+                .forEach(entry -> topClients.put(entry.getKey(), entry.getValue().sum()));
+        metrics.put("topRejectedClients", topClients);
+        return metrics;
+    }
+
+    /**
+     * 令牌桶数量达到上限时立即回收一次已装满的桶，每秒至多一次
+     */
+    private void evictOnFull(long now) {
+        long last = lastEvictOnFull.get();
+        if (now - last >= EVICT_ON_FULL_INTERVAL_NANOS && lastEvictOnFull.compareAndSet(last, now)) {
+            evictIdle();
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.crm.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶
+ * 不单独保存令牌数，而是保存“令牌桶重新装满的理论时间”（纳秒）：每取一个令牌该时间后移一个发放间隔，
+ * 后移后超出当前时间burst个间隔即说明桶已空。一次取令牌只有一个AtomicLong的CAS，没有锁和定时补充线程
+ */
+public class TokenBucket {
+
+    private final long intervalNanos;  // 发放一个令牌的间隔
+    private final long burstNanos;  // 桶容量对应的时长
+    private final AtomicLong fullAt;  // 桶重新装满的理论时间
+
+    /**
+     * @param intervalNanos 发放一个令牌的间隔（纳秒）
+     * @param burst 桶容量（允许的突发请求数）
+     * @param now 当前时间（纳秒）
+     */
+    public TokenBucket(long intervalNanos, int burst, long now) {
+        this.intervalNanos = intervalNanos;
+        this.burstNanos = intervalNanos * burst;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * 尝试取一个令牌
+     * @param now 当前时间（纳秒）
+     * @return 0表示成功，大于0表示被拒绝，值为需要等待的纳秒数
+     */
+    public long tryAcquire(long now) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + intervalNanos;
+            long waitNanos = next - now - burstNanos;
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 桶是否已装满（长时间未使用，可以回收）
+     * @param now 当前时间（纳秒）
+     * @return 是否已装满
+     */
+    public boolean isFull(long now) {
+        return fullAt.get() <= now;
+    }
+
+}
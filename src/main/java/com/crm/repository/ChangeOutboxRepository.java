@@ -0,0 +1,60 @@
+package com.crm.repository;
+
+import com.crm.model.ChangeOutbox;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 变更日志数据访问接口
+ */
+@Repository
+public interface ChangeOutboxRepository extends JpaRepository<ChangeOutbox, Long> {
+
+    /**
+     * 按ID顺序读取一页变更日志
+     * @param afterId 起始ID（不含）
+     * @param pageable 分页参数（只使用页大小）
+     * @return 变更日志列表
+     */
+    List<ChangeOutbox> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+
+    /**
+     * 查询指定时间之后写入的最小变更日志ID
+     * @param since 开始时间
+     * @return 最小ID，没有时返回null
+     */
+    @Query("SELECT MIN(o.id) FROM ChangeOutbox o WHERE o.createdAt >= :since")
+    Long findMinIdSince(@Param("since") LocalDateTime since);
+
+    /**
+     * 查询最小变更日志ID
+     * @return 最小ID，表为空时返回null
+     */
+    @Query("SELECT MIN(o.id) FROM ChangeOutbox o")
+    Long findMinId();
+
+    /**
+     * 查询最大变更日志ID
+     * @return 最大ID，表为空时返回null
+     */
+    @Query("SELECT MAX(o.id) FROM ChangeOutbox o")
+    Long findMaxId();
+
+    /**
+     * 物理删除一批过期的变更日志
+     * @param cutoff 写入时间早于该时间的记录可删除
+     * @param limit 本批最多删除的行数
+     * @return 删除的行数
+     */
+    @Modifying
+    @Query(value = "DELETE FROM change_outbox WHERE created_at < :cutoff LIMIT :limit", nativeQuery = true)
+    int purgeBefore(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+}
@@ -1,47 +1,22 @@
 package com.crm.repository;
 
 import com.crm.model.Customer;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
 
 /**
  * 客户数据访问接口，对应customers表
  */
 @Repository
-public interface CustomerRepository extends JpaRepository<Customer, Integer> {
-
-    /**
-     * 根据姓名和手机号模糊查询客户，支持分页
-     * @param name 客户姓名
-     * @param phone 客户手机号
-     * @param pageable 分页参数
-     * @return 分页客户列表
-     */
-    Page<Customer> findByNameContainingAndPhoneContaining(String name, String phone, Pageable pageable);
-
-    /**
-     * 根据来源查询客户，支持分页
-     * @param source 客户来源
-     * @param pageable 分页参数
-     * @return 分页客户列表
-     */
-    Page<Customer> findBySource(String source, Pageable pageable);
-
-    /**
-     * 根据姓名、手机号和来源模糊查询客户，支持分页
-     * @param name 客户姓名
-     * @param phone 客户手机号
-     * @param source 客户来源
-     * @param pageable 分页参数
-     * @return 分页客户列表
-     */
-    Page<Customer> findByNameContainingAndPhoneContainingAndSource(String name, String phone, String source, Pageable pageable);
+public interface CustomerRepository extends JpaRepository<Customer, Integer>, JpaSpecificationExecutor<Customer>, CustomerRepositoryCustom {
 
     /**
      * 根据来源统计客户数量
@@ -58,4 +33,66 @@ public interface CustomerRepository extends JpaRepository<Customer, Integer> {
      */
     long countByCreatedAtBetween(java.time.LocalDateTime startDateTime, java.time.LocalDateTime endDateTime);
 
+    /**
+     * 按ID顺序分批读取客户（键集分页，用于全表遍历）
+     * @param id 上一批的最大ID
+     * @param pageable 分页参数（仅使用每批数量）
+     * @return ID大于给定值的客户列表
+     */
+    List<Customer> findByIdGreaterThanOrderByIdAsc(Integer id, Pageable pageable);
+
+    /**
+     * 按ID顺序分批读取客户的ID、手机号、邮箱和手机号打包键（只查询需要的列，用于重复客户检测和来电查号）
+     * @param lastId 上一批的最大ID
+     * @param pageable 分页参数（仅使用每批数量）
+     * @return 每行为[id, phone, email, phoneKey]
+     */
+    @Query("SELECT c.id, c.phone, c.email, c.phoneKey FROM Customer c WHERE c.id > :lastId ORDER BY c.id")
+    List<Object[]> findContactsAfter(@Param("lastId") Integer lastId, Pageable pageable);
+
+    /**
+     * 根据手机号打包键查询客户ID（走idx_phone_key索引）
+     * @param phoneKey 手机号打包键
+     * @return 客户ID列表
+     */
+    @Query("SELECT c.id FROM Customer c WHERE c.phoneKey = :phoneKey ORDER BY c.id")
+    List<Integer> findIdsByPhoneKey(@Param("phoneKey") Long phoneKey);
+
+    /**
+     * 按ID顺序分批读取客户的漏斗分析字段（键集分页）
+     * @param lastId 上一批的最大ID
+     * @param pageable 分页参数（仅使用每批数量）
+     * @return 客户ID、来源、创建人ID和创建时间
+     */
+    @Query("SELECT c.id, c.source, c.createdBy, c.createdAt FROM Customer c WHERE c.id > :lastId ORDER BY c.id")
+    List<Object[]> findFunnelRowsAfter(@Param("lastId") Integer lastId, Pageable pageable);
+
+    /**
+     * 批量软删除客户
+     * @param ids 客户ID列表
+     * @return 软删除的客户数量
+     */
+    @Modifying
+    @Query("UPDATE Customer c SET c.deleted = true, c.deletedAt = CURRENT_TIMESTAMP, c.version = c.version + 1 WHERE c.id IN :ids AND c.deleted = false")
+    int softDeleteByIds(@Param("ids") List<Integer> ids);
+
+    /**
+     * 查询指定时间之后软删除的客户ID（原生查询，不受@Where约束，走idx_deleted_at索引）
+     * @param since 开始时间
+     * @return 客户ID列表
+     */
+    @Query(value = "SELECT id FROM customers WHERE deleted_at >= :since ORDER BY id", nativeQuery = true)
+    List<Integer> findDeletedIdsSince(@Param("since") LocalDateTime since);
+
+    /**
+     * 物理删除一批软删除时间早于截止时间、且已没有跟进记录的客户
+     * @param cutoff 截止时间
+     * @param limit 每批数量
+     * @return 删除的客户数量
+     */
+    @Modifying
+    @Query(value = "DELETE FROM customers WHERE deleted_at < :cutoff "
+            + "AND NOT EXISTS (SELECT 1 FROM followups f WHERE f.customer_id = customers.id) LIMIT :limit", nativeQuery = true)
+    int purgeDeleted(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
 }
@@ -0,0 +1,19 @@
+package com.crm.repository;
+
+import java.util.Map;
+
+/**
+ * 客户数据访问扩展接口，提供派生查询无法表达的操作
+ */
+public interface CustomerRepositoryCustom {
+
+    /**
+     * 部分更新客户：生成只包含指定列的UPDATE语句，并以版本号做乐观锁校验
+     * @param id 客户ID
+     * @param expectedVersion 客户端读取时的版本号
+     * @param changes 要更新的属性名 -> 新值
+     * @return 更新的行数，0表示客户不存在或版本号不匹配
+     */
+    int patch(Integer id, Integer expectedVersion, Map<String, Object> changes);
+
+}
@@ -0,0 +1,49 @@
+package com.crm.repository;
+
+import com.crm.lookup.LabelDictionary;
+import com.crm.model.Customer;
+import com.crm.util.ContactUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Root;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * 客户数据访问扩展实现
+ */
+public class CustomerRepositoryImpl implements CustomerRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public int patch(Integer id, Integer expectedVersion, Map<String, Object> changes) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Customer> update = cb.createCriteriaUpdate(Customer.class);
+        Root<Customer> root = update.from(Customer.class);
+
+        // 批量更新不触发实体回调，需先确保来源名称已有编码
+        if (changes.get("source") instanceof String) {
+            LabelDictionary.CUSTOMER_SOURCE.register((String) changes.get("source"));
+        }
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            update.set(root.get(change.getKey()), change.getValue());
+        }
+        // 同理，手机号变更时手动计算打包键
+        if (changes.containsKey("phone")) {
+            update.set(root.<Long>get("phoneKey"), ContactUtils.packPhone((String) changes.get("phone")));
+        }
+        update.set(root.<LocalDateTime>get("updatedAt"), LocalDateTime.now());
+        update.set(root.<Integer>get("version"), cb.sum(root.<Integer>get("version"), 1));
+        // 批量更新不受@Where约束，需显式排除已软删除的客户
+        update.where(cb.equal(root.get("id"), id), cb.equal(root.get("version"), expectedVersion),
+                cb.isFalse(root.get("deleted")));
+
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+}
@@ -0,0 +1,13 @@
+package com.crm.repository;
+
+import com.crm.model.CustomerSource;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * 客户来源编码表数据访问接口，对应customer_sources表
+ */
+@Repository
+public interface CustomerSourceRepository extends JpaRepository<CustomerSource, Integer> {
+
+}
@@ -0,0 +1,85 @@
+package com.crm.repository;
+
+import com.crm.model.Customer;
+import com.crm.model.CustomerFilter;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 客户查询条件构建，只为实际提供的筛选条件生成谓词
+ */
+public class CustomerSpecifications {
+
+    private static final char LIKE_ESCAPE = '\\';
+
+    /**
+     * 根据筛选条件构建查询规格
+     * @param filter 筛选条件
+     * @return 查询规格
+     */
+    public static Specification<Customer> fromFilter(CustomerFilter filter) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            CustomerFilter.MatchMode mode = filter.getMatchMode() != null ? filter.getMatchMode() : CustomerFilter.MatchMode.CONTAINS;
+
+            addText(predicates, cb, root.get("name"), filter.getName(), mode);
+            addText(predicates, cb, root.get("phone"), filter.getPhone(), mode);
+            addText(predicates, cb, root.get("company"), filter.getCompany(), mode);
+            if (hasText(filter.getSource())) {
+                predicates.add(cb.equal(root.get("source"), filter.getSource()));
+            }
+            if (filter.getCreatedBy() != null) {
+                predicates.add(cb.equal(root.get("createdBy"), filter.getCreatedBy()));
+            }
+            if (filter.getCreatedFrom() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("createdAt"), filter.getCreatedFrom()));
+            }
+            if (filter.getCreatedTo() != null) {
+                predicates.add(cb.lessThan(root.get("createdAt"), filter.getCreatedTo()));
+            }
+
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    private static void addText(List<Predicate> predicates, CriteriaBuilder cb, Path<String> path,
+                                String value, CustomerFilter.MatchMode mode) {
+        if (!hasText(value)) {
+            return;
+        }
+        switch (mode) {
+            case EXACT:
+                predicates.add(cb.equal(path, value));
+                break;
+            case PREFIX:
+                predicates.add(cb.like(path, escapeLike(value) + "%", LIKE_ESCAPE));
+                break;
+            default:
+                predicates.add(cb.like(path, "%" + escapeLike(value) + "%", LIKE_ESCAPE));
+        }
+    }
+
+    /**
+     * 转义LIKE通配符，避免用户输入的%和_被当作通配符
+     */
+    private static String escapeLike(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                sb.append(LIKE_ESCAPE);
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isEmpty();
+    }
+}
@@ -0,0 +1,146 @@
+package com.crm.repository;
+
+import com.crm.model.FollowupArchive;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 归档跟进记录数据访问接口，对应followups_archive表
+ */
+@Repository
+public interface FollowupArchiveRepository extends JpaRepository<FollowupArchive, Integer> {
+
+    /**
+     * 把一批跟进记录整行复制到归档表（INSERT ... SELECT，不经过应用内存）
+     * @param ids 跟进记录ID列表
+     * @return 复制的记录数量
+     */
+    @Modifying
+    @Query(value = "INSERT INTO followups_archive (id, customer_id, user_id, follow_time, method_id, content, "
+            + "next_follow_reminder, created_at, updated_at) "
+            + "SELECT id, customer_id, user_id, follow_time, method_id, content, next_follow_reminder, created_at, updated_at "
+            + "FROM followups WHERE id IN (:ids)", nativeQuery = true)
+    int copyFromActive(@Param("ids") List<Integer> ids);
+
+    /**
+     * 按跟进时间倒序读取归档记录，支持任意偏移量（与活跃表分页衔接）
+     * @param offset 偏移量
+     * @param limit 读取数量
+     * @return 归档跟进记录列表
+     */
+    @Query(value = "SELECT * FROM followups_archive WHERE deleted = 0 ORDER BY follow_time DESC LIMIT :limit OFFSET :offset", nativeQuery = true)
+    List<FollowupArchive> findRecent(@Param("offset") long offset, @Param("limit") int limit);
+
+    /**
+     * 按跟进时间倒序读取客户的归档记录，支持任意偏移量
+     * @param customerId 客户ID
+     * @param offset 偏移量
+     * @param limit 读取数量
+     * @return 归档跟进记录列表
+     */
+    @Query(value = "SELECT * FROM followups_archive WHERE customer_id = :customerId AND deleted = 0 "
+            + "ORDER BY follow_time DESC LIMIT :limit OFFSET :offset", nativeQuery = true)
+    List<FollowupArchive> findRecentByCustomerId(@Param("customerId") Integer customerId,
+                                                 @Param("offset") long offset, @Param("limit") int limit);
+
+    /**
+     * 读取一段客户ID区间内归档记录的跟进时间和下次跟进提醒（漏斗分析用，按客户ID和跟进时间排序）
+     * @param fromId 起始客户ID（含）
+     * @param toId 结束客户ID（含）
+     * @return 客户ID、跟进时间和下次跟进提醒时间
+     */
+    @Query("SELECT f.customerId, f.followTime, f.nextFollowReminder FROM FollowupArchive f "
+            + "WHERE f.customerId BETWEEN :fromId AND :toId ORDER BY f.customerId, f.followTime")
+    List<Object[]> findFunnelRows(@Param("fromId") Integer fromId, @Param("toId") Integer toId);
+
+    /**
+     * 按ID顺序分批读取归档记录的分析字段（键集分页，用于构建列存储快照）
+     * @param lastId 上一批的最大ID
+     * @param pageable 分页参数（仅使用每批数量）
+     * @return 跟进记录ID、跟进时间、跟进方式和跟进人ID
+     */
+    @Query("SELECT f.id, f.followTime, f.followMethod, f.userId FROM FollowupArchive f WHERE f.id > :lastId ORDER BY f.id")
+    List<Object[]> findAnalyticsRowsAfter(@Param("lastId") Integer lastId, Pageable pageable);
+
+    /**
+     * 统计客户的归档记录数量
+     * @param customerId 客户ID
+     * @return 归档记录数量
+     */
+    long countByCustomerId(Integer customerId);
+
+    /**
+     * 根据跟进方式统计归档记录数量
+     * @return 跟进方式分布统计数据
+     */
+    @Query("SELECT f.followMethod, COUNT(f.id) FROM FollowupArchive f GROUP BY f.followMethod")
+    List<Object[]> countByFollowMethod();
+
+    /**
+     * 根据跟进时间范围统计归档记录数量
+     * @param startDateTime 开始时间
+     * @param endDateTime 结束时间
+     * @return 归档记录数量
+     */
+    long countByFollowTimeBetween(LocalDateTime startDateTime, LocalDateTime endDateTime);
+
+    /**
+     * 查询归档记录中最晚的跟进时间
+     * @return 最晚跟进时间，归档表为空时返回null
+     */
+    @Query("SELECT MAX(f.followTime) FROM FollowupArchive f")
+    LocalDateTime findMaxFollowTime();
+
+    /**
+     * 读取任意一条未删除归档记录的ID（判断归档表是否为空，不统计全表）
+     * @return 至多一个ID
+     */
+    @Query(value = "SELECT id FROM followups_archive WHERE deleted = 0 LIMIT 1", nativeQuery = true)
+    List<Integer> findAnyId();
+
+    /**
+     * 查询客户的一批未删除归档记录ID（用于分批级联软删除）
+     * @param customerId 客户ID
+     * @param pageable 分页参数（仅使用每批数量）
+     * @return 跟进记录ID列表
+     */
+    @Query("SELECT f.id FROM FollowupArchive f WHERE f.customerId = :customerId ORDER BY f.id")
+    List<Integer> findIdsByCustomerId(@Param("customerId") Integer customerId, Pageable pageable);
+
+    /**
+     * 按ID批量软删除归档记录
+     * @param ids 跟进记录ID列表
+     * @return 软删除的记录数量
+     */
+    @Modifying
+    @Query("UPDATE FollowupArchive f SET f.deleted = true, f.deletedAt = CURRENT_TIMESTAMP WHERE f.id IN :ids AND f.deleted = false")
+    int softDeleteByIds(@Param("ids") List<Integer> ids);
+
+    /**
+     * 物理删除一批软删除时间早于截止时间的归档记录
+     * @param cutoff 截止时间
+     * @param limit 每批数量
+     * @return 删除的记录数量
+     */
+    @Modifying
+    @Query(value = "DELETE FROM followups_archive WHERE deleted_at < :cutoff LIMIT :limit", nativeQuery = true)
+    int purgeDeleted(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    /**
+     * 把一批客户的归档记录转移到目标客户
+     * @param targetId 目标客户ID
+     * @param sourceIds 被合并的客户ID列表
+     * @return 转移的记录数量
+     */
+    @Modifying
+    @Query("UPDATE FollowupArchive f SET f.customerId = :targetId WHERE f.customerId IN :sourceIds")
+    int reassignCustomer(@Param("targetId") Integer targetId, @Param("sourceIds") List<Integer> sourceIds);
+
+}
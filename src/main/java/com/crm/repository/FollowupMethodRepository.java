@@ -0,0 +1,13 @@
+package com.crm.repository;
+
+import com.crm.model.FollowupMethod;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * 跟进方式编码表数据访问接口，对应followup_methods表
+ */
+@Repository
+public interface FollowupMethodRepository extends JpaRepository<FollowupMethod, Integer> {
+
+}
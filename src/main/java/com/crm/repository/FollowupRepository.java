@@ -4,9 +4,12 @@ import com.crm.model.Followup;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -37,6 +40,80 @@ public interface FollowupRepository extends JpaRepository<Followup, Integer> {
      * @param endDateTime 结束时间
      * @return 跟进记录数量
      */
-    long countByFollowTimeBetween(java.time.LocalDateTime startDateTime, java.time.LocalDateTime endDateTime);
+    long countByFollowTimeBetween(LocalDateTime startDateTime, LocalDateTime endDateTime);
+
+    /**
+     * 按ID顺序分批读取跟进记录（键集分页，用于全表遍历）
+     * @param id 上一批的最大ID
+     * @param pageable 分页参数（仅使用每批数量）
+     * @return ID大于给定值的跟进记录列表
+     */
+    List<Followup> findByIdGreaterThanOrderByIdAsc(Integer id, Pageable pageable);
+
+    /**
+     * 查询一批跟进时间早于截止时间的跟进记录ID（用于归档，按ID顺序走主键）
+     * @param cutoff 截止时间
+     * @param pageable 分页参数（仅使用每批数量）
+     * @return 跟进记录ID列表
+     */
+    @Query("SELECT f.id FROM Followup f WHERE f.followTime < :cutoff ORDER BY f.id")
+    List<Integer> findArchivableIds(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+
+    /**
+     * 读取一段客户ID区间内的跟进时间和下次跟进提醒（漏斗分析用，按客户ID和跟进时间排序）
+     * @param fromId 起始客户ID（含）
+     * @param toId 结束客户ID（含）
+     * @return 客户ID、跟进时间和下次跟进提醒时间
+     */
+    @Query("SELECT f.customerId, f.followTime, f.nextFollowReminder FROM Followup f "
+            + "WHERE f.customerId BETWEEN :fromId AND :toId ORDER BY f.customerId, f.followTime")
+    List<Object[]> findFunnelRows(@Param("fromId") Integer fromId, @Param("toId") Integer toId);
+
+    /**
+     * 按ID顺序分批读取跟进记录的分析字段（键集分页，用于构建列存储快照）
+     * @param lastId 上一批的最大ID
+     * @param pageable 分页参数（仅使用每批数量）
+     * @return 跟进记录ID、跟进时间、跟进方式和跟进人ID
+     */
+    @Query("SELECT f.id, f.followTime, f.followMethod, f.userId FROM Followup f WHERE f.id > :lastId ORDER BY f.id")
+    List<Object[]> findAnalyticsRowsAfter(@Param("lastId") Integer lastId, Pageable pageable);
+
+    /**
+     * 把一批客户的跟进记录全部转移到目标客户（单条UPDATE语句完成）
+     * @param targetId 目标客户ID
+     * @param sourceIds 被合并的客户ID列表
+     * @return 转移的跟进记录数量
+     */
+    @Modifying
+    @Query("UPDATE Followup f SET f.customerId = :targetId, f.updatedAt = CURRENT_TIMESTAMP WHERE f.customerId IN :sourceIds")
+    int reassignCustomer(@Param("targetId") Integer targetId, @Param("sourceIds") List<Integer> sourceIds);
+
+    /**
+     * 查询客户的一批未删除跟进记录ID（走customer_id索引，用于分批级联软删除）
+     * @param customerId 客户ID
+     * @param pageable 分页参数（仅使用每批数量）
+     * @return 跟进记录ID列表
+     */
+    @Query("SELECT f.id FROM Followup f WHERE f.customerId = :customerId ORDER BY f.id")
+    List<Integer> findIdsByCustomerId(@Param("customerId") Integer customerId, Pageable pageable);
+
+    /**
+     * 按ID批量软删除跟进记录
+     * @param ids 跟进记录ID列表
+     * @return 软删除的跟进记录数量
+     */
+    @Modifying
+    @Query("UPDATE Followup f SET f.deleted = true, f.deletedAt = CURRENT_TIMESTAMP WHERE f.id IN :ids AND f.deleted = false")
+    int softDeleteByIds(@Param("ids") List<Integer> ids);
+
+    /**
+     * 物理删除一批软删除时间早于截止时间的跟进记录
+     * @param cutoff 截止时间
+     * @param limit 每批数量
+     * @return 删除的跟进记录数量
+     */
+    @Modifying
+    @Query(value = "DELETE FROM followups WHERE deleted_at < :cutoff LIMIT :limit", nativeQuery = true)
+    int purgeDeleted(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
 
 }
@@ -0,0 +1,22 @@
+package com.crm.repository;
+
+import com.crm.model.FunnelStatistic;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * 转化漏斗统计结果数据访问接口，对应funnel_statistics表
+ */
+@Repository
+public interface FunnelStatisticRepository extends JpaRepository<FunnelStatistic, Integer> {
+
+    /**
+     * 根据统计维度查询统计结果
+     * @param dimension 统计维度
+     * @return 统计结果列表，按指标和客户数量排序
+     */
+    List<FunnelStatistic> findByDimensionOrderByMetricAscCustomerCountDesc(String dimension);
+
+}
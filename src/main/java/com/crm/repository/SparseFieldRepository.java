@@ -0,0 +1,151 @@
+package com.crm.repository;
+
+import com.crm.lookup.LabelDictionary;
+import com.crm.model.Customer;
+import com.crm.model.Followup;
+import com.crm.model.FollowupArchive;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 稀疏字段查询：只SELECT调用方请求的列（Criteria元组查询），结果按请求顺序组成Map返回，
+ * 未请求的列既不从数据库读取也不序列化。实体的@Where和属性转换器（来源、跟进方式编码）照常生效；
+ * 编码列回填完成前，编码为空的旧行和实体getter一样从旧的字符串列读取名称
+ */
+@Repository
+public class SparseFieldRepository {
+
+    private static final String ID_ALIAS = "__id";
+
+    /**
+     * 有旧字符串列的编码属性：实体类.属性名 -> 名称字典和业务表名
+     */
+    private static final Map<String, LegacyField> LEGACY_FIELDS = new HashMap<>();
+
+    static {
+        LEGACY_FIELDS.put(Customer.class.getName() + ".source", new LegacyField(LabelDictionary.CUSTOMER_SOURCE, "customers"));
+        LEGACY_FIELDS.put(Followup.class.getName() + ".followMethod", new LegacyField(LabelDictionary.FOLLOW_METHOD, "followups"));
+        LEGACY_FIELDS.put(FollowupArchive.class.getName() + ".followMethod", new LegacyField(LabelDictionary.FOLLOW_METHOD, "followups_archive"));
+    }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * 分页查询指定字段
+     * @param entityClass 实体类
+     * @param fields 实体属性名（须由调用方校验）
+     * @param spec 查询条件，为null时不筛选
+     * @param pageable 分页和排序参数
+     * @param <T> 实体类型
+     * @return 分页结果，每行为属性名 -> 值
+     */
+    public <T> Page<Map<String, Object>> findAll(Class<T> entityClass, List<String> fields, Specification<T> spec, Pageable pageable) {
+        List<Map<String, Object>> content = findAll(entityClass, fields, spec, pageable.getSort(), pageable.getOffset(), pageable.getPageSize());
+        return new PageImpl<>(content, pageable, count(entityClass, spec));
+    }
+
+    /**
+     * 按偏移量查询指定字段
+     * @param entityClass 实体类
+     * @param fields 实体属性名（须由调用方校验）
+     * @param spec 查询条件，为null时不筛选
+     * @param sort 排序
+     * @param offset 偏移量
+     * @param limit 读取数量
+     * @param <T> 实体类型
+     * @return 每行为属性名 -> 值
+     */
+    public <T> List<Map<String, Object>> findAll(Class<T> entityClass, List<String> fields, Specification<T> spec,
+                                                 Sort sort, long offset, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<T> root = query.from(entityClass);
+        List<Selection<?>> selections = new ArrayList<>(fields.size());
+        boolean hasLegacyField = false;
+        for (String field : fields) {
+            selections.add(root.get(field).alias(field));
+            hasLegacyField |= LEGACY_FIELDS.containsKey(entityClass.getName() + "." + field);
+        }
+        if (hasLegacyField) {
+            selections.add(root.get("id").alias(ID_ALIAS));
+        }
+        query.multiselect(selections);
+        if (spec != null) {
+            Predicate predicate = spec.toPredicate(root, query, cb);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+        List<Order> orders = new ArrayList<>();
+        for (Sort.Order order : sort) {
+            orders.add(order.isAscending() ? cb.asc(root.get(order.getProperty())) : cb.desc(root.get(order.getProperty())));
+        }
+        query.orderBy(orders);
+
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+        typedQuery.setFirstResult((int) offset);
+        typedQuery.setMaxResults(limit);
+        List<Tuple> tuples = typedQuery.getResultList();
+
+        List<Map<String, Object>> rows = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (String field : fields) {
+                Object value = tuple.get(field);
+                LegacyField legacy = value == null && hasLegacyField ? LEGACY_FIELDS.get(entityClass.getName() + "." + field) : null;
+                if (legacy != null) {
+                    value = legacy.dictionary.legacyLabel(legacy.table, (Integer) tuple.get(ID_ALIAS));
+                }
+                row.put(field, value);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private <T> long count(Class<T> entityClass, Specification<T> spec) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<T> root = query.from(entityClass);
+        query.select(cb.count(root));
+        if (spec != null) {
+            Predicate predicate = spec.toPredicate(root, query, cb);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    private static final class LegacyField {
+        private final LabelDictionary dictionary;
+        private final String table;
+
+        private LegacyField(LabelDictionary dictionary, String table) {
+            this.dictionary = dictionary;
+            this.table = table;
+        }
+    }
+
+}
@@ -0,0 +1,523 @@
+package com.crm.search;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 内存倒排索引（紧凑存储）
+ * 每个文档分配一个递增的内部文档号，倒排表按文档号递增追加，文档号差值和词频用变长整数编码在byte数组中，
+ * 一条倒排项通常只占2~3个字节；文档号 -> 实体ID/类型/长度、实体ID -> 文档号都是原始类型数组，没有装箱对象。
+ * 更新文档时分配新文档号，旧文档号和被删除的文档只标记删除，已删除文档过多时由{@link #compact()}清理并重新编号。
+ * 查询时要求文档包含全部查询词，按BM25打分排序（文档频率包含尚未清理的已删除文档）
+ */
+public class FullTextIndex {
+
+    /**
+     * 文档类型
+     */
+    public enum DocType {
+        CUSTOMER, FOLLOWUP
+    }
+
+    private static final int FILE_MAGIC = 0x43524D49;  // "CRMI"
+    private static final int FILE_VERSION = 2;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int DELETED = -1;  // 已删除文档的长度标记
+    private static final int COMPACT_MIN_DELETED = 10000;  // 已删除文档少于该数量时不整理
+
+    private Map<String, Postings> postings = new HashMap<>();  // 词 -> 倒排表
+    private int[][] docNoById = {new int[0], new int[0]};  // [文档类型][实体ID] -> 文档号 + 1，0表示未索引
+    private int[] docIds = new int[1024];  // 文档号 -> 实体ID
+    private byte[] docTypes = new byte[1024];  // 文档号 -> 文档类型
+    private int[] docLengths = new int[1024];  // 文档号 -> 词数，已删除为DELETED
+    private int docCount;  // 已分配的文档号数量（含已删除）
+    private int liveCount;  // 有效文档数量
+    private long totalLength;  // 有效文档的词数之和，用于计算平均文档长度
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object writeMutex = new Object();  // 串行化写操作和整理，整理期间查询不受影响
+
+    /**
+     * 倒排表：[文档号差值, 词频]变长整数序列，文档号递增
+     */
+    private static final class Postings {
+        byte[] data;
+        int size;  // 已使用的字节数
+        int count;  // 倒排项数量（含已删除文档）
+        int lastDocNo;
+
+        Postings(int capacity) {
+            data = new byte[capacity];
+        }
+
+        void add(int docNo, int tf) {
+            if (data.length - size < 10) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, 16));
+            }
+            writeVarint(docNo - lastDocNo);
+            writeVarint(tf);
+            lastDocNo = docNo;
+            count++;
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+    }
+
+    /**
+     * 倒排表的顺序读取游标
+     */
+    private static final class Cursor {
+        final Postings postings;
+        int pos;
+        int docNo = -1;
+        int tf;
+
+        Cursor(Postings postings) {
+            this.postings = postings;
+        }
+
+        boolean next() {
+            if (pos >= postings.size) {
+                return false;
+            }
+            docNo = Math.max(docNo, 0) + readVarint();
+            tf = readVarint();
+            return true;
+        }
+
+        /**
+         * 前进到第一个文档号不小于target的倒排项
+         * @return 是否还有倒排项
+         */
+        boolean advanceTo(int target) {
+            while (docNo < target) {
+                if (!next()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int readVarint() {
+            byte[] data = postings.data;
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    /**
+     * 命中结果
+     */
+    public static final class Hit {
+        private final DocType type;
+        private final int id;
+        private final double score;
+
+        Hit(DocType type, int id, double score) {
+            this.type = type;
+            this.id = id;
+            this.score = score;
+        }
+
+        public DocType getType() {
+            return type;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * 分页查询结果
+     */
+    public static final class Result {
+        private final long total;
+        private final List<Hit> hits;
+
+        Result(long total, List<Hit> hits) {
+            this.total = total;
+            this.hits = hits;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public List<Hit> getHits() {
+            return hits;
+        }
+    }
+
+    /**
+     * 添加或替换文档
+     * @param type 文档类型
+     * @param id 实体ID
+     * @param text 文档内容
+     */
+    public void put(DocType type, int id, String text) {
+        Map<String, Integer> freqs = new HashMap<>();
+        for (String token : CjkBigramTokenizer.tokenize(text)) {
+            freqs.merge(token, 1, Integer::sum);
+        }
+
+        synchronized (writeMutex) {
+            lock.writeLock().lock();
+            try {
+                removeInternal(type, id);
+                if (!freqs.isEmpty()) {
+                    addInternal(type, id, freqs);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 删除文档
+     * @param type 文档类型
+     * @param id 实体ID
+     */
+    public void remove(DocType type, int id) {
+        synchronized (writeMutex) {
+            lock.writeLock().lock();
+            try {
+                removeInternal(type, id);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 查询
+     * @param query 查询语句
+     * @param offset 跳过的命中数
+     * @param limit 返回的命中数
+     * @return 按得分降序的分页结果
+     */
+    public Result search(String query, int offset, int limit) {
+        List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(CjkBigramTokenizer.tokenize(query)));
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return new Result(0, Collections.<Hit>emptyList());
+        }
+
+        lock.readLock().lock();
+        try {
+            List<Cursor> cursors = new ArrayList<>();
+            for (String term : queryTerms) {
+                Postings list = postings.get(term);
+                if (list == null) {
+                    return new Result(0, Collections.<Hit>emptyList());
+                }
+                cursors.add(new Cursor(list));
+            }
+            // 以文档频率最低的词为主导，其余倒排表按文档号跳进求交集
+            cursors.sort(Comparator.comparingInt(c -> c.postings.count));
+
+            double avgLength = liveCount == 0 ? 1 : (double) totalLength / liveCount;
+            double[] idf = new double[cursors.size()];
+            for (int i = 0; i < idf.length; i++) {
+                int df = cursors.get(i).postings.count;
+                idf[i] = Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+            }
+
+            int topN = offset + limit;
+            PriorityQueue<Hit> top = new PriorityQueue<>(Comparator.comparingDouble(Hit::getScore));
+            long total = 0;
+            Cursor lead = cursors.get(0);
+            candidates:
+            while (lead.next()) {
+                int docNo = lead.docNo;
+                if (docLengths[docNo] == DELETED) {
+                    continue;
+                }
+                double norm = K1 * (1 - B + B * docLengths[docNo] / avgLength);
+                double score = idf[0] * lead.tf * (K1 + 1) / (lead.tf + norm);
+                for (int i = 1; i < cursors.size(); i++) {
+                    Cursor cursor = cursors.get(i);
+                    if (!cursor.advanceTo(docNo)) {
+                        break candidates;
+                    }
+                    if (cursor.docNo != docNo) {
+                        continue candidates;
+                    }
+                    score += idf[i] * cursor.tf * (K1 + 1) / (cursor.tf + norm);
+                }
+                total++;
+                if (top.size() < topN) {
+                    top.add(toHit(docNo, score));
+                } else if (score > top.peek().getScore()) {
+                    top.poll();
+                    top.add(toHit(docNo, score));
+                }
+            }
+
+            List<Hit> hits = new ArrayList<>(top);
+            hits.sort(Comparator.comparingDouble(Hit::getScore).reversed());
+            if (offset >= hits.size()) {
+                return new Result(total, Collections.<Hit>emptyList());
+            }
+            return new Result(total, hits.subList(offset, hits.size()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 整理：已删除文档超过有效文档数量时，去掉倒排表中的已删除文档并重新编号
+     * 整理期间写操作等待，查询照常使用旧数据；新数据构建完成后短暂持有写锁替换
+     * @return 是否执行了整理
+     */
+    public boolean compact() {
+        synchronized (writeMutex) {
+            int deleted = docCount - liveCount;
+            if (deleted < COMPACT_MIN_DELETED || deleted < liveCount) {
+                return false;
+            }
+            int[] remap = new int[docCount];
+            int[] ids = new int[Math.max(liveCount, 1024)];
+            byte[] types = new byte[ids.length];
+            int[] lengths = new int[ids.length];
+            int[][] byId = {new int[docNoById[0].length], new int[docNoById[1].length]};
+            int next = 0;
+            for (int docNo = 0; docNo < docCount; docNo++) {
+                if (docLengths[docNo] == DELETED) {
+                    remap[docNo] = DELETED;
+                    continue;
+                }
+                remap[docNo] = next;
+                ids[next] = docIds[docNo];
+                types[next] = docTypes[docNo];
+                lengths[next] = docLengths[docNo];
+                byId[types[next]][ids[next]] = next + 1;
+                next++;
+            }
+
+            Map<String, Postings> compacted = new HashMap<>(postings.size() * 4 / 3 + 1);
+            for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+                Postings filtered = new Postings(Math.min(entry.getValue().size, 64));
+                Cursor cursor = new Cursor(entry.getValue());
+                while (cursor.next()) {
+                    if (remap[cursor.docNo] != DELETED) {
+                        filtered.add(remap[cursor.docNo], cursor.tf);
+                    }
+                }
+                if (filtered.count > 0) {
+                    filtered.data = Arrays.copyOf(filtered.data, filtered.size);
+                    compacted.put(entry.getKey(), filtered);
+                }
+            }
+
+            lock.writeLock().lock();
+            try {
+                postings = compacted;
+                docNoById = byId;
+                docIds = ids;
+                docTypes = types;
+                docLengths = lengths;
+                docCount = next;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 获取已索引的文档数量
+     * @return 文档数量
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取不同词的数量
+     * @return 词数量
+     */
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取倒排表占用的字节数（已分配的数组容量）
+     * @return 字节数
+     */
+    public long postingBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (Postings list : postings.values()) {
+                bytes += list.data.length;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 把索引写入输出流（文档表和编码后的倒排表原样写出，加载时不需要重新分词）
+     * @param out 输出流
+     * @throws IOException 写入失败
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(docCount);
+            for (int docNo = 0; docNo < docCount; docNo++) {
+                out.writeInt(docIds[docNo]);
+                out.writeByte(docTypes[docNo]);
+                out.writeInt(docLengths[docNo]);
+            }
+            out.writeInt(postings.size());
+            for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+                Postings list = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(list.count);
+                out.writeInt(list.lastDocNo);
+                out.writeInt(list.size);
+                out.write(list.data, 0, list.size);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 从输入流加载索引
+     * @param in 输入流
+     * @return 索引
+     * @throws IOException 文件损坏或版本不匹配
+     */
+    public static FullTextIndex readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+            throw new IOException("全文索引文件格式不正确");
+        }
+        FullTextIndex index = new FullTextIndex();
+        int docCount = in.readInt();
+        index.ensureDocCapacity(docCount);
+        for (int docNo = 0; docNo < docCount; docNo++) {
+            int id = in.readInt();
+            byte type = in.readByte();
+            int length = in.readInt();
+            index.docIds[docNo] = id;
+            index.docTypes[docNo] = type;
+            index.docLengths[docNo] = length;
+            if (length != DELETED) {
+                index.setDocNo(type, id, docNo + 1);
+                index.liveCount++;
+                index.totalLength += length;
+            }
+        }
+        index.docCount = docCount;
+        int termCount = in.readInt();
+        index.postings = new HashMap<>(termCount * 4 / 3 + 1);
+        for (int i = 0; i < termCount; i++) {
+            String term = in.readUTF();
+            int count = in.readInt();
+            int lastDocNo = in.readInt();
+            int size = in.readInt();
+            Postings list = new Postings(size);
+            in.readFully(list.data, 0, size);
+            list.size = size;
+            list.count = count;
+            list.lastDocNo = lastDocNo;
+            index.postings.put(term, list);
+        }
+        return index;
+    }
+
+    private void addInternal(DocType type, int id, Map<String, Integer> freqs) {
+        int docNo = docCount;
+        ensureDocCapacity(docNo + 1);
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : freqs.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), k -> new Postings(8)).add(docNo, entry.getValue());
+            length += entry.getValue();
+        }
+        docIds[docNo] = id;
+        docTypes[docNo] = (byte) type.ordinal();
+        docLengths[docNo] = length;
+        docCount++;
+        setDocNo(type.ordinal(), id, docNo + 1);
+        liveCount++;
+        totalLength += length;
+    }
+
+    private void removeInternal(DocType type, int id) {
+        int[] table = docNoById[type.ordinal()];
+        if (id < 0 || id >= table.length || table[id] == 0) {
+            return;
+        }
+        int docNo = table[id] - 1;
+        table[id] = 0;
+        totalLength -= docLengths[docNo];
+        docLengths[docNo] = DELETED;
+        liveCount--;
+    }
+
+    private void setDocNo(int type, int id, int value) {
+        int[] table = docNoById[type];
+        if (id >= table.length) {
+            table = Arrays.copyOf(table, Math.max(id + 1, table.length * 2));
+            docNoById[type] = table;
+        }
+        table[id] = value;
+    }
+
+    private void ensureDocCapacity(int capacity) {
+        if (capacity > docIds.length) {
+            int length = Math.max(capacity, docIds.length * 2);
+            docIds = Arrays.copyOf(docIds, length);
+            docTypes = Arrays.copyOf(docTypes, length);
+            docLengths = Arrays.copyOf(docLengths, length);
+        }
+    }
+
+    private Hit toHit(int docNo, double score) {
+        return new Hit(DocType.values()[docTypes[docNo]], docIds[docNo], score);
+    }
+}
@@ -0,0 +1,459 @@
+package com.crm.service;
+
+import com.crm.analytics.ColumnTable;
+import com.crm.analytics.ValueDictionary;
+import com.crm.event.EntityChangeEvent;
+import com.crm.model.Customer;
+import com.crm.model.Followup;
+import com.crm.profiling.JfrSupport;
+import com.crm.profiling.StatisticsEvent;
+import com.crm.repository.CustomerRepository;
+import com.crm.repository.FollowupArchiveRepository;
+import com.crm.repository.FollowupRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 内存列存储分析快照服务
+ * 定时把客户和跟进记录（含归档表）加载成列存储：主键和日期（epoch day）为int[]，
+ * 来源、跟进方式和用户ID字典编码为int[]。平时由实体变更事件增量修补，定时与数据库对账：
+ * 对账在当前快照上原地进行（逐行覆盖、删除数据库中已不存在的行并压缩），不再另建第二份快照，
+ * 内存峰值只比一份快照多一个按ID的位图。
+ * 任意维度组合的分组计数直接并行扫描内存数组完成，不访问MySQL
+ */
+@Service
+public class AnalyticsSnapshotService {
+
+    public static final String TABLE_CUSTOMERS = "customers";
+    public static final String TABLE_FOLLOWUPS = "followups";
+
+    private static final String COLUMN_DAY = "day";
+    private static final String COLUMN_SOURCE = "source";
+    private static final String COLUMN_METHOD = "method";
+    private static final String COLUMN_USER = "user";
+    private static final int LOAD_BATCH_SIZE = 5000;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private FollowupRepository followupRepository;
+
+    @Autowired
+    private FollowupArchiveRepository followupArchiveRepository;
+
+    @Autowired
+    private ChangeEventBusService changeEventBusService;
+
+    @Autowired
+    private ShardService shardService;
+
+    @Value("${crm.analytics.max-groups:262144}")
+    private int maxGroups;  // 单次查询允许的最大分组数量
+
+    private volatile Snapshot snapshot;  // 当前快照，首次构建完成前为null
+    private final Object rebuildLock = new Object();
+    private final List<EntityChangeEvent> pendingEvents = new ArrayList<>();  // 构建期间收到的变更事件
+    private boolean rebuilding;  // 是否正在构建（由rebuildLock保护）
+    private final AtomicBoolean building = new AtomicBoolean(false);
+
+    /**
+     * 一份完整的快照：两张列存储表和它们共用的字典
+     */
+    private static class Snapshot {
+        private final ColumnTable customers;
+        private final ColumnTable followups;
+        private final ValueDictionary<String> sources = new ValueDictionary<>();
+        private final ValueDictionary<String> methods = new ValueDictionary<>();
+        private final ValueDictionary<Integer> users = new ValueDictionary<>();
+        private volatile LocalDateTime builtAt;
+        private volatile long buildMs;
+
+        private Snapshot(int customerCapacity, int followupCapacity) {
+            customers = new ColumnTable(customerCapacity, COLUMN_DAY, COLUMN_SOURCE, COLUMN_USER);
+            followups = new ColumnTable(followupCapacity, COLUMN_DAY, COLUMN_METHOD, COLUMN_USER);
+        }
+    }
+
+    /**
+     * 订阅变更事件
+     */
+    @PostConstruct
+    public void subscribe() {
+        changeEventBusService.subscribe("analytics", this::onEntityChange);
+    }
+
+    /**
+     * 应用启动完成后在后台线程构建快照，不阻塞启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildInBackground() {
+        Thread loader = new Thread(this::rebuild, "crm-analytics-snapshot-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * 定时与数据库对账，修正增量修补遗漏的变化（如事件总线溢出期间丢失的事件、直接修改数据库的数据）
+     */
+    @Scheduled(fixedDelayString = "${crm.analytics.refresh-interval-ms:3600000}",
+            initialDelayString = "${crm.analytics.refresh-interval-ms:3600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * 首次按预计行数预分配并全量构建快照；已有快照时在原快照上对账。
+     * 期间的变更事件在完成前重放，覆盖从从库读到的旧数据
+     */
+    public void rebuild() {
+        if (!building.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Snapshot current = snapshot;
+            synchronized (rebuildLock) {
+                rebuilding = true;
+                pendingEvents.clear();
+            }
+            long start = System.currentTimeMillis();
+            Snapshot target = current != null ? current : newSnapshot();
+            BitSet customerIds = current != null ? new BitSet() : null;
+            BitSet followupIds = current != null ? new BitSet() : null;
+            load(target, customerIds, followupIds);
+            int removed = 0;
+            synchronized (rebuildLock) {
+                if (current != null) {
+                    // 扫描之后新增的行不在位图中，按期间收到的事件补上，避免被当作已删除
+                    for (EntityChangeEvent event : pendingEvents) {
+                        boolean isCustomer = event.getEntityType() == EntityChangeEvent.EntityType.CUSTOMER;
+                        (isCustomer ? customerIds : followupIds).set(event.getEntityId());
+                    }
+                    removed = target.customers.retainOnly(customerIds) + target.followups.retainOnly(followupIds);
+                }
+                for (EntityChangeEvent event : pendingEvents) {
+                    apply(target, event);
+                }
+                pendingEvents.clear();
+                target.builtAt = LocalDateTime.now();
+                target.buildMs = System.currentTimeMillis() - start;
+                snapshot = target;
+                rebuilding = false;
+            }
+            System.out.println("分析快照" + (current != null ? "对账" : "构建") + "完成：客户" + target.customers.size()
+                    + "个，跟进记录" + target.followups.size() + "条，移除" + removed + "行，用时" + target.buildMs + "ms");
+        } catch (Exception e) {
+            synchronized (rebuildLock) {
+                pendingEvents.clear();
+                rebuilding = false;
+            }
+            System.err.println("分析快照构建失败：" + e.getMessage());
+        } finally {
+            building.set(false);
+        }
+    }
+
+    /**
+     * 监听客户和跟进记录的变更（事务提交后，在事件总线的订阅线程上），增量修补快照
+     * @param event 实体变更事件
+     */
+    public void onEntityChange(EntityChangeEvent event) {
+        if (event.getEntityType() == EntityChangeEvent.EntityType.USER) {
+            return;
+        }
+        Snapshot current;
+        synchronized (rebuildLock) {
+            if (rebuilding) {
+                pendingEvents.add(event);
+            }
+            current = snapshot;
+        }
+        if (current != null) {
+            apply(current, event);
+        }
+    }
+
+    /**
+     * 快照是否已构建完成
+     * @return 是否可以查询
+     */
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * 获取快照状态
+     * @return 行数、字典大小和构建时间
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        Snapshot current = snapshot;
+        status.put("ready", current != null);
+        status.put("building", building.get());
+        if (current != null) {
+            status.put("customers", current.customers.size());
+            status.put("followups", current.followups.size());
+            status.put("sources", current.sources.size() - 1);
+            status.put("methods", current.methods.size() - 1);
+            status.put("users", current.users.size() - 1);
+            status.put("builtAt", current.builtAt);
+            status.put("buildMs", current.buildMs);
+        }
+        return status;
+    }
+
+    /**
+     * 分组计数查询
+     * @param table 查询的表：customers、followups
+     * @param groupBy 分组维度：day、user，以及customers表的source或followups表的method（按day分组时跳过日期为空的行）
+     * @param from 开始日期（含），为null时不限
+     * @param to 结束日期（含），为null时不限
+     * @param filters 等值过滤条件：维度名 -> 取值（user为用户ID）
+     * @return 分组结果，按计数倒序
+     */
+    public Map<String, Object> query(String table, List<String> groupBy, LocalDate from, LocalDate to, Map<String, String> filters) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        StatisticsEvent event = JfrSupport.isAvailable() ? new StatisticsEvent("analyticsQuery",
+                "table=" + table + ",groupBy=" + groupBy + ",from=" + from + ",to=" + to + ",filters=" + filters) : null;
+        if (event != null) {
+            event.begin();
+        }
+        boolean isCustomers = TABLE_CUSTOMERS.equals(table);
+        if (!isCustomers && !TABLE_FOLLOWUPS.equals(table)) {
+            throw new IllegalArgumentException("table只能是customers或followups");
+        }
+        ColumnTable columnTable = isCustomers ? current.customers : current.followups;
+        String stringColumn = isCustomers ? COLUMN_SOURCE : COLUMN_METHOD;
+        ValueDictionary<String> stringDictionary = isCustomers ? current.sources : current.methods;
+
+        // 过滤条件：日期范围和各维度的等值条件（转换为编码）
+        List<Integer> filterColumns = new ArrayList<>();
+        List<Integer> filterMin = new ArrayList<>();
+        List<Integer> filterMax = new ArrayList<>();
+        int dayColumn = columnTable.columnIndex(COLUMN_DAY);
+        // 指定日期范围时排除日期为空的行
+        int minDay = from == null ? ColumnTable.NULL_VALUE + 1 : (int) from.toEpochDay();
+        int maxDay = to == null ? Integer.MAX_VALUE : (int) to.toEpochDay();
+        if (from != null || to != null) {
+            filterColumns.add(dayColumn);
+            filterMin.add(minDay);
+            filterMax.add(maxDay);
+        }
+        boolean empty = false;
+        for (Map.Entry<String, String> filter : filters.entrySet()) {
+            int code;
+            if (COLUMN_USER.equals(filter.getKey())) {
+                try {
+                    code = current.users.lookup(Integer.valueOf(filter.getValue()));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("用户ID格式错误");
+                }
+            } else if (stringColumn.equals(filter.getKey())) {
+                code = stringDictionary.lookup(filter.getValue());
+            } else {
+                throw new IllegalArgumentException(table + "不支持按" + filter.getKey() + "过滤");
+            }
+            // 字典中不存在的取值不可能匹配任何行
+            empty |= code < 0;
+            filterColumns.add(columnTable.columnIndex(filter.getKey()));
+            filterMin.add(code);
+            filterMax.add(code);
+        }
+
+        // 分组列：字典编码列的取值范围是[0, 字典大小)，日期列取过滤范围与实际数据范围的交集
+        int[] groupColumns = new int[groupBy.size()];
+        int[] groupBase = new int[groupBy.size()];
+        int[] groupCardinality = new int[groupBy.size()];
+        long groups = 1;
+        for (int g = 0; g < groupBy.size(); g++) {
+            String name = groupBy.get(g);
+            if (!COLUMN_DAY.equals(name) && !COLUMN_USER.equals(name) && !stringColumn.equals(name)) {
+                throw new IllegalArgumentException(table + "不支持按" + name + "分组");
+            }
+            groupColumns[g] = columnTable.columnIndex(name);
+            if (COLUMN_DAY.equals(name)) {
+                int[] range = columnTable.range(dayColumn);
+                int base = range == null ? 0 : Math.max(range[0], minDay);
+                int last = range == null ? -1 : Math.min(range[1], maxDay);
+                groupBase[g] = base;
+                groupCardinality[g] = Math.max(0, last - base + 1);
+            } else {
+                groupCardinality[g] = COLUMN_USER.equals(name) ? current.users.size() : stringDictionary.size();
+            }
+            groups *= groupCardinality[g];
+        }
+        if (groups > maxGroups) {
+            throw new IllegalArgumentException("分组数量过多（" + groups + "），请缩小日期范围或减少分组维度");
+        }
+
+        long[] counts = empty || groups == 0 ? new long[0] : columnTable.groupCount(
+                toArray(filterColumns), toArray(filterMin), toArray(filterMax), groupColumns, groupBase, groupCardinality);
+
+        // 解码分组键
+        List<Map<String, Object>> rows = new ArrayList<>();
+        long total = 0;
+        for (int key = 0; key < counts.length; key++) {
+            if (counts[key] == 0) {
+                continue;
+            }
+            total += counts[key];
+            Map<String, Object> row = new LinkedHashMap<>();
+            int rest = key;
+            Object[] values = new Object[groupBy.size()];
+            for (int g = groupBy.size() - 1; g >= 0; g--) {
+                int offset = rest % groupCardinality[g];
+                rest /= groupCardinality[g];
+                String name = groupBy.get(g);
+                if (COLUMN_DAY.equals(name)) {
+                    values[g] = LocalDate.ofEpochDay(groupBase[g] + offset).toString();
+                } else if (COLUMN_USER.equals(name)) {
+                    values[g] = current.users.decode(offset);
+                } else {
+                    values[g] = stringDictionary.decode(offset);
+                }
+            }
+            for (int g = 0; g < groupBy.size(); g++) {
+                row.put(groupBy.get(g), values[g]);
+            }
+            row.put("count", counts[key]);
+            rows.add(row);
+        }
+        rows.sort((a, b) -> Long.compare((Long) b.get("count"), (Long) a.get("count")));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("table", table);
+        result.put("groupBy", groupBy);
+        result.put("rows", rows);
+        result.put("total", total);
+        result.put("builtAt", current.builtAt);
+        result.put("elapsedMs", (System.nanoTime() - start) / 1000000.0);
+        if (event != null) {
+            event.finish(total);
+        }
+        return result;
+    }
+
+    /**
+     * 按各分片的行数预分配列数组创建空快照（多留1/16余量给加载期间的新增）
+     */
+    private Snapshot newSnapshot() {
+        long[] counts = new long[2];
+        shardService.forEachShard(shard -> {
+            counts[0] += customerRepository.count();
+            counts[1] += followupRepository.count() + followupArchiveRepository.count();
+        });
+        return new Snapshot(capacityFor(counts[0]), capacityFor(counts[1]));
+    }
+
+    /**
+     * 从数据库分批加载客户、跟进记录和归档跟进记录（启用分片时依次读取每个分片）
+     * @param target 目标快照
+     * @param customerIds 对账时记录数据库中存在的客户ID，首次构建时为null（直接追加，最后统一按ID排序）
+     * @param followupIds 对账时记录数据库中存在的跟进记录ID，首次构建时为null
+     */
+    private void load(Snapshot target, BitSet customerIds, BitSet followupIds) {
+        shardService.forEachShard(shard -> {
+            Integer lastId = 0;
+            while (true) {
+                List<Object[]> batch = customerRepository.findFunnelRowsAfter(lastId, PageRequest.of(0, LOAD_BATCH_SIZE));
+                for (Object[] row : batch) {
+                    put(target.customers, customerIds, (Integer) row[0], epochDay((LocalDateTime) row[3]),
+                            target.sources.encode((String) row[1]), target.users.encode((Integer) row[2]));
+                }
+                if (batch.size() < LOAD_BATCH_SIZE) {
+                    break;
+                }
+                lastId = (Integer) batch.get(batch.size() - 1)[0];
+            }
+            loadFollowups(target, followupIds, false);
+            loadFollowups(target, followupIds, true);
+        });
+        target.customers.seal();
+        target.followups.seal();
+    }
+
+    private void loadFollowups(Snapshot target, BitSet followupIds, boolean archived) {
+        Integer lastId = 0;
+        while (true) {
+            List<Object[]> batch = archived
+                    ? followupArchiveRepository.findAnalyticsRowsAfter(lastId, PageRequest.of(0, LOAD_BATCH_SIZE))
+                    : followupRepository.findAnalyticsRowsAfter(lastId, PageRequest.of(0, LOAD_BATCH_SIZE));
+            for (Object[] row : batch) {
+                put(target.followups, followupIds, (Integer) row[0], epochDay((LocalDateTime) row[1]),
+                        target.methods.encode((String) row[2]), target.users.encode((Integer) row[3]));
+            }
+            if (batch.size() < LOAD_BATCH_SIZE) {
+                break;
+            }
+            lastId = (Integer) batch.get(batch.size() - 1)[0];
+        }
+    }
+
+    /**
+     * 把一个变更事件修补到快照上
+     */
+    private void apply(Snapshot target, EntityChangeEvent event) {
+        boolean isCustomer = event.getEntityType() == EntityChangeEvent.EntityType.CUSTOMER;
+        ColumnTable table = isCustomer ? target.customers : target.followups;
+        if (event.getAction() == EntityChangeEvent.Action.DELETE || event.getEntity() == null) {
+            table.remove(event.getEntityId());
+        } else if (isCustomer) {
+            Customer customer = (Customer) event.getEntity();
+            table.upsert(event.getEntityId(), epochDay(customer.getCreatedAt()),
+                    target.sources.encode(customer.getSource()), target.users.encode(customer.getCreatedBy()));
+        } else {
+            Followup followup = (Followup) event.getEntity();
+            table.upsert(event.getEntityId(), epochDay(followup.getFollowTime()),
+                    target.methods.encode(followup.getFollowMethod()), target.users.encode(followup.getUserId()));
+        }
+    }
+
+    /**
+     * 首次构建时追加，对账时覆盖写入并记录ID
+     */
+    private static void put(ColumnTable table, BitSet seenIds, int id, int... values) {
+        if (seenIds == null) {
+            table.append(id, values);
+        } else {
+            table.upsert(id, values);
+            seenIds.set(id);
+        }
+    }
+
+    private static int capacityFor(long rows) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, rows + rows / 16);
+    }
+
+    private static int epochDay(LocalDateTime dateTime) {
+        return dateTime == null ? ColumnTable.NULL_VALUE : (int) dateTime.toLocalDate().toEpochDay();
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+}
@@ -0,0 +1,201 @@
+package com.crm.service;
+
+import com.crm.audit.AuditEntityListener;
+import com.crm.audit.AuditRecord;
+import com.crm.audit.AuditSegmentLog;
+import com.crm.event.EntityChangeEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 审计日志服务：记录谁在何时修改了哪个客户、跟进记录的哪些字段
+ * 审计记录不写入MySQL（避免每个写事务多一倍写入），而是在事务提交后追加到本地内存映射段文件，
+ * 定时fsync；事务回滚时丢弃。实体的增删改由Hibernate事件监听器（见AuditConfig）自动记录，
+ * 批量UPDATE和JDBC批量写入由对应服务调用{@link #record}记录
+ */
+@Service
+public class AuditLogService implements AuditEntityListener.Sink {
+
+    @Value("${crm.audit.enabled:true}")
+    private boolean enabled;  // 是否启用审计日志
+
+    @Value("${crm.audit.dir:./data/audit}")
+    private String dir;  // 段文件目录
+
+    @Value("${crm.audit.segment-bytes:67108864}")
+    private int segmentBytes;  // 每个段文件的大小
+
+    @Value("${crm.audit.max-segments:32}")
+    private int maxSegments;  // 最多保留的段数，超出时删除最旧的段
+
+    @Value("${crm.audit.index-block-records:512}")
+    private int indexBlockRecords;  // 稀疏索引每块的记录数
+
+    @Value("${crm.audit.max-value-chars:2000}")
+    private int maxValueChars;  // 字段值超过该长度时截断
+
+    private AuditSegmentLog log;
+    private AuditEntityListener entityListener;
+    private final LongAdder failed = new LongAdder();  // 写入失败的记录数
+
+    @PostConstruct
+    public void init() throws IOException {
+        entityListener = new AuditEntityListener(this, maxValueChars);
+        if (!enabled) {
+            return;
+        }
+        log = new AuditSegmentLog(Paths.get(dir), segmentBytes, maxSegments, indexBlockRecords);
+        log.open();
+    }
+
+    /**
+     * 获取Hibernate实体监听器（由AuditConfig注册）
+     */
+    public AuditEntityListener getEntityListener() {
+        return entityListener;
+    }
+
+    /**
+     * 记录一次实体变更，操作人取当前请求会话中的用户，后台任务为0
+     */
+    @Override
+    public void record(EntityChangeEvent.EntityType entityType, EntityChangeEvent.Action action, int entityId,
+                       List<AuditRecord.FieldChange> changes) {
+        record(entityType, action, entityId, currentUserId(), changes);
+    }
+
+    /**
+     * 记录一次实体变更，在事务中调用时提交后写入，回滚时丢弃
+     * @param entityType 实体类型
+     * @param action 变更类型
+     * @param entityId 实体ID
+     * @param userId 操作人ID
+     * @param changes 字段变更
+     */
+    public void record(EntityChangeEvent.EntityType entityType, EntityChangeEvent.Action action, int entityId,
+                       int userId, List<AuditRecord.FieldChange> changes) {
+        if (log == null) {
+            return;
+        }
+        AuditRecord record = new AuditRecord(System.currentTimeMillis(), entityType, action, entityId, userId, changes);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            append(record);
+            return;
+        }
+        AuditBatch batch = null;
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof AuditBatch) {
+                batch = (AuditBatch) synchronization;
+                break;
+            }
+        }
+        if (batch == null) {
+            batch = new AuditBatch();
+            TransactionSynchronizationManager.registerSynchronization(batch);
+        }
+        batch.records.add(record);
+    }
+
+    /**
+     * 构建只有新值的字段变更（批量UPDATE不读取原值）
+     * @param values 属性名 -> 新值
+     * @return 字段变更
+     */
+    public List<AuditRecord.FieldChange> newValues(Map<String, Object> values) {
+        List<AuditRecord.FieldChange> changes = new ArrayList<>(values.size());
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            changes.add(new AuditRecord.FieldChange(value.getKey(), false, null, entityListener.format(value.getValue())));
+        }
+        return changes;
+    }
+
+    /**
+     * 按实体查询审计记录
+     * @param entityType 实体类型
+     * @param entityId 实体ID
+     * @param limit 最多返回的记录数
+     * @return 审计记录（从新到旧）
+     */
+    public List<Map<String, Object>> find(EntityChangeEvent.EntityType entityType, int entityId, int limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (log == null) {
+            return result;
+        }
+        for (AuditRecord record : log.find(AuditRecord.key(entityType, entityId), limit)) {
+            result.add(record.toMap());
+        }
+        return result;
+    }
+
+    /**
+     * 定时把审计日志刷到磁盘
+     */
+    @Scheduled(fixedDelayString = "${crm.audit.fsync-interval-ms:1000}")
+    public void fsync() {
+        if (log != null) {
+            log.force();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        fsync();
+    }
+
+    /**
+     * 获取审计日志状态
+     * @return 段数、记录数、索引大小等
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = log != null ? log.getStatus() : new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("failed", failed.sum());
+        return status;
+    }
+
+    private void append(AuditRecord record) {
+        try {
+            log.append(record);
+        } catch (IOException | RuntimeException e) {
+            failed.increment();
+            System.err.println("审计记录写入失败（" + record.getEntityType() + " " + record.getEntityId() + "）：" + e.getMessage());
+        }
+    }
+
+    private static int currentUserId() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        Object userId = attributes != null ? attributes.getAttribute("userId", RequestAttributes.SCOPE_SESSION) : null;
+        return userId instanceof Integer ? (Integer) userId : 0;
+    }
+
+    /**
+     * 一个事务中的审计记录，提交后写入审计日志
+     */
+    private class AuditBatch implements TransactionSynchronization {
+
+        private final List<AuditRecord> records = new ArrayList<>();
+
+        @Override
+        public void afterCommit() {
+            for (AuditRecord record : records) {
+                append(record);
+            }
+        }
+    }
+
+}
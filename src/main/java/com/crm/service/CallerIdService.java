@@ -0,0 +1,73 @@
+package com.crm.service;
+
+import com.crm.callerid.PhoneIndex;
+import com.crm.util.ContactUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 来电查号服务：规范化手机号打包为long（ContactUtils.packPhone），在内存开放寻址哈希表中O(1)查出客户ID
+ * 1. 使用重复客户检测服务维护的手机号索引（PhoneIndex），加载、变更订阅和打包键回填都由它完成，不另建一份
+ * 2. 读取用StampedLock乐观读，不加锁、不分配对象
+ * 3. 同一号码对应多个客户时只记录标记，查询回退到customers.phone_key索引；索引加载完成前也回退数据库
+ */
+@Service
+public class CallerIdService {
+
+    @Autowired
+    private CustomerDuplicateService customerDuplicateService;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder databaseFallbacks = new LongAdder();
+
+    /**
+     * 按来电号码查询客户ID
+     * @param phone 来电号码（任意格式，规范化后比较）
+     * @return 客户ID列表，没有匹配时为空列表
+     * @throws IllegalArgumentException 号码中没有有效数字或位数过长
+     */
+    public List<Integer> lookup(String phone) {
+        Long key = ContactUtils.packPhone(phone);
+        if (key == null) {
+            throw new IllegalArgumentException("手机号格式错误");
+        }
+        lookups.increment();
+        long id = customerDuplicateService.isReady() ? customerDuplicateService.findByPhoneKey(key) : PhoneIndex.MULTIPLE;
+        if (id == 0) {
+            return Collections.emptyList();
+        }
+        if (id != PhoneIndex.MULTIPLE) {
+            return Collections.singletonList((int) id);
+        }
+        return lookupInDatabase(key);
+    }
+
+    /**
+     * 按手机号打包键从customers.phone_key索引查询客户ID（内存索引结果与客户当前号码不符时使用）
+     * @param key 手机号打包键
+     * @return 客户ID列表
+     */
+    public List<Integer> lookupInDatabase(long key) {
+        databaseFallbacks.increment();
+        return customerDuplicateService.findIdsByPhoneKey(key);
+    }
+
+    /**
+     * 获取索引状态
+     * @return 加载状态、号码数、哈希表容量和查询次数
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>(customerDuplicateService.getPhoneIndexStatus());
+        status.put("ready", customerDuplicateService.isReady());
+        status.put("lookups", lookups.sum());
+        status.put("databaseFallbacks", databaseFallbacks.sum());
+        return status;
+    }
+
+}
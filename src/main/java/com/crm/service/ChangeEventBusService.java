@@ -0,0 +1,581 @@
+package com.crm.service;
+
+import com.crm.event.ChangeRingBuffer;
+import com.crm.event.EntityChangeEvent;
+import com.crm.model.ChangeOutbox;
+import com.crm.model.FollowupArchive;
+import com.crm.repository.ChangeOutboxRepository;
+import com.crm.repository.CustomerRepository;
+import com.crm.repository.FollowupArchiveRepository;
+import com.crm.repository.FollowupRepository;
+import com.crm.repository.UserRepository;
+import com.crm.shard.ShardContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 变更事件总线服务（事务发件箱模式）
+ * 1. 写入：客户、跟进记录、用户的写操作发布EntityChangeEvent，本服务把同一事务内的事件收集起来，
+ *    在提交前一次批量写入change_outbox表，与业务数据同时提交或回滚
+ * 2. 分发：事务提交后把事件放入无锁环形缓冲区，各订阅者（全文索引、分析快照、统计推送等）在自己的线程上消费，
+ *    请求线程不再执行任何订阅逻辑
+ * 3. 跨实例：多实例部署时每个实例定时按分片ID游标读取change_outbox中其他实例写入的新变更，
+ *    按实体当前状态生成事件放入本实例的缓冲区，各实例的订阅者都能看到所有实例的写操作。
+ *    本实例写入的行按origin列跳过；游标之前还没读到的ID（晚提交的事务）在recoverySlackSeconds秒内继续补读，已读过的ID不重复分发
+ * 4. 恢复：订阅者落后超过缓冲区容量时，从change_outbox表按ID补齐；管理员也可以从指定ID重放。
+ *    变更日志ID在插入时分配，晚提交的事务可能持有更小的ID，因此补偿和重放都向前多读recoverySlackSeconds秒。
+ *    重放在主库上按实体当前状态生成事件（存在则为新增/更新，不存在则为删除），重复处理是幂等的
+ * 启用分片时change_outbox随业务数据写在各自的分片上，ID只在分片内有序，补偿、重放和清理依次处理每个分片
+ */
+@Service
+public class ChangeEventBusService {
+
+    private static final String INSERT_SQL = "INSERT INTO change_outbox (entity_type, action, entity_id, origin, created_at) VALUES (?, ?, ?, ?, ?)";
+    private static final int MAX_PENDING_IDS = 10000;  // 每个分片最多跟踪的未读ID数
+
+    @Autowired
+    private ChangeOutboxRepository changeOutboxRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private FollowupRepository followupRepository;
+
+    @Autowired
+    private FollowupArchiveRepository followupArchiveRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ShardService shardService;
+
+    @Value("${crm.event-bus.ring-capacity:65536}")
+    private int ringCapacity;  // 环形缓冲区容量（向上取整为2的幂）
+
+    @Value("${crm.event-bus.replay-batch-size:500}")
+    private int replayBatchSize;  // 重放时每次读取的变更日志行数
+
+    @Value("${crm.event-bus.recovery-slack-seconds:60}")
+    private int recoverySlackSeconds;  // 覆盖补偿时向前多重放的秒数，覆盖事务提交顺序与写入时间的差异
+
+    @Value("${crm.event-bus.outbox-retention-hours:72}")
+    private int retentionHours;  // 变更日志保留小时数
+
+    @Value("${crm.event-bus.purge-batch-size:1000}")
+    private int purgeBatchSize;  // 清理变更日志时每批删除的行数
+
+    @Value("${crm.event-bus.tail-enabled:true}")
+    private boolean tailEnabled;  // 是否读取其他实例写入的变更日志
+
+    private final String origin = UUID.randomUUID().toString();  // 本实例标识，写入change_outbox.origin
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private ChangeRingBuffer ring;
+    private TailCursor[] tailCursors;  // 各分片的跨实例读取游标，下标为分片编号
+    private final AtomicBoolean replaying = new AtomicBoolean(false);
+    private volatile Map<String, Object> lastReplay;  // 最近一次手动重放结果
+    private volatile long tailedEvents;  // 从其他实例读到的事件数（只由定时任务线程写入）
+
+    @PostConstruct
+    public void init() {
+        ring = new ChangeRingBuffer(ringCapacity);
+        tailCursors = new TailCursor[shardService.getShardCount()];
+        for (int shard = 0; shard < tailCursors.length; shard++) {
+            tailCursors[shard] = new TailCursor();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ring.shutdown();
+    }
+
+    /**
+     * 注册订阅者，在独立线程上按提交顺序接收变更事件
+     * @param name 订阅者名称（用于线程名和指标）
+     * @param handler 事件处理函数
+     */
+    public void subscribe(String name, Consumer<EntityChangeEvent> handler) {
+        ring.subscribe(name, handler, this::recover);
+    }
+
+    /**
+     * 接收写操作发布的变更事件：有事务时加入本事务的批次，提交前写变更日志、提交后放入缓冲区；
+     * 没有事务时立即写变更日志并放入缓冲区
+     * @param event 实体变更事件
+     */
+    @EventListener
+    public void onEntityChange(EntityChangeEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            writeOutbox(Collections.singletonList(event));
+            ring.publish(event);
+            return;
+        }
+        // 从当前事务的同步回调中查找批次（REQUIRES_NEW挂起外层事务时各自独立）
+        OutboxBatch batch = null;
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof OutboxBatch) {
+                batch = (OutboxBatch) synchronization;
+                break;
+            }
+        }
+        if (batch == null) {
+            batch = new OutboxBatch();
+            TransactionSynchronizationManager.registerSynchronization(batch);
+        }
+        batch.events.add(event);
+    }
+
+    /**
+     * 从各分片的重放游标之后重放到所有订阅者；实际起点再向前多取recoverySlackSeconds秒内写入的变更日志，
+     * 覆盖ID较小但在起始ID之后才提交的事务。各分片的变更日志ID互不相关，游标按分片分别给出和返回
+     * @param fromId 未单独给出游标的分片使用的起始ID（不含）
+     * @param fromIds 各分片的起始ID（不含），按分片编号排列，与状态中的outboxMaxId顺序一致；未启用分片时只取第一个
+     * @return 重放结果，toIds为各分片重放到的ID（可作为下次重放的游标），已有重放在运行时返回null
+     */
+    public Map<String, Object> replay(long fromId, List<Long> fromIds) {
+        if (!replaying.compareAndSet(false, true)) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            List<Long> startIds = new ArrayList<>();
+            List<Long> toIds = new ArrayList<>();
+            long[] replayed = new long[1];
+            shardService.forEachShard(shard -> {
+                int index = startIds.size();
+                long shardFromId = index < fromIds.size() ? fromIds.get(index) : fromId;
+                long[] lastId = {shardFromId};
+                replayed[0] += replayAfter(withSlack(shardFromId), event -> {
+                    ring.publish(event);
+                    lastId[0] = Math.max(lastId[0], event.getOutboxId());
+                });
+                startIds.add(shardFromId);
+                toIds.add(lastId[0]);
+            });
+            long events = replayed[0];
+            boolean sharded = shardService.isSharded();
+            Map<String, Object> result = new HashMap<>();
+            result.put("fromIds", sharded ? startIds : startIds.get(0));
+            result.put("slackSeconds", recoverySlackSeconds);
+            result.put("toIds", sharded ? toIds : toIds.get(0));
+            result.put("events", events);
+            result.put("elapsedMs", System.currentTimeMillis() - start);
+            result.put("finishedAt", System.currentTimeMillis());
+            lastReplay = result;
+            System.out.println("变更日志重放完成：起始ID " + startIds + " 之后共" + events + "个事件，重放到 " + toIds);
+            return result;
+        } finally {
+            replaying.set(false);
+        }
+    }
+
+    /**
+     * 订阅者从持久化状态恢复后补齐之后的变更：对每个分片从已处理到的ID之后（同样向前多读recoverySlackSeconds秒）
+     * 按实体当前状态生成事件，在调用线程上交给接收函数
+     * @param afterIds 各分片已处理到的变更日志ID，按分片编号排列
+     * @param sink 事件接收函数
+     * @return 补齐的事件数；某个分片无法从游标补齐（变更日志已被清理）时返回-1，调用方应从数据库重建
+     */
+    public long catchUp(long[] afterIds, Consumer<EntityChangeEvent> sink) {
+        long[] replayed = new long[1];
+        boolean[] purged = new boolean[1];
+        shardService.forEachShard(shard -> {
+            if (purged[0]) {
+                return;
+            }
+            // 游标之后的行已被清理，或表清空后自增ID从头开始（MySQL 5.7重启后），都无法从游标补齐
+            Long minId = changeOutboxRepository.findMinId();
+            Long maxId = changeOutboxRepository.findMaxId();
+            if (minId != null && (minId > afterIds[shard] + 1 || maxId < afterIds[shard])) {
+                purged[0] = true;
+                return;
+            }
+            replayed[0] += replayAfter(withSlack(afterIds[shard]), sink);
+        });
+        return purged[0] ? -1 : replayed[0];
+    }
+
+    /**
+     * 获取各分片当前的最大变更日志ID（订阅者从数据库重建前记录，作为重建结果对应的起点）
+     * @return 最大ID，按分片编号排列，没有变更日志的分片为0
+     */
+    public long[] currentMaxIds() {
+        long[] maxIds = new long[shardService.getShardCount()];
+        shardService.forEachShard(shard -> {
+            Long maxId = changeOutboxRepository.findMaxId();
+            maxIds[shard] = maxId == null ? 0 : maxId;
+        });
+        return maxIds;
+    }
+
+    /**
+     * 定时读取其他实例写入的变更日志，默认每秒一次：每个分片读取游标之后的新行和仍在等待的未读ID，
+     * 跳过本实例写入的行，在主库上按实体当前状态生成事件放入缓冲区。
+     * 首次执行时从启动前recoverySlackSeconds秒写入的变更日志开始，更早的变更由各订阅者自己的加载过程覆盖
+     */
+    @Scheduled(fixedDelayString = "${crm.event-bus.tail-interval-ms:1000}")
+    public void tailOutbox() {
+        if (!tailEnabled) {
+            return;
+        }
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long[] received = new long[1];
+        shardService.forEachShard(shard -> {
+            TailCursor cursor = tailCursors[shard];
+            try {
+                List<EntityChangeEvent> events = new ArrayList<>();
+                transaction.execute(status -> {
+                    cursor.poll(events);
+                    return null;
+                });
+                for (EntityChangeEvent event : events) {
+                    ring.publish(event);
+                }
+                received[0] += events.size();
+            } catch (Exception e) {
+                System.err.println("读取其他实例的变更日志失败（分片" + shard + "）：" + e.getMessage());
+            }
+        });
+        tailedEvents += received[0];
+    }
+
+    /**
+     * 定时清理过期的变更日志，默认每小时一次
+     */
+    @Scheduled(cron = "${crm.event-bus.outbox-purge-cron:0 15 * * * *}")
+    public void purgeOutbox() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(retentionHours);
+        long[] purged = new long[1];
+        shardService.forEachShard(shard -> {
+            while (true) {
+                Integer deleted = transaction.execute(status -> changeOutboxRepository.purgeBefore(cutoff, purgeBatchSize));
+                purged[0] += deleted == null ? 0 : deleted;
+                if (deleted == null || deleted < purgeBatchSize) {
+                    break;
+                }
+            }
+        });
+        long total = purged[0];
+        if (total > 0) {
+            System.out.println("变更日志清理完成：" + total + "条");
+        }
+    }
+
+    /**
+     * 获取事件总线状态
+     * @return 缓冲区序号、各订阅者的消费进度和延迟、变更日志最大ID（启用分片时为各分片的最大ID）
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("capacity", ring.getCapacity());
+        status.put("publishedSeq", ring.getPublishedSeq());
+        status.put("subscribers", ring.getSubscriberMetrics());
+        List<Long> maxIds = new ArrayList<>();
+        shardService.forEachShard(shard -> maxIds.add(changeOutboxRepository.findMaxId()));
+        status.put("outboxMaxId", shardService.isSharded() ? maxIds : maxIds.get(0));
+        status.put("replaying", replaying.get());
+        status.put("lastReplay", lastReplay);
+        status.put("origin", origin);
+        status.put("tailEnabled", tailEnabled);
+        List<Long> tailIds = new ArrayList<>();
+        int pendingIds = 0;
+        for (TailCursor cursor : tailCursors) {
+            tailIds.add(cursor.lastId);
+            pendingIds += cursor.pending.size();
+        }
+        status.put("tailId", shardService.isSharded() ? tailIds : tailIds.get(0));
+        status.put("tailPendingIds", pendingIds);
+        status.put("tailedEvents", tailedEvents);
+        return status;
+    }
+
+    /**
+     * 订阅者被覆盖时的补偿：在订阅者线程上，把最后处理事件之前recoverySlackSeconds秒以来的变更日志直接交给它处理
+     */
+    private void recover(ChangeRingBuffer.Subscriber subscriber, long sinceMillis) {
+        LocalDateTime since = LocalDateTime.ofInstant(Instant.ofEpochMilli(sinceMillis), ZoneId.systemDefault())
+                .minusSeconds(recoverySlackSeconds);
+        long[] replayed = new long[1];
+        shardService.forEachShard(shard -> {
+            Long minId = changeOutboxRepository.findMinIdSince(since);
+            if (minId != null) {
+                replayed[0] += replayAfter(minId - 1, subscriber::deliver);
+            }
+        });
+        long events = replayed[0];
+        if (events == 0) {
+            return;
+        }
+        System.out.println("变更事件订阅者" + subscriber.getName() + "补偿完成：" + events + "个事件");
+    }
+
+    /**
+     * 在当前分片上计算带余量的重放起点：起始ID之后第一条变更日志（没有时为当前时间）之前recoverySlackSeconds秒以来的最小ID
+     * @param fromId 起始ID（不含）
+     * @return 实际起始ID（不含）
+     */
+    private long withSlack(long fromId) {
+        List<ChangeOutbox> next = changeOutboxRepository.findByIdGreaterThanOrderByIdAsc(fromId, PageRequest.of(0, 1));
+        LocalDateTime reference = next.isEmpty() ? LocalDateTime.now() : next.get(0).getCreatedAt();
+        Long minId = changeOutboxRepository.findMinIdSince(reference.minusSeconds(recoverySlackSeconds));
+        return minId == null ? fromId : Math.min(fromId, minId - 1);
+    }
+
+    /**
+     * 按ID顺序分页读取变更日志，按实体当前状态生成事件；
+     * 每页在读写事务中读取（路由到主库），从库延迟时读到的旧状态会把刚写入的实体误判为删除。
+     * 事件在事务结束后才交给接收函数
+     * @param afterId 起始ID（不含）
+     * @param sink 事件接收函数
+     * @return 生成的事件数
+     */
+    private long replayAfter(long afterId, Consumer<EntityChangeEvent> sink) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long total = 0;
+        long cursor = afterId;
+        while (true) {
+            long from = cursor;
+            List<EntityChangeEvent> events = new ArrayList<>();
+            Long lastId = transaction.execute(status -> readBatch(from, events));
+            if (lastId == null) {
+                return total;
+            }
+            for (EntityChangeEvent event : events) {
+                sink.accept(event);
+            }
+            total += events.size();
+            cursor = lastId;
+        }
+    }
+
+    /**
+     * 读取一页变更日志并按实体当前状态生成事件
+     * @param afterId 起始ID（不含）
+     * @param events 生成的事件
+     * @return 本页最后一条变更日志的ID，没有更多变更日志时返回null
+     */
+    private Long readBatch(long afterId, List<EntityChangeEvent> events) {
+        List<ChangeOutbox> rows = changeOutboxRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, replayBatchSize));
+        if (rows.isEmpty()) {
+            return null;
+        }
+        toEvents(rows, events);
+        return rows.get(rows.size() - 1).getId();
+    }
+
+    /**
+     * 按实体当前状态把变更日志行转换为事件（已归档的跟进记录不生成事件）
+     * @param rows 变更日志行
+     * @param events 生成的事件
+     */
+    private void toEvents(List<ChangeOutbox> rows, List<EntityChangeEvent> events) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        Map<EntityChangeEvent.EntityType, Set<Integer>> ids = new HashMap<>();
+        for (ChangeOutbox row : rows) {
+            ids.computeIfAbsent(EntityChangeEvent.EntityType.valueOf(row.getEntityType()), type -> new HashSet<>()).add(row.getEntityId());
+        }
+        Map<EntityChangeEvent.EntityType, Map<Integer, Object>> current = loadCurrent(ids);
+        Set<Integer> archived = new HashSet<>();
+        Set<Integer> missingFollowups = new HashSet<>(ids.getOrDefault(EntityChangeEvent.EntityType.FOLLOWUP, Collections.emptySet()));
+        missingFollowups.removeAll(current.get(EntityChangeEvent.EntityType.FOLLOWUP).keySet());
+        if (!missingFollowups.isEmpty()) {
+            for (FollowupArchive archive : followupArchiveRepository.findAllById(missingFollowups)) {
+                archived.add(archive.getId());
+            }
+        }
+
+        for (ChangeOutbox row : rows) {
+            EntityChangeEvent.EntityType type = EntityChangeEvent.EntityType.valueOf(row.getEntityType());
+            Object entity = current.get(type).get(row.getEntityId());
+            if (entity == null && type == EntityChangeEvent.EntityType.FOLLOWUP && archived.contains(row.getEntityId())) {
+                // 已归档的跟进记录不是删除，订阅者保留其原有状态
+                continue;
+            }
+            EntityChangeEvent.Action action = entity == null ? EntityChangeEvent.Action.DELETE
+                    : row.getAction().equals(EntityChangeEvent.Action.CREATE.name()) ? EntityChangeEvent.Action.CREATE
+                    : EntityChangeEvent.Action.UPDATE;
+            EntityChangeEvent event = new EntityChangeEvent(this, type, action, row.getEntityId(), entity);
+            event.setOutboxId(row.getId());
+            event.setOutboxShard(ShardContext.current());
+            events.add(event);
+        }
+    }
+
+    /**
+     * 按类型批量加载实体的当前状态（已软删除的客户和跟进记录查不到，视为删除）
+     */
+    private Map<EntityChangeEvent.EntityType, Map<Integer, Object>> loadCurrent(Map<EntityChangeEvent.EntityType, Set<Integer>> ids) {
+        Map<EntityChangeEvent.EntityType, Map<Integer, Object>> current = new HashMap<>();
+        current.put(EntityChangeEvent.EntityType.CUSTOMER, byId(ids.get(EntityChangeEvent.EntityType.CUSTOMER),
+                customerRepository::findAllById, customer -> customer.getId()));
+        current.put(EntityChangeEvent.EntityType.FOLLOWUP, byId(ids.get(EntityChangeEvent.EntityType.FOLLOWUP),
+                followupRepository::findAllById, followup -> followup.getId()));
+        current.put(EntityChangeEvent.EntityType.USER, byId(ids.get(EntityChangeEvent.EntityType.USER),
+                userRepository::findAllById, user -> user.getId()));
+        return current;
+    }
+
+    private static <T> Map<Integer, Object> byId(Set<Integer> ids, Function<Iterable<Integer>, List<T>> loader, Function<T, Integer> idOf) {
+        Map<Integer, Object> result = new HashMap<>();
+        if (ids != null && !ids.isEmpty()) {
+            for (T entity : loader.apply(ids)) {
+                result.put(idOf.apply(entity), entity);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量写入变更日志并回填ID（有事务时加入当前事务）
+     */
+    private void writeOutbox(List<EntityChangeEvent> events) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (EntityChangeEvent event : events) {
+                    statement.setString(1, event.getEntityType().name());
+                    statement.setString(2, event.getAction().name());
+                    statement.setInt(3, event.getEntityId());
+                    statement.setString(4, origin);
+                    statement.setTimestamp(5, now);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for (EntityChangeEvent event : events) {
+                        if (keys.next()) {
+                            event.setOutboxId(keys.getLong(1));
+                            event.setOutboxShard(ShardContext.current());
+                        }
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 一个事务内发布的事件：提交前写变更日志，提交后放入缓冲区
+     */
+    private class OutboxBatch implements TransactionSynchronization {
+
+        private final List<EntityChangeEvent> events = new ArrayList<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            writeOutbox(events);
+        }
+
+        @Override
+        public void afterCommit() {
+            for (EntityChangeEvent event : events) {
+                ring.publish(event);
+            }
+        }
+    }
+
+    /**
+     * 一个分片的跨实例读取游标（只由定时任务线程访问）：
+     * lastId为已读到的最大ID；小于lastId但还没读到的ID（事务尚未提交，或已回滚）记录在pending中，
+     * 超过recoverySlackSeconds秒仍未出现时放弃
+     */
+    private class TailCursor {
+
+        private long lastId = -1;  // 已读到的最大ID，-1表示尚未初始化
+        private final Map<Long, Long> pending = new LinkedHashMap<>();  // 未读ID -> 发现时间，按发现顺序排列
+
+        /**
+         * 在当前分片上读取新的变更日志，生成其他实例写入的变更事件（调用方负责事务）
+         * @param events 生成的事件
+         */
+        void poll(List<EntityChangeEvent> events) {
+            if (lastId < 0) {
+                // 从启动前recoverySlackSeconds秒开始读，覆盖订阅者加载期间其他实例提交的变更（重复处理是幂等的）
+                Long minId = changeOutboxRepository.findMinIdSince(startedAt.minusSeconds(recoverySlackSeconds));
+                Long maxId = changeOutboxRepository.findMaxId();
+                lastId = minId != null ? minId - 1 : maxId != null ? maxId : 0;
+            }
+            long now = System.currentTimeMillis();
+            long expireBefore = now - recoverySlackSeconds * 1000L;
+            pending.values().removeIf(noticedAt -> noticedAt < expireBefore);
+
+            List<ChangeOutbox> rows = new ArrayList<>();
+            if (!pending.isEmpty()) {
+                List<Long> ids = new ArrayList<>(pending.keySet());
+                for (int from = 0; from < ids.size(); from += replayBatchSize) {
+                    for (ChangeOutbox row : changeOutboxRepository.findAllById(ids.subList(from, Math.min(from + replayBatchSize, ids.size())))) {
+                        pending.remove(row.getId());
+                        rows.add(row);
+                    }
+                }
+            }
+            List<ChangeOutbox> page;
+            do {
+                page = changeOutboxRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, replayBatchSize));
+                for (ChangeOutbox row : page) {
+                    for (long missing = Math.max(lastId + 1, row.getId() - MAX_PENDING_IDS); missing < row.getId(); missing++) {
+                        pending.put(missing, now);
+                    }
+                    lastId = row.getId();
+                    rows.add(row);
+                }
+            } while (page.size() == replayBatchSize);
+            if (pending.size() > MAX_PENDING_IDS) {
+                System.err.println("变更日志未读ID过多（" + pending.size() + "），放弃最早的部分");
+                Iterator<Long> iterator = pending.keySet().iterator();
+                while (pending.size() > MAX_PENDING_IDS) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+
+            rows.removeIf(row -> origin.equals(row.getOrigin()));
+            toEvents(rows, events);
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+package com.crm.service;
+
+import com.crm.event.EntityChangeEvent;
+import com.crm.model.Customer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 客户本地缓存（按ID，LRU淘汰）
+ * 缓存的是只含基本字段的客户副本（不含延迟加载的创建人），可在事务和会话之外安全序列化，调用方不得修改。
+ * 本实例的客户写操作提交后（在写请求线程上）立即失效对应条目；其他实例的写操作由事件总线从变更日志读到后失效。
+ * 加载前记录失效版本号，加载期间发生过失效时不回填，避免把写操作之前读到的旧数据放入缓存；
+ * 条目超过ttlMs后过期，失效事件丢失时旧数据最多保留这么久
+ */
+@Service
+public class CustomerCacheService {
+
+    /**
+     * 缓存条目：客户副本和过期时间
+     */
+    private static final class Entry {
+        final Customer customer;
+        final long expiresAt;
+
+        Entry(Customer customer, long expiresAt) {
+            this.customer = customer;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    @Autowired
+    private ChangeEventBusService changeEventBusService;
+
+    @Value("${crm.customer-cache.max-entries:50000}")
+    private int maxEntries;  // 最多缓存的客户数量
+
+    @Value("${crm.customer-cache.ttl-ms:300000}")
+    private long ttlMs;  // 条目过期时间
+
+    private Map<Integer, Entry> cache;
+    private final AtomicLong invalidations = new AtomicLong();  // 失效版本号
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        cache = Collections.synchronizedMap(new LinkedHashMap<Integer, Entry>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        });
+        changeEventBusService.subscribe("customer-cache", this::invalidate);
+    }
+
+    /**
+     * 查询缓存
+     * @param ids 客户ID
+     * @param found 命中的客户放入该Map
+     */
+    public void getAll(Collection<Integer> ids, Map<Integer, Customer> found) {
+        long now = System.currentTimeMillis();
+        for (Integer id : ids) {
+            Entry entry = cache.get(id);
+            if (entry == null) {
+                continue;
+            }
+            if (entry.expiresAt <= now) {
+                cache.remove(id, entry);
+                expirations.increment();
+                continue;
+            }
+            found.put(id, entry.customer);
+        }
+        hits.add(found.size());
+        misses.add(ids.size() - found.size());
+    }
+
+    /**
+     * 获取当前失效版本号，在从数据库加载之前调用
+     * @return 失效版本号
+     */
+    public long currentVersion() {
+        return invalidations.get();
+    }
+
+    /**
+     * 回填从数据库加载的客户
+     * @param customers 加载的客户
+     * @param version 加载前取得的失效版本号，其后发生过失效时不回填
+     * @return 可以缓存和返回的客户副本
+     */
+    public Map<Integer, Customer> putAll(Collection<Customer> customers, long version) {
+        Map<Integer, Customer> copies = new HashMap<>();
+        for (Customer customer : customers) {
+            copies.put(customer.getId(), copy(customer));
+        }
+        long expiresAt = System.currentTimeMillis() + ttlMs;
+        synchronized (cache) {
+            if (invalidations.get() == version) {
+                for (Customer customer : copies.values()) {
+                    cache.put(customer.getId(), new Entry(customer, expiresAt));
+                }
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * 本实例的客户变更提交后立即失效缓存（写请求线程上，之后的读取不会读到旧数据）
+     * @param event 实体变更事件
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEntityChange(EntityChangeEvent event) {
+        invalidate(event);
+    }
+
+    /**
+     * 失效变更的客户（事件总线的订阅线程上，包括其他实例写入、从变更日志读到的变更）
+     * @param event 实体变更事件
+     */
+    public void invalidate(EntityChangeEvent event) {
+        if (event.getEntityType() != EntityChangeEvent.EntityType.CUSTOMER) {
+            return;
+        }
+        synchronized (cache) {
+            invalidations.incrementAndGet();
+            cache.remove(event.getEntityId());
+        }
+    }
+
+    /**
+     * 获取缓存统计
+     * @return 条目数、命中次数、未命中次数
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("entries", cache.size());
+        status.put("maxEntries", maxEntries);
+        status.put("ttlMs", ttlMs);
+        status.put("expirations", expirations.sum());
+        status.put("hits", hits.sum());
+        status.put("misses", misses.sum());
+        status.put("invalidations", invalidations.get());
+        return status;
+    }
+
+    /**
+     * 复制客户的基本字段（不含延迟加载的创建人）
+     */
+    private static Customer copy(Customer source) {
+        Customer customer = new Customer();
+        customer.setId(source.getId());
+        customer.setName(source.getName());
+        customer.setPhone(source.getPhone());
+        customer.setPhoneKey(source.getPhoneKey());
+        customer.setEmail(source.getEmail());
+        customer.setCompany(source.getCompany());
+        customer.setPosition(source.getPosition());
+        customer.setSource(source.getSource());
+        customer.setNotes(source.getNotes());
+        customer.setCreatedBy(source.getCreatedBy());
+        customer.setCreatedAt(source.getCreatedAt());
+        customer.setUpdatedAt(source.getUpdatedAt());
+        customer.setVersion(source.getVersion());
+        customer.setDeleted(source.getDeleted());
+        customer.setDeletedAt(source.getDeletedAt());
+        return customer;
+    }
+
+}
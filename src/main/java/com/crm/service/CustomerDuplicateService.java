@@ -0,0 +1,514 @@
+package com.crm.service;
+
+import com.crm.callerid.PhoneIndex;
+import com.crm.event.EntityChangeEvent;
+import com.crm.model.Customer;
+import com.crm.repository.CustomerRepository;
+import com.crm.util.ContactUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 重复客户检测服务
+ * 1. 内存哈希索引：手机号打包键（PhoneIndex，来电查号共用）/ 规范化邮箱 -> 客户ID，新增客户前O(1)查出疑似重复客户；
+ *    启动后在后台线程按ID分批加载（同时回填升级前没有打包键的旧数据），通过事件总线订阅客户变更增量维护
+ * 2. 离线全表扫描：按ID分批读取手机号和邮箱，分块排序后溢写到临时文件，再多路归并，
+ *    相邻的相同键即为重复簇，内存占用只与分块大小有关，与表大小无关
+ */
+@Service
+public class CustomerDuplicateService {
+
+    private static final int LOAD_BATCH_SIZE = 5000;
+    private static final String FILL_PHONE_KEY_SQL = "UPDATE customers SET phone_key = ? WHERE id = ? AND phone = ?";
+    private static final String PHONE_PREFIX = "P:";
+    private static final String EMAIL_PREFIX = "E:";
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private ShardService shardService;
+
+    @Autowired
+    private ChangeEventBusService changeEventBusService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("maintenanceExecutor")
+    private AsyncTaskExecutor maintenanceExecutor;
+
+    @Value("${crm.duplicate.scan-chunk-size:200000}")
+    private int scanChunkSize;  // 扫描时每个内存排序块的记录数
+
+    @Value("${crm.duplicate.max-report-clusters:10000}")
+    private int maxReportClusters;  // 报告中最多保留的重复簇数量
+
+    @Value("${crm.duplicate.expected-customers:100000}")
+    private int expectedCustomers;  // 预计客户数量，用于确定手机号索引的初始容量
+
+    private PhoneIndex phoneIndex;  // 手机号打包键 -> 客户ID
+    private final Map<String, Set<Integer>> emailIndex = new ConcurrentHashMap<>();  // 规范化邮箱 -> 客户ID集合
+    private final Map<Integer, String> emails = new ConcurrentHashMap<>();  // 客户ID -> 规范化邮箱
+    private final Object indexLock = new Object();  // 串行化索引写操作，加载线程的检查和写入与变更事件互斥
+    private final Set<Integer> touchedDuringLoad = new HashSet<>();  // 加载期间已由变更事件处理的客户（持有indexLock访问）
+    private int indexedCustomers;  // 有手机号或邮箱的客户数（持有indexLock访问）
+    private volatile boolean loading = true;  // 索引是否正在加载
+    private final AtomicBoolean scanning = new AtomicBoolean(false);  // 是否正在扫描
+    private volatile Map<String, Object> lastReport;  // 最近一次扫描报告
+
+    @PostConstruct
+    public void init() {
+        phoneIndex = new PhoneIndex(expectedCustomers);
+        changeEventBusService.subscribe("duplicate", this::onEntityChange);
+    }
+
+    /**
+     * 应用启动完成后在后台线程加载索引，不阻塞启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadIndexInBackground() {
+        Thread loader = new Thread(this::loadIndex, "crm-duplicate-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * 查找疑似重复客户
+     * @param phone 手机号
+     * @param email 邮箱
+     * @param excludeId 排除的客户ID（更新时为自身ID，新增时为null）
+     * @return 手机号或邮箱规范化后相同的客户ID（索引加载完成前结果可能不完整）
+     */
+    public Set<Integer> findCandidates(String phone, String email, Integer excludeId) {
+        Set<Integer> result = new LinkedHashSet<>();
+        Long key = ContactUtils.packPhone(phone);
+        if (key != null) {
+            long id = phoneIndex.get(key);
+            if (id == PhoneIndex.MULTIPLE) {
+                result.addAll(findIdsByPhoneKey(key));
+            } else if (id != 0) {
+                result.add((int) id);
+            }
+        }
+        String emailKey = ContactUtils.normalizeEmail(email);
+        if (emailKey != null) {
+            result.addAll(emailIndex.getOrDefault(emailKey, Collections.<Integer>emptySet()));
+        }
+        if (excludeId != null) {
+            result.remove(excludeId);
+        }
+        return result;
+    }
+
+    /**
+     * 按手机号打包键查询客户ID（来电查号使用）
+     * @param key 手机号打包键
+     * @return 客户ID，没有匹配时为0，多个客户时为PhoneIndex.MULTIPLE
+     */
+    public long findByPhoneKey(long key) {
+        return phoneIndex.get(key);
+    }
+
+    /**
+     * 按手机号打包键从customers.phone_key索引查询客户ID（号码对应多个客户或内存索引不可用时）
+     * @param key 手机号打包键
+     * @return 客户ID列表
+     */
+    public List<Integer> findIdsByPhoneKey(long key) {
+        List<Integer> ids = new ArrayList<>();
+        for (List<Integer> found : shardService.scatter(shard -> customerRepository.findIdsByPhoneKey(key))) {
+            ids.addAll(found);
+        }
+        return ids;
+    }
+
+    /**
+     * 索引是否已加载完成
+     * @return 是否已加载完成
+     */
+    public boolean isReady() {
+        return !loading;
+    }
+
+    /**
+     * 获取手机号索引的状态
+     * @return 号码数、客户数、哈希表容量
+     */
+    public Map<String, Object> getPhoneIndexStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("phones", phoneIndex.phoneCount());
+        status.put("customers", phoneIndex.customerCount());
+        status.put("capacity", phoneIndex.capacity());
+        return status;
+    }
+
+    /**
+     * 监听客户变更（事务提交后，在事件总线的订阅线程上按提交顺序处理），增量维护索引
+     * @param event 实体变更事件
+     */
+    public void onEntityChange(EntityChangeEvent event) {
+        if (event.getEntityType() != EntityChangeEvent.EntityType.CUSTOMER) {
+            return;
+        }
+        Integer id = event.getEntityId();
+        synchronized (indexLock) {
+            if (loading) {
+                touchedDuringLoad.add(id);
+            }
+            if (event.getAction() == EntityChangeEvent.Action.DELETE || event.getEntity() == null) {
+                index(id, null, null);
+            } else {
+                Customer customer = (Customer) event.getEntity();
+                index(id, customer.getPhone(), customer.getEmail());
+            }
+        }
+    }
+
+    /**
+     * 在维护线程池中启动全表重复扫描
+     * @return 是否成功提交（已在扫描或维护线程池繁忙时返回false）
+     */
+    public boolean startScan() {
+        if (!scanning.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            maintenanceExecutor.execute(() -> {
+                try {
+                    lastReport = scan();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    scanning.set(false);
+                }
+            });
+            return true;
+        } catch (TaskRejectedException e) {
+            scanning.set(false);
+            return false;
+        }
+    }
+
+    /**
+     * 获取最近一次扫描报告
+     * @return 扫描报告（尚未扫描时只包含状态）
+     */
+    public Map<String, Object> getLastReport() {
+        Map<String, Object> report = new HashMap<>();
+        if (lastReport != null) {
+            report.putAll(lastReport);
+        }
+        report.put("scanning", scanning.get());
+        report.put("indexReady", isReady());
+        synchronized (indexLock) {
+            report.put("indexedCustomers", indexedCustomers);
+        }
+        return report;
+    }
+
+    /**
+     * 全表扫描：分块排序溢写 + 多路归并
+     * @return 扫描报告
+     */
+    private Map<String, Object> scan() throws IOException {
+        long start = System.currentTimeMillis();
+        List<Path> runs = new ArrayList<>();
+        long rows = 0;
+        try {
+            // 第一阶段：按ID分批读取（启用分片时依次读取每个分片），每满一块在内存中排序后写入临时文件
+            List<KeyRecord> chunk = new ArrayList<>();
+            long[] scanned = new long[1];
+            try {
+                shardService.forEachShard(shard -> {
+                    try {
+                        scanned[0] += readContacts(chunk, runs);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            rows = scanned[0];
+            if (!chunk.isEmpty()) {
+                runs.add(spill(chunk));
+                chunk.clear();
+            }
+
+            // 第二阶段：多路归并，相邻相同键组成重复簇
+            List<Map<String, Object>> clusters = new ArrayList<>();
+            long clusterCount = mergeRuns(runs, clusters);
+
+            Map<String, Object> report = new HashMap<>();
+            report.put("scannedCustomers", rows);
+            report.put("clusterCount", clusterCount);
+            report.put("clusters", clusters);
+            report.put("truncated", clusterCount > clusters.size());
+            report.put("finishedAt", System.currentTimeMillis());
+            report.put("elapsedMs", System.currentTimeMillis() - start);
+            System.out.println("重复客户扫描完成，扫描客户数：" + rows + "，重复簇数：" + clusterCount);
+            return report;
+        } finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    /**
+     * 按ID分批读取当前分片的手机号和邮箱，每满一块溢写到临时文件
+     * @return 读取的客户数
+     */
+    private long readContacts(List<KeyRecord> chunk, List<Path> runs) throws IOException {
+        long rows = 0;
+        int lastId = 0;
+        List<Object[]> batch;
+        do {
+            batch = customerRepository.findContactsAfter(lastId, PageRequest.of(0, LOAD_BATCH_SIZE));
+            for (Object[] row : batch) {
+                lastId = (Integer) row[0];
+                rows++;
+                String phoneKey = phoneKey((String) row[1]);
+                String emailKey = emailKey((String) row[2]);
+                if (phoneKey != null) {
+                    chunk.add(new KeyRecord(phoneKey, lastId));
+                }
+                if (emailKey != null) {
+                    chunk.add(new KeyRecord(emailKey, lastId));
+                }
+                if (chunk.size() >= scanChunkSize) {
+                    runs.add(spill(chunk));
+                    chunk.clear();
+                }
+            }
+        } while (batch.size() == LOAD_BATCH_SIZE);
+        return rows;
+    }
+
+    private Path spill(List<KeyRecord> chunk) throws IOException {
+        chunk.sort(KeyRecord.ORDER);
+        Path file = Files.createTempFile("crm-dup-", ".run");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            for (KeyRecord record : chunk) {
+                out.writeUTF(record.key);
+                out.writeInt(record.id);
+            }
+        }
+        return file;
+    }
+
+    private long mergeRuns(List<Path> runs, List<Map<String, Object>> clusters) throws IOException {
+        List<RunReader> readers = new ArrayList<>();
+        PriorityQueue<RunReader> heap = new PriorityQueue<>(Comparator.comparing((RunReader r) -> r.current, KeyRecord.ORDER));
+        long clusterCount = 0;
+        try {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.advance()) {
+                    heap.add(reader);
+                }
+            }
+
+            String groupKey = null;
+            List<Integer> groupIds = new ArrayList<>();
+            while (!heap.isEmpty()) {
+                RunReader reader = heap.poll();
+                KeyRecord record = reader.current;
+                if (!record.key.equals(groupKey)) {
+                    clusterCount += emitCluster(groupKey, groupIds, clusters);
+                    groupKey = record.key;
+                    groupIds = new ArrayList<>();
+                }
+                groupIds.add(record.id);
+                if (reader.advance()) {
+                    heap.add(reader);
+                }
+            }
+            clusterCount += emitCluster(groupKey, groupIds, clusters);
+        } finally {
+            for (RunReader reader : readers) {
+                reader.in.close();
+            }
+        }
+        return clusterCount;
+    }
+
+    private int emitCluster(String key, List<Integer> ids, List<Map<String, Object>> clusters) {
+        if (key == null || ids.size() < 2) {
+            return 0;
+        }
+        if (clusters.size() < maxReportClusters) {
+            Map<String, Object> cluster = new HashMap<>();
+            cluster.put("type", key.startsWith(PHONE_PREFIX) ? "phone" : "email");
+            cluster.put("key", key.substring(2));
+            cluster.put("customerIds", ids);
+            clusters.add(cluster);
+        }
+        return 1;
+    }
+
+    /**
+     * 从数据库加载索引（只查询ID、手机号、邮箱、打包键四列，启用分片时依次读取每个分片），
+     * 同时按批回填升级前没有打包键的旧数据（每批一个事务、一次批量更新）
+     */
+    private void loadIndex() {
+        long start = System.currentTimeMillis();
+        long[] backfilled = new long[1];
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        try {
+            shardService.forEachShard(shard -> {
+                int lastId = 0;
+                List<Object[]> batch;
+                do {
+                    batch = customerRepository.findContactsAfter(lastId, PageRequest.of(0, LOAD_BATCH_SIZE));
+                    List<Object[]> fills = new ArrayList<>();
+                    for (Object[] row : batch) {
+                        lastId = (Integer) row[0];
+                        String phone = (String) row[1];
+                        Long key = ContactUtils.packPhone(phone);
+                        if (row[3] == null && key != null) {
+                            fills.add(new Object[]{key, lastId, phone});
+                        }
+                        // 检查和写入在同一把锁内，加载线程读到的旧号码不会覆盖变更事件已写入的新号码
+                        synchronized (indexLock) {
+                            if (!touchedDuringLoad.contains(lastId)) {
+                                index(lastId, phone, (String) row[2]);
+                            }
+                        }
+                    }
+                    if (!fills.isEmpty()) {
+                        // 手机号已被并发修改的行不更新，由变更事件维护
+                        int[] updated = transaction.execute(status -> jdbcTemplate.batchUpdate(FILL_PHONE_KEY_SQL, fills));
+                        for (int count : updated) {
+                            // 驱动合并批量语句时返回SUCCESS_NO_INFO（-2），按一行计
+                            backfilled[0] += count == 0 ? 0 : 1;
+                        }
+                    }
+                } while (batch.size() == LOAD_BATCH_SIZE);
+            });
+            System.out.println("重复客户索引加载完成，客户数：" + indexedCustomers + "，号码数：" + phoneIndex.phoneCount()
+                    + "，回填打包键：" + backfilled[0] + "，耗时：" + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            System.out.println("重复客户索引加载失败：" + e.getMessage());
+        } finally {
+            synchronized (indexLock) {
+                loading = false;
+                touchedDuringLoad.clear();
+            }
+        }
+    }
+
+    /**
+     * 更新客户的手机号和邮箱索引（调用方持有indexLock）
+     * @param id 客户ID
+     * @param phone 手机号，为null时只移除
+     * @param email 邮箱，为null时只移除
+     */
+    private void index(Integer id, String phone, String email) {
+        boolean wasIndexed = phoneIndex.contains(id) || emails.containsKey(id);
+        Long key = ContactUtils.packPhone(phone);
+        phoneIndex.put(id, key);
+
+        String emailKey = ContactUtils.normalizeEmail(email);
+        String previous = emailKey == null ? emails.remove(id) : emails.put(id, emailKey);
+        if (previous != null && !previous.equals(emailKey)) {
+            emailIndex.computeIfPresent(previous, (k, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+        if (emailKey != null) {
+            emailIndex.computeIfAbsent(emailKey, k -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+
+        boolean isIndexed = key != null || emailKey != null;
+        indexedCustomers += (isIndexed ? 1 : 0) - (wasIndexed ? 1 : 0);
+    }
+
+    private static String phoneKey(String phone) {
+        String normalized = ContactUtils.normalizePhone(phone);
+        return normalized == null ? null : PHONE_PREFIX + normalized;
+    }
+
+    private static String emailKey(String email) {
+        String normalized = ContactUtils.normalizeEmail(email);
+        return normalized == null ? null : EMAIL_PREFIX + normalized;
+    }
+
+    /**
+     * 扫描记录：规范化键 + 客户ID
+     */
+    private static final class KeyRecord {
+        static final Comparator<KeyRecord> ORDER = Comparator.comparing((KeyRecord r) -> r.key).thenComparingInt(r -> r.id);
+
+        final String key;
+        final int id;
+
+        KeyRecord(String key, int id) {
+            this.key = key;
+            this.id = id;
+        }
+    }
+
+    /**
+     * 有序临时文件读取器
+     */
+    private static final class RunReader {
+        final DataInputStream in;
+        KeyRecord current;
+
+        RunReader(Path file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        }
+
+        boolean advance() throws IOException {
+            try {
+                current = new KeyRecord(in.readUTF(), in.readInt());
+                return true;
+            } catch (EOFException e) {
+                current = null;
+                return false;
+            }
+        }
+    }
+
+}
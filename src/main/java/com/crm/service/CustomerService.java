@@ -1,20 +1,40 @@
 package com.crm.service;
 
+import com.crm.event.EntityChangeEvent;
 import com.crm.model.Customer;
+import com.crm.model.CustomerFilter;
+import com.crm.model.User;
+import com.crm.profiling.JfrSupport;
+import com.crm.profiling.StatisticsEvent;
 import com.crm.repository.CustomerRepository;
+import com.crm.repository.CustomerSpecifications;
+import com.crm.repository.FollowupRepository;
+import com.crm.repository.SparseFieldRepository;
+import com.crm.repository.UserRepository;
+import com.crm.shard.ShardMerge;
+import com.crm.util.FieldSelectionUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 客户服务类，处理客户相关的业务逻辑
@@ -23,16 +43,121 @@ import java.util.Map;
 @Transactional
 public class CustomerService {
 
+    /**
+     * 列表和详情接口fields参数可选的字段
+     */
+    public static final Set<String> SELECTABLE_FIELDS = FieldSelectionUtils.allowed("id", "name", "phone", "email",
+            "company", "position", "source", "notes", "createdBy", "createdAt", "updatedAt", "version");
+
     @Autowired
     private CustomerRepository customerRepository;
 
+    @Autowired
+    private FollowupRepository followupRepository;
+
+    @Autowired
+    private FollowupArchiveService followupArchiveService;
+
+    @Autowired
+    private CustomerDuplicateService customerDuplicateService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private CustomerCacheService customerCacheService;
+
+    @Autowired
+    private SparseFieldRepository sparseFieldRepository;
+
+    @Autowired
+    private AuditLogService auditLogService;
+
+    @Autowired
+    private ShardService shardService;
+
+    @Autowired
+    private LookupService lookupService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${crm.customer-cache.in-chunk-size:500}")
+    private int inChunkSize;  // 未命中缓存的客户按该数量分批IN查询
+
     /**
      * 添加客户
      * @param customer 客户对象
      * @return 添加的客户对象
      */
     public Customer addCustomer(Customer customer) {
-        return customerRepository.save(customer);
+        shardService.routeNew();
+        Customer saved = customerRepository.save(customer);
+        publishChange(EntityChangeEvent.Action.CREATE, saved.getId(), saved);
+        return saved;
+    }
+
+    /**
+     * 查找疑似重复客户（按规范化手机号和邮箱，查内存索引，不访问数据库）
+     * @param customer 待新增的客户对象
+     * @return 疑似重复的客户列表
+     */
+    @Transactional(readOnly = true)
+    public List<Customer> findDuplicateCandidates(Customer customer) {
+        Set<Integer> ids = customerDuplicateService.findCandidates(customer.getPhone(), customer.getEmail(), customer.getId());
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return findAllById(ids);
+    }
+
+    /**
+     * 按ID批量加载客户（启用分片时按ID所在分片并行加载，并批量填充创建人）
+     * @param ids 客户ID
+     * @return 找到的客户（顺序不保证）
+     */
+    @Transactional(readOnly = true)
+    public List<Customer> findAllById(Collection<Integer> ids) {
+        return attachCreators(shardService.findAllById(ids, this::loadByIds));
+    }
+
+    /**
+     * 合并重复客户：被合并客户的跟进记录通过一条UPDATE转移到目标客户，然后批量软删除被合并客户
+     * @param targetId 保留的目标客户ID
+     * @param sourceIds 被合并的客户ID列表
+     * @return 转移的跟进记录数量，目标客户不存在时返回-1
+     * @throws IllegalArgumentException 被合并客户与目标客户不在同一分片
+     */
+    public int mergeCustomers(Integer targetId, List<Integer> sourceIds) {
+        shardService.route(targetId);
+        for (Integer sourceId : sourceIds) {
+            if (shardService.shardOf(sourceId) != shardService.shardOf(targetId)) {
+                throw new IllegalArgumentException("客户" + sourceId + "与目标客户不在同一分片，不能合并");
+            }
+        }
+        if (!customerRepository.existsById(targetId)) {
+            return -1;
+        }
+        List<Integer> mergeIds = new ArrayList<>();
+        for (Customer source : customerRepository.findAllById(sourceIds)) {
+            if (!source.getId().equals(targetId)) {
+                mergeIds.add(source.getId());
+            }
+        }
+        if (mergeIds.isEmpty()) {
+            return 0;
+        }
+
+        int moved = followupRepository.reassignCustomer(targetId, mergeIds);
+        followupArchiveService.reassignCustomer(targetId, mergeIds);
+        customerRepository.softDeleteByIds(mergeIds);
+        for (Integer id : mergeIds) {
+            // 批量软删除不经过实体事件，直接记录审计
+            auditLogService.record(EntityChangeEvent.EntityType.CUSTOMER, EntityChangeEvent.Action.DELETE, id,
+                    auditLogService.newValues(Collections.singletonMap("mergedInto", targetId)));
+            publishChange(EntityChangeEvent.Action.DELETE, id, null);
+        }
+        return moved;
     }
 
     /**
@@ -40,72 +165,201 @@ public class CustomerService {
      * @param id 客户ID
      * @return 客户对象
      */
+    @Transactional(readOnly = true)
     public Customer getCustomerById(Integer id) {
+        shardService.route(id);
         return customerRepository.findById(id).orElse(null);
     }
 
+    /**
+     * 根据客户ID获取客户的指定字段（只查询这些列）
+     * @param id 客户ID
+     * @param fields 字段名（见{@link #SELECTABLE_FIELDS}）
+     * @return 字段名 -> 值，客户不存在时返回null
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getCustomerFieldsById(Integer id, List<String> fields) {
+        shardService.route(id);
+        List<Map<String, Object>> rows = sparseFieldRepository.findAll(Customer.class, fields,
+                (root, query, cb) -> cb.equal(root.get("id"), id), Sort.unsorted(), 0, 1);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * 批量获取客户：先查本地缓存，未命中的客户用IN查询（按inChunkSize分批）一次加载并回填缓存。
+     * 缓存回填在主库上读取（不标记readOnly），避免把从库上延迟的旧数据放入缓存
+     * @param ids 客户ID列表（可重复）
+     * @return customers为按请求顺序排列的客户（重复ID只返回一次），missing为不存在的客户ID
+     */
+    public Map<String, Object> getCustomersByIds(List<Integer> ids) {
+        Set<Integer> uniqueIds = new LinkedHashSet<>(ids);
+        Map<Integer, Customer> found = new HashMap<>();
+        customerCacheService.getAll(uniqueIds, found);
+
+        List<Integer> misses = new ArrayList<>();
+        for (Integer id : uniqueIds) {
+            if (!found.containsKey(id)) {
+                misses.add(id);
+            }
+        }
+        for (int from = 0; from < misses.size(); from += inChunkSize) {
+            long version = customerCacheService.currentVersion();
+            List<Customer> loaded = findAllById(misses.subList(from, Math.min(from + inChunkSize, misses.size())));
+            found.putAll(customerCacheService.putAll(loaded, version));
+        }
+
+        List<Customer> customers = new ArrayList<>(uniqueIds.size());
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : uniqueIds) {
+            Customer customer = found.get(id);
+            if (customer != null) {
+                customers.add(customer);
+            } else {
+                missing.add(id);
+            }
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("customers", customers);
+        result.put("missing", missing);
+        return result;
+    }
+
     /**
      * 更新客户信息
      * @param customer 客户对象
      * @return 更新后的客户对象
      */
     public Customer updateCustomer(Customer customer) {
-        return customerRepository.save(customer);
+        shardService.route(customer.getId());
+        Customer saved = customerRepository.save(customer);
+        publishChange(EntityChangeEvent.Action.UPDATE, saved.getId(), saved);
+        return saved;
+    }
+
+    /**
+     * 部分更新客户：一条UPDATE语句只写入提供的列，版本号不匹配时不做任何修改
+     * @param id 客户ID
+     * @param version 客户端读取时的版本号
+     * @param changes 要更新的属性名 -> 新值
+     * @return 更新后的客户对象，客户不存在时返回null
+     * @throws ObjectOptimisticLockingFailureException 版本号不匹配（客户已被他人修改）
+     */
+    public Customer patchCustomer(Integer id, Integer version, Map<String, Object> changes) {
+        shardService.route(id);
+        int updated = customerRepository.patch(id, version, changes);
+        if (updated == 0) {
+            if (!customerRepository.existsById(id)) {
+                return null;
+            }
+            throw new ObjectOptimisticLockingFailureException(Customer.class, id);
+        }
+
+        // 批量UPDATE不经过实体事件，直接记录审计（只有新值）
+        auditLogService.record(EntityChangeEvent.EntityType.CUSTOMER, EntityChangeEvent.Action.UPDATE, id,
+                auditLogService.newValues(changes));
+        Customer saved = customerRepository.findById(id).orElse(null);
+        publishChange(EntityChangeEvent.Action.UPDATE, id, saved);
+        return saved;
     }
 
     /**
      * 删除客户
+     * 只软删除客户本身，跟进记录（含归档记录）由PurgeService在提交后几秒内分批级联软删除，不在请求事务中执行大批量写操作
      * @param id 客户ID
      * @return 是否删除成功
      */
     public boolean deleteCustomer(Integer id) {
+        shardService.route(id);
         if (customerRepository.existsById(id)) {
+            // 软删除客户，由PurgeService在业务低峰期分批物理删除
             customerRepository.deleteById(id);
+            publishChange(EntityChangeEvent.Action.DELETE, id, null);
             return true;
         }
         return false;
     }
 
     /**
-     * 获取客户列表，支持分页和筛选
+     * 获取客户列表，支持分页和组合筛选
      * @param page 页码（从1开始）
      * @param limit 每页数量
-     * @param name 客户姓名（模糊查询）
-     * @param phone 客户手机号（模糊查询）
-     * @param source 客户来源
+     * @param filter 筛选条件，只有提供的条件才会生成查询谓词
      * @return 分页客户列表
      */
-    public Page<Customer> getCustomers(int page, int limit, String name, String phone, String source) {
+    @Transactional(readOnly = true)
+    public Page<Customer> getCustomers(int page, int limit, CustomerFilter filter) {
         // 构建分页参数，按创建时间倒序排序
         Pageable pageable = PageRequest.of(page - 1, limit, Sort.by(Sort.Direction.DESC, "createdAt"));
+        if (!shardService.isSharded()) {
+            return customerRepository.findAll(CustomerSpecifications.fromFilter(filter), pageable);
+        }
+        // 每个分片读取前offset+limit行，归并后取出本页
+        Pageable top = ShardMerge.topOf(pageable);
+        List<Page<Customer>> pages = shardService.scatter(shard -> {
+            Page<Customer> shardPage = customerRepository.findAll(CustomerSpecifications.fromFilter(filter), top);
+            shardPage.forEach(customer -> customer.setCreator(null));
+            return shardPage;
+        });
+        Page<Customer> merged = ShardMerge.mergePages(pages, pageable, Comparator.comparing(Customer::getCreatedAt, Comparator.nullsLast(Comparator.reverseOrder())));
+        attachCreators(merged.getContent());
+        return merged;
+    }
 
-        // 根据筛选条件查询
-        if (source != null && !source.isEmpty()) {
-            if (name != null && !name.isEmpty() && phone != null && !phone.isEmpty()) {
-                return customerRepository.findByNameContainingAndPhoneContainingAndSource(name, phone, source, pageable);
-            } else if (name != null && !name.isEmpty()) {
-                return customerRepository.findByNameContainingAndPhoneContaining(name, "", pageable);
-            } else if (phone != null && !phone.isEmpty()) {
-                return customerRepository.findByNameContainingAndPhoneContaining("", phone, pageable);
-            } else {
-                return customerRepository.findBySource(source, pageable);
-            }
-        } else {
-            return customerRepository.findByNameContainingAndPhoneContaining(name != null ? name : "", phone != null ? phone : "", pageable);
+    /**
+     * 获取客户列表的指定字段（只查询这些列），筛选和排序与{@link #getCustomers}相同
+     * @param page 页码（从1开始）
+     * @param limit 每页数量
+     * @param filter 筛选条件
+     * @param fields 字段名（见{@link #SELECTABLE_FIELDS}）
+     * @return 分页结果，每行为字段名 -> 值
+     */
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> getCustomerFields(int page, int limit, CustomerFilter filter, List<String> fields) {
+        Pageable pageable = PageRequest.of(page - 1, limit, Sort.by(Sort.Direction.DESC, "createdAt"));
+        if (!shardService.isSharded()) {
+            return sparseFieldRepository.findAll(Customer.class, fields, CustomerSpecifications.fromFilter(filter), pageable);
+        }
+        // 归并需要排序列，未选择时临时加入并在归并后去掉
+        boolean withCreatedAt = fields.contains("createdAt");
+        List<String> shardFields = new ArrayList<>(fields);
+        if (!withCreatedAt) {
+            shardFields.add("createdAt");
         }
+        Pageable top = ShardMerge.topOf(pageable);
+        List<Page<Map<String, Object>>> pages = shardService.scatter(shard ->
+                sparseFieldRepository.findAll(Customer.class, shardFields, CustomerSpecifications.fromFilter(filter), top));
+        Page<Map<String, Object>> merged = ShardMerge.mergePages(pages, pageable,
+                Comparator.comparing(row -> (LocalDateTime) row.get("createdAt"), Comparator.nullsLast(Comparator.reverseOrder())));
+        if (!withCreatedAt) {
+            merged.forEach(row -> row.remove("createdAt"));
+        }
+        return merged;
     }
 
     /**
      * 获取客户来源分布统计
      * @return 客户来源分布统计数据
      */
+    @Transactional(readOnly = true)
     public Map<String, Long> getCustomerSourceStatistics() {
-        List<Object[]> results = customerRepository.countBySource();
-        Map<String, Long> statistics = new HashMap<>();
-        for (Object[] result : results) {
-            if (result[0] != null) {
-                statistics.put(result[0].toString(), (Long) result[1]);
+        StatisticsEvent event = JfrSupport.isAvailable() ? new StatisticsEvent("customerSource", "") : null;
+        if (event != null) {
+            event.begin();
+        }
+        List<Map<String, Long>> shardStatistics = shardService.scatter(shard -> {
+            Map<String, Long> counts = new HashMap<>();
+            for (Object[] result : customerRepository.countBySource()) {
+                if (result[0] != null) {
+                    counts.put(result[0].toString(), (Long) result[1]);
+                }
             }
+            // 编码列回填完成前，来源编码为空的旧行按旧列中的名称统计
+            lookupService.countLegacyLabels("customers").forEach((source, count) -> counts.merge(source, count, Long::sum));
+            return counts;
+        });
+        Map<String, Long> statistics = ShardMerge.sum(shardStatistics, new HashMap<>());
+        if (event != null) {
+            event.finish(statistics.values().stream().mapToLong(Long::longValue).sum());
         }
         return statistics;
     }
@@ -115,20 +369,61 @@ public class CustomerService {
      * @param days 天数
      * @return 客户数量统计数据
      */
+    @Transactional(readOnly = true)
     public Map<String, Long> getCustomerCountStatistics(int days) {
-        Map<String, Long> statistics = new HashMap<>();
+        StatisticsEvent event = JfrSupport.isAvailable() ? new StatisticsEvent("customerCount", "days=" + days) : null;
+        if (event != null) {
+            event.begin();
+        }
         LocalDate endDate = LocalDate.now();
         LocalDate startDate = endDate.minusDays(days - 1);
-        
-        for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
-            String dateStr = date.toString();
-            LocalDateTime startDateTime = date.atStartOfDay();
-            LocalDateTime endDateTime = date.plusDays(1).atStartOfDay().minusSeconds(1);
-            long count = customerRepository.countByCreatedAtBetween(startDateTime, endDateTime);
-            statistics.put(dateStr, count);
-        }
-        
+
+        List<Map<String, Long>> shardStatistics = shardService.scatter(shard -> {
+            Map<String, Long> counts = new HashMap<>();
+            for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+                String dateStr = date.toString();
+                LocalDateTime startDateTime = date.atStartOfDay();
+                LocalDateTime endDateTime = date.plusDays(1).atStartOfDay().minusSeconds(1);
+                counts.put(dateStr, customerRepository.countByCreatedAtBetween(startDateTime, endDateTime));
+            }
+            return counts;
+        });
+        Map<String, Long> statistics = ShardMerge.sum(shardStatistics, new HashMap<>());
+        if (event != null) {
+            event.finish(statistics.values().stream().mapToLong(Long::longValue).sum());
+        }
         return statistics;
     }
 
+    /**
+     * 在一个分片上按ID批量加载客户；启用分片时在分片线程的会话中加载，去掉关闭会话后无法加载的创建人（由attachCreators填充）
+     */
+    private List<Customer> loadByIds(List<Integer> ids) {
+        List<Customer> customers = customerRepository.findAllById(ids);
+        if (shardService.isSharded()) {
+            customers.forEach(customer -> customer.setCreator(null));
+        }
+        return customers;
+    }
+
+    /**
+     * 启用分片时从全局分片的用户表批量填充创建人（每批客户一次查询）
+     */
+    private List<Customer> attachCreators(List<Customer> customers) {
+        if (shardService.isSharded()) {
+            ShardMerge.attach(customers, Customer::getCreatedBy, userRepository::findAllById, User::getId, Customer::setCreator);
+        }
+        return customers;
+    }
+
+    /**
+     * 发布客户变更事件
+     * @param action 变更类型
+     * @param id 客户ID
+     * @param customer 变更后的客户对象（删除时为null）
+     */
+    private void publishChange(EntityChangeEvent.Action action, Integer id, Customer customer) {
+        eventPublisher.publishEvent(new EntityChangeEvent(this, EntityChangeEvent.EntityType.CUSTOMER, action, id, customer));
+    }
+
 }
@@ -0,0 +1,479 @@
+package com.crm.service;
+
+import com.crm.model.Followup;
+import com.crm.model.FollowupArchive;
+import com.crm.repository.FollowupArchiveRepository;
+import com.crm.repository.FollowupRepository;
+import com.crm.repository.SparseFieldRepository;
+import com.crm.shard.ShardContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 跟进记录归档服务
+ * followups表只保留近期的活跃数据，跟进时间早于归档期限的记录由定时任务分批整行搬迁到followups_archive表，
+ * 使活跃表及其索引保持小而常驻缓存。归档表只在归档任务和删除时变化，其汇总数据（总数、跟进方式分布）缓存在内存中，
+ * 由定时任务刷新，只用于统计和分页总数；写操作和按客户的读取不依赖汇总数据，其他实例归档后不会漏数据。
+ * 多个实例中同一时间只有持有数据库命名锁的一个执行归档。启用分片时每个分片有自己的归档表和汇总数据
+ */
+@Service
+public class FollowupArchiveService {
+
+    @Autowired
+    private FollowupRepository followupRepository;
+
+    @Autowired
+    private FollowupArchiveRepository followupArchiveRepository;
+
+    @Autowired
+    private SparseFieldRepository sparseFieldRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ShardService shardService;
+
+    @Autowired
+    private LookupService lookupService;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Value("${crm.archive.enabled:true}")
+    private boolean enabled;  // 是否启用定时归档
+
+    @Value("${crm.archive.after-days:365}")
+    private int afterDays;  // 跟进时间早于该天数的记录归档
+
+    @Value("${crm.archive.batch-size:1000}")
+    private int batchSize;  // 每批归档的行数
+
+    @Value("${crm.archive.pause-ms:200}")
+    private long pauseMs;  // 批次之间的暂停时间（毫秒）
+
+    @Value("${crm.archive.max-batches:2000}")
+    private int maxBatches;  // 每次运行最多执行的批次数
+
+    private static final String LOCK_NAME = "crm_followup_archive";
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final Map<Integer, Summary> summaries = new ConcurrentHashMap<>();  // 分片编号 -> 归档表汇总数据，不存在表示需要重新加载
+    private volatile Map<String, Object> lastRun;  // 最近一次归档结果
+
+    /**
+     * 归档表汇总数据
+     */
+    private static class Summary {
+        private final long total;  // 归档记录总数
+        private final LocalDateTime maxFollowTime;  // 最晚跟进时间
+        private final Map<String, Long> methodCounts;  // 跟进方式分布
+
+        private Summary(long total, LocalDateTime maxFollowTime, Map<String, Long> methodCounts) {
+            this.total = total;
+            this.maxFollowTime = maxFollowTime;
+            this.methodCounts = methodCounts;
+        }
+    }
+
+    /**
+     * 应用启动完成后加载归档表汇总数据
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            shardService.forEachShard(shard -> loadSummary());
+        } catch (Exception e) {
+            System.err.println("加载跟进记录归档汇总失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 定时归档，默认每天1点到5点之间每小时运行一次
+     */
+    @Scheduled(cron = "${crm.archive.cron:0 5 1-5 * * *}")
+    public void scheduledArchive() {
+        if (enabled) {
+            archive();
+        }
+    }
+
+    /**
+     * 定时刷新各分片的归档汇总数据（其他实例归档或删除后，本实例的汇总数据在一个周期内更新）
+     */
+    @Scheduled(fixedDelayString = "${crm.archive.summary-refresh-ms:300000}", initialDelayString = "${crm.archive.summary-refresh-ms:300000}")
+    public void refreshSummaries() {
+        try {
+            shardService.forEachShard(shard -> summaries.put(shard, computeSummary()));
+        } catch (Exception e) {
+            System.err.println("刷新跟进记录归档汇总失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 执行一次归档：依次处理每个分片，每批在一个短事务内复制到归档表并从活跃表删除。
+     * 执行期间持有数据库命名锁（GET_LOCK），多个实例同时触发时只有一个执行
+     * @return 归档结果，本实例或其他实例已有归档在运行时返回null
+     */
+    public Map<String, Object> archive() {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        try (Connection lockConnection = dataSource.getConnection()) {
+            if (!tryLock(lockConnection)) {
+                return null;
+            }
+            try {
+                return archiveLocked();
+            } finally {
+                unlock(lockConnection);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("获取归档锁失败：" + e.getMessage(), e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 获取归档状态
+     * @return 归档记录数（各分片合计）、最晚跟进时间和最近一次归档结果
+     */
+    public Map<String, Object> getStatus() {
+        long[] total = new long[1];
+        LocalDateTime[] maxFollowTime = new LocalDateTime[1];
+        shardService.forEachShard(shard -> {
+            Summary current = getSummary();
+            total[0] += current.total;
+            if (current.maxFollowTime != null && (maxFollowTime[0] == null || current.maxFollowTime.isAfter(maxFollowTime[0]))) {
+                maxFollowTime[0] = current.maxFollowTime;
+            }
+        });
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("afterDays", afterDays);
+        status.put("archivedTotal", total[0]);
+        status.put("archivedMaxFollowTime", maxFollowTime[0]);
+        status.put("running", running.get());
+        status.put("lastRun", lastRun);
+        return status;
+    }
+
+    /**
+     * 判断时间范围是否可能落在归档表中：归档的记录跟进时间都早于归档期限（当前时间减去after-days），
+     * 开始时间晚于归档期限时无需访问归档表。只依赖配置，不依赖本实例缓存的汇总数据
+     * @param startDateTime 开始时间
+     * @return 是否需要查询归档表
+     */
+    public boolean mayContain(LocalDateTime startDateTime) {
+        return !startDateTime.isAfter(LocalDateTime.now().minusDays(afterDays));
+    }
+
+    /**
+     * 统计时间范围内的归档记录数量，范围不涉及归档表时直接返回0
+     * @param startDateTime 开始时间
+     * @param endDateTime 结束时间
+     * @return 归档记录数量
+     */
+    public long countByFollowTimeBetween(LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        if (!mayContain(startDateTime)) {
+            return 0;
+        }
+        return followupArchiveRepository.countByFollowTimeBetween(startDateTime, endDateTime);
+    }
+
+    /**
+     * 获取归档记录的跟进方式分布（内存缓存，不扫描归档表）
+     * @return 跟进方式分布统计数据
+     */
+    public Map<String, Long> getMethodCounts() {
+        return getSummary().methodCounts;
+    }
+
+    /**
+     * 统计归档记录数量
+     * @param customerId 客户ID，为null时统计全部
+     * @return 归档记录数量
+     */
+    public long count(Integer customerId) {
+        if (customerId != null) {
+            return followupArchiveRepository.countByCustomerId(customerId);
+        }
+        // 全部记录的总数使用汇总数据；汇总为空时确认归档表确实为空（其他实例可能刚刚归档），否则重新统计
+        Summary current = getSummary();
+        if (current.total == 0 && !followupArchiveRepository.findAnyId().isEmpty()) {
+            current = computeSummary();
+            summaries.put(ShardContext.current(), current);
+        }
+        return current.total;
+    }
+
+    /**
+     * 按跟进时间倒序读取归档记录，转换为跟进记录对象
+     * @param customerId 客户ID，为null时读取全部
+     * @param offset 偏移量
+     * @param limit 读取数量
+     * @return 跟进记录列表
+     */
+    public List<Followup> findRecent(Integer customerId, long offset, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<FollowupArchive> archives = customerId == null
+                ? followupArchiveRepository.findRecent(offset, limit)
+                : followupArchiveRepository.findRecentByCustomerId(customerId, offset, limit);
+        List<Followup> followups = new ArrayList<>(archives.size());
+        for (FollowupArchive archive : archives) {
+            followups.add(toFollowup(archive));
+        }
+        return followups;
+    }
+
+    /**
+     * 按跟进时间倒序读取归档记录的指定字段
+     * @param customerId 客户ID，为null时读取全部
+     * @param offset 偏移量
+     * @param limit 读取数量
+     * @param fields 字段名
+     * @return 每行为字段名 -> 值
+     */
+    public List<Map<String, Object>> findRecentFields(Integer customerId, long offset, int limit, List<String> fields) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        Specification<FollowupArchive> spec = customerId == null ? null
+                : (root, query, cb) -> cb.equal(root.get("customerId"), customerId);
+        return sparseFieldRepository.findAll(FollowupArchive.class, fields, spec,
+                Sort.by(Sort.Direction.DESC, "followTime"), offset, limit);
+    }
+
+    /**
+     * 根据ID获取归档记录
+     * @param id 跟进记录ID
+     * @return 跟进记录对象，不存在时返回null
+     */
+    public Followup findById(Integer id) {
+        return followupArchiveRepository.findById(id).map(this::toFollowup).orElse(null);
+    }
+
+    /**
+     * 删除归档记录（归档表是冷数据，直接物理删除）
+     * @param id 跟进记录ID
+     * @return 是否删除成功
+     */
+    public boolean deleteById(Integer id) {
+        if (!followupArchiveRepository.existsById(id)) {
+            return false;
+        }
+        followupArchiveRepository.deleteById(id);
+        invalidateAfterCommit();
+        return true;
+    }
+
+    /**
+     * 软删除客户的一批归档记录（调用方开启事务），由PurgeService分批级联
+     * @param customerId 客户ID
+     * @param limit 本批最多软删除的记录数
+     * @return 本批软删除的跟进记录ID，没有时为空列表
+     */
+    public List<Integer> softDeleteByCustomerId(Integer customerId, int limit) {
+        List<Integer> ids = followupArchiveRepository.findIdsByCustomerId(customerId, PageRequest.of(0, limit));
+        if (!ids.isEmpty()) {
+            followupArchiveRepository.softDeleteByIds(ids);
+            invalidateAfterCommit();
+        }
+        return ids;
+    }
+
+    /**
+     * 把一批客户的归档记录转移到目标客户
+     * @param targetId 目标客户ID
+     * @param sourceIds 被合并的客户ID列表
+     * @return 转移的记录数量
+     */
+    public int reassignCustomer(Integer targetId, List<Integer> sourceIds) {
+        return followupArchiveRepository.reassignCustomer(targetId, sourceIds);
+    }
+
+    /**
+     * 持有归档锁时依次归档每个分片
+     */
+    private Map<String, Object> archiveLocked() {
+        long start = System.currentTimeMillis();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(afterDays);
+        long[] totals = new long[2];  // [归档条数, 批次数]，批次数上限对所有分片合计
+        shardService.forEachShard(shard -> {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            // 归档只复制编码列，旧的跟进方式列回填完成前不归档该分片
+            if (lookupService.isBackfillPending(shard, "followups")) {
+                System.out.println("分片" + shard + "的跟进方式编码尚未回填完成，跳过归档");
+                return;
+            }
+            if (archiveShard(transaction, cutoff, totals) > 0) {
+                summaries.remove(shard);
+            }
+        });
+        if (totals[0] > 0) {
+            System.out.println("跟进记录归档完成：" + totals[0] + "条");
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("cutoff", cutoff);
+        result.put("archived", totals[0]);
+        result.put("batches", totals[1]);
+        result.put("elapsedMs", System.currentTimeMillis() - start);
+        result.put("finishedAt", System.currentTimeMillis());
+        lastRun = result;
+        return result;
+    }
+
+    /**
+     * 在当前分片上分批归档，直到没有可归档的记录或批次数达到上限
+     * @return 本分片归档的条数
+     */
+    private long archiveShard(TransactionTemplate transaction, LocalDateTime cutoff, long[] totals) {
+        long archived = 0;
+        while (totals[1] < maxBatches) {
+            Integer moved = transaction.execute(status -> {
+                List<Integer> ids = followupRepository.findArchivableIds(cutoff, PageRequest.of(0, batchSize));
+                if (ids.isEmpty()) {
+                    return 0;
+                }
+                followupArchiveRepository.copyFromActive(ids);
+                followupRepository.deleteAllByIdInBatch(ids);
+                return ids.size();
+            });
+            totals[1]++;
+            archived += moved == null ? 0 : moved;
+            if (moved == null || moved < batchSize) {
+                break;
+            }
+            try {
+                Thread.sleep(pauseMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        totals[0] += archived;
+        return archived;
+    }
+
+    /**
+     * 获取当前分片的汇总数据，未加载或已失效时重新加载
+     */
+    private Summary getSummary() {
+        Summary current = summaries.get(ShardContext.current());
+        return current != null ? current : loadSummary();
+    }
+
+    /**
+     * 从当前分片的归档表加载汇总数据（本实例的归档表变化后执行一次，其余由定时刷新）
+     */
+    private synchronized Summary loadSummary() {
+        int shard = ShardContext.current();
+        Summary summary = summaries.get(shard);
+        if (summary == null) {
+            summary = computeSummary();
+            summaries.put(shard, summary);
+        }
+        return summary;
+    }
+
+    /**
+     * 统计当前分片的归档表
+     */
+    private Summary computeSummary() {
+        Map<String, Long> methodCounts = new HashMap<>();
+        long total = 0;
+        for (Object[] result : followupArchiveRepository.countByFollowMethod()) {
+            long count = (Long) result[1];
+            total += count;
+            if (result[0] != null) {
+                methodCounts.put(result[0].toString(), count);
+            }
+        }
+        // 编码列回填完成前，编码为空的旧行按旧列中的名称统计
+        lookupService.countLegacyLabels("followups_archive").forEach((method, count) -> methodCounts.merge(method, count, Long::sum));
+        LocalDateTime maxFollowTime = total == 0 ? null : followupArchiveRepository.findMaxFollowTime();
+        return new Summary(total, maxFollowTime, Collections.unmodifiableMap(methodCounts));
+    }
+
+    /**
+     * 事务提交后使汇总数据失效，避免其他线程在提交前读到旧数据并缓存
+     */
+    private void invalidateAfterCommit() {
+        int shard = ShardContext.current();
+        summaries.remove(shard);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    summaries.remove(shard);
+                }
+            });
+        }
+    }
+
+    private boolean tryLock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            statement.setString(1, LOCK_NAME);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private void unlock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.executeQuery().close();
+        }
+    }
+
+    /**
+     * 归档记录转换为跟进记录对象，接口返回格式与活跃记录一致
+     */
+    private Followup toFollowup(FollowupArchive archive) {
+        Followup followup = new Followup();
+        followup.setId(archive.getId());
+        followup.setCustomerId(archive.getCustomerId());
+        followup.setUserId(archive.getUserId());
+        followup.setFollowTime(archive.getFollowTime());
+        followup.setFollowMethod(archive.getFollowMethod());
+        followup.setContent(archive.getContent());
+        followup.setNextFollowReminder(archive.getNextFollowReminder());
+        followup.setCreatedAt(archive.getCreatedAt());
+        followup.setUpdatedAt(archive.getUpdatedAt());
+        return followup;
+    }
+
+}
@@ -0,0 +1,558 @@
+package com.crm.service;
+
+import com.crm.event.EntityChangeEvent;
+import com.crm.ingest.FollowupWal;
+import com.crm.lookup.LabelDictionary;
+import com.crm.model.Followup;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 跟进记录写后入库（write-behind）服务，启用后用于高频的活动记录写入
+ * 1. 接收：请求线程把跟进记录交给WAL写线程，写线程把积攒的一组记录追加到本地预写日志并fsync一次（组提交），
+ *    落盘后即确认，请求线程不再等待数据库事务
+ * 2. 入库：后台线程把已落盘的记录按大批量插入MySQL，同一事务中推进检查点序号
+ * 3. 重启：按检查点重放预写日志中尚未入库的记录；缓冲区已满时拒绝新写入（背压）
+ * 4. 幂等：每次提交带幂等键，确认超时的记录仍在队列中，客户端用同一幂等键重试时等待或返回原记录的结果，不会重复写入
+ * 启用分片时一批记录按所属客户的分片拆分，每个分片在自己的事务中插入并推进该分片的检查点，
+ * 重放和重试时跳过已入库到各自分片的记录。
+ * 每个实例的预写日志序号各自递增，检查点按实例ID（保存在预写日志目录的node.id中）分别记录
+ */
+@Service
+public class FollowupIngestService {
+
+    private static final String LEGACY_CHECKPOINT_NAME = "followups";
+    private static final String WAL_FILE = "followups.wal";
+    private static final String NODE_ID_FILE = "node.id";
+    private static final String REJECTED_FILE = "followups.rejected";
+    private static final String INSERT_SQL = "INSERT INTO followups (id, customer_id, user_id, follow_time, method_id, content, "
+            + "next_follow_reminder, created_at, updated_at, deleted) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+    private static final String CHECKPOINT_SQL = "INSERT INTO wal_checkpoints (name, last_seq, updated_at) VALUES (?, ?, NOW()) "
+            + "ON DUPLICATE KEY UPDATE last_seq = VALUES(last_seq), updated_at = VALUES(updated_at)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private AuditLogService auditLogService;
+
+    @Autowired
+    private ShardService shardService;
+
+    @Value("${crm.ingest.write-behind.enabled:false}")
+    private boolean enabled;  // 是否启用写后入库模式
+
+    @Value("${crm.ingest.wal-dir:./data/wal}")
+    private String walDir;  // 预写日志目录
+
+    @Value("${crm.ingest.buffer-capacity:100000}")
+    private int bufferCapacity;  // 已接收未入库记录数上限，超过后拒绝写入
+
+    @Value("${crm.ingest.batch-size:1000}")
+    private int batchSize;  // 每批入库的记录数
+
+    @Value("${crm.ingest.flush-interval-ms:200}")
+    private long flushIntervalMs;  // 缓冲区为空或入库失败后的等待时间（毫秒）
+
+    @Value("${crm.ingest.ack-timeout-ms:5000}")
+    private long ackTimeoutMs;  // 等待落盘确认的超时时间（毫秒）
+
+    @Value("${crm.ingest.wal-truncate-bytes:67108864}")
+    private long walTruncateBytes;  // 全部入库后预写日志超过该大小时截断
+
+    @Value("${crm.ingest.idempotency-ttl-ms:600000}")
+    private long idempotencyTtlMs;  // 已落盘记录的幂等键保留时间（毫秒），期间用同一幂等键重试直接返回原序号
+
+    private final BlockingQueue<PendingWrite> walQueue = new LinkedBlockingQueue<>();  // 待写入预写日志
+    private final ConcurrentLinkedDeque<FollowupWal.Record> buffer = new ConcurrentLinkedDeque<>();  // 已落盘待入库
+    private final AtomicInteger buffered = new AtomicInteger();  // 已接收未入库的记录数
+    private final Map<String, PendingWrite> requests = new ConcurrentHashMap<>();  // 幂等键 -> 提交
+    private final Deque<PendingWrite> acknowledged = new ArrayDeque<>();  // 已落盘的提交，按确认顺序过期（只在写线程中访问）
+    private FollowupWal wal;
+    private String checkpointName;  // 本实例的检查点名称（followups:实例ID）
+    private volatile long lastWrittenSeq;  // 已写入预写日志的最大序号
+    private volatile long checkpointSeq;  // 已入库的最大序号
+    private long[] shardCheckpoints;  // 各分片已入库的最大序号（只在启动和入库线程中访问）
+    private volatile long flushedTotal;  // 本次启动以来入库的记录数
+    private volatile long rejectedTotal;  // 本次启动以来因数据错误被拒绝的记录数
+    private volatile boolean running;
+    private Thread writer;
+    private Thread flusher;
+
+    /**
+     * 等待写入预写日志的记录及其确认
+     */
+    private static class PendingWrite {
+        private final String requestKey;
+        private final FollowupWal.Record record;
+        private final CompletableFuture<Long> done = new CompletableFuture<>();
+        private long acknowledgedAt;
+
+        private PendingWrite(String requestKey, FollowupWal.Record record) {
+            this.requestKey = requestKey;
+            this.record = record;
+        }
+    }
+
+    /**
+     * 实例ID及是否本次新建
+     */
+    private static class NodeId {
+        private final String id;
+        private final boolean created;
+
+        private NodeId(String id, boolean created) {
+            this.id = id;
+            this.created = created;
+        }
+    }
+
+    /**
+     * 启用时打开预写日志，重放尚未入库的记录，并启动写线程和入库线程
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Path dir = Paths.get(walDir);
+        Files.createDirectories(dir);
+        Path walPath = dir.resolve(WAL_FILE);
+        // 已有预写日志但没有实例ID：由升级前的单实例版本写入，沿用它的共用检查点
+        boolean legacyWal = Files.exists(walPath) && Files.size(walPath) > 0;
+        NodeId nodeId = loadNodeId(dir);
+        checkpointName = LEGACY_CHECKPOINT_NAME + ":" + nodeId.id;
+        wal = new FollowupWal(walPath);
+
+        shardCheckpoints = new long[shardService.getShardCount()];
+        for (int shard = 0; shard < shardCheckpoints.length; shard++) {
+            String name = nodeId.created && legacyWal ? LEGACY_CHECKPOINT_NAME : checkpointName;
+            List<Long> checkpoint = shardService.onShard(shard, () -> jdbcTemplate.queryForList(
+                    "SELECT last_seq FROM wal_checkpoints WHERE name = ?", Long.class, name));
+            shardCheckpoints[shard] = checkpoint.isEmpty() ? 0 : checkpoint.get(0);
+            lastWrittenSeq = Math.max(lastWrittenSeq, shardCheckpoints[shard]);
+        }
+        int replayed = replay();
+        FollowupWal.Record first = buffer.peekFirst();
+        checkpointSeq = first == null ? lastWrittenSeq : first.getSeq() - 1;
+        if (replayed > 0) {
+            System.out.println("预写日志重放：" + replayed + "条跟进记录待入库");
+        }
+
+        running = true;
+        writer = new Thread(this::writeLoop, "crm-wal-writer");
+        flusher = new Thread(this::flushLoop, "crm-wal-flusher");
+        writer.setDaemon(true);
+        flusher.setDaemon(true);
+        writer.start();
+        flusher.start();
+    }
+
+    /**
+     * 停止接收，等待已接收的记录落盘并尽量入库
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        writer.join(ackTimeoutMs);
+        flusher.join(ackTimeoutMs);
+        wal.close();
+    }
+
+    /**
+     * 是否启用写后入库模式
+     * @return 是否启用
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 接收一条跟进记录：写入预写日志并fsync后返回，随后由后台线程入库。
+     * 同一幂等键已提交过时不再写入，等待并返回原提交的结果（原提交失败时重新写入）
+     * @param followup 跟进记录对象（ID在入库后才分配）
+     * @param requestKey 幂等键
+     * @return 预写日志序号；等待确认超时返回null，此时记录仍在队列中，之后会落盘并入库
+     * @throws RejectedExecutionException 缓冲区已满或服务未运行
+     * @throws IOException 写入预写日志失败
+     */
+    public Long submit(Followup followup, String requestKey) throws IOException {
+        if (!running) {
+            throw new RejectedExecutionException("写后入库服务未运行");
+        }
+        PendingWrite pending = new PendingWrite(requestKey, new FollowupWal.Record(0, followup));
+        PendingWrite existing;
+        while ((existing = requests.putIfAbsent(requestKey, pending)) != null) {
+            if (!existing.done.isCompletedExceptionally()) {
+                return await(existing);
+            }
+            requests.remove(requestKey, existing);
+        }
+        if (buffered.incrementAndGet() > bufferCapacity) {
+            buffered.decrementAndGet();
+            requests.remove(requestKey, pending);
+            throw new RejectedExecutionException("写入缓冲区已满");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        followup.setCreatedAt(now);
+        followup.setUpdatedAt(now);
+        walQueue.add(pending);
+        return await(pending);
+    }
+
+    /**
+     * 获取写后入库状态
+     * @return 缓冲区和序号信息
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("running", running);
+        status.put("buffered", buffered.get());
+        status.put("bufferCapacity", bufferCapacity);
+        status.put("lastWrittenSeq", lastWrittenSeq);
+        status.put("checkpointSeq", checkpointSeq);
+        status.put("flushedTotal", flushedTotal);
+        status.put("rejectedTotal", rejectedTotal);
+        status.put("requestKeys", requests.size());
+        status.put("checkpointName", checkpointName);
+        try {
+            status.put("walBytes", wal == null ? 0 : wal.size());
+        } catch (IOException e) {
+            status.put("walBytes", -1);
+        }
+        return status;
+    }
+
+    /**
+     * WAL写线程：每次取出队列中积攒的全部记录，分配序号后一次写入并fsync，然后统一确认
+     */
+    private void writeLoop() {
+        List<PendingWrite> group = new ArrayList<>();
+        while (running || !walQueue.isEmpty()) {
+            try {
+                PendingWrite first = walQueue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                expireRequestKeys();
+                if (first == null) {
+                    truncateIfFlushed();
+                    continue;
+                }
+                group.clear();
+                group.add(first);
+                walQueue.drainTo(group);
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                long seq = lastWrittenSeq;
+                for (PendingWrite pending : group) {
+                    pending.record.setSeq(++seq);
+                    FollowupWal.encode(pending.record, bytes);
+                }
+                wal.append(bytes.toByteArray());
+                lastWrittenSeq = seq;
+
+                long acknowledgedAt = System.currentTimeMillis();
+                for (PendingWrite pending : group) {
+                    buffer.add(pending.record);
+                    pending.acknowledgedAt = acknowledgedAt;
+                    acknowledged.add(pending);
+                    pending.done.complete(pending.record.getSeq());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("写入预写日志失败：" + e.getMessage());
+                for (PendingWrite pending : group) {
+                    if (!pending.done.isDone()) {
+                        buffered.decrementAndGet();
+                        pending.done.completeExceptionally(e);
+                        requests.remove(pending.requestKey, pending);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 入库线程：每次取缓冲区头部至多batchSize条记录批量插入，成功后才从缓冲区移除
+     */
+    private void flushLoop() {
+        while (running || !buffer.isEmpty()) {
+            List<FollowupWal.Record> batch = new ArrayList<>();
+            Iterator<FollowupWal.Record> iterator = buffer.iterator();
+            while (iterator.hasNext() && batch.size() < batchSize) {
+                batch.add(iterator.next());
+            }
+            try {
+                if (batch.isEmpty()) {
+                    Thread.sleep(flushIntervalMs);
+                    continue;
+                }
+                try {
+                    insertBatch(batch);
+                    removeHead(batch.size());
+                } catch (DataIntegrityViolationException e) {
+                    // 批内有违反约束的记录（如客户已被删除）：逐条入库，拒绝的记录另存，每处理一条移除一条
+                    for (FollowupWal.Record record : batch) {
+                        try {
+                            insertBatch(Collections.singletonList(record));
+                        } catch (DataIntegrityViolationException rejected) {
+                            reject(record, rejected);
+                        }
+                        removeHead(1);
+                    }
+                }
+                if (batch.size() < batchSize) {
+                    Thread.sleep(flushIntervalMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // 数据库不可用等错误：记录留在缓冲区，稍后重试
+                System.err.println("跟进记录批量入库失败，稍后重试：" + e.getMessage());
+                if (!running) {
+                    return;
+                }
+                try {
+                    Thread.sleep(flushIntervalMs * 10);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 等待提交落盘确认
+     * @return 预写日志序号，超时返回null
+     */
+    private Long await(PendingWrite pending) throws IOException {
+        try {
+            return pending.done.get(ackTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IOException("写入预写日志失败：" + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * 移除确认时间超过保留时间的幂等键
+     */
+    private void expireRequestKeys() {
+        long expireBefore = System.currentTimeMillis() - idempotencyTtlMs;
+        PendingWrite oldest;
+        while ((oldest = acknowledged.peekFirst()) != null && oldest.acknowledgedAt < expireBefore) {
+            acknowledged.pollFirst();
+            requests.remove(oldest.requestKey, oldest);
+        }
+    }
+
+    /**
+     * 从缓冲区头部移除已入库的记录
+     */
+    private void removeHead(int count) {
+        for (int i = 0; i < count; i++) {
+            buffer.poll();
+        }
+        buffered.addAndGet(-count);
+    }
+
+    /**
+     * 按分片拆分一批记录，每个分片在一个事务中批量插入、推进该分片的检查点并发布创建事件；
+     * 已入库到所在分片的记录（前一次部分分片成功后重试）跳过
+     */
+    private void insertBatch(List<FollowupWal.Record> batch) {
+        Map<Integer, List<FollowupWal.Record>> byShard = new LinkedHashMap<>();
+        for (FollowupWal.Record record : batch) {
+            LabelDictionary.FOLLOW_METHOD.register(record.getFollowup().getFollowMethod());
+            int shard = shardService.shardOf(record.getFollowup().getCustomerId());
+            if (record.getSeq() > shardCheckpoints[shard]) {
+                byShard.computeIfAbsent(shard, key -> new ArrayList<>()).add(record);
+            }
+        }
+        for (Map.Entry<Integer, List<FollowupWal.Record>> group : byShard.entrySet()) {
+            int shard = group.getKey();
+            List<FollowupWal.Record> records = group.getValue();
+            shardService.onShard(shard, () -> insertOnShard(records, shard));
+            shardCheckpoints[shard] = records.get(records.size() - 1).getSeq();
+        }
+        checkpointSeq = batch.get(batch.size() - 1).getSeq();
+        flushedTotal += batch.size();
+    }
+
+    /**
+     * 在当前分片上的一个事务中批量插入（ID由分配器按分片预先生成）、推进检查点并发布创建事件
+     */
+    private Void insertOnShard(List<FollowupWal.Record> batch, int shard) {
+        for (FollowupWal.Record record : batch) {
+            if (record.getFollowup().getId() == null) {
+                record.getFollowup().setId(shardService.nextId(ShardService.FOLLOWUP_SEQUENCE, shard));
+            }
+        }
+        long lastSeq = batch.get(batch.size() - 1).getSeq();
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+                    for (FollowupWal.Record record : batch) {
+                        Followup followup = record.getFollowup();
+                        statement.setInt(1, followup.getId());
+                        statement.setInt(2, followup.getCustomerId());
+                        statement.setInt(3, followup.getUserId());
+                        statement.setTimestamp(4, Timestamp.valueOf(followup.getFollowTime()));
+                        statement.setInt(5, LabelDictionary.FOLLOW_METHOD.encode(followup.getFollowMethod()));
+                        statement.setString(6, followup.getContent());
+                        statement.setTimestamp(7, followup.getNextFollowReminder() == null ? null : Timestamp.valueOf(followup.getNextFollowReminder()));
+                        statement.setTimestamp(8, Timestamp.valueOf(followup.getCreatedAt()));
+                        statement.setTimestamp(9, Timestamp.valueOf(followup.getUpdatedAt()));
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+                return null;
+            });
+            jdbcTemplate.update(CHECKPOINT_SQL, checkpointName, lastSeq);
+            // 在事务内发布，变更日志与本批记录一同提交
+            for (FollowupWal.Record record : batch) {
+                Followup followup = record.getFollowup();
+                // JDBC批量写入不经过实体事件，直接记录审计，操作人为提交跟进记录的用户
+                Map<String, Object> values = new LinkedHashMap<>();
+                values.put("customerId", followup.getCustomerId());
+                values.put("userId", followup.getUserId());
+                values.put("followTime", followup.getFollowTime());
+                values.put("followMethod", followup.getFollowMethod());
+                values.put("content", followup.getContent());
+                if (followup.getNextFollowReminder() != null) {
+                    values.put("nextFollowReminder", followup.getNextFollowReminder());
+                }
+                auditLogService.record(EntityChangeEvent.EntityType.FOLLOWUP, EntityChangeEvent.Action.CREATE,
+                        followup.getId(), followup.getUserId(), auditLogService.newValues(values));
+                eventPublisher.publishEvent(new EntityChangeEvent(this, EntityChangeEvent.EntityType.FOLLOWUP,
+                        EntityChangeEvent.Action.CREATE, followup.getId(), followup));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 拒绝一条无法入库的记录：追加到拒绝文件并推进所在分片的检查点，避免重启后反复重放
+     */
+    private void reject(FollowupWal.Record record, Exception cause) {
+        System.err.println("跟进记录入库被拒绝（序号" + record.getSeq() + "）：" + cause.getMessage());
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            FollowupWal.encode(record, bytes);
+            Files.write(Paths.get(walDir, REJECTED_FILE), bytes.toByteArray(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("写入拒绝文件失败：" + e.getMessage());
+        }
+        int shard = shardService.shardOf(record.getFollowup().getCustomerId());
+        shardService.onShard(shard, () -> jdbcTemplate.update(CHECKPOINT_SQL, checkpointName, record.getSeq()));
+        shardCheckpoints[shard] = record.getSeq();
+        checkpointSeq = record.getSeq();
+        rejectedTotal++;
+    }
+
+    /**
+     * 全部记录已入库且预写日志过大时截断（只在写线程中调用，与追加互斥）
+     */
+    private void truncateIfFlushed() {
+        try {
+            if (checkpointSeq == lastWrittenSeq && walQueue.isEmpty() && wal.size() > walTruncateBytes) {
+                wal.truncate();
+            }
+        } catch (IOException e) {
+            System.err.println("截断预写日志失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 读取预写日志，把序号大于所在分片检查点的记录放回缓冲区（不完整或校验失败的尾部记录由FollowupWal截断）
+     * @return 重放的记录数
+     */
+    private int replay() throws IOException {
+        int[] replayed = new int[1];
+        wal.replay(record -> {
+            lastWrittenSeq = Math.max(lastWrittenSeq, record.getSeq());
+            if (record.getSeq() > shardCheckpoints[shardService.shardOf(record.getFollowup().getCustomerId())]) {
+                buffer.add(record);
+                buffered.incrementAndGet();
+                replayed[0]++;
+            }
+        });
+        return replayed[0];
+    }
+
+    /**
+     * 读取预写日志目录中的实例ID，不存在时生成并写入（先写临时文件再原子改名）。
+     * 实例ID随预写日志保存，实例重启后不变；多个实例各用自己的检查点，互不覆盖
+     * @return 实例ID，首次生成时返回的NodeId标记为新建
+     */
+    private NodeId loadNodeId(Path dir) throws IOException {
+        Path file = dir.resolve(NODE_ID_FILE);
+        if (Files.exists(file)) {
+            return new NodeId(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim(), false);
+        }
+        String id = UUID.randomUUID().toString();
+        Path temp = dir.resolve(NODE_ID_FILE + ".tmp");
+        Files.write(temp, id.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        return new NodeId(id, true);
+    }
+
+}
@@ -1,20 +1,36 @@
 package com.crm.service;
 
+import com.crm.event.EntityChangeEvent;
+import com.crm.model.Customer;
 import com.crm.model.Followup;
+import com.crm.model.User;
+import com.crm.profiling.JfrSupport;
+import com.crm.profiling.StatisticsEvent;
 import com.crm.repository.FollowupRepository;
+import com.crm.repository.SparseFieldRepository;
+import com.crm.repository.UserRepository;
+import com.crm.shard.ShardMerge;
+import com.crm.util.FieldSelectionUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 跟进记录服务类，处理跟进记录相关的业务逻辑
@@ -23,25 +39,59 @@ import java.util.Map;
 @Transactional
 public class FollowupService {
 
+    /**
+     * 列表接口fields参数可选的字段
+     */
+    public static final Set<String> SELECTABLE_FIELDS = FieldSelectionUtils.allowed("id", "customerId", "userId",
+            "followTime", "followMethod", "content", "nextFollowReminder", "createdAt", "updatedAt");
+
     @Autowired
     private FollowupRepository followupRepository;
 
+    @Autowired
+    private FollowupArchiveService followupArchiveService;
+
+    @Autowired
+    private SparseFieldRepository sparseFieldRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ShardService shardService;
+
+    @Autowired
+    private LookupService lookupService;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private UserRepository userRepository;
+
     /**
      * 添加跟进记录
      * @param followup 跟进记录对象
      * @return 添加的跟进记录对象
      */
     public Followup addFollowup(Followup followup) {
-        return followupRepository.save(followup);
+        // 跟进记录与所属客户在同一分片
+        shardService.route(followup.getCustomerId());
+        Followup saved = followupRepository.save(followup);
+        publishChange(EntityChangeEvent.Action.CREATE, saved.getId(), saved);
+        return saved;
     }
 
     /**
-     * 根据跟进记录ID获取跟进记录信息
+     * 根据跟进记录ID获取跟进记录信息，活跃表中不存在时再查归档表
      * @param id 跟进记录ID
      * @return 跟进记录对象
      */
+    @Transactional(readOnly = true)
     public Followup getFollowupById(Integer id) {
-        return followupRepository.findById(id).orElse(null);
+        shardService.route(id);
+        Followup followup = followupRepository.findById(id).orElse(null);
+        return followup != null ? followup : followupArchiveService.findById(id);
     }
 
     /**
@@ -50,8 +100,14 @@ public class FollowupService {
      * @return 是否删除成功
      */
     public boolean deleteFollowup(Integer id) {
+        shardService.route(id);
         if (followupRepository.existsById(id)) {
             followupRepository.deleteById(id);
+            publishChange(EntityChangeEvent.Action.DELETE, id, null);
+            return true;
+        }
+        if (followupArchiveService.deleteById(id)) {
+            publishChange(EntityChangeEvent.Action.DELETE, id, null);
             return true;
         }
         return false;
@@ -59,34 +115,102 @@ public class FollowupService {
 
     /**
      * 获取跟进记录列表，支持分页和按客户筛选
+     * 先分页读取活跃表，活跃表不足一页时再从归档表接续读取，近期页不访问归档表；
+     * 启用分片时按客户筛选只访问客户所在的分片，不筛选时每个分片读取前offset+limit行后归并
      * @param page 页码（从1开始）
      * @param limit 每页数量
      * @param customerId 客户ID
      * @return 分页跟进记录列表
      */
+    @Transactional(readOnly = true)
     public Page<Followup> getFollowups(int page, int limit, Integer customerId) {
         // 构建分页参数，按跟进时间倒序排序
         Pageable pageable = PageRequest.of(page - 1, limit, Sort.by(Sort.Direction.DESC, "followTime"));
+        if (customerId != null || !shardService.isSharded()) {
+            shardService.route(customerId);
+            return findFollowups(pageable, customerId);
+        }
+        Pageable top = ShardMerge.topOf(pageable);
+        List<Page<Followup>> pages = shardService.scatter(shard -> {
+            Page<Followup> shardPage = findFollowups(top, null);
+            // 延迟加载的客户和跟进人在分片线程的会话关闭后无法加载，归并后批量填充
+            shardPage.forEach(followup -> {
+                followup.setCustomer(null);
+                followup.setUser(null);
+            });
+            return shardPage;
+        });
+        Page<Followup> merged = ShardMerge.mergePages(pages, pageable, Comparator.comparing(Followup::getFollowTime, Comparator.nullsLast(Comparator.reverseOrder())));
+        attachRelations(merged.getContent());
+        return merged;
+    }
 
-        // 根据客户ID筛选
-        if (customerId != null) {
-            return followupRepository.findByCustomerId(customerId, pageable);
-        } else {
-            return followupRepository.findAll(pageable);
+    /**
+     * 按ID批量加载跟进记录（启用分片时按ID所在分片并行加载，并批量填充客户和跟进人）
+     * @param ids 跟进记录ID
+     * @return 找到的跟进记录（顺序不保证）
+     */
+    @Transactional(readOnly = true)
+    public List<Followup> findAllById(Collection<Integer> ids) {
+        return attachRelations(shardService.findAllById(ids, this::loadByIds));
+    }
+
+    /**
+     * 获取跟进记录列表的指定字段（只查询这些列），分页、归档表衔接和分片归并方式与{@link #getFollowups}相同
+     * @param page 页码（从1开始）
+     * @param limit 每页数量
+     * @param customerId 客户ID
+     * @param fields 字段名（见{@link #SELECTABLE_FIELDS}）
+     * @return 分页结果，每行为字段名 -> 值
+     */
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> getFollowupFields(int page, int limit, Integer customerId, List<String> fields) {
+        Pageable pageable = PageRequest.of(page - 1, limit, Sort.by(Sort.Direction.DESC, "followTime"));
+        if (customerId != null || !shardService.isSharded()) {
+            shardService.route(customerId);
+            return findFollowupFields(pageable, customerId, fields);
         }
+        // 归并需要排序列，未选择时临时加入并在归并后去掉
+        boolean withFollowTime = fields.contains("followTime");
+        List<String> shardFields = new ArrayList<>(fields);
+        if (!withFollowTime) {
+            shardFields.add("followTime");
+        }
+        Pageable top = ShardMerge.topOf(pageable);
+        List<Page<Map<String, Object>>> pages = shardService.scatter(shard -> findFollowupFields(top, null, shardFields));
+        Page<Map<String, Object>> merged = ShardMerge.mergePages(pages, pageable,
+                Comparator.comparing(row -> (LocalDateTime) row.get("followTime"), Comparator.nullsLast(Comparator.reverseOrder())));
+        if (!withFollowTime) {
+            merged.forEach(row -> row.remove("followTime"));
+        }
+        return merged;
     }
 
     /**
      * 获取跟进方式分布统计
      * @return 跟进方式分布统计数据
      */
+    @Transactional(readOnly = true)
     public Map<String, Long> getFollowupMethodStatistics() {
-        List<Object[]> results = followupRepository.countByFollowMethod();
-        Map<String, Long> statistics = new HashMap<>();
-        for (Object[] result : results) {
-            if (result[0] != null) {
-                statistics.put(result[0].toString(), (Long) result[1]);
+        StatisticsEvent event = JfrSupport.isAvailable() ? new StatisticsEvent("followupMethod", "") : null;
+        if (event != null) {
+            event.begin();
+        }
+        List<Map<String, Long>> shardStatistics = shardService.scatter(shard -> {
+            // 归档部分使用内存中的汇总数据，只扫描活跃表
+            Map<String, Long> counts = new HashMap<>(followupArchiveService.getMethodCounts());
+            for (Object[] result : followupRepository.countByFollowMethod()) {
+                if (result[0] != null) {
+                    counts.merge(result[0].toString(), (Long) result[1], Long::sum);
+                }
             }
+            // 编码列回填完成前，编码为空的旧行按旧列中的名称统计
+            lookupService.countLegacyLabels("followups").forEach((method, count) -> counts.merge(method, count, Long::sum));
+            return counts;
+        });
+        Map<String, Long> statistics = ShardMerge.sum(shardStatistics, new HashMap<>());
+        if (event != null) {
+            event.finish(statistics.values().stream().mapToLong(Long::longValue).sum());
         }
         return statistics;
     }
@@ -96,20 +220,113 @@ public class FollowupService {
      * @param days 天数
      * @return 跟进记录数量统计数据
      */
+    @Transactional(readOnly = true)
     public Map<String, Long> getFollowupCountStatistics(int days) {
-        Map<String, Long> statistics = new HashMap<>();
+        StatisticsEvent event = JfrSupport.isAvailable() ? new StatisticsEvent("followupCount", "days=" + days) : null;
+        if (event != null) {
+            event.begin();
+        }
         LocalDate endDate = LocalDate.now();
         LocalDate startDate = endDate.minusDays(days - 1);
-        
-        for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
-            String dateStr = date.toString();
-            LocalDateTime startDateTime = date.atStartOfDay();
-            LocalDateTime endDateTime = date.plusDays(1).atStartOfDay().minusSeconds(1);
-            long count = followupRepository.countByFollowTimeBetween(startDateTime, endDateTime);
-            statistics.put(dateStr, count);
-        }
-        
+
+        List<Map<String, Long>> shardStatistics = shardService.scatter(shard -> {
+            Map<String, Long> counts = new HashMap<>();
+            for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+                String dateStr = date.toString();
+                LocalDateTime startDateTime = date.atStartOfDay();
+                LocalDateTime endDateTime = date.plusDays(1).atStartOfDay().minusSeconds(1);
+                counts.put(dateStr, followupRepository.countByFollowTimeBetween(startDateTime, endDateTime)
+                        + followupArchiveService.countByFollowTimeBetween(startDateTime, endDateTime));
+            }
+            return counts;
+        });
+        Map<String, Long> statistics = ShardMerge.sum(shardStatistics, new HashMap<>());
+        if (event != null) {
+            event.finish(statistics.values().stream().mapToLong(Long::longValue).sum());
+        }
         return statistics;
     }
 
+    /**
+     * 在当前分片上分页读取跟进记录，活跃表不足一页时从归档表接续
+     */
+    private Page<Followup> findFollowups(Pageable pageable, Integer customerId) {
+        int limit = pageable.getPageSize();
+
+        // 根据客户ID筛选
+        Page<Followup> active;
+        if (customerId != null) {
+            active = followupRepository.findByCustomerId(customerId, pageable);
+        } else {
+            active = followupRepository.findAll(pageable);
+        }
+
+        long archived = followupArchiveService.count(customerId);
+        if (archived == 0) {
+            return active;
+        }
+        List<Followup> content = new ArrayList<>(active.getContent());
+        if (content.size() < limit) {
+            long archiveOffset = Math.max(0, pageable.getOffset() - active.getTotalElements());
+            content.addAll(followupArchiveService.findRecent(customerId, archiveOffset, limit - content.size()));
+        }
+        return new PageImpl<>(content, pageable, active.getTotalElements() + archived);
+    }
+
+    /**
+     * 在当前分片上分页读取跟进记录的指定字段，活跃表不足一页时从归档表接续
+     */
+    private Page<Map<String, Object>> findFollowupFields(Pageable pageable, Integer customerId, List<String> fields) {
+        int limit = pageable.getPageSize();
+        Specification<Followup> spec = customerId == null ? null
+                : (root, query, cb) -> cb.equal(root.get("customerId"), customerId);
+        Page<Map<String, Object>> active = sparseFieldRepository.findAll(Followup.class, fields, spec, pageable);
+
+        long archived = followupArchiveService.count(customerId);
+        if (archived == 0) {
+            return active;
+        }
+        List<Map<String, Object>> content = new ArrayList<>(active.getContent());
+        if (content.size() < limit) {
+            long archiveOffset = Math.max(0, pageable.getOffset() - active.getTotalElements());
+            content.addAll(followupArchiveService.findRecentFields(customerId, archiveOffset, limit - content.size(), fields));
+        }
+        return new PageImpl<>(content, pageable, active.getTotalElements() + archived);
+    }
+
+    /**
+     * 发布跟进记录变更事件
+     * @param action 变更类型
+     * @param id 跟进记录ID
+     * @param followup 变更后的跟进记录对象（删除时为null）
+     */
+    private void publishChange(EntityChangeEvent.Action action, Integer id, Followup followup) {
+        eventPublisher.publishEvent(new EntityChangeEvent(this, EntityChangeEvent.EntityType.FOLLOWUP, action, id, followup));
+    }
+
+    /**
+     * 在一个分片上按ID批量加载跟进记录；启用分片时去掉分片线程的会话关闭后无法加载的客户和跟进人（由attachRelations填充）
+     */
+    private List<Followup> loadByIds(List<Integer> ids) {
+        List<Followup> followups = followupRepository.findAllById(ids);
+        if (shardService.isSharded()) {
+            followups.forEach(followup -> {
+                followup.setCustomer(null);
+                followup.setUser(null);
+            });
+        }
+        return followups;
+    }
+
+    /**
+     * 启用分片时批量填充客户（按客户所在分片并行加载）和跟进人（全局分片的用户表），每批各一次查询
+     */
+    private List<Followup> attachRelations(List<Followup> followups) {
+        if (shardService.isSharded()) {
+            ShardMerge.attach(followups, Followup::getCustomerId, customerService::findAllById, Customer::getId, Followup::setCustomer);
+            ShardMerge.attach(followups, Followup::getUserId, userRepository::findAllById, User::getId, Followup::setUser);
+        }
+        return followups;
+    }
+
 }
@@ -0,0 +1,275 @@
+package com.crm.service;
+
+import com.crm.analytics.PercentileHistogram;
+import com.crm.model.FunnelStatistic;
+import com.crm.model.User;
+import com.crm.profiling.JfrSupport;
+import com.crm.profiling.StatisticsEvent;
+import com.crm.repository.CustomerRepository;
+import com.crm.repository.FollowupArchiveRepository;
+import com.crm.repository.FollowupRepository;
+import com.crm.repository.FunnelStatisticRepository;
+import com.crm.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 转化漏斗分析服务
+ * 按客户ID顺序分批读取客户，每批再用一次区间查询读取这批客户的跟进记录（活跃表和归档表各一次），
+ * 两路有序数据归并后逐个客户计算指标，内存只保留当前一批数据和各分组的百分位直方图。
+ * 计算结果按来源和创建人两个维度写入funnel_statistics表，统计接口直接读取结果表
+ */
+@Service
+public class FunnelAnalyticsService {
+
+    public static final String DIMENSION_SOURCE = "source";
+    public static final String DIMENSION_USER = "user";
+    public static final String METRIC_FIRST_FOLLOWUP_HOURS = "first_followup_hours";  // 客户创建到首次跟进的小时数
+    public static final String METRIC_FOLLOWUPS_TO_REMINDER = "followups_to_reminder";  // 首次设置下次跟进提醒前的跟进次数（含该次）
+
+    private static final String UNKNOWN = "未知";
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private FollowupRepository followupRepository;
+
+    @Autowired
+    private FollowupArchiveRepository followupArchiveRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private FunnelStatisticRepository funnelStatisticRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ShardService shardService;
+
+    @Value("${crm.funnel.enabled:true}")
+    private boolean enabled;  // 是否启用定时计算
+
+    @Value("${crm.funnel.batch-size:1000}")
+    private int batchSize;  // 每批读取的客户数量
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * 单个分组（某个来源或某个创建人）的统计数据
+     */
+    private static class Group {
+        private final String label;
+        private long customerCount;
+        private final PercentileHistogram firstFollowupHours = new PercentileHistogram();
+        private final PercentileHistogram followupsToReminder = new PercentileHistogram();
+
+        private Group(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * 定时计算，默认每天0点30分运行
+     */
+    @Scheduled(cron = "${crm.funnel.cron:0 30 0 * * *}")
+    public void scheduledCompute() {
+        if (enabled) {
+            compute();
+        }
+    }
+
+    /**
+     * 执行一次全量计算并替换结果表
+     * @return 计算结果摘要，已有计算在运行时返回null
+     */
+    public Map<String, Object> compute() {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        StatisticsEvent event = JfrSupport.isAvailable() ? new StatisticsEvent("funnelCompute", "batchSize=" + batchSize) : null;
+        if (event != null) {
+            event.begin();
+        }
+        try {
+            Map<String, Group> bySource = new HashMap<>();
+            Map<String, Group> byUser = new HashMap<>();
+            Map<Integer, String> nicknames = new HashMap<>();
+            for (User user : userRepository.findAll()) {
+                nicknames.put(user.getId(), user.getNickname());
+            }
+
+            // 跟进记录与所属客户在同一分片，每个分片内按客户ID范围读取
+            long[] counted = new long[1];
+            shardService.forEachShard(shard -> {
+                Integer lastId = 0;
+                while (true) {
+                    List<Object[]> batch = customerRepository.findFunnelRowsAfter(lastId, PageRequest.of(0, batchSize));
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                    Integer firstId = (Integer) batch.get(0)[0];
+                    lastId = (Integer) batch.get(batch.size() - 1)[0];
+                    List<Object[]> active = followupRepository.findFunnelRows(firstId, lastId);
+                    List<Object[]> archived = followupArchiveRepository.findFunnelRows(firstId, lastId);
+                    processBatch(batch, active, archived, bySource, byUser, nicknames);
+                    counted[0] += batch.size();
+                    if (batch.size() < batchSize) {
+                        break;
+                    }
+                }
+            });
+            long customers = counted[0];
+
+            LocalDateTime computedAt = LocalDateTime.now();
+            List<FunnelStatistic> results = new ArrayList<>();
+            collect(results, DIMENSION_SOURCE, bySource, computedAt);
+            collect(results, DIMENSION_USER, byUser, computedAt);
+            new TransactionTemplate(transactionManager).execute(status -> {
+                funnelStatisticRepository.deleteAllInBatch();
+                funnelStatisticRepository.saveAll(results);
+                return null;
+            });
+
+            Map<String, Object> summary = new HashMap<>();
+            summary.put("customers", customers);
+            summary.put("rows", results.size());
+            summary.put("computedAt", computedAt);
+            summary.put("elapsedMs", System.currentTimeMillis() - start);
+            if (event != null) {
+                event.finish(customers);
+            }
+            System.out.println("转化漏斗统计完成：客户" + customers + "个，用时" + (System.currentTimeMillis() - start) + "ms");
+            return summary;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 读取某个维度的统计结果
+     * @param dimension 统计维度：source、user
+     * @return 统计结果列表
+     */
+    public List<FunnelStatistic> getStatistics(String dimension) {
+        return funnelStatisticRepository.findByDimensionOrderByMetricAscCustomerCountDesc(dimension);
+    }
+
+    /**
+     * 处理一批客户：客户和两路跟进记录都按客户ID升序，三个游标同步前进
+     */
+    private void processBatch(List<Object[]> customers, List<Object[]> active, List<Object[]> archived,
+                              Map<String, Group> bySource, Map<String, Group> byUser, Map<Integer, String> nicknames) {
+        int a = 0;
+        int b = 0;
+        for (Object[] customer : customers) {
+            Integer customerId = (Integer) customer[0];
+            String source = customer[1] == null || customer[1].toString().isEmpty() ? UNKNOWN : customer[1].toString();
+            Integer createdBy = (Integer) customer[2];
+            LocalDateTime createdAt = (LocalDateTime) customer[3];
+
+            // 跳过不属于当前客户的跟进记录（已软删除的客户）
+            while (a < active.size() && (Integer) active.get(a)[0] < customerId) {
+                a++;
+            }
+            while (b < archived.size() && (Integer) archived.get(b)[0] < customerId) {
+                b++;
+            }
+
+            // 按跟进时间归并当前客户的两路跟进记录
+            LocalDateTime firstFollowTime = null;
+            int followups = 0;
+            int toReminder = -1;
+            while (true) {
+                Object[] next;
+                boolean hasActive = a < active.size() && customerId.equals(active.get(a)[0]);
+                boolean hasArchived = b < archived.size() && customerId.equals(archived.get(b)[0]);
+                if (hasActive && hasArchived) {
+                    LocalDateTime activeTime = (LocalDateTime) active.get(a)[1];
+                    LocalDateTime archivedTime = (LocalDateTime) archived.get(b)[1];
+                    next = archivedTime.isBefore(activeTime) ? archived.get(b++) : active.get(a++);
+                } else if (hasActive) {
+                    next = active.get(a++);
+                } else if (hasArchived) {
+                    next = archived.get(b++);
+                } else {
+                    break;
+                }
+                followups++;
+                if (firstFollowTime == null) {
+                    firstFollowTime = (LocalDateTime) next[1];
+                }
+                if (toReminder < 0 && next[2] != null) {
+                    toReminder = followups;
+                }
+            }
+
+            String userKey = createdBy == null ? UNKNOWN : createdBy.toString();
+            String userLabel = createdBy == null ? UNKNOWN : nicknames.getOrDefault(createdBy, userKey);
+            Group[] groups = {
+                    bySource.computeIfAbsent(source, Group::new),
+                    byUser.computeIfAbsent(userKey, key -> new Group(userLabel))
+            };
+            for (Group group : groups) {
+                group.customerCount++;
+                if (firstFollowTime != null && createdAt != null) {
+                    group.firstFollowupHours.record(Duration.between(createdAt, firstFollowTime).toMinutes() / 60.0);
+                }
+                if (toReminder > 0) {
+                    group.followupsToReminder.record(toReminder);
+                }
+            }
+        }
+    }
+
+    /**
+     * 把分组直方图转换为结果行
+     */
+    private void collect(List<FunnelStatistic> results, String dimension, Map<String, Group> groups, LocalDateTime computedAt) {
+        for (Map.Entry<String, Group> entry : groups.entrySet()) {
+            Group group = entry.getValue();
+            results.add(toStatistic(dimension, entry.getKey(), group, METRIC_FIRST_FOLLOWUP_HOURS, group.firstFollowupHours, computedAt));
+            results.add(toStatistic(dimension, entry.getKey(), group, METRIC_FOLLOWUPS_TO_REMINDER, group.followupsToReminder, computedAt));
+        }
+    }
+
+    private FunnelStatistic toStatistic(String dimension, String value, Group group, String metric,
+                                        PercentileHistogram histogram, LocalDateTime computedAt) {
+        FunnelStatistic statistic = new FunnelStatistic();
+        statistic.setDimension(dimension);
+        statistic.setDimensionValue(value);
+        statistic.setLabel(group.label);
+        statistic.setMetric(metric);
+        statistic.setCustomerCount(group.customerCount);
+        statistic.setSampleCount(histogram.getCount());
+        statistic.setAvgValue(round(histogram.getAverage()));
+        statistic.setP50(histogram.getPercentile(50));
+        statistic.setP90(histogram.getPercentile(90));
+        statistic.setP99(histogram.getPercentile(99));
+        statistic.setMaxValue(round(histogram.getMax()));
+        statistic.setComputedAt(computedAt);
+        return statistic;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+}
@@ -0,0 +1,429 @@
+package com.crm.service;
+
+import com.crm.lookup.LabelDictionary;
+import com.crm.model.CustomerSource;
+import com.crm.model.FollowupMethod;
+import com.crm.repository.CustomerSourceRepository;
+import com.crm.repository.FollowupMethodRepository;
+import com.crm.shard.ShardContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 编码表服务
+ * 启动时加载编码表缓存，并作为LabelDictionary的加载器处理缓存未命中和新名称注册。
+ * 旧版本中直接存储字符串的来源、跟进方式列（升级后编码列为空）：
+ * 1. 启动时在每个分片上给NOT NULL且无默认值的旧列设置默认值（任何profile都执行），只写编码列的插入不会失败
+ * 2. 应用就绪后在后台线程按ID从新到旧分批回填编码，校验无遗漏后该表不再读取旧列
+ * 3. 回填完成前，编码为空的行由实体getter、稀疏字段查询和分布统计从旧列读取名称（按ID块缓存）
+ * 4. 删除旧列仍由管理员在业务低峰期触发（见migrateLegacyColumnsInBackground）
+ */
+@Service
+public class LookupService implements LabelDictionary.Loader {
+
+    private static final int MIGRATE_BATCH_SIZE = 10000;
+    private static final int LEGACY_BLOCK_SIZE = 1000;
+    private static final int LEGACY_BLOCK_CACHE_SIZE = 256;
+
+    /**
+     * 有旧字符串列的业务表
+     */
+    private static final List<LegacyColumn> LEGACY_COLUMNS = Arrays.asList(
+            new LegacyColumn("customers", "source", "source_id", LabelDictionary.CUSTOMER_SOURCE),
+            new LegacyColumn("followups", "follow_method", "method_id", LabelDictionary.FOLLOW_METHOD),
+            new LegacyColumn("followups_archive", "follow_method", "method_id", LabelDictionary.FOLLOW_METHOD));
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CustomerSourceRepository customerSourceRepository;
+
+    @Autowired
+    private FollowupMethodRepository followupMethodRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ShardService shardService;
+
+    private final AtomicBoolean migrating = new AtomicBoolean(false);
+
+    // 编码列尚未回填完成的表（分片:表名），为空后不再读取旧列
+    private final Set<String> pendingBackfills = ConcurrentHashMap.newKeySet();
+
+    // 旧列名称按ID块缓存（表名:分片:块号 -> 行ID -> 名称），只缓存编码为空的行
+    private final Map<String, Map<Integer, String>> legacyBlocks = Collections.synchronizedMap(
+            new LinkedHashMap<String, Map<Integer, String>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map<Integer, String>> eldest) {
+                    return size() > LEGACY_BLOCK_CACHE_SIZE;
+                }
+            });
+
+    /**
+     * 加载编码表缓存，检查各分片上需要回填的旧列
+     */
+    @PostConstruct
+    public void init() {
+        for (CustomerSource source : customerSourceRepository.findAll()) {
+            LabelDictionary.CUSTOMER_SOURCE.put(source.getId(), source.getLabel());
+        }
+        for (FollowupMethod method : followupMethodRepository.findAll()) {
+            LabelDictionary.FOLLOW_METHOD.put(method.getId(), method.getLabel());
+        }
+        shardService.forEachShard(shard -> {
+            for (LegacyColumn column : LEGACY_COLUMNS) {
+                if (!columnExists(column.table, column.legacyColumn) || !columnExists(column.table, column.codeColumn)) {
+                    continue;
+                }
+                setLegacyDefault(column);
+                if (countMissing(column) > 0) {
+                    pendingBackfills.add(shard + ":" + column.table);
+                }
+            }
+        });
+        LabelDictionary.setLoader(this);
+        System.out.println("编码表加载完成：客户来源" + LabelDictionary.CUSTOMER_SOURCE.size()
+                + "个，跟进方式" + LabelDictionary.FOLLOW_METHOD.size() + "个"
+                + (pendingBackfills.isEmpty() ? "" : "，待回填编码列：" + pendingBackfills));
+    }
+
+    /**
+     * 应用就绪后在后台回填旧列的编码（不删除旧列），多个实例同时执行时按编码为空的条件幂等更新
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        if (pendingBackfills.isEmpty() || !migrating.compareAndSet(false, true)) {
+            return;
+        }
+        Thread backfiller = new Thread(() -> {
+            try {
+                shardService.forEachShard(shard -> {
+                    for (LegacyColumn column : LEGACY_COLUMNS) {
+                        if (pendingBackfills.contains(shard + ":" + column.table)) {
+                            backfill(shard, column);
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                System.out.println("编码列回填失败：" + e.getMessage());
+            } finally {
+                migrating.set(false);
+            }
+        }, "crm-lookup-backfill");
+        backfiller.setDaemon(true);
+        backfiller.start();
+    }
+
+    /**
+     * 在后台线程迁移旧版本的字符串列（回填编码后删除旧列），不阻塞调用方
+     * @return 是否已开始（已有迁移或回填在执行时返回false）
+     */
+    public boolean migrateLegacyColumnsInBackground() {
+        if (!migrating.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread migrator = new Thread(() -> {
+            try {
+                shardService.forEachShard(shard -> {
+                    for (LegacyColumn column : LEGACY_COLUMNS) {
+                        migrateLegacyColumn(shard, column);
+                    }
+                });
+            } catch (Exception e) {
+                System.out.println("编码列迁移失败：" + e.getMessage());
+            } finally {
+                migrating.set(false);
+            }
+        }, "crm-lookup-migrator");
+        migrator.setDaemon(true);
+        migrator.start();
+        return true;
+    }
+
+    /**
+     * 旧列编码是否仍在回填
+     * @param shard 分片编号
+     * @param table 业务表名
+     * @return 该分片上的表是否未回填完成
+     */
+    public boolean isBackfillPending(int shard, String table) {
+        return pendingBackfills.contains(shard + ":" + table);
+    }
+
+    /**
+     * 统计当前分片上编码为空、旧列有名称的行（分布统计在回填完成前合并这部分）
+     * @param table 业务表名
+     * @return 名称 -> 行数，已回填完成时为空
+     */
+    public Map<String, Long> countLegacyLabels(String table) {
+        LegacyColumn column = legacyColumn(table);
+        Map<String, Long> counts = new HashMap<>();
+        if (column == null || !pendingBackfills.contains(ShardContext.current() + ":" + table)) {
+            return counts;
+        }
+        try {
+            for (Map<String, Object> row : jdbcTemplate.queryForList("SELECT " + column.legacyColumn + " AS label, COUNT(*) AS cnt FROM "
+                    + table + " WHERE deleted = 0 AND " + column.missingCondition() + " GROUP BY " + column.legacyColumn)) {
+                counts.put((String) row.get("label"), ((Number) row.get("cnt")).longValue());
+            }
+        } catch (DataAccessException e) {
+            // 旧列已被其他实例删除
+            recheckPending(ShardContext.current(), column);
+        }
+        return counts;
+    }
+
+    /**
+     * 旧列迁移是否正在执行
+     * @return 是否正在执行
+     */
+    public boolean isMigrating() {
+        return migrating.get();
+    }
+
+    /**
+     * 获取编码表内容
+     * @return 表名 -> (编码 -> 名称)
+     */
+    public Map<String, Map<Integer, String>> getLookups() {
+        Map<String, Map<Integer, String>> lookups = new HashMap<>();
+        Map<Integer, String> sources = new HashMap<>();
+        for (CustomerSource source : customerSourceRepository.findAll()) {
+            sources.put(source.getId(), source.getLabel());
+        }
+        Map<Integer, String> methods = new HashMap<>();
+        for (FollowupMethod method : followupMethodRepository.findAll()) {
+            methods.put(method.getId(), method.getLabel());
+        }
+        lookups.put(LabelDictionary.CUSTOMER_SOURCE.getTable(), sources);
+        lookups.put(LabelDictionary.FOLLOW_METHOD.getTable(), methods);
+        return lookups;
+    }
+
+    /**
+     * 编码表只存放在全局分片，启用分片时缓存未命中的查询在全局分片上执行
+     */
+    @Override
+    public Integer findCode(LabelDictionary dictionary, String label) {
+        return shardService.onGlobal(() -> queryCode(dictionary, label));
+    }
+
+    @Override
+    public String findLabel(LabelDictionary dictionary, int code) {
+        return shardService.onGlobal(() -> {
+            List<String> labels = jdbcTemplate.queryForList(
+                    "SELECT label FROM " + dictionary.getTable() + " WHERE id = ?", String.class, code);
+            return labels.isEmpty() ? null : labels.get(0);
+        });
+    }
+
+    /**
+     * 注册新名称：在全局分片上的独立短事务中插入编码表（并发插入同一名称时由唯一索引去重）
+     */
+    @Override
+    public int register(LabelDictionary dictionary, String label) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Integer code = shardService.onGlobal(() -> transaction.execute(status -> {
+            jdbcTemplate.update("INSERT IGNORE INTO " + dictionary.getTable() + " (label) VALUES (?)", label);
+            return queryCode(dictionary, label);
+        }));
+        if (code == null) {
+            throw new IllegalStateException("注册编码失败：" + dictionary.getTable() + " " + label);
+        }
+        return code;
+    }
+
+    /**
+     * 编码列回填完成前按ID块读取旧列：同一块的行一次查询并缓存，回填完成后直接返回null
+     */
+    @Override
+    public String findLegacyLabel(LabelDictionary dictionary, String table, int id) {
+        if (pendingBackfills.isEmpty()) {
+            return null;
+        }
+        LegacyColumn column = legacyColumn(table);
+        int shard = shardService.shardOf(id);
+        if (column == null || column.dictionary != dictionary || !pendingBackfills.contains(shard + ":" + table)) {
+            return null;
+        }
+        long block = id / LEGACY_BLOCK_SIZE;
+        String key = table + ":" + shard + ":" + block;
+        Map<Integer, String> labels = legacyBlocks.get(key);
+        if (labels == null) {
+            labels = shardService.onShard(shard, () -> loadLegacyBlock(shard, column, block));
+            legacyBlocks.put(key, labels);
+        }
+        return labels.get(id);
+    }
+
+    private Map<Integer, String> loadLegacyBlock(int shard, LegacyColumn column, long block) {
+        Map<Integer, String> labels = new HashMap<>();
+        try {
+            jdbcTemplate.query("SELECT id, " + column.legacyColumn + " FROM " + column.table + " WHERE id BETWEEN ? AND ? AND "
+                    + column.missingCondition(), rs -> {
+                labels.put(rs.getInt(1), rs.getString(2));
+            }, block * LEGACY_BLOCK_SIZE, block * LEGACY_BLOCK_SIZE + LEGACY_BLOCK_SIZE - 1);
+        } catch (DataAccessException e) {
+            // 旧列已被其他实例删除
+            recheckPending(shard, column);
+        }
+        return labels;
+    }
+
+    private Integer queryCode(LabelDictionary dictionary, String label) {
+        List<Integer> codes = jdbcTemplate.queryForList(
+                "SELECT id FROM " + dictionary.getTable() + " WHERE label = ?", Integer.class, label);
+        return codes.isEmpty() ? null : codes.get(0);
+    }
+
+    /**
+     * 按ID从新到旧分批回填编码（最近的数据最常被读取，先回填），校验无遗漏后该表不再读取旧列。
+     * 先补齐编码表；新版本写入的行旧列为空串（默认值），不参与回填
+     */
+    private void backfill(int shard, LegacyColumn column) {
+        System.out.println("回填分片" + shard + "的" + column.table + "." + column.codeColumn);
+        // 编码表只在全局分片上，名称 -> 编码以CASE表达式写入，业务分片上不需要编码表
+        List<String> labels = jdbcTemplate.queryForList("SELECT DISTINCT " + column.legacyColumn + " FROM " + column.table
+                + " WHERE " + column.missingCondition(), String.class);
+        if (!labels.isEmpty()) {
+            StringBuilder cases = new StringBuilder("CASE " + column.legacyColumn);
+            List<Object> args = new ArrayList<>();
+            for (String label : labels) {
+                column.dictionary.register(label);
+                cases.append(" WHEN ? THEN ?");
+                args.add(label);
+                args.add(column.dictionary.encode(label));
+            }
+            cases.append(" END");
+            String sql = "UPDATE " + column.table + " SET " + column.codeColumn + " = " + cases
+                    + " WHERE id BETWEEN ? AND ? AND " + column.missingCondition();
+
+            Map<String, Object> range = jdbcTemplate.queryForMap("SELECT MIN(id) AS min_id, MAX(id) AS max_id FROM " + column.table);
+            long minId = ((Number) range.get("min_id")).longValue();
+            long maxId = ((Number) range.get("max_id")).longValue();
+            for (long to = maxId; to >= minId; to -= MIGRATE_BATCH_SIZE) {
+                List<Object> batchArgs = new ArrayList<>(args);
+                batchArgs.add(Math.max(minId, to - MIGRATE_BATCH_SIZE + 1));
+                batchArgs.add(to);
+                jdbcTemplate.update(sql, batchArgs.toArray());
+            }
+        }
+
+        long missing = countMissing(column);
+        if (missing > 0) {
+            throw new IllegalStateException(column.table + "." + column.legacyColumn + "回填后仍有" + missing + "行没有编码");
+        }
+        pendingBackfills.remove(shard + ":" + column.table);
+        legacyBlocks.clear();
+        System.out.println("分片" + shard + "的" + column.table + "." + column.codeColumn + "回填完成");
+    }
+
+    /**
+     * 把旧版本的字符串列迁移为编码列：回填编码后以在线DDL（ALGORITHM=INPLACE, LOCK=NONE，重建期间不阻塞读写）
+     * 删除旧列及其索引。旧列不存在（新库或已迁移）时直接返回
+     */
+    private void migrateLegacyColumn(int shard, LegacyColumn column) {
+        if (!columnExists(column.table, column.legacyColumn) || !columnExists(column.table, column.codeColumn)) {
+            return;
+        }
+        backfill(shard, column);
+
+        List<String> indexes = jdbcTemplate.queryForList("SELECT DISTINCT index_name FROM information_schema.statistics"
+                + " WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?", String.class, column.table, column.legacyColumn);
+        StringBuilder ddl = new StringBuilder("ALTER TABLE " + column.table);
+        for (String index : indexes) {
+            ddl.append(" DROP INDEX ").append(index).append(",");
+        }
+        ddl.append(" DROP COLUMN ").append(column.legacyColumn).append(", ALGORITHM=INPLACE, LOCK=NONE");
+        jdbcTemplate.execute(ddl.toString());
+        System.out.println("分片" + shard + "的" + column.table + "." + column.legacyColumn + "迁移完成，已删除旧列");
+    }
+
+    /**
+     * 旧列为NOT NULL且没有默认值时设置默认值（只修改表定义，MySQL 5.7中不重建表）
+     */
+    private void setLegacyDefault(LegacyColumn column) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.columns"
+                + " WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?"
+                + " AND is_nullable = 'NO' AND column_default IS NULL", Long.class, column.table, column.legacyColumn);
+        if (count != null && count > 0) {
+            jdbcTemplate.execute("ALTER TABLE " + column.table + " ALTER COLUMN " + column.legacyColumn + " SET DEFAULT ''");
+            System.out.println(column.table + "." + column.legacyColumn + "已设置默认值");
+        }
+    }
+
+    private long countMissing(LegacyColumn column) {
+        Long missing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + column.table + " WHERE " + column.missingCondition(), Long.class);
+        return missing == null ? 0 : missing;
+    }
+
+    private void recheckPending(int shard, LegacyColumn column) {
+        if (!shardService.onShard(shard, () -> columnExists(column.table, column.legacyColumn))) {
+            pendingBackfills.remove(shard + ":" + column.table);
+            legacyBlocks.clear();
+        }
+    }
+
+    private LegacyColumn legacyColumn(String table) {
+        for (LegacyColumn column : LEGACY_COLUMNS) {
+            if (column.table.equals(table)) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    private boolean columnExists(String table, String column) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.columns"
+                + " WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?", Long.class, table, column);
+        return count != null && count > 0;
+    }
+
+    /**
+     * 旧字符串列及对应的编码列
+     */
+    private static final class LegacyColumn {
+        private final String table;
+        private final String legacyColumn;
+        private final String codeColumn;
+        private final LabelDictionary dictionary;
+
+        private LegacyColumn(String table, String legacyColumn, String codeColumn, LabelDictionary dictionary) {
+            this.table = table;
+            this.legacyColumn = legacyColumn;
+            this.codeColumn = codeColumn;
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * 编码为空、旧列有名称的行
+         */
+        private String missingCondition() {
+            return legacyColumn + " IS NOT NULL AND " + legacyColumn + " <> '' AND (" + codeColumn + " IS NULL OR " + codeColumn + " = 0)";
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.crm.service;
+
+import com.crm.profiling.ContinuousRecording;
+import com.crm.profiling.JfrSupport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 持续JFR记录服务
+ * 启动时开启一个常驻的JFR记录（JDK自带的default配置，开销约1%），加上CRM自定义事件：
+ * 仓库调用（超过阈值才记录）、导出任务、登录验证、统计计算。记录写入JFR的磁盘仓库，
+ * 只保留最近max-age-minutes分钟、不超过max-size-mb的数据，滚动覆盖。
+ * 延迟异常时由管理员导出最近N分钟的数据，用JDK Mission Control离线分析。
+ * 运行时不提供JFR时跳过记录（本类不直接引用jdk.jfr类型，见ContinuousRecording）
+ */
+@Service
+public class ProfilingService {
+
+    private static final String RECORDING_NAME = "crm-continuous";
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    @Value("${crm.jfr.enabled:true}")
+    private boolean enabled;  // 是否开启持续记录
+
+    @Value("${crm.jfr.settings:default}")
+    private String settings;  // JFR内置配置：default（常驻）或profile（更详细，开销约2%）
+
+    @Value("${crm.jfr.max-age-minutes:60}")
+    private int maxAgeMinutes;  // 滚动保留的时长
+
+    @Value("${crm.jfr.max-size-mb:256}")
+    private int maxSizeMb;  // 滚动保留的大小
+
+    @Value("${crm.jfr.repository-threshold-ms:20}")
+    private long repositoryThresholdMs;  // 仓库调用耗时超过该值才记录
+
+    @Value("${crm.jfr.dump-dir:./data/jfr}")
+    private String dumpDir;  // 导出文件目录
+
+    @Value("${crm.jfr.max-dumps:20}")
+    private int maxDumps;  // 最多保留的导出文件数，超出时删除最旧的
+
+    private ContinuousRecording recording;
+    private final AtomicBoolean dumping = new AtomicBoolean(false);
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (!JfrSupport.isAvailable()) {
+            System.err.println("当前运行时不提供JFR（jdk.jfr），跳过持续记录");
+            return;
+        }
+        try {
+            recording = new ContinuousRecording(RECORDING_NAME, settings, Duration.ofMinutes(maxAgeMinutes),
+                    (long) maxSizeMb * 1024 * 1024, Duration.ofMillis(repositoryThresholdMs));
+            System.out.println("JFR持续记录已开启：配置" + settings + "，保留" + maxAgeMinutes + "分钟/" + maxSizeMb + "MB");
+        } catch (Exception e) {
+            // JFR被禁用等原因无法开启时不影响业务
+            recording = null;
+            System.err.println("JFR持续记录开启失败：" + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    /**
+     * 导出最近的记录数据到文件
+     * JFR按数据块（chunk）裁剪，文件中可能包含略早于minutes分钟的数据
+     * @param minutes 导出最近多少分钟，限制在1到max-age-minutes之间
+     * @return 文件路径、大小和用时；未开启记录时返回空Map；已有导出在进行时返回null
+     */
+    public Map<String, Object> dump(int minutes) throws IOException {
+        minutes = Math.max(1, Math.min(minutes, maxAgeMinutes));
+        Map<String, Object> result = new HashMap<>();
+        if (recording == null) {
+            return result;
+        }
+        if (!dumping.compareAndSet(false, true)) {
+            return null;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Path dir = Paths.get(dumpDir);
+            Files.createDirectories(dir);
+            Path file = dir.resolve("crm-" + LocalDateTime.now().format(FILE_TIME) + "-" + minutes + "m.jfr");
+            recording.dump(file, Duration.ofMinutes(minutes));
+            deleteOldDumps(dir);
+            result.put("file", file.toAbsolutePath().toString());
+            result.put("bytes", Files.size(file));
+            result.put("minutes", minutes);
+            result.put("elapsedMs", System.currentTimeMillis() - start);
+            System.out.println("JFR数据已导出：" + file.toAbsolutePath() + "（最近" + minutes + "分钟）");
+            return result;
+        } finally {
+            dumping.set(false);
+        }
+    }
+
+    /**
+     * 获取持续记录状态
+     * @return 记录状态和保留设置
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("available", JfrSupport.isAvailable());
+        status.put("recording", recording != null ? recording.getState() : "NONE");
+        status.put("settings", settings);
+        status.put("maxAgeMinutes", maxAgeMinutes);
+        status.put("maxSizeMb", maxSizeMb);
+        status.put("repositoryThresholdMs", repositoryThresholdMs);
+        status.put("dumpDir", Paths.get(dumpDir).toAbsolutePath().toString());
+        if (recording != null) {
+            status.put("startTime", recording.getStartTime());
+            status.put("recordedBytes", recording.getSize());
+        }
+        return status;
+    }
+
+    private void deleteOldDumps(Path dir) throws IOException {
+        List<Path> dumps = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "crm-*.jfr")) {
+            for (Path path : stream) {
+                dumps.add(path);
+            }
+        }
+        Collections.sort(dumps);  // 文件名以时间开头，按名称排序即按时间排序
+        for (int i = 0; i < dumps.size() - maxDumps; i++) {
+            Files.deleteIfExists(dumps.get(i));
+        }
+    }
+
+}
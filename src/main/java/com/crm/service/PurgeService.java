@@ -0,0 +1,232 @@
+package com.crm.service;
+
+import com.crm.event.EntityChangeEvent;
+import com.crm.repository.CustomerRepository;
+import com.crm.repository.FollowupArchiveRepository;
+import com.crm.repository.FollowupRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntSupplier;
+
+/**
+ * 软删除数据清理服务
+ * 1. 级联软删除：每隔几秒找出最近软删除的客户，按客户ID索引分批软删除其跟进记录和归档记录，并发布跟进记录的删除事件
+ * 2. 物理删除：在业务低峰期（cron配置）分批物理删除保留期已过的软删除数据：先删跟进记录和归档记录，再删已无跟进记录的客户；
+ *    运行前对全部已软删除的客户再做一次级联，补齐删除客户时并发新增的跟进记录
+ * 每批一个独立的短事务，批次之间暂停，避免长时间持有热点表的行锁。启用分片时依次处理每个分片
+ */
+@Service
+public class PurgeService {
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private FollowupRepository followupRepository;
+
+    @Autowired
+    private FollowupArchiveRepository followupArchiveRepository;
+
+    @Autowired
+    private FollowupArchiveService followupArchiveService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ShardService shardService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private AuditLogService auditLogService;
+
+    @Value("${crm.purge.enabled:true}")
+    private boolean enabled;  // 是否启用定时清理
+
+    @Value("${crm.purge.retention-days:7}")
+    private int retentionDays;  // 软删除数据保留天数
+
+    @Value("${crm.purge.batch-size:500}")
+    private int batchSize;  // 每批删除的行数
+
+    @Value("${crm.purge.pause-ms:200}")
+    private long pauseMs;  // 批次之间的暂停时间（毫秒）
+
+    @Value("${crm.purge.max-batches:2000}")
+    private int maxBatches;  // 每次运行最多执行的批次数
+
+    @Value("${crm.purge.cascade-slack-seconds:60}")
+    private int cascadeSlackSeconds;  // 级联时向前多检查的秒数，覆盖客户删除时间与事务提交时间的差异
+
+    @Value("${crm.purge.cascade-window-minutes:60}")
+    private int cascadeWindowMinutes;  // 启动后第一次级联检查的时间范围
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final Map<Integer, LocalDateTime> cascadedSince = new ConcurrentHashMap<>();  // 分片 -> 上次级联检查的开始时间
+    private volatile Map<String, Object> lastRun;  // 最近一次运行结果
+
+    /**
+     * 定时清理，默认每天1点到5点之间每10分钟运行一次
+     */
+    @Scheduled(cron = "${crm.purge.cron:0 */10 1-5 * * *}")
+    public void scheduledPurge() {
+        if (enabled) {
+            purge();
+        }
+    }
+
+    /**
+     * 定时级联软删除：检查上次运行以来（多向前cascadeSlackSeconds秒）软删除的客户，分批软删除其跟进记录
+     */
+    @Scheduled(fixedDelayString = "${crm.purge.cascade-interval-ms:5000}")
+    public void cascadeRecentDeletes() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        shardService.forEachShard(shard -> {
+            LocalDateTime start = LocalDateTime.now();
+            LocalDateTime since = cascadedSince.getOrDefault(shard, start.minusMinutes(cascadeWindowMinutes));
+            cascadeDeletedSince(transaction, since.minusSeconds(cascadeSlackSeconds));
+            cascadedSince.put(shard, start);
+        });
+    }
+
+    /**
+     * 执行一次清理
+     * @return 清理结果，已有清理在运行时返回null
+     */
+    public Map<String, Object> purge() {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+
+            int[] batches = {0};
+            long[] totals = new long[4];  // [级联软删除的跟进记录, 跟进记录, 归档记录, 客户]，批次数上限对所有分片合计
+            shardService.forEachShard(shard -> {
+                // 对全部已软删除的客户再级联一次，补齐删除客户时并发新增的跟进记录
+                totals[0] += cascadeDeletedSince(transaction, LocalDateTime.of(1970, 1, 1, 0, 0));
+                totals[1] += purgeInBatches(transaction, batches,
+                        () -> followupRepository.purgeDeleted(cutoff, batchSize));
+                totals[2] += purgeInBatches(transaction, batches,
+                        () -> followupArchiveRepository.purgeDeleted(cutoff, batchSize));
+                totals[3] += purgeInBatches(transaction, batches,
+                        () -> customerRepository.purgeDeleted(cutoff, batchSize));
+            });
+            long cascaded = totals[0];
+            long followups = totals[1];
+            long archived = totals[2];
+            long customers = totals[3];
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("cascadedFollowups", cascaded);
+            result.put("purgedFollowups", followups);
+            result.put("purgedArchivedFollowups", archived);
+            result.put("purgedCustomers", customers);
+            result.put("batches", batches[0]);
+            result.put("elapsedMs", System.currentTimeMillis() - start);
+            result.put("finishedAt", System.currentTimeMillis());
+            lastRun = result;
+            if (followups > 0 || archived > 0 || customers > 0) {
+                System.out.println("软删除数据清理完成：跟进记录" + followups + "条，归档记录" + archived + "条，客户" + customers + "个");
+            }
+            return result;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 获取最近一次清理结果
+     * @return 清理结果
+     */
+    public Map<String, Object> getLastRun() {
+        return lastRun;
+    }
+
+    /**
+     * 对当前分片上指定时间之后软删除的客户，分批软删除其跟进记录
+     * @return 软删除的跟进记录数量
+     */
+    private long cascadeDeletedSince(TransactionTemplate transaction, LocalDateTime since) {
+        long total = 0;
+        for (Integer customerId : customerRepository.findDeletedIdsSince(since)) {
+            while (true) {
+                Integer deleted = transaction.execute(status -> cascadeBatch(customerId));
+                total += deleted == null ? 0 : deleted;
+                if (deleted == null || deleted < batchSize) {
+                    break;
+                }
+                try {
+                    Thread.sleep(pauseMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return total;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 软删除客户的一批跟进记录，活跃记录处理完后再处理归档记录（调用方开启事务），
+     * 并发布删除事件供全文索引等订阅者移除
+     * @return 本批软删除的记录数
+     */
+    private int cascadeBatch(Integer customerId) {
+        List<Integer> ids = followupRepository.findIdsByCustomerId(customerId, PageRequest.of(0, batchSize));
+        if (!ids.isEmpty()) {
+            followupRepository.softDeleteByIds(ids);
+        } else {
+            ids = followupArchiveService.softDeleteByCustomerId(customerId, batchSize);
+        }
+        // 批量UPDATE不经过Hibernate事件，逐条记录审计日志（随本批事务提交后写入）
+        for (Integer id : ids) {
+            auditLogService.record(EntityChangeEvent.EntityType.FOLLOWUP, EntityChangeEvent.Action.DELETE, id,
+                    auditLogService.newValues(Collections.singletonMap("deletedWithCustomer", customerId)));
+            eventPublisher.publishEvent(new EntityChangeEvent(this, EntityChangeEvent.EntityType.FOLLOWUP,
+                    EntityChangeEvent.Action.DELETE, id, null));
+        }
+        return ids.size();
+    }
+
+    /**
+     * 循环执行删除，直到某一批不足batchSize或达到批次上限
+     */
+    private long purgeInBatches(TransactionTemplate transaction, int[] batches, IntSupplier batch) {
+        long total = 0;
+        while (batches[0] < maxBatches) {
+            Integer deleted = transaction.execute(status -> batch.getAsInt());
+            batches[0]++;
+            total += deleted == null ? 0 : deleted;
+            if (deleted == null || deleted < batchSize) {
+                break;
+            }
+            try {
+                Thread.sleep(pauseMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return total;
+    }
+
+}
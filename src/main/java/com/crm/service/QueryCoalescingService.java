@@ -0,0 +1,154 @@
+package com.crm.service;
+
+import com.crm.event.EntityChangeEvent;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 查询合并（single-flight）服务
+ * 参数相同的并发查询共享同一次执行：第一个请求执行查询，执行期间到达的相同请求等待它的CompletableFuture，
+ * 执行结束后立即移除，不缓存结果。键中带有写版本号，任何写操作提交后版本号递增，
+ * 写操作之后发起的查询不会合并到写操作之前开始的执行上，保证读己之写。
+ * 实体结果通过executePage在执行者的调用内转换为与JSON输出相同的Map后共享，等待者不接触执行者会话中的实体和延迟加载代理
+ */
+@Service
+public class QueryCoalescingService {
+
+    private static final char SEPARATOR = '\u0001';
+    private static final TypeReference<Map<String, Object>> ROW_TYPE = new TypeReference<Map<String, Object>>() {
+    };
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${crm.coalescing.enabled:true}")
+    private boolean enabled;  // 是否启用查询合并
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong writeVersion = new AtomicLong();  // 写版本号，每次写操作提交后递增
+    private final LongAdder executed = new LongAdder();  // 实际执行的查询次数
+    private final LongAdder coalesced = new LongAdder();  // 合并到已有执行上的请求次数
+
+    /**
+     * 由规范化的参数构建查询键：null和空白字符串视为同一个值，字符串去除首尾空白
+     * @param parts 查询名称和参数
+     * @return 查询键
+     */
+    public static String key(Object... parts) {
+        StringBuilder key = new StringBuilder();
+        for (Object part : parts) {
+            if (part instanceof String) {
+                key.append(((String) part).trim());
+            } else if (part != null) {
+                key.append(part);
+            }
+            key.append(SEPARATOR);
+        }
+        return key.toString();
+    }
+
+    /**
+     * 执行查询，已有相同键的查询正在执行时等待并共享它的结果
+     * @param key 查询键（见{@link #key(Object...)}）
+     * @param query 查询逻辑
+     * @param <T> 结果类型
+     * @return 查询结果（多个请求共享同一对象，调用方不得修改）
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> query) {
+        if (!enabled) {
+            return query.get();
+        }
+        String flightKey = key + writeVersion.get();
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, flight);
+        if (existing != null) {
+            coalesced.increment();
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                // 与执行者抛出相同的异常
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        executed.increment();
+        try {
+            T result = query.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, flight);
+        }
+    }
+
+    /**
+     * 执行分页查询并共享结果：执行者在自己的调用内（会话仍打开时）把每行实体转换为与响应JSON相同的Map，
+     * 共享的只有这些脱离会话的Map，等待者不会访问执行者的持久化上下文
+     * @param key 查询键（见{@link #key(Object...)}）
+     * @param query 查询逻辑，每行为实体或字段Map
+     * @return 每行为属性名 -> 值的分页结果（多个请求共享同一对象，调用方不得修改）
+     */
+    public Page<Map<String, Object>> executePage(String key, Supplier<? extends Page<?>> query) {
+        return execute(key, () -> query.get().map(this::toRow));
+    }
+
+    /**
+     * 写操作提交后（在写请求线程上）递增写版本号
+     * @param event 实体变更事件
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEntityChange(EntityChangeEvent event) {
+        writeVersion.incrementAndGet();
+    }
+
+    /**
+     * 获取合并统计
+     * @return 执行次数、合并次数和当前执行中的查询数
+     */
+    public Map<String, Object> getStatus() {
+        long executedCount = executed.sum();
+        long coalescedCount = coalesced.sum();
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("executed", executedCount);
+        status.put("coalesced", coalescedCount);
+        status.put("coalescedRatio", executedCount + coalescedCount == 0 ? 0.0
+                : (double) coalescedCount / (executedCount + coalescedCount));
+        status.put("inFlight", inFlight.size());
+        status.put("writeVersion", writeVersion.get());
+        return status;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> toRow(Object row) {
+        if (row instanceof Map) {
+            return (Map<String, Object>) row;
+        }
+        return objectMapper.convertValue(row, ROW_TYPE);
+    }
+
+}
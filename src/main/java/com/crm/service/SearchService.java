@@ -0,0 +1,588 @@
+package com.crm.service;
+
+import com.crm.event.EntityChangeEvent;
+import com.crm.model.Customer;
+import com.crm.model.Followup;
+import com.crm.repository.CustomerRepository;
+import com.crm.repository.FollowupRepository;
+import com.crm.search.FullTextIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 全文搜索服务，对客户备注和跟进内容建立进程内倒排索引
+ * 索引随客户/跟进记录的写操作增量维护，查询完全不访问数据库的LIKE扫描。
+ * 持久化分两部分：快照文件（fulltext.idx）和之后的变更日志（fulltext-{代号}.log）。
+ * 每次变更在内存中缓冲，定期只把新增的变更追加到日志；日志超过snapshot-log-bytes后才写一次新快照并删除旧日志。
+ * 快照和日志同时记录各分片已应用到的变更日志（change_outbox）ID，启动时加载快照、按顺序重放日志
+ * （变更是按实体覆盖或删除，重复重放结果不变），再从change_outbox补齐最后一次落盘之后的变更（崩溃时缓冲中丢失的部分）；
+ * 快照不存在、没有变更日志ID（旧版本文件）或所需的变更日志已被清理时从数据库按ID分批重建
+ */
+@Service
+public class SearchService {
+
+    private static final int REBUILD_BATCH_SIZE = 1000;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_OUTBOX_ID = 3;  // 日志记录：分片编号和已应用到的变更日志ID
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private FollowupRepository followupRepository;
+
+    @Autowired
+    private ChangeEventBusService changeEventBusService;
+
+    @Autowired
+    private ShardService shardService;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private FollowupService followupService;
+
+    @Autowired
+    @Qualifier("maintenanceExecutor")
+    private AsyncTaskExecutor maintenanceExecutor;
+
+    @Value("${crm.search.index-dir:./data/search}")
+    private String indexDir;  // 索引文件目录
+
+    @Value("${crm.search.rebuild-on-startup:true}")
+    private boolean rebuildOnStartup;  // 索引文件不存在时是否在启动后自动重建
+
+    @Value("${crm.search.snapshot-log-bytes:67108864}")
+    private long snapshotLogBytes;  // 变更日志超过该字节数时写新快照
+
+    private volatile FullTextIndex index = new FullTextIndex();
+    private final Object journalLock = new Object();  // 保证索引的变更顺序与日志顺序一致
+    private final ByteArrayOutputStream journalBuffer = new ByteArrayOutputStream();  // 尚未追加到日志的变更
+    private final DataOutputStream journal = new DataOutputStream(journalBuffer);
+    private volatile long logGeneration;  // 当前变更日志代号，快照记录它对应的起始代号
+    private volatile long logBytes;  // 当前变更日志的字节数
+    private boolean snapshotNeeded;  // 日志写入失败后需要写快照补齐
+    private long[] appliedOutboxIds;  // 各分片已应用到索引的最大变更日志ID，按分片编号排列（持有日志锁访问）
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);  // 是否正在重建
+    private final List<EntityChangeEvent> pendingDuringRebuild = new ArrayList<>();  // 重建期间收到的变更
+
+    /**
+     * 启动时加载快照并重放变更日志，从change_outbox补齐之后的变更，并订阅变更事件
+     * 加载期间持有日志锁，订阅线程收到的事件等加载完成后再应用到加载好的索引上
+     */
+    @PostConstruct
+    public void load() {
+        appliedOutboxIds = new long[shardService.getShardCount()];
+        changeEventBusService.subscribe("search", this::onEntityChange);
+        boolean rebuild;
+        synchronized (journalLock) {
+            rebuild = !loadFiles() || !catchUp();
+        }
+        if (rebuild && rebuildOnStartup) {
+            startRebuild();
+        }
+    }
+
+    /**
+     * 监听客户和跟进记录的变更（事务提交后，在事件总线的订阅线程上），增量更新索引
+     * @param event 实体变更事件
+     */
+    public void onEntityChange(EntityChangeEvent event) {
+        if (event.getEntityType() == EntityChangeEvent.EntityType.USER) {
+            return;
+        }
+        synchronized (pendingDuringRebuild) {
+            if (rebuilding.get()) {
+                pendingDuringRebuild.add(event);
+            }
+        }
+        synchronized (journalLock) {
+            applyAndJournal(event);
+        }
+    }
+
+    /**
+     * 搜索客户备注和跟进内容
+     * @param query 查询语句
+     * @param page 页码（从1开始）
+     * @param limit 每页数量
+     * @return 搜索结果（total为命中总数，data为按相关度排序的命中列表）
+     */
+    public Map<String, Object> search(String query, int page, int limit) {
+        FullTextIndex.Result result = index.search(query, (page - 1) * limit, limit);
+
+        // 按类型批量加载命中的实体（主键查询，每页最多limit条，启用分片时按ID所在分片并行加载）
+        List<Integer> customerIds = new ArrayList<>();
+        List<Integer> followupIds = new ArrayList<>();
+        for (FullTextIndex.Hit hit : result.getHits()) {
+            (hit.getType() == FullTextIndex.DocType.CUSTOMER ? customerIds : followupIds).add(hit.getId());
+        }
+        Map<Integer, Customer> customers = customerIds.isEmpty() ? new HashMap<>()
+                : customerService.findAllById(customerIds).stream().collect(Collectors.toMap(Customer::getId, Function.identity()));
+        Map<Integer, Followup> followups = followupIds.isEmpty() ? new HashMap<>()
+                : followupService.findAllById(followupIds).stream().collect(Collectors.toMap(Followup::getId, Function.identity()));
+
+        List<Map<String, Object>> hits = new ArrayList<>();
+        for (FullTextIndex.Hit hit : result.getHits()) {
+            boolean isCustomer = hit.getType() == FullTextIndex.DocType.CUSTOMER;
+            Object entity = isCustomer ? customers.get(hit.getId()) : followups.get(hit.getId());
+            if (entity == null) {
+                // 查不到时只跳过，不清理索引：只读查询可能落在有延迟的从库上，刚写入的实体会暂时查不到；
+                // 实体删除由DELETE变更事件从索引中移除
+                continue;
+            }
+            Map<String, Object> item = new HashMap<>();
+            item.put("type", isCustomer ? "customer" : "followup");
+            item.put("id", hit.getId());
+            item.put("score", hit.getScore());
+            item.put("data", entity);
+            hits.add(item);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("total", result.getTotal());
+        response.put("data", hits);
+        return response;
+    }
+
+    /**
+     * 在维护线程池中从数据库重建索引
+     * @return 是否成功提交（已在重建或维护线程池繁忙时返回false）
+     */
+    public boolean startRebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            maintenanceExecutor.execute(this::rebuild);
+            return true;
+        } catch (TaskRejectedException e) {
+            rebuilding.set(false);
+            return false;
+        }
+    }
+
+    /**
+     * 获取索引状态
+     * @return 索引状态
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("documents", index.size());
+        status.put("terms", index.termCount());
+        status.put("postingBytes", index.postingBytes());
+        status.put("rebuilding", rebuilding.get());
+        status.put("file", snapshotFile().toString());
+        status.put("logGeneration", logGeneration);
+        status.put("logBytes", logBytes);
+        synchronized (journalLock) {
+            status.put("outboxIds", appliedOutboxIds.clone());
+        }
+        return status;
+    }
+
+    /**
+     * 定时把缓冲的变更追加到日志；日志过大或之前写入失败时写新快照
+     */
+    @Scheduled(fixedDelayString = "${crm.search.flush-interval-ms:60000}")
+    public synchronized void flushIfDirty() {
+        try {
+            if (snapshotNeeded || logBytes >= snapshotLogBytes) {
+                snapshot();
+            } else {
+                appendJournal();
+            }
+        } catch (IOException e) {
+            snapshotNeeded = true;
+            System.out.println("全文索引保存失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 关闭前保存索引
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushIfDirty();
+    }
+
+    /**
+     * 按ID顺序分批读取全部客户和跟进记录（启用分片时依次读取每个分片），构建新索引后替换旧索引
+     */
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        try {
+            // 重建结果至少包含此刻之前提交的变更，之后的变更由重建期间收到的事件补上
+            long[] startOutboxIds = changeEventBusService.currentMaxIds();
+            FullTextIndex fresh = new FullTextIndex();
+
+            shardService.forEachShard(shard -> {
+                int lastId = 0;
+                List<Customer> customers;
+                do {
+                    customers = customerRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, REBUILD_BATCH_SIZE));
+                    for (Customer customer : customers) {
+                        fresh.put(FullTextIndex.DocType.CUSTOMER, customer.getId(), customer.getNotes());
+                        lastId = customer.getId();
+                    }
+                } while (customers.size() == REBUILD_BATCH_SIZE);
+
+                lastId = 0;
+                List<Followup> followups;
+                do {
+                    followups = followupRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, REBUILD_BATCH_SIZE));
+                    for (Followup followup : followups) {
+                        fresh.put(FullTextIndex.DocType.FOLLOWUP, followup.getId(), followup.getContent());
+                        lastId = followup.getId();
+                    }
+                } while (followups.size() == REBUILD_BATCH_SIZE);
+            });
+
+            // 补上重建期间发生的变更后替换
+            synchronized (pendingDuringRebuild) {
+                for (EntityChangeEvent event : pendingDuringRebuild) {
+                    apply(fresh, event);
+                }
+                pendingDuringRebuild.clear();
+                index = fresh;
+                rebuilding.set(false);
+            }
+            synchronized (journalLock) {
+                for (int shard = 0; shard < appliedOutboxIds.length; shard++) {
+                    appliedOutboxIds[shard] = Math.max(appliedOutboxIds[shard], startOutboxIds[shard]);
+                }
+            }
+            synchronized (this) {
+                snapshot();
+            }
+            System.out.println("全文索引重建完成，文档数：" + fresh.size() + "，耗时：" + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            synchronized (pendingDuringRebuild) {
+                pendingDuringRebuild.clear();
+                rebuilding.set(false);
+            }
+        }
+    }
+
+    /**
+     * 把变更事件应用到索引
+     */
+    private void apply(FullTextIndex target, EntityChangeEvent event) {
+        boolean isCustomer = event.getEntityType() == EntityChangeEvent.EntityType.CUSTOMER;
+        FullTextIndex.DocType type = isCustomer ? FullTextIndex.DocType.CUSTOMER : FullTextIndex.DocType.FOLLOWUP;
+        if (event.getAction() == EntityChangeEvent.Action.DELETE || event.getEntity() == null) {
+            target.remove(type, event.getEntityId());
+        } else if (isCustomer) {
+            target.put(type, event.getEntityId(), ((Customer) event.getEntity()).getNotes());
+        } else {
+            target.put(type, event.getEntityId(), ((Followup) event.getEntity()).getContent());
+        }
+    }
+
+    /**
+     * 把变更事件应用到当前索引、编码到日志缓冲区并记录已应用到的变更日志ID（调用方持有日志锁）
+     */
+    private void applyAndJournal(EntityChangeEvent event) {
+        apply(index, event);
+        try {
+            writeJournal(event);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Long outboxId = event.getOutboxId();
+        int shard = event.getOutboxShard();
+        if (outboxId != null && shard < appliedOutboxIds.length && outboxId > appliedOutboxIds[shard]) {
+            appliedOutboxIds[shard] = outboxId;
+        }
+    }
+
+    /**
+     * 从change_outbox补齐文件中记录的变更日志ID之后的变更（调用方持有日志锁）
+     * @return 是否补齐成功，失败时需要重建
+     */
+    private boolean catchUp() {
+        try {
+            long caughtUp = changeEventBusService.catchUp(appliedOutboxIds.clone(), event -> {
+                if (event.getEntityType() != EntityChangeEvent.EntityType.USER) {
+                    applyAndJournal(event);
+                }
+            });
+            if (caughtUp < 0) {
+                System.out.println("全文索引所需的变更日志已被清理，将重建");
+                return false;
+            }
+            System.out.println("全文索引从变更日志补齐变更：" + caughtUp);
+            return true;
+        } catch (RuntimeException e) {
+            System.out.println("全文索引补齐变更失败，将重建：" + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 加载快照并按代号顺序重放之后的变更日志；快照不存在或损坏时删除全部日志
+     * @return 是否加载成功
+     */
+    private boolean loadFiles() {
+        Path file = snapshotFile();
+        if (Files.exists(file)) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                DataInputStream data = new DataInputStream(in);
+                long startGeneration = data.readLong();
+                FullTextIndex loaded = FullTextIndex.readFrom(data);
+                long[] outboxIds = readOutboxIds(data);
+                long generation = startGeneration;
+                long replayed = 0;
+                while (true) {
+                    if (Files.exists(logFile(generation))) {
+                        replayed += replayJournal(loaded, outboxIds, logFile(generation));
+                    }
+                    if (!Files.exists(logFile(generation + 1))) {
+                        break;
+                    }
+                    generation++;
+                }
+                index = loaded;
+                appliedOutboxIds = outboxIds;
+                logGeneration = generation;
+                logBytes = Files.exists(logFile(generation)) ? Files.size(logFile(generation)) : 0;
+                System.out.println("全文索引加载完成，文档数：" + loaded.size() + "，重放变更：" + replayed);
+                return true;
+            } catch (IOException | RuntimeException e) {
+                System.out.println("全文索引加载失败，将重建：" + e.getMessage());
+            }
+        }
+        try {
+            deleteJournals(Long.MAX_VALUE);
+        } catch (IOException e) {
+            System.out.println("全文索引旧日志删除失败：" + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * 读取快照末尾的各分片变更日志ID
+     * @throws IOException 没有变更日志ID（旧版本文件）或分片数已变化
+     */
+    private long[] readOutboxIds(DataInputStream data) throws IOException {
+        int shards;
+        try {
+            shards = data.readInt();
+        } catch (EOFException e) {
+            throw new IOException("快照中没有变更日志ID（旧版本文件）");
+        }
+        if (shards != shardService.getShardCount()) {
+            throw new IOException("分片数已变化：" + shards + " -> " + shardService.getShardCount());
+        }
+        long[] outboxIds = new long[shards];
+        for (int shard = 0; shard < shards; shard++) {
+            outboxIds[shard] = data.readLong();
+        }
+        return outboxIds;
+    }
+
+    /**
+     * 重放一个变更日志文件，末尾不完整的记录（写入时崩溃）被截掉
+     * @param outboxIds 各分片已应用到的变更日志ID，按日志中的记录推进
+     * @return 重放的变更数
+     */
+    private long replayJournal(FullTextIndex target, long[] outboxIds, Path file) throws IOException {
+        long replayed = 0;
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                byte op = in.readByte();
+                if (op == OP_OUTBOX_ID) {
+                    int shard = in.readInt();
+                    long outboxId = in.readLong();
+                    if (shard >= outboxIds.length) {
+                        throw new IOException("变更日志中的分片编号超出分片数：" + shard);
+                    }
+                    outboxIds[shard] = Math.max(outboxIds[shard], outboxId);
+                    valid += 13;
+                    continue;
+                }
+                FullTextIndex.DocType type = FullTextIndex.DocType.values()[in.readByte()];
+                int id = in.readInt();
+                long length = 6;
+                if (op == OP_PUT) {
+                    byte[] text = new byte[in.readInt()];
+                    in.readFully(text);
+                    target.put(type, id, new String(text, StandardCharsets.UTF_8));
+                    length += 4 + text.length;
+                } else {
+                    target.remove(type, id);
+                }
+                valid += length;
+                replayed++;
+            }
+        } catch (EOFException e) {
+            // 到达文件末尾
+        }
+        if (valid < Files.size(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * 把变更编码到日志缓冲区（调用方持有日志锁）
+     */
+    private void writeJournal(EntityChangeEvent event) throws IOException {
+        boolean isCustomer = event.getEntityType() == EntityChangeEvent.EntityType.CUSTOMER;
+        FullTextIndex.DocType type = isCustomer ? FullTextIndex.DocType.CUSTOMER : FullTextIndex.DocType.FOLLOWUP;
+        if (event.getAction() == EntityChangeEvent.Action.DELETE || event.getEntity() == null) {
+            journal.writeByte(OP_REMOVE);
+            journal.writeByte(type.ordinal());
+            journal.writeInt(event.getEntityId());
+            return;
+        }
+        String text = isCustomer ? ((Customer) event.getEntity()).getNotes() : ((Followup) event.getEntity()).getContent();
+        byte[] bytes = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+        journal.writeByte(OP_PUT);
+        journal.writeByte(type.ordinal());
+        journal.writeInt(event.getEntityId());
+        journal.writeInt(bytes.length);
+        journal.write(bytes);
+    }
+
+    /**
+     * 把缓冲的变更和此刻各分片已应用到的变更日志ID追加到当前日志并刷盘（调用方持有this锁）
+     */
+    private void appendJournal() throws IOException {
+        byte[] records;
+        synchronized (journalLock) {
+            if (journalBuffer.size() == 0) {
+                return;
+            }
+            for (int shard = 0; shard < appliedOutboxIds.length; shard++) {
+                journal.writeByte(OP_OUTBOX_ID);
+                journal.writeInt(shard);
+                journal.writeLong(appliedOutboxIds[shard]);
+            }
+            records = journalBuffer.toByteArray();
+            journalBuffer.reset();
+        }
+        Path file = logFile(logGeneration);
+        Files.createDirectories(file.getParent());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(records);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // 这批变更只在内存索引中，由下一次快照补齐
+            snapshotNeeded = true;
+            throw e;
+        }
+        logBytes += records.length;
+    }
+
+    /**
+     * 写新快照（调用方持有this锁）：先把缓冲写入当前日志并切换到新日志，再整理并写出索引，最后删除旧日志。
+     * 快照写出期间的变更同时进入新日志，加载时重放到快照上结果不变
+     */
+    private void snapshot() throws IOException {
+        try {
+            appendJournal();
+        } catch (IOException e) {
+            // 未写入日志的变更已在内存索引中，由本次快照包含
+        }
+        long startGeneration;
+        long[] outboxIds;
+        synchronized (journalLock) {
+            startGeneration = ++logGeneration;
+            outboxIds = appliedOutboxIds.clone();
+        }
+        logBytes = 0;
+
+        FullTextIndex current = index;
+        current.compact();
+        Path file = snapshotFile();
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeLong(startGeneration);
+            current.writeTo(data);
+            data.writeInt(outboxIds.length);
+            for (long outboxId : outboxIds) {
+                data.writeLong(outboxId);
+            }
+            data.flush();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        snapshotNeeded = false;
+        deleteJournals(startGeneration);
+    }
+
+    /**
+     * 删除代号小于给定值的变更日志
+     */
+    private void deleteJournals(long beforeGeneration) throws IOException {
+        Path dir = snapshotFile().getParent();
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> logs = Files.newDirectoryStream(dir, "fulltext-*.log")) {
+            for (Path log : logs) {
+                String name = log.getFileName().toString();
+                long generation = Long.parseLong(name.substring("fulltext-".length(), name.length() - ".log".length()));
+                if (generation < beforeGeneration) {
+                    Files.deleteIfExists(log);
+                }
+            }
+        }
+    }
+
+    private Path snapshotFile() {
+        return Paths.get(indexDir).toAbsolutePath().resolve("fulltext.idx");
+    }
+
+    private Path logFile(long generation) {
+        return Paths.get(indexDir).toAbsolutePath().resolve("fulltext-" + generation + ".log");
+    }
+
+}
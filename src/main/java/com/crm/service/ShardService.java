@@ -0,0 +1,432 @@
+package com.crm.service;
+
+import com.crm.event.EntityChangeEvent;
+import com.crm.shard.IdBlockAllocator;
+import com.crm.shard.ShardContext;
+import com.crm.shard.ShardIdGenerator;
+import com.crm.shard.ShardRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * 分片服务：ID分配、单分片路由、跨分片并行查询和全局表同步
+ * 未启用分片时只有一个分片（全局分片），路由不做任何事，跨分片查询直接在调用线程上执行，行为与分片前一致；
+ * ID分配在两种模式下相同（不再使用数据库自增主键）
+ */
+@Service
+public class ShardService implements ShardIdGenerator.Allocator {
+
+    /**
+     * 客户ID序列名（与Customer实体的ID生成器参数一致）
+     */
+    public static final String CUSTOMER_SEQUENCE = "customers";
+
+    /**
+     * 跟进记录ID序列名（与Followup实体的ID生成器参数一致）
+     */
+    public static final String FOLLOWUP_SEQUENCE = "followups";
+
+    private static final String USER_COLUMNS = "id, username, password, nickname, role, created_at, updated_at";
+    private static final String UPSERT_USER_SQL = "INSERT INTO users (" + USER_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE username = VALUES(username), password = VALUES(password), nickname = VALUES(nickname), "
+            + "role = VALUES(role), updated_at = VALUES(updated_at)";
+
+    /**
+     * 各ID序列对应的表，用于首次分配时确定起始序号
+     */
+    private static final Map<String, List<String>> SEQUENCE_TABLES = new HashMap<>();
+
+    static {
+        SEQUENCE_TABLES.put(CUSTOMER_SEQUENCE, Collections.singletonList("customers"));
+        SEQUENCE_TABLES.put(FOLLOWUP_SEQUENCE, Arrays.asList("followups", "followups_archive"));
+    }
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired(required = false)
+    private ShardRoutingDataSource shardRoutingDataSource;  // 未启用分片时不存在
+
+    @Autowired(required = false)
+    @Qualifier("shardScatterExecutor")
+    private AsyncTaskExecutor scatterExecutor;  // 未启用分片时不存在
+
+    @Autowired
+    private DataSourceProperties dataSourceProperties;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${crm.shard.id-block-size:100}")
+    private int idBlockSize;  // 每次从id_blocks表取号段的长度
+
+    @Value("${crm.shard.scatter-timeout-ms:30000}")
+    private long scatterTimeoutMs;  // 跨分片查询等待各分片结果的超时时间
+
+    private int shardCount = 1;
+    private HikariDataSource allocatorDataSource;
+    private IdBlockAllocator allocator;
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /**
+     * 创建ID分配器（使用独立的小连接池，取号段不占用业务连接）并注册到ID生成器
+     */
+    @PostConstruct
+    public void init() {
+        if (shardRoutingDataSource != null) {
+            shardCount = shardRoutingDataSource.getShardCount();
+        }
+        allocatorDataSource = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        allocatorDataSource.setPoolName("crm-id-allocator");
+        allocatorDataSource.setMaximumPoolSize(2);
+        allocatorDataSource.setMinimumIdle(0);
+        allocator = new IdBlockAllocator(allocatorDataSource, idBlockSize, this::seed);
+        ShardIdGenerator.setAllocator(this);
+    }
+
+    @PreDestroy
+    public void close() {
+        allocatorDataSource.close();
+    }
+
+    /**
+     * 是否启用了分片
+     * @return 是否启用
+     */
+    public boolean isSharded() {
+        return shardCount > 1;
+    }
+
+    /**
+     * 分片数量
+     * @return 分片数量，未启用分片时为1
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * ID所在的分片（客户ID、跟进记录ID均可）
+     * @param id 实体ID
+     * @return 分片编号
+     */
+    public int shardOf(int id) {
+        return id % shardCount;
+    }
+
+    @Override
+    public int nextId(String sequence, int shard) {
+        long id = allocator.next(sequence) * shardCount + shard;
+        if (id > Integer.MAX_VALUE) {
+            throw new IllegalStateException("ID序列" + sequence + "已超出INT范围");
+        }
+        return (int) id;
+    }
+
+    /**
+     * 把当前事务路由到实体ID所在的分片，必须在事务的第一条语句之前调用
+     * @param id 客户ID或跟进记录ID，为null时不路由
+     */
+    public void route(Integer id) {
+        if (isSharded() && id != null) {
+            ShardContext.bind(shardOf(id));
+        }
+    }
+
+    /**
+     * 为新客户选择分片（轮流分配）并把当前事务路由过去，新客户的ID由该分片编号生成
+     */
+    public void routeNew() {
+        if (isSharded()) {
+            ShardContext.bind(Math.floorMod(nextShard.getAndIncrement(), shardCount));
+        }
+    }
+
+    /**
+     * 在每个分片上并行执行只读查询（各自独立的只读事务），按分片编号顺序返回结果
+     * 未启用分片时直接在调用线程上执行一次
+     * @param query 查询，参数为分片编号
+     * @return 各分片的结果
+     */
+    public <T> List<T> scatter(IntFunction<T> query) {
+        if (!isSharded()) {
+            return Collections.singletonList(query.apply(ShardContext.GLOBAL));
+        }
+        int[] shards = new int[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = i;
+        }
+        return runOn(shards, query);
+    }
+
+    /**
+     * 按ID批量加载实体：ID按分片分组，各分片并行查询后合并
+     * @param ids 实体ID
+     * @param loader 单个分片上的批量加载
+     * @return 找到的实体（顺序不保证）
+     */
+    public <T> List<T> findAllById(Collection<Integer> ids, Function<List<Integer>, List<T>> loader) {
+        if (!isSharded()) {
+            return loader.apply(new ArrayList<>(ids));
+        }
+        Map<Integer, List<Integer>> byShard = new HashMap<>();
+        for (Integer id : ids) {
+            byShard.computeIfAbsent(shardOf(id), shard -> new ArrayList<>()).add(id);
+        }
+        int[] shards = byShard.keySet().stream().mapToInt(Integer::intValue).toArray();
+        List<T> result = new ArrayList<>();
+        for (List<T> found : runOn(shards, shard -> loader.apply(byShard.get(shard)))) {
+            result.addAll(found);
+        }
+        return result;
+    }
+
+    /**
+     * 依次在每个分片上执行后台任务（全表扫描、归档、清理等），任务自行管理事务
+     * @param action 任务，参数为分片编号
+     */
+    public void forEachShard(IntConsumer action) {
+        if (!isSharded()) {
+            action.accept(ShardContext.GLOBAL);
+            return;
+        }
+        for (int shard = 0; shard < shardCount; shard++) {
+            int current = shard;
+            ShardContext.callOn(current, () -> {
+                action.accept(current);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * 在指定分片上执行（不开启事务，由执行体自行管理）
+     * @param shard 分片编号
+     * @param action 执行体
+     * @return 执行结果
+     */
+    public <T> T onShard(int shard, Supplier<T> action) {
+        return isSharded() ? ShardContext.callOn(shard, action) : action.get();
+    }
+
+    /**
+     * 在全局分片上执行：启用分片时挂起当前事务，在全局分片上的独立事务中执行（编码表等全局表的读写）
+     * @param action 执行体
+     * @return 执行结果
+     */
+    public <T> T onGlobal(Supplier<T> action) {
+        if (!isSharded()) {
+            return action.get();
+        }
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return ShardContext.callOn(ShardContext.GLOBAL, () -> transaction.execute(status -> action.get()));
+    }
+
+    /**
+     * 用户变更提交后同步到其他分片（客户创建人、跟进人的外键在各分片内引用users表）
+     * @param event 实体变更事件
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChange(EntityChangeEvent event) {
+        if (isSharded() && event.getEntityType() == EntityChangeEvent.EntityType.USER) {
+            syncUser(event.getEntityId());
+        }
+    }
+
+    /**
+     * 启动完成后全量同步用户表
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            syncUsers();
+        } catch (Exception e) {
+            System.err.println("同步用户表到各分片失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 把全局分片的用户表全量同步到其他分片：更新或插入全部用户，删除全局分片上已不存在的用户
+     */
+    public void syncUsers() {
+        if (!isSharded()) {
+            return;
+        }
+        List<Object[]> users = globalJdbc().query("SELECT " + USER_COLUMNS + " FROM users", (rs, rowNum) -> new Object[] {
+                rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getTimestamp(6), rs.getTimestamp(7)});
+        Set<Integer> ids = new HashSet<>();
+        for (Object[] user : users) {
+            ids.add((Integer) user[0]);
+        }
+        for (int shard = 1; shard < shardCount; shard++) {
+            JdbcTemplate jdbc = shardJdbc(shard);
+            for (Integer id : jdbc.queryForList("SELECT id FROM users", Integer.class)) {
+                if (!ids.contains(id)) {
+                    jdbc.update("DELETE FROM users WHERE id = ?", id);
+                }
+            }
+            for (Object[] user : users) {
+                upsertUser(jdbc, user);
+            }
+        }
+        System.out.println("用户表已同步到各分片：" + users.size() + "个用户");
+    }
+
+    /**
+     * 获取分片状态
+     * @return 分片数量、ID号段使用情况
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("sharded", isSharded());
+        status.put("shardCount", shardCount);
+        status.put("idBlockSize", idBlockSize);
+        status.put("idBlocks", allocator.getStatus());
+        if (shardRoutingDataSource != null) {
+            List<Map<String, Object>> pools = new ArrayList<>();
+            for (int shard = 0; shard < shardCount; shard++) {
+                Map<String, Object> pool = new HashMap<>();
+                pool.put("shard", shard);
+                DataSource shardDataSource = shardRoutingDataSource.getShard(shard);
+                if (shardDataSource instanceof HikariDataSource && ((HikariDataSource) shardDataSource).getHikariPoolMXBean() != null) {
+                    pool.put("activeConnections", ((HikariDataSource) shardDataSource).getHikariPoolMXBean().getActiveConnections());
+                    pool.put("totalConnections", ((HikariDataSource) shardDataSource).getHikariPoolMXBean().getTotalConnections());
+                }
+                pools.add(pool);
+            }
+            status.put("shards", pools);
+        }
+        return status;
+    }
+
+    /**
+     * 在指定的分片上并行执行只读查询，任一分片失败或超时时整体失败
+     */
+    private <T> List<T> runOn(int[] shards, IntFunction<T> query) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        List<Future<T>> futures = new ArrayList<>(shards.length);
+        for (int shard : shards) {
+            futures.add(scatterExecutor.submit(() ->
+                    ShardContext.callOn(shard, () -> transaction.execute(status -> query.apply(shard)))));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        long deadline = System.currentTimeMillis() + scatterTimeoutMs;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+                } catch (TimeoutException e) {
+                    throw new QueryTimeoutException("分片" + shards[i] + "查询超时");
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new IllegalStateException("分片" + shards[i] + "查询失败：" + e.getCause().getMessage(), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("分片查询被中断");
+                }
+            }
+            return results;
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 序列首次分配时的起始序号：大于各分片上已有的最大ID（ID = 序号 * 分片数 + 分片编号）
+     */
+    private long seed(String sequence) {
+        List<String> tables = SEQUENCE_TABLES.get(sequence);
+        if (tables == null) {
+            throw new IllegalArgumentException("未知的ID序列：" + sequence);
+        }
+        long maxId = 0;
+        for (int shard = 0; shard < shardCount; shard++) {
+            JdbcTemplate jdbc = shardJdbc(shard);
+            for (String table : tables) {
+                Long max = jdbc.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+                maxId = Math.max(maxId, max == null ? 0 : max);
+            }
+        }
+        return maxId / shardCount + 1;
+    }
+
+    private void syncUser(int id) {
+        try {
+            List<Object[]> users = globalJdbc().query("SELECT " + USER_COLUMNS + " FROM users WHERE id = ?", (rs, rowNum) -> new Object[] {
+                    rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getTimestamp(6), rs.getTimestamp(7)}, id);
+            for (int shard = 1; shard < shardCount; shard++) {
+                JdbcTemplate jdbc = shardJdbc(shard);
+                if (users.isEmpty()) {
+                    jdbc.update("DELETE FROM users WHERE id = ?", id);
+                } else {
+                    upsertUser(jdbc, users.get(0));
+                }
+            }
+        } catch (Exception e) {
+            // 下次启动时全量同步会补齐
+            System.err.println("同步用户" + id + "到各分片失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 插入或更新一个用户（不能用REPLACE，删除旧行会级联删除该用户的跟进记录）
+     */
+    private static void upsertUser(JdbcTemplate jdbc, Object[] user) {
+        // 用户名唯一：先删除同名但ID不同的旧用户（已在全局分片上删除）
+        jdbc.update("DELETE FROM users WHERE username = ? AND id <> ?", user[1], user[0]);
+        jdbc.update(UPSERT_USER_SQL, user);
+    }
+
+    private JdbcTemplate globalJdbc() {
+        return shardJdbc(ShardContext.GLOBAL);
+    }
+
+    /**
+     * 直接访问分片物理数据源的JdbcTemplate（不经过路由，不加入当前事务）
+     */
+    private JdbcTemplate shardJdbc(int shard) {
+        return new JdbcTemplate(shardRoutingDataSource != null ? shardRoutingDataSource.getShard(shard) : dataSource);
+    }
+
+}
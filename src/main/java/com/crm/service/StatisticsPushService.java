@@ -0,0 +1,150 @@
+package com.crm.service;
+
+import com.crm.event.EntityChangeEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 统计数据推送服务，通过SSE向仪表盘推送实时统计
+ * 客户和跟进记录的写操作只标记数据已变更，由定时任务合并后统一计算一次并广播，
+ * 因此无论连接多少个仪表盘、发生多少次写操作，每个推送周期最多查询一次数据库
+ */
+@Service
+public class StatisticsPushService {
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private FollowupService followupService;
+
+    @Autowired
+    private ChangeEventBusService changeEventBusService;
+
+    @Value("${crm.statistics.sse-timeout-ms:1800000}")
+    private long sseTimeoutMs;  // SSE连接超时时间（毫秒）
+
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();  // 已连接的仪表盘
+    private final AtomicBoolean dirty = new AtomicBoolean(false);  // 自上次推送后数据是否有变更
+    private volatile Map<String, Object> lastSnapshot;  // 最近一次计算的统计快照
+
+    /**
+     * 订阅变更事件
+     */
+    @PostConstruct
+    public void init() {
+        changeEventBusService.subscribe("statistics-push", this::onEntityChange);
+    }
+
+    /**
+     * 注册一个新的仪表盘连接，并立即推送最近一次计算的统计快照（还没有快照时才计算一次）
+     * 快照之后有变更时变更标记仍在，下一个推送周期会把新快照推送给包括本连接在内的所有仪表盘
+     * @return SSE发射器
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        emitters.add(emitter);
+        try {
+            emitter.send(SseEmitter.event().name("statistics").data(cachedSnapshot()));
+        } catch (IOException e) {
+            emitters.remove(emitter);
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    /**
+     * 监听客户和跟进记录的变更（事务提交后，在事件总线的订阅线程上），仅标记数据已变更
+     * @param event 实体变更事件
+     */
+    public void onEntityChange(EntityChangeEvent event) {
+        if (event.getEntityType() != EntityChangeEvent.EntityType.USER) {
+            dirty.set(true);
+        }
+    }
+
+    /**
+     * 定时推送：合并推送周期内的所有变更，最多每个周期计算并推送一次
+     */
+    @Scheduled(fixedDelayString = "${crm.statistics.push-interval-ms:1000}")
+    public void pushIfChanged() {
+        if (emitters.isEmpty() || !dirty.compareAndSet(true, false)) {
+            return;
+        }
+
+        Map<String, Object> snapshot;
+        try {
+            snapshot = buildSnapshot();
+            lastSnapshot = snapshot;
+        } catch (Exception e) {
+            // 计算失败时保留变更标记，下个周期重试
+            dirty.set(true);
+            e.printStackTrace();
+            return;
+        }
+
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(SseEmitter.event().name("statistics").data(snapshot));
+            } catch (Exception e) {
+                // 客户端已断开，移除连接
+                emitters.remove(emitter);
+            }
+        }
+    }
+
+    /**
+     * 获取当前连接的仪表盘数量
+     * @return 连接数量
+     */
+    public int getSubscriberCount() {
+        return emitters.size();
+    }
+
+    /**
+     * 获取最近一次计算的统计快照，还没有时计算并缓存
+     */
+    private synchronized Map<String, Object> cachedSnapshot() {
+        if (lastSnapshot == null) {
+            lastSnapshot = buildSnapshot();
+        }
+        return lastSnapshot;
+    }
+
+    /**
+     * 计算一次统计快照
+     * @return 统计快照（来源分布、跟进方式分布、今日新增客户数、今日跟进数）
+     */
+    private Map<String, Object> buildSnapshot() {
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("customerSource", customerService.getCustomerSourceStatistics());
+        snapshot.put("followupMethod", followupService.getFollowupMethodStatistics());
+        snapshot.put("todayCustomerCount", sumValues(customerService.getCustomerCountStatistics(1)));
+        snapshot.put("todayFollowupCount", sumValues(followupService.getFollowupCountStatistics(1)));
+        snapshot.put("timestamp", System.currentTimeMillis());
+        return snapshot;
+    }
+
+    private long sumValues(Map<String, Long> counts) {
+        long total = 0;
+        for (Long count : counts.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+}
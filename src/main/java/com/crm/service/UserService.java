@@ -1,9 +1,14 @@
 package com.crm.service;
 
+import com.crm.event.EntityChangeEvent;
 import com.crm.model.User;
+import com.crm.profiling.JfrSupport;
+import com.crm.profiling.LoginEvent;
 import com.crm.repository.UserRepository;
 import com.crm.util.PasswordUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,13 +24,24 @@ public class UserService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${crm.admin.reset-password-on-startup:true}")
+    private boolean resetAdminPassword;  // 启动时是否把已存在的管理员密码重置为默认密码（仅用于开发环境）
+
     /**
      * 用户登录验证
      * @param username 用户名
      * @param password 密码
      * @return 登录成功的用户对象，失败则返回null
      */
+    @Transactional(readOnly = true)
     public User login(String username, String password) {
+        LoginEvent event = JfrSupport.isAvailable() ? new LoginEvent(username) : null;
+        if (event != null) {
+            event.begin();
+        }
         System.out.println("登录请求：username=" + username + ", password=" + password);
         User user = userRepository.findByUsername(username);
         if (user != null) {
@@ -34,11 +50,17 @@ public class UserService {
             System.out.println("输入密码加密后：" + PasswordUtils.encryptPassword(password));
             System.out.println("密码是否匹配：" + PasswordUtils.verifyPassword(password, user.getPassword()));
             if (PasswordUtils.verifyPassword(password, user.getPassword())) {
+                if (event != null) {
+                    event.finish(true);
+                }
                 return user;
             }
         } else {
             System.out.println("未找到用户：" + username);
         }
+        if (event != null) {
+            event.finish(false);
+        }
         return null;
     }
 
@@ -47,6 +69,7 @@ public class UserService {
      * @param id 用户ID
      * @return 用户对象
      */
+    @Transactional(readOnly = true)
     public User getUserById(Integer id) {
         return userRepository.findById(id).orElse(null);
     }
@@ -56,6 +79,7 @@ public class UserService {
      * @param username 用户名
      * @return 用户对象
      */
+    @Transactional(readOnly = true)
     public User getUserByUsername(String username) {
         return userRepository.findByUsername(username);
     }
@@ -66,7 +90,9 @@ public class UserService {
      * @return 更新后的用户对象
      */
     public User updateUser(User user) {
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        publishChange(EntityChangeEvent.Action.UPDATE, saved.getId(), saved);
+        return saved;
     }
 
     /**
@@ -80,6 +106,7 @@ public class UserService {
         if (user != null) {
             user.setPassword(PasswordUtils.encryptPassword(newPassword));
             userRepository.save(user);
+            publishChange(EntityChangeEvent.Action.UPDATE, userId, user);
             return true;
         }
         return false;
@@ -89,6 +116,7 @@ public class UserService {
      * 获取所有用户
      * @return 用户列表
      */
+    @Transactional(readOnly = true)
     public List<User> getAllUsers() {
         return userRepository.findAll();
     }
@@ -99,7 +127,9 @@ public class UserService {
      * @return 添加的用户对象
      */
     public User addUser(User user) {
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        publishChange(EntityChangeEvent.Action.CREATE, saved.getId(), saved);
+        return saved;
     }
 
     /**
@@ -110,13 +140,14 @@ public class UserService {
     public boolean deleteUser(Integer id) {
         if (userRepository.existsById(id)) {
             userRepository.deleteById(id);
+            publishChange(EntityChangeEvent.Action.DELETE, id, null);
             return true;
         }
         return false;
     }
 
     /**
-     * 创建默认管理员账号（如果不存在）
+     * 创建默认管理员账号（如果不存在），已存在时按配置决定是否重置密码
      */
     public void createDefaultAdmin() {
         User admin = userRepository.findByUsername("admin");
@@ -127,13 +158,25 @@ public class UserService {
             admin.setNickname("系统管理员");
             admin.setRole("admin");
             userRepository.save(admin);
+            publishChange(EntityChangeEvent.Action.CREATE, admin.getId(), admin);
             System.out.println("默认管理员账号创建成功: admin / 123456");
-        } else {
+        } else if (resetAdminPassword) {
             // 重置管理员密码为123456
             admin.setPassword(PasswordUtils.encryptPassword("123456"));
             userRepository.save(admin);
+            publishChange(EntityChangeEvent.Action.UPDATE, admin.getId(), admin);
             System.out.println("管理员账号密码已重置: admin / 123456");
         }
     }
 
+    /**
+     * 发布用户变更事件
+     * @param action 变更类型
+     * @param id 用户ID
+     * @param user 变更后的用户对象（删除时为null）
+     */
+    private void publishChange(EntityChangeEvent.Action action, Integer id, User user) {
+        eventPublisher.publishEvent(new EntityChangeEvent(this, EntityChangeEvent.EntityType.USER, action, id, user));
+    }
+
 }
@@ -0,0 +1,97 @@
+package com.crm.shard;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * 号段分配器：每次从id_blocks表取一段连续序号在内存中发放，用完再取下一段
+ * 取号段是一条自动提交的UPDATE（LAST_INSERT_ID在同一连接上返回更新后的值），多个实例之间由行锁互斥，
+ * 不占用业务事务；实例重启时未发完的号段作废，序号会有间隔但不会重复
+ */
+public class IdBlockAllocator {
+
+    private static final String ADVANCE_SQL = "UPDATE id_blocks SET next_value = LAST_INSERT_ID(next_value + ?), updated_at = NOW() WHERE name = ?";
+    private static final String SEED_SQL = "INSERT IGNORE INTO id_blocks (name, next_value, updated_at) VALUES (?, ?, NOW())";
+
+    private final DataSource dataSource;
+    private final int blockSize;
+    private final ToLongFunction<String> seed;
+    private final Map<String, long[]> blocks = new HashMap<>();  // 序列名 -> [下一个序号, 号段上限（不含）]
+
+    /**
+     * @param dataSource 全局分片的数据源（使用独立连接，不加入当前事务）
+     * @param blockSize 每次取号段的长度
+     * @param seed 序列不存在时的起始序号（需大于已有数据的最大序号）
+     */
+    public IdBlockAllocator(DataSource dataSource, int blockSize, ToLongFunction<String> seed) {
+        this.dataSource = dataSource;
+        this.blockSize = blockSize;
+        this.seed = seed;
+    }
+
+    /**
+     * 分配一个序号
+     * @param sequence 序列名
+     * @return 序号
+     */
+    public synchronized long next(String sequence) {
+        long[] block = blocks.get(sequence);
+        if (block == null || block[0] >= block[1]) {
+            long limit = advance(sequence);
+            block = new long[] {limit - blockSize, limit};
+            blocks.put(sequence, block);
+        }
+        return block[0]++;
+    }
+
+    /**
+     * 获取各序列当前号段的使用情况
+     * @return 序列名 -> 下一个序号、号段上限
+     */
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        for (Map.Entry<String, long[]> block : blocks.entrySet()) {
+            Map<String, Long> range = new HashMap<>();
+            range.put("next", block.getValue()[0]);
+            range.put("limit", block.getValue()[1]);
+            status.put(block.getKey(), range);
+        }
+        return status;
+    }
+
+    /**
+     * 从数据库取下一个号段，返回号段上限；序列不存在时先按seed插入
+     */
+    private long advance(String sequence) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(true);
+            for (int attempt = 0; attempt < 2; attempt++) {
+                try (PreparedStatement statement = connection.prepareStatement(ADVANCE_SQL)) {
+                    statement.setInt(1, blockSize);
+                    statement.setString(2, sequence);
+                    if (statement.executeUpdate() > 0) {
+                        try (PreparedStatement select = connection.prepareStatement("SELECT LAST_INSERT_ID()");
+                             ResultSet rs = select.executeQuery()) {
+                            rs.next();
+                            return rs.getLong(1);
+                        }
+                    }
+                }
+                try (PreparedStatement statement = connection.prepareStatement(SEED_SQL)) {
+                    statement.setString(1, sequence);
+                    statement.setLong(2, seed.applyAsLong(sequence));
+                    statement.executeUpdate();
+                }
+            }
+            throw new IllegalStateException("初始化ID序列失败：" + sequence);
+        } catch (SQLException e) {
+            throw new IllegalStateException("分配ID号段失败：" + sequence + "，" + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.crm.shard;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+/**
+ * 分片路由上下文，保存当前线程访问的分片编号，未设置时访问全局分片（0号分片）
+ * 由ShardRoutingDataSource在获取物理连接时读取，因此必须在事务的第一条语句执行之前设置
+ */
+public final class ShardContext {
+
+    /**
+     * 全局分片：用户、编码表、漏斗统计等不分片的表只存放在该分片
+     */
+    public static final int GLOBAL = 0;
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    /**
+     * 获取当前线程的分片编号
+     * @return 分片编号，未设置时为GLOBAL
+     */
+    public static int current() {
+        Integer shard = CURRENT.get();
+        return shard != null ? shard : GLOBAL;
+    }
+
+    /**
+     * 当前线程是否已设置分片
+     * @return 是否已设置
+     */
+    public static boolean isSet() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * 在指定分片上执行，结束后恢复原来的分片（执行体中开启并结束自己的事务）
+     * @param shard 分片编号
+     * @param action 执行体
+     * @return 执行结果
+     */
+    public static <T> T callOn(int shard, Supplier<T> action) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 把当前事务路由到指定分片，事务结束后清除
+     * 已处于同一分片时不做任何事；已处于其他分片时抛出异常（一个事务只能访问一个分片）
+     * @param shard 分片编号
+     * @throws IllegalStateException 当前事务已路由到其他分片，或不在事务中
+     */
+    public static void bind(int shard) {
+        Integer current = CURRENT.get();
+        if (current != null) {
+            if (current != shard) {
+                throw new IllegalStateException("当前事务已路由到分片" + current + "，不能再访问分片" + shard);
+            }
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("分片路由只能在事务中绑定");
+        }
+        CURRENT.set(shard);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                CURRENT.remove();
+            }
+        });
+    }
+}
@@ -0,0 +1,66 @@
+package com.crm.shard;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * 全局唯一ID生成器（Hibernate），替代数据库自增主键
+ * ID = 序号 * 分片数 + 分片编号，序号由分配器从全局分片的id_blocks表按段分配；
+ * 分片编号取当前事务路由到的分片，因此任何ID对分片数取模即得到其所在分片
+ */
+public class ShardIdGenerator implements IdentifierGenerator {
+
+    /**
+     * 序列名参数（id_blocks表的name列）
+     */
+    public static final String SEQUENCE = "sequence";
+
+    private static volatile Allocator allocator;
+
+    private String sequence;
+
+    /**
+     * ID分配器，由ShardService实现
+     */
+    public interface Allocator {
+
+        /**
+         * 分配一个ID
+         * @param sequence 序列名
+         * @param shard 分片编号
+         * @return 全局唯一且对分片数取模等于shard的ID
+         */
+        int nextId(String sequence, int shard);
+    }
+
+    /**
+     * 设置ID分配器
+     * @param idAllocator 分配器
+     */
+    public static void setAllocator(Allocator idAllocator) {
+        allocator = idAllocator;
+    }
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        sequence = params.getProperty(SEQUENCE);
+        if (sequence == null) {
+            throw new MappingException("ShardIdGenerator缺少sequence参数");
+        }
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        Allocator current = allocator;
+        if (current == null) {
+            throw new IllegalStateException("ID分配器尚未初始化");
+        }
+        return current.nextId(sequence, ShardContext.current());
+    }
+}
@@ -0,0 +1,133 @@
+package com.crm.shard;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 分片查询结果的归并
+ * 分页查询在每个分片上读取前offset+limit行（已按相同顺序排序），再用k路归并取出全局的第offset到offset+limit行
+ */
+public final class ShardMerge {
+
+    private ShardMerge() {
+    }
+
+    /**
+     * 分片上读取的分页参数：第一页，长度为全局页的偏移量加页大小
+     * @param pageable 全局分页参数
+     * @return 分片分页参数
+     */
+    public static Pageable topOf(Pageable pageable) {
+        long size = pageable.getOffset() + pageable.getPageSize();
+        return PageRequest.of(0, (int) Math.min(size, Integer.MAX_VALUE), pageable.getSort());
+    }
+
+    /**
+     * 归并各分片的有序结果，跳过offset行后取limit行
+     * @param lists 各分片的有序结果
+     * @param comparator 排序规则（与分片查询的排序一致）
+     * @param offset 偏移量
+     * @param limit 数量
+     * @return 归并结果
+     */
+    public static <T> List<T> merge(List<List<T>> lists, Comparator<? super T> comparator, long offset, int limit) {
+        // 堆中每项为[分片下标, 该分片的游标]，按各分片当前行比较
+        PriorityQueue<int[]> heap = new PriorityQueue<>(Math.max(1, lists.size()),
+                (a, b) -> comparator.compare(lists.get(a[0]).get(a[1]), lists.get(b[0]).get(b[1])));
+        for (int i = 0; i < lists.size(); i++) {
+            if (!lists.get(i).isEmpty()) {
+                heap.add(new int[] {i, 0});
+            }
+        }
+        List<T> result = new ArrayList<>(Math.min(limit, 1024));
+        long skipped = 0;
+        while (!heap.isEmpty() && result.size() < limit) {
+            int[] head = heap.poll();
+            List<T> list = lists.get(head[0]);
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                result.add(list.get(head[1]));
+            }
+            if (++head[1] < list.size()) {
+                heap.add(head);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 归并各分片的分页结果，总数为各分片总数之和
+     * @param pages 各分片按topOf(pageable)读取的结果
+     * @param pageable 全局分页参数
+     * @param comparator 排序规则
+     * @return 全局分页结果
+     */
+    public static <T> Page<T> mergePages(List<Page<T>> pages, Pageable pageable, Comparator<? super T> comparator) {
+        List<List<T>> lists = new ArrayList<>(pages.size());
+        long total = 0;
+        for (Page<T> page : pages) {
+            lists.add(page.getContent());
+            total += page.getTotalElements();
+        }
+        return new PageImpl<>(merge(lists, comparator, pageable.getOffset(), pageable.getPageSize()), pageable, total);
+    }
+
+    /**
+     * 按键累加各分片的计数
+     * @param counts 各分片的计数
+     * @param target 累加结果
+     * @return target
+     */
+    public static <K> Map<K, Long> sum(List<Map<K, Long>> counts, Map<K, Long> target) {
+        for (Map<K, Long> shardCounts : counts) {
+            for (Map.Entry<K, Long> count : shardCounts.entrySet()) {
+                target.merge(count.getKey(), count.getValue(), Long::sum);
+            }
+        }
+        return target;
+    }
+
+    /**
+     * 为归并结果批量填充关联对象：分片线程的会话关闭后延迟加载失效，收集关联ID一次批量加载后赋值
+     * @param entities 归并后的实体
+     * @param foreignKey 实体上的关联ID
+     * @param loader 按ID批量加载关联对象
+     * @param key 关联对象的ID
+     * @param setter 赋值（关联对象不存在时赋null）
+     */
+    public static <T, R> void attach(Collection<T> entities, Function<T, Integer> foreignKey,
+                                     Function<Set<Integer>, List<R>> loader, Function<R, Integer> key, BiConsumer<T, R> setter) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (T entity : entities) {
+            Integer id = foreignKey.apply(entity);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        Map<Integer, R> loaded = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (R related : loader.apply(ids)) {
+                loaded.put(key.apply(related), related);
+            }
+        }
+        for (T entity : entities) {
+            Integer id = foreignKey.apply(entity);
+            setter.accept(entity, id == null ? null : loaded.get(id));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.crm.shard;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分片路由数据源：按ShardContext中的分片编号选择物理数据源，未设置时使用全局分片
+ * 需配合LazyConnectionDataSourceProxy使用，保证获取物理连接时服务方法已经绑定了分片
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final List<DataSource> shards;
+
+    /**
+     * @param shards 各分片的数据源，下标即分片编号，0号为全局分片
+     */
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(ShardContext.GLOBAL));
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+
+    /**
+     * 分片数量
+     * @return 分片数量
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * 获取分片的物理数据源（不经过路由，用于跨分片的维护语句）
+     * @param shard 分片编号
+     * @return 数据源
+     */
+    public DataSource getShard(int shard) {
+        return shards.get(shard);
+    }
+}
@@ -0,0 +1,60 @@
+package com.crm.util;
+
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * 舱壁隔离工具类，把耗时请求提交到各自独立的有界线程池中异步执行
+ * 线程池和队列已满时立即拒绝（503），不占用Tomcat工作线程排队等待
+ */
+public class BulkheadUtils {
+
+    /**
+     * 提交异步任务
+     * @param executor 所属舱壁的线程池
+     * @param timeoutMs 超时时间（毫秒），超时后中断任务并返回繁忙响应
+     * @param task 实际处理逻辑
+     * @param unavailable 被拒绝或超时时返回的响应
+     * @param <T> 响应体类型
+     * @return 异步结果
+     */
+    public static <T> DeferredResult<ResponseEntity<T>> submit(AsyncTaskExecutor executor, long timeoutMs,
+                                                               Callable<ResponseEntity<T>> task,
+                                                               ResponseEntity<T> unavailable) {
+        DeferredResult<ResponseEntity<T>> result = new DeferredResult<>(timeoutMs);
+        try {
+            Future<?> future = executor.submit(() -> {
+                try {
+                    result.setResult(task.call());
+                } catch (Exception e) {
+                    result.setErrorResult(e);
+                }
+            });
+            result.onTimeout(() -> {
+                future.cancel(true);
+                result.setResult(unavailable);
+            });
+        } catch (TaskRejectedException e) {
+            result.setResult(unavailable);
+        }
+        return result;
+    }
+
+    /**
+     * 构建已完成的异步结果（用于登录校验失败等无需排队的情况）
+     * @param response 响应
+     * @param <T> 响应体类型
+     * @return 异步结果
+     */
+    public static <T> DeferredResult<ResponseEntity<T>> completed(ResponseEntity<T> response) {
+        DeferredResult<ResponseEntity<T>> result = new DeferredResult<>();
+        result.setResult(response);
+        return result;
+    }
+
+}
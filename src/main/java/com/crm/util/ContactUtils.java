@@ -0,0 +1,61 @@
+package com.crm.util;
+
+/**
+ * 联系方式工具类，用于手机号和邮箱的规范化
+ */
+public class ContactUtils {
+
+    /**
+     * 规范化手机号：只保留数字，去掉86/0086国家码前缀
+     * 例如"+86 138-0013-8000"规范化为"13800138000"
+     * @param phone 原始手机号
+     * @return 规范化后的手机号，无有效数字时返回null
+     */
+    public static String normalizePhone(String phone) {
+        if (phone == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        String result = digits.toString();
+        if (result.startsWith("0086") && result.length() == 15) {
+            result = result.substring(4);
+        } else if (result.startsWith("86") && result.length() == 13) {
+            result = result.substring(2);
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * 把手机号规范化后打包为long（customers.phone_key列和来电查号的内存索引使用）
+     * 在数字前补1再按十进制解析，保留前导0，例如"0755-8888 8888"打包为1075588888888
+     * @param phone 原始手机号
+     * @return 打包后的值（总为正数），无有效数字或超过18位数字时返回null
+     */
+    public static Long packPhone(String phone) {
+        String normalized = normalizePhone(phone);
+        if (normalized == null || normalized.length() > 18) {
+            return null;
+        }
+        return Long.parseLong("1" + normalized);
+    }
+
+    /**
+     * 规范化邮箱：去掉首尾空白并转为小写
+     * @param email 原始邮箱
+     * @return 规范化后的邮箱，为空时返回null
+     */
+    public static String normalizeEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        String result = email.trim().toLowerCase();
+        return result.isEmpty() ? null : result;
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.crm.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 稀疏字段参数（fields=id,name,phone）解析工具类
+ */
+public class FieldSelectionUtils {
+
+    /**
+     * 构建可选字段集合
+     * @param fields 字段名（与JSON输出的属性名一致）
+     * @return 不可修改的字段集合
+     */
+    public static Set<String> allowed(String... fields) {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(fields)));
+    }
+
+    /**
+     * 解析fields参数，去除空白和重复字段，保持请求顺序
+     * @param fields 逗号分隔的字段名
+     * @param allowed 可选字段
+     * @return 字段列表，未提供参数时返回null（返回完整对象）
+     * @throws IllegalArgumentException 包含不可选的字段时
+     */
+    public static List<String> parse(String fields, Set<String> allowed) {
+        if (fields == null || fields.trim().isEmpty()) {
+            return null;
+        }
+        Set<String> selected = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!allowed.contains(name)) {
+                throw new IllegalArgumentException("不支持的字段：" + name + "，可选字段：" + String.join(",", allowed));
+            }
+            selected.add(name);
+        }
+        return new ArrayList<>(selected);
+    }
+
+}
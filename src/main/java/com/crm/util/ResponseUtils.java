@@ -50,6 +50,22 @@ public class ResponseUtils {
         return new ResponseEntity<>(response, HttpStatus.OK);
     }
 
+    /**
+     * 202响应（已接收，处理结果未确定）
+     * @param message 响应消息
+     * @param data 响应数据
+     * @return 202响应实体
+     */
+    public static ResponseEntity<Map<String, Object>> accepted(String message, Object data) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("code", 202);
+        response.put("message", message);
+        if (data != null) {
+            response.put("data", data);
+        }
+        return new ResponseEntity<>(response, HttpStatus.ACCEPTED);
+    }
+
     /**
      * 错误响应
      * @param code 错误码
@@ -71,9 +87,15 @@ public class ResponseUtils {
             case 404:
                 status = HttpStatus.NOT_FOUND;
                 break;
+            case 409:
+                status = HttpStatus.CONFLICT;
+                break;
             case 500:
                 status = HttpStatus.INTERNAL_SERVER_ERROR;
                 break;
+            case 503:
+                status = HttpStatus.SERVICE_UNAVAILABLE;
+                break;
             default:
                 status = HttpStatus.BAD_REQUEST;
         }
@@ -116,6 +138,20 @@ public class ResponseUtils {
         return error(403, message);
     }
 
+    /**
+     * 409错误响应（数据冲突）
+     * @param message 错误消息
+     * @param data 冲突相关数据（可为null）
+     * @return 409错误响应实体
+     */
+    public static ResponseEntity<Map<String, Object>> conflict(String message, Object data) {
+        ResponseEntity<Map<String, Object>> response = error(409, message);
+        if (data != null) {
+            response.getBody().put("data", data);
+        }
+        return response;
+    }
+
     /**
      * 500错误响应（服务器错误）
      * @param message 错误消息
@@ -125,4 +161,28 @@ public class ResponseUtils {
         return error(500, message);
     }
 
+    /**
+     * 503错误响应（服务繁忙）
+     * @param message 错误消息
+     * @return 503错误响应实体
+     */
+    public static ResponseEntity<Map<String, Object>> serviceUnavailable(String message) {
+        return error(503, message);
+    }
+
+    /**
+     * 429错误响应（请求过于频繁）
+     * @param message 错误消息
+     * @param retryAfterMs 建议的重试等待毫秒数，写入Retry-After响应头（秒，向上取整）
+     * @return 429错误响应实体
+     */
+    public static ResponseEntity<Map<String, Object>> tooManyRequests(String message, long retryAfterMs) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("code", 429);
+        response.put("message", message);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header("Retry-After", String.valueOf((retryAfterMs + 999) / 1000))
+                .body(response);
+    }
+
 }
@@ -6,7 +6,9 @@ import com.crm.model.User;
 import com.crm.repository.CustomerRepository;
 import com.crm.repository.FollowupRepository;
 import com.crm.repository.UserRepository;
+import com.crm.service.ShardService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 
@@ -30,6 +32,12 @@ public class TestDataGenerator implements CommandLineRunner {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ShardService shardService;
+
+    @Value("${crm.test-data.generate-on-startup:true}")
+    private boolean generateOnStartup;  // 启动时是否自动生成测试数据（空库时）
+
     private final Random random = new Random();
     private final String[] customerSources = {"网站", "电话", "微信", "朋友介绍", "展会"};
     private final String[] followMethods = {"电话", "微信", "面谈"};
@@ -53,14 +61,18 @@ public class TestDataGenerator implements CommandLineRunner {
      * 生成测试数据
      */
     public void generateTestData() {
-        // 确保有管理员用户
+        // 确保有管理员用户，启用分片时同步到各分片（客户和跟进记录的外键引用用户表）
         ensureAdminUser();
-        
-        // 生成客户数据
-        generateCustomers();
-        
-        // 生成跟进记录数据
-        generateFollowups();
+        shardService.syncUsers();
+
+        // 启用分片时在每个分片上各生成一组客户和跟进记录
+        shardService.forEachShard(shard -> {
+            // 生成客户数据
+            generateCustomers();
+
+            // 生成跟进记录数据
+            generateFollowups();
+        });
         
         System.out.println("测试数据生成完成！");
     }
@@ -163,6 +175,9 @@ public class TestDataGenerator implements CommandLineRunner {
      */
     @Override
     public void run(String... args) {
+        if (!generateOnStartup) {
+            return;
+        }
         System.out.println("开始生成测试数据...");
         generateTestData();
         System.out.println("测试数据生成完成！");
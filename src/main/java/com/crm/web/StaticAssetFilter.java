@@ -0,0 +1,77 @@
+package com.crm.web;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 静态资源过滤器，返回StaticAssetRegistry处理好的资源
+ * 指纹路径：Cache-Control: public, max-age=一年, immutable，浏览器在有效期内不再发请求；
+ * HTML和原始路径：Cache-Control: no-cache，每次用ETag重新验证，内容未变时返回304不带正文；
+ * 客户端支持gzip时直接返回预压缩版本，两种版本均带Vary: Accept-Encoding，缓存服务器按编码分别缓存
+ */
+@Component
+public class StaticAssetFilter extends OncePerRequestFilter {
+
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String REVALIDATE = "no-cache";
+
+    @Autowired
+    private StaticAssetRegistry staticAssetRegistry;
+
+    @Value("${crm.assets.enabled:true}")
+    private boolean enabled;  // 是否启用静态资源处理，关闭时由Spring默认的静态资源处理返回
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        return !enabled || !("GET".equals(method) || "HEAD".equals(method)) || request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        StaticAssetRegistry.Asset asset = staticAssetRegistry.find("/".equals(path) ? "/index.html" : path);
+        if (asset == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean useGzip = asset.getGzip() != null && acceptEncoding != null && acceptEncoding.contains("gzip");
+        // 同一资源的两种编码是不同的表示，使用不同的ETag
+        String etag = "\"" + asset.getEtag() + (useGzip ? "-gz" : "") + "\"";
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, asset.isImmutable() ? IMMUTABLE : REVALIDATE);
+        response.setHeader(HttpHeaders.ETAG, etag);
+        if (asset.getGzip() != null) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] body = useGzip ? asset.getGzip() : asset.getContent();
+        response.setContentType(asset.getContentType());
+        if (useGzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        response.setContentLength(body.length);
+        if (!"HEAD".equals(request.getMethod())) {
+            response.getOutputStream().write(body);
+        }
+    }
+
+}
@@ -0,0 +1,203 @@
+package com.crm.web;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 静态资源处理流水线（启动时执行一次）
+ * 1. 指纹：CSS、JS等资源按内容哈希生成带指纹的路径（css/style.css -> css/style.1a2b3c4d5e.css），
+ *    HTML中对这些资源的引用改写为指纹路径，资源内容变化时URL随之变化，浏览器可以永久缓存
+ * 2. 预压缩：文本类资源以最高压缩级别预先生成gzip版本，请求时直接返回，不再逐个请求压缩
+ * 3. 所有版本保存在内存中（站点静态资源不足100KB），由StaticAssetFilter按路径返回
+ */
+@Component
+public class StaticAssetRegistry {
+
+    private static final String LOCATION = "classpath:static/";
+    private static final int HASH_LENGTH = 10;  // 指纹长度（十六进制字符）
+    private static final String[] COMPRESSIBLE_TYPES = {"text/", "application/javascript", "application/json", "image/svg+xml"};
+
+    @Value("${crm.assets.min-gzip-bytes:256}")
+    private int minGzipBytes;  // 小于该大小的资源不生成gzip版本
+
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();  // 请求路径 -> 资源
+
+    /**
+     * 一个处理后的资源
+     */
+    public static class Asset {
+        private final byte[] content;
+        private final byte[] gzip;  // 不值得压缩时为null
+        private final String contentType;
+        private final String etag;  // 内容哈希
+        private final boolean immutable;  // 是否为指纹路径（内容永不变化）
+
+        Asset(byte[] content, byte[] gzip, String contentType, String etag, boolean immutable) {
+            this.content = content;
+            this.gzip = gzip;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.immutable = immutable;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        public byte[] getGzip() {
+            return gzip;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public boolean isImmutable() {
+            return immutable;
+        }
+    }
+
+    /**
+     * 扫描并处理static目录下的资源：先处理非HTML资源得到指纹路径，再改写HTML中的引用
+     */
+    @PostConstruct
+    public void build() throws IOException {
+        long start = System.currentTimeMillis();
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        Resource root = resolver.getResource(LOCATION);
+        String rootUrl = root.getURL().toString();
+
+        Map<String, byte[]> pages = new HashMap<>();
+        Map<String, String> fingerprinted = new HashMap<>();  // 原路径 -> 指纹路径
+        for (Resource resource : resolver.getResources(LOCATION + "**/*.*")) {
+            String path = resource.getURL().toString().substring(rootUrl.length());
+            byte[] content;
+            try (InputStream in = resource.getInputStream()) {
+                content = StreamUtils.copyToByteArray(in);
+            }
+            if (path.endsWith(".html")) {
+                pages.put(path, content);
+                continue;
+            }
+            String hash = hash(content);
+            String versioned = insertHash(path, hash.substring(0, HASH_LENGTH));
+            fingerprinted.put(path, versioned);
+            assets.put("/" + versioned, process(path, content, hash, true));
+            assets.put("/" + path, process(path, content, hash, false));
+        }
+
+        List<String> rewrites = new ArrayList<>();
+        for (Map.Entry<String, byte[]> page : pages.entrySet()) {
+            String html = new String(page.getValue(), StandardCharsets.UTF_8);
+            for (Map.Entry<String, String> entry : fingerprinted.entrySet()) {
+                String rewritten = html.replace("\"" + entry.getKey() + "\"", "\"" + entry.getValue() + "\"")
+                        .replace("\"/" + entry.getKey() + "\"", "\"/" + entry.getValue() + "\"");
+                if (!rewritten.equals(html)) {
+                    rewrites.add(page.getKey() + " -> " + entry.getValue());
+                    html = rewritten;
+                }
+            }
+            byte[] content = html.getBytes(StandardCharsets.UTF_8);
+            assets.put("/" + page.getKey(), process(page.getKey(), content, hash(content), false));
+        }
+        System.out.println("静态资源处理完成：" + fingerprinted.size() + "个资源生成指纹，" + pages.size()
+                + "个页面改写引用" + rewrites.size() + "处，用时" + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * 按请求路径查找资源
+     * @param path 请求路径（以/开头）
+     * @return 资源，不存在时返回null
+     */
+    public Asset find(String path) {
+        return assets.get(path);
+    }
+
+    private Asset process(String path, byte[] content, String hash, boolean immutable) throws IOException {
+        String contentType = URLConnection.guessContentTypeFromName(path);
+        if (path.endsWith(".css")) {
+            contentType = "text/css";
+        } else if (path.endsWith(".js")) {
+            contentType = "application/javascript";
+        } else if (contentType == null) {
+            contentType = "application/octet-stream";
+        }
+        byte[] gzip = null;
+        if (content.length >= minGzipBytes && isCompressible(contentType)) {
+            gzip = gzip(content);
+            if (gzip.length >= content.length) {
+                gzip = null;
+            }
+        }
+        if (contentType.startsWith("text/") || contentType.equals("application/javascript")) {
+            contentType += ";charset=UTF-8";
+        }
+        return new Asset(content, gzip, contentType, hash, immutable);
+    }
+
+    private static boolean isCompressible(String contentType) {
+        for (String type : COMPRESSIBLE_TYPES) {
+            if (contentType.startsWith(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 3);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 在扩展名前插入指纹：css/style.css -> css/style.{hash}.css
+     */
+    private static String insertHash(String path, String hash) {
+        int dot = path.lastIndexOf('.');
+        return path.substring(0, dot) + "." + hash + path.substring(dot);
+    }
+
+}
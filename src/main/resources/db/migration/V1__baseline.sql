@@ -0,0 +1,145 @@
+-- V1 基线：生产启动模式（prod配置）下由SchemaMigrator执行一次，记录到schema_migrations表
+-- 与crm_database.sql的建表部分一致；全部使用IF NOT EXISTS / INSERT IGNORE，已建好的库执行后不变
+-- 旧版本的库缺少的列和索引由V7补齐；来源、跟进方式旧字符串列的编码由应用启动后在后台回填（见LookupService）
+
+-- 1. 用户表（users）
+-- 存储系统用户信息，包含管理员和普通用户
+CREATE TABLE IF NOT EXISTS users (
+    id INT AUTO_INCREMENT PRIMARY KEY COMMENT '用户ID，自增主键',
+    username VARCHAR(50) NOT NULL UNIQUE COMMENT '用户名，唯一标识',
+    password VARCHAR(100) NOT NULL COMMENT '密码，哈希加密存储',
+    nickname VARCHAR(50) NOT NULL COMMENT '用户昵称',
+    role VARCHAR(20) DEFAULT 'user' COMMENT '用户角色，如admin、user',
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    -- 索引优化：用户名是登录时的查询条件，添加索引提高查询速度
+    INDEX idx_username (username)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='用户表';
+
+-- 2. 编码表（customer_sources、followup_methods）
+-- 客户来源和跟进方式取值不多，业务表中只存SMALLINT编码，名称由应用缓存并转换
+CREATE TABLE IF NOT EXISTS customer_sources (
+    id SMALLINT AUTO_INCREMENT PRIMARY KEY COMMENT '来源编码，自增主键',
+    label VARCHAR(50) NOT NULL UNIQUE COMMENT '来源名称'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='客户来源编码表';
+
+CREATE TABLE IF NOT EXISTS followup_methods (
+    id SMALLINT AUTO_INCREMENT PRIMARY KEY COMMENT '跟进方式编码，自增主键',
+    label VARCHAR(20) NOT NULL UNIQUE COMMENT '跟进方式名称'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='跟进方式编码表';
+
+INSERT IGNORE INTO customer_sources (label) VALUES ('网络'), ('推荐'), ('线下'), ('其他');
+INSERT IGNORE INTO followup_methods (label) VALUES ('电话'), ('微信'), ('面谈');
+
+-- 3. 客户表（customers）
+-- 存储客户基本信息，是CRM系统的核心表
+CREATE TABLE IF NOT EXISTS customers (
+    id INT AUTO_INCREMENT PRIMARY KEY COMMENT '客户ID，自增主键',
+    name VARCHAR(50) NOT NULL COMMENT '客户姓名',
+    phone VARCHAR(20) NOT NULL COMMENT '手机号',
+    email VARCHAR(100) COMMENT '邮箱',
+    company VARCHAR(100) COMMENT '公司名称',
+    position VARCHAR(50) COMMENT '职位',
+    source_id SMALLINT COMMENT '客户来源编码，关联customer_sources表',
+    notes TEXT COMMENT '备注信息',
+    created_by INT COMMENT '创建人ID，关联users表',
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    version INT NOT NULL DEFAULT 0 COMMENT '版本号，乐观锁',
+    deleted TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否已删除（软删除）',
+    deleted_at DATETIME COMMENT '删除时间',
+    -- 外键约束：关联创建人
+    FOREIGN KEY (created_by) REFERENCES users(id) ON DELETE SET NULL,
+    -- 索引优化：
+    -- 1. 姓名、手机号是常用查询条件，添加索引提高查询速度（精确和前缀匹配可用索引）
+    -- 2. 来源、创建人与创建时间组合索引，筛选后可直接按创建时间倒序分页
+    INDEX idx_name_phone (name, phone),
+    INDEX idx_phone (phone),
+    INDEX idx_company (company),
+    INDEX idx_source_id_created_at (source_id, created_at),
+    INDEX idx_created_by_created_at (created_by, created_at),
+    INDEX idx_created_at (created_at),
+    INDEX idx_deleted_at (deleted_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='客户表';
+
+-- 4. 跟进记录表（followups）
+-- 存储客户跟进的详细记录
+CREATE TABLE IF NOT EXISTS followups (
+    id INT AUTO_INCREMENT PRIMARY KEY COMMENT '跟进记录ID，自增主键',
+    customer_id INT NOT NULL COMMENT '客户ID，关联customers表',
+    user_id INT NOT NULL COMMENT '跟进人ID，关联users表',
+    follow_time DATETIME NOT NULL COMMENT '跟进时间',
+    method_id SMALLINT NOT NULL DEFAULT 0 COMMENT '跟进方式编码，关联followup_methods表',
+    content TEXT NOT NULL COMMENT '跟进内容',
+    next_follow_reminder DATETIME COMMENT '下次跟进提醒时间',
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    deleted TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否已删除（软删除）',
+    deleted_at DATETIME COMMENT '删除时间',
+    -- 外键约束：关联客户和跟进人
+    FOREIGN KEY (customer_id) REFERENCES customers(id) ON DELETE CASCADE,
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+    -- 索引优化：
+    -- 1. 客户ID是最常用的查询条件，添加索引提高查询速度
+    -- 2. 跟进时间用于排序和筛选，添加索引
+    INDEX idx_customer_id (customer_id),
+    INDEX idx_follow_time (follow_time),
+    INDEX idx_user_id (user_id),
+    INDEX idx_deleted_at (deleted_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='跟进记录表';
+
+-- 5. 跟进记录归档表（followups_archive）
+-- 跟进时间早于归档期限的记录由应用定时从followups表搬迁过来（ID不变），followups表只保留活跃数据
+-- 说明：InnoDB分区表不支持外键，因此采用应用管理的活跃表/归档表拆分代替按月RANGE分区
+CREATE TABLE IF NOT EXISTS followups_archive (
+    id INT PRIMARY KEY COMMENT '跟进记录ID，沿用followups表中的ID',
+    customer_id INT NOT NULL COMMENT '客户ID',
+    user_id INT NOT NULL COMMENT '跟进人ID',
+    follow_time DATETIME NOT NULL COMMENT '跟进时间',
+    method_id SMALLINT NOT NULL DEFAULT 0 COMMENT '跟进方式编码，关联followup_methods表',
+    content TEXT NOT NULL COMMENT '跟进内容',
+    next_follow_reminder DATETIME COMMENT '下次跟进提醒时间',
+    created_at DATETIME NOT NULL COMMENT '创建时间',
+    updated_at DATETIME NOT NULL COMMENT '更新时间',
+    -- 索引优化：按客户查询并按跟进时间排序，按跟进时间范围统计
+    INDEX idx_customer_id_follow_time (customer_id, follow_time),
+    INDEX idx_follow_time (follow_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='跟进记录归档表';
+
+-- 6. 转化漏斗统计结果表（funnel_statistics）
+-- 由应用定时单次遍历客户和跟进记录计算，按来源和创建人两个维度保存各指标的分布
+CREATE TABLE IF NOT EXISTS funnel_statistics (
+    id INT AUTO_INCREMENT PRIMARY KEY COMMENT '统计结果ID，自增主键',
+    dimension VARCHAR(20) NOT NULL COMMENT '统计维度：source、user',
+    dimension_value VARCHAR(50) NOT NULL COMMENT '维度取值：客户来源或创建人ID',
+    label VARCHAR(50) COMMENT '显示名称：客户来源或创建人昵称',
+    metric VARCHAR(40) NOT NULL COMMENT '指标：first_followup_hours、followups_to_reminder',
+    customer_count BIGINT NOT NULL COMMENT '该维度下的客户数量',
+    sample_count BIGINT NOT NULL COMMENT '有该指标样本的客户数量',
+    avg_value DOUBLE NOT NULL COMMENT '平均值',
+    p50 DOUBLE NOT NULL COMMENT '中位数',
+    p90 DOUBLE NOT NULL COMMENT '90分位数',
+    p99 DOUBLE NOT NULL COMMENT '99分位数',
+    max_value DOUBLE NOT NULL COMMENT '最大值',
+    computed_at DATETIME NOT NULL COMMENT '计算时间',
+    INDEX idx_dimension_metric (dimension, metric)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='转化漏斗统计结果表';
+
+-- 7. 预写日志检查点表（wal_checkpoints）
+-- 写后入库模式下记录已写入数据库的最大预写日志序号，与批量插入在同一事务中更新
+CREATE TABLE IF NOT EXISTS wal_checkpoints (
+    name VARCHAR(50) PRIMARY KEY COMMENT '预写日志名称',
+    last_seq BIGINT NOT NULL COMMENT '已写入数据库的最大序号',
+    updated_at DATETIME NOT NULL COMMENT '更新时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='预写日志检查点表';
+
+-- 8. 变更日志表（change_outbox）
+-- 每次写操作在同一事务中记录一行，事件总线的订阅者落后或重建时按ID重放
+CREATE TABLE IF NOT EXISTS change_outbox (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '变更日志ID',
+    entity_type VARCHAR(20) NOT NULL COMMENT '实体类型：CUSTOMER、FOLLOWUP、USER',
+    action VARCHAR(10) NOT NULL COMMENT '变更类型：CREATE、UPDATE、DELETE',
+    entity_id INT NOT NULL COMMENT '实体ID',
+    created_at DATETIME NOT NULL COMMENT '写入时间',
+    INDEX idx_created_at (created_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='变更日志表';
@@ -0,0 +1,10 @@
+-- V2 ID号段表：客户和跟进记录的ID改由应用按号段分配（不再依赖自增主键），支持水平分片
+-- 只使用全局分片（spring.datasource）上的这张表；序列行在首次分配时按已有数据的最大ID自动插入
+
+-- 9. ID号段表（id_blocks）
+-- 每个序列一行，应用每次把next_value推进一个号段，在内存中发放号段内的序号
+CREATE TABLE IF NOT EXISTS id_blocks (
+    name VARCHAR(50) PRIMARY KEY COMMENT '序列名：customers、followups',
+    next_value BIGINT NOT NULL COMMENT '下一个未分配的序号',
+    updated_at DATETIME NOT NULL COMMENT '更新时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='ID号段表';
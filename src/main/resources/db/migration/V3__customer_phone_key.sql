@@ -0,0 +1,12 @@
+-- V3 客户手机号打包键：规范化后的手机号打包为BIGINT（ContactUtils.packPhone），来电查号按等值查询走索引
+-- MySQL 5.7不支持ADD COLUMN IF NOT EXISTS，先查information_schema，已有该列（默认配置启动时由Hibernate建好）则跳过
+-- 已有数据的phone_key由应用启动后加载来电查号索引时回填
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE customers ADD COLUMN phone_key BIGINT COMMENT ''规范化手机号打包键'' AFTER phone, ADD INDEX idx_phone_key (phone_key)',
+    'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'customers' AND column_name = 'phone_key');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,11 @@
+-- V4 归档跟进记录软删除：删除客户时归档记录与活跃表一样先软删除，由PurgeService分批物理删除
+-- MySQL 5.7不支持ADD COLUMN IF NOT EXISTS，先查information_schema，已有该列（默认配置启动时由Hibernate建好）则跳过
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE followups_archive ADD COLUMN deleted TINYINT(1) NOT NULL DEFAULT 0 COMMENT ''是否已删除（软删除）'', ADD COLUMN deleted_at DATETIME COMMENT ''删除时间'', ADD INDEX idx_deleted_at (deleted_at)',
+    'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'followups_archive' AND column_name = 'deleted');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,21 @@
+-- V5 旧版本的跟进方式字符串列（NOT NULL、无默认值）设置默认值，新版本只写编码列时插入不会失败
+-- 只修改表定义（MySQL 5.7中SET DEFAULT不重建表），旧列的回填和删除由管理员在业务低峰期通过
+-- POST /api/admin/lookups/migrate 在后台分批执行；旧列不存在（新库或已迁移）时跳过
+
+SET @ddl = (SELECT IF(COUNT(*) > 0,
+    'ALTER TABLE followups ALTER COLUMN follow_method SET DEFAULT ''''',
+    'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'followups' AND column_name = 'follow_method');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) > 0,
+    'ALTER TABLE followups_archive ALTER COLUMN follow_method SET DEFAULT ''''',
+    'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'followups_archive' AND column_name = 'follow_method');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,11 @@
+-- V6 变更日志增加写入实例标识：多实例部署时各实例读取其他实例写入的变更日志，据此跳过自己写入的行
+-- 已有该列（默认配置启动时由Hibernate建好）则跳过
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE change_outbox ADD COLUMN origin VARCHAR(36) COMMENT ''写入实例标识'' AFTER entity_id',
+    'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'change_outbox' AND column_name = 'origin');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,148 @@
+-- V7 补齐旧版本数据库缺少的列和索引：V1只用CREATE TABLE IF NOT EXISTS，已有的表不会被修改
+-- 包括乐观锁版本号、客户和跟进记录的软删除标记、来源和跟进方式编码列以及客户筛选组合索引；
+-- 每一步先查information_schema，已存在（新库或默认配置启动时由Hibernate建好）则跳过。
+-- 编码列加好后由LookupService在应用启动后按ID从新到旧分批回填，回填完成前编码为空的行从旧列读取
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE customers ADD COLUMN version INT NOT NULL DEFAULT 0 COMMENT ''版本号，乐观锁''',
+    'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'customers' AND column_name = 'version');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE customers ADD COLUMN deleted TINYINT(1) NOT NULL DEFAULT 0 COMMENT ''是否已删除（软删除）''',
+    'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'customers' AND column_name = 'deleted');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE customers ADD COLUMN deleted_at DATETIME COMMENT ''删除时间''',
+    'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'customers' AND column_name = 'deleted_at');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE customers ADD COLUMN source_id SMALLINT COMMENT ''客户来源编码，关联customer_sources表''',
+    'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'customers' AND column_name = 'source_id');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE customers ADD INDEX idx_phone (phone)',
+    'DO 0')
+    FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'customers' AND index_name = 'idx_phone');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE customers ADD INDEX idx_company (company)',
+    'DO 0')
+    FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'customers' AND index_name = 'idx_company');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE customers ADD INDEX idx_source_id_created_at (source_id, created_at)',
+    'DO 0')
+    FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'customers' AND index_name = 'idx_source_id_created_at');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE customers ADD INDEX idx_created_by_created_at (created_by, created_at)',
+    'DO 0')
+    FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'customers' AND index_name = 'idx_created_by_created_at');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE customers ADD INDEX idx_created_at (created_at)',
+    'DO 0')
+    FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'customers' AND index_name = 'idx_created_at');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE customers ADD INDEX idx_deleted_at (deleted_at)',
+    'DO 0')
+    FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'customers' AND index_name = 'idx_deleted_at');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE followups ADD COLUMN deleted TINYINT(1) NOT NULL DEFAULT 0 COMMENT ''是否已删除（软删除）''',
+    'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'followups' AND column_name = 'deleted');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE followups ADD COLUMN deleted_at DATETIME COMMENT ''删除时间''',
+    'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'followups' AND column_name = 'deleted_at');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE followups ADD COLUMN method_id SMALLINT NOT NULL DEFAULT 0 COMMENT ''跟进方式编码，关联followup_methods表''',
+    'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'followups' AND column_name = 'method_id');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE followups ADD INDEX idx_deleted_at (deleted_at)',
+    'DO 0')
+    FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'followups' AND index_name = 'idx_deleted_at');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE followups_archive ADD COLUMN method_id SMALLINT NOT NULL DEFAULT 0 COMMENT ''跟进方式编码，关联followup_methods表''',
+    'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'followups_archive' AND column_name = 'method_id');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE followups_archive ADD INDEX idx_customer_id_follow_time (customer_id, follow_time)',
+    'DO 0')
+    FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'followups_archive' AND index_name = 'idx_customer_id_follow_time');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,859 @@
+// 全局变量
+let currentPage = 1;
+let currentModule = 'customer-module';
+let customers = [];
+
+// 页面加载完成后执行
+document.addEventListener('DOMContentLoaded', function() {
+    try {
+        // 检查登录状态
+        checkLoginStatus();
+        // 加载用户信息
+        loadUserInfo();
+        // 加载客户列表
+        loadCustomers();
+        // 绑定事件
+        bindEvents();
+    } catch (error) {
+        console.error('页面初始化错误:', error);
+        alert('页面初始化失败: ' + error.message);
+    }
+});
+
+// 检查登录状态
+function checkLoginStatus() {
+    try {
+        const userInfo = localStorage.getItem('userInfo');
+        if (!userInfo) {
+            // 未登录，跳转到登录页
+            window.location.href = 'login.html';
+        }
+    } catch (error) {
+        console.error('检查登录状态错误:', error);
+        // 出错时跳转到登录页
+        window.location.href = 'login.html';
+    }
+}
+
+// 加载用户信息
+function loadUserInfo() {
+    const userInfoStr = localStorage.getItem('userInfo');
+    if (userInfoStr) {
+        try {
+            const userInfo = JSON.parse(userInfoStr);
+            if (userInfo) {
+                document.getElementById('userNickname').textContent = userInfo.nickname || '未知用户';
+
+                // 加载个人信息模块
+                document.getElementById('userUsername').value = userInfo.username || '';
+                document.getElementById('userNicknameInput').value = userInfo.nickname || '';
+                document.getElementById('userRole').value = userInfo.role || '';
+            }
+        } catch (error) {
+            console.error('解析用户信息失败:', error);
+        }
+    }
+}
+
+// 加载客户列表
+function loadCustomers(page = 1) {
+    try {
+        currentPage = page;
+
+        const name = document.getElementById('filterName').value;
+        const phone = document.getElementById('filterPhone').value;
+        const source = document.getElementById('filterSource').value;
+
+        console.log('加载客户列表:', { page, name, phone, source });
+
+        fetch(`http://localhost:8080/api/customers?page=${page}&limit=10&name=${name}&phone=${phone}&source=${source}`)
+            .then(response => {
+                console.log('响应状态:', response.status);
+                return response.json();
+            })
+            .then(data => {
+                console.log('响应数据:', data);
+                if (data.code === 200) {
+                    renderCustomerTable(data.data);
+                    renderCustomerPagination(data.page, data.total, data.limit);
+                    // 存储客户数据用于跟进记录选择
+                    customers = data.data;
+                    loadCustomerOptions();
+                } else {
+                    alert(data.message);
+                }
+            })
+            .catch(error => {
+                console.error('加载客户失败:', error);
+                alert('加载客户失败，请检查网络连接');
+            });
+    } catch (error) {
+        console.error('loadCustomers错误:', error);
+        alert('加载客户列表失败: ' + error.message);
+    }
+}
+
+// 渲染客户表格
+function renderCustomerTable(data) {
+    const tbody = document.getElementById('customerTable').querySelector('tbody');
+    if (data.length === 0) {
+        tbody.innerHTML = '<tr><td colspan="9" style="text-align: center;">暂无客户数据</td></tr>';
+        return;
+    }
+
+    let html = '';
+    data.forEach(customer => {
+        html += `
+            <tr>
+                <td>${customer.id}</td>
+                <td>${customer.name}</td>
+                <td>${customer.phone}</td>
+                <td>${customer.email || '-'}</td>
+                <td>${customer.company || '-'}</td>
+                <td>${customer.position || '-'}</td>
+                <td>${customer.source || '-'}</td>
+                <td>${customer.created_at}</td>
+                <td>
+                    <button class="btn btn-secondary" onclick="editCustomer(${customer.id})">编辑</button>
+                    <button class="btn btn-danger" onclick="deleteCustomer(${customer.id})">删除</button>
+                    <button class="btn btn-success" onclick="viewFollowups(${customer.id})">跟进记录</button>
+                </td>
+            </tr>
+        `;
+    });
+    tbody.innerHTML = html;
+}
+
+// 渲染客户分页
+function renderCustomerPagination(page, total, limit) {
+    const pagination = document.getElementById('customerPagination');
+    const totalPages = Math.ceil(total / limit);
+
+    let html = '';
+    if (totalPages > 1) {
+        // 上一页
+        html += `<li class="page-item ${page === 1 ? 'disabled' : ''}">
+            <a class="page-link" onclick="loadCustomers(${page - 1})" ${page === 1 ? 'style="cursor: not-allowed;"' : ''}>上一页</a>
+        </li>`;
+
+        // 页码
+        for (let i = 1; i <= totalPages; i++) {
+            html += `<li class="page-item ${i === page ? 'active' : ''}">
+                <a class="page-link" onclick="loadCustomers(${i})">${i}</a>
+            </li>`;
+        }
+
+        // 下一页
+        html += `<li class="page-item ${page === totalPages ? 'disabled' : ''}">
+            <a class="page-link" onclick="loadCustomers(${page + 1})" ${page === totalPages ? 'style="cursor: not-allowed;"' : ''}>下一页</a>
+        </li>`;
+    }
+
+    pagination.innerHTML = html;
+}
+
+// 加载客户选项（用于跟进记录选择）
+function loadCustomerOptions() {
+    const customerSelects = [
+        document.getElementById('filterCustomer'),
+        document.getElementById('followupCustomer')
+    ];
+
+    customerSelects.forEach(select => {
+        if (select) {
+            let html = select.id === 'filterCustomer' ? '<option value="">全部客户</option>' : '<option value="">请选择客户</option>';
+            customers.forEach(customer => {
+                html += `<option value="${customer.id}">${customer.name} (${customer.phone})</option>`;
+            });
+            select.innerHTML = html;
+        }
+    });
+}
+
+// 加载跟进记录
+function loadFollowups(page = 1) {
+    const customerId = document.getElementById('filterCustomer').value;
+
+    fetch(`http://localhost:8080/api/followups?page=${page}&limit=10&customer_id=${customerId}`)
+        .then(response => response.json())
+        .then(data => {
+            if (data.code === 200) {
+                renderFollowupTable(data.data);
+                renderFollowupPagination(data.page, data.total, data.limit);
+            } else {
+                alert(data.message);
+            }
+        })
+        .catch(error => {
+            console.error('加载跟进记录失败:', error);
+            alert('加载跟进记录失败，请检查网络连接');
+        });
+}
+
+// 渲染跟进记录表格
+function renderFollowupTable(data) {
+    const tbody = document.getElementById('followupTable').querySelector('tbody');
+    if (data.length === 0) {
+        tbody.innerHTML = '<tr><td colspan="7" style="text-align: center;">暂无跟进记录</td></tr>';
+        return;
+    }
+
+    let html = '';
+    data.forEach(followup => {
+        // 查找客户名称
+        const customer = customers.find(c => c.id === followup.customer_id);
+        const customerName = customer ? customer.name : '未知客户';
+
+        html += `
+            <tr>
+                <td>${followup.id}</td>
+                <td>${customerName}</td>
+                <td>${followup.follow_time}</td>
+                <td>${followup.follow_method}</td>
+                <td>${followup.content.substring(0, 50)}${followup.content.length > 50 ? '...' : ''}</td>
+                <td>${followup.next_follow_reminder || '-'}</td>
+                <td>
+                    <button class="btn btn-danger" onclick="deleteFollowup(${followup.id})">删除</button>
+                </td>
+            </tr>
+        `;
+    });
+    tbody.innerHTML = html;
+}
+
+// 渲染跟进记录分页
+function renderFollowupPagination(page, total, limit) {
+    const pagination = document.getElementById('followupPagination');
+    const totalPages = Math.ceil(total / limit);
+
+    let html = '';
+    if (totalPages > 1) {
+        // 上一页
+        html += `<li class="page-item ${page === 1 ? 'disabled' : ''}">
+            <a class="page-link" onclick="loadFollowups(${page - 1})" ${page === 1 ? 'style="cursor: not-allowed;"' : ''}>上一页</a>
+        </li>`;
+
+        // 页码
+        for (let i = 1; i <= totalPages; i++) {
+            html += `<li class="page-item ${i === page ? 'active' : ''}">
+                <a class="page-link" onclick="loadFollowups(${i})">${i}</a>
+            </li>`;
+        }
+
+        // 下一页
+        html += `<li class="page-item ${page === totalPages ? 'disabled' : ''}">
+            <a class="page-link" onclick="loadFollowups(${page + 1})" ${page === totalPages ? 'style="cursor: not-allowed;"' : ''}>下一页</a>
+        </li>`;
+    }
+
+    pagination.innerHTML = html;
+}
+
+// 绑定事件
+function bindEvents() {
+    // 菜单切换
+    document.querySelectorAll('.menu-item').forEach(item => {
+        item.addEventListener('click', function() {
+            const target = this.dataset.target;
+
+            // 切换菜单激活状态
+            document.querySelectorAll('.menu-item').forEach(menuItem => {
+                menuItem.classList.remove('active');
+            });
+            this.classList.add('active');
+
+            // 切换模块显示
+            document.querySelectorAll('.module-content').forEach(module => {
+                module.classList.add('hidden');
+            });
+            document.getElementById(target).classList.remove('hidden');
+
+            currentModule = target;
+
+            // 加载对应模块数据
+            if (target === 'followup-module') {
+                loadFollowups();
+            } else if (target === 'statistics-module') {
+                loadStatistics();
+                subscribeStatistics();
+            }
+        });
+    });
+
+    // 刷新统计数据
+    document.getElementById('refreshStatisticsBtn').addEventListener('click', function() {
+        loadStatistics();
+    });
+
+    // 统计天数变化
+    document.getElementById('statisticsDays').addEventListener('change', function() {
+        loadStatistics();
+    });
+
+    // 退出登录
+    document.getElementById('logoutBtn').addEventListener('click', function() {
+        fetch('http://localhost:8080/api/logout', {
+        method: 'POST'
+    })
+        .then(() => {
+            // 清除本地存储
+            localStorage.removeItem('userInfo');
+            // 跳转到登录页
+            window.location.href = 'login.html';
+        });
+    });
+
+    // 添加客户按钮
+    document.getElementById('addCustomerBtn').addEventListener('click', function() {
+        document.getElementById('customerModalTitle').textContent = '添加客户';
+        document.getElementById('customerForm').reset();
+        document.getElementById('customerId').value = '';
+        document.getElementById('customerModal').classList.remove('hidden');
+    });
+
+    // 关闭客户模态框
+    document.getElementById('closeCustomerModal').addEventListener('click', function() {
+        document.getElementById('customerModal').classList.add('hidden');
+    });
+    document.getElementById('cancelCustomerBtn').addEventListener('click', function() {
+        document.getElementById('customerModal').classList.add('hidden');
+    });
+
+    // 保存客户
+    document.getElementById('saveCustomerBtn').addEventListener('click', function() {
+        const id = document.getElementById('customerId').value;
+        const name = document.getElementById('customerName').value;
+        const phone = document.getElementById('customerPhone').value;
+        const email = document.getElementById('customerEmail').value;
+        const company = document.getElementById('customerCompany').value;
+        const position = document.getElementById('customerPosition').value;
+        const source = document.getElementById('customerSource').value;
+        const notes = document.getElementById('customerNotes').value;
+
+        // 表单验证
+        if (!name || !phone) {
+            alert('姓名和手机号不能为空');
+            return;
+        }
+
+        const url = id ? `http://localhost:8080/api/customers/${id}` : 'http://localhost:8080/api/customers';
+        const method = id ? 'PUT' : 'POST';
+
+        const submitCustomer = function(force) {
+            fetch(url, {
+                method: method,
+                headers: {
+                    'Content-Type': 'application/json'
+                },
+                body: JSON.stringify({ name, phone, email, company, position, source, notes, force })
+            })
+            .then(response => response.json())
+            .then(data => {
+                if (data.code === 200) {
+                    alert('保存成功');
+                    document.getElementById('customerModal').classList.add('hidden');
+                    loadCustomers();
+                } else if (data.code === 409 && !force) {
+                    // 疑似重复客户，确认后强制添加
+                    const names = data.data.map(c => `${c.name}（${c.phone}）`).join('、');
+                    if (confirm(`${data.message}：${names}，是否仍要添加？`)) {
+                        submitCustomer(true);
+                    }
+                } else {
+                    alert(data.message);
+                }
+            })
+            .catch(error => {
+                console.error('保存客户失败:', error);
+                alert('保存客户失败，请检查网络连接');
+            });
+        };
+        submitCustomer(false);
+    });
+
+    // 添加跟进记录按钮
+    document.getElementById('addFollowupBtn').addEventListener('click', function() {
+        document.getElementById('followupForm').reset();
+        document.getElementById('followupModal').classList.remove('hidden');
+    });
+
+    // 关闭跟进记录模态框
+    document.getElementById('closeFollowupModal').addEventListener('click', function() {
+        document.getElementById('followupModal').classList.add('hidden');
+    });
+    document.getElementById('cancelFollowupBtn').addEventListener('click', function() {
+        document.getElementById('followupModal').classList.add('hidden');
+    });
+
+    // 保存跟进记录
+    document.getElementById('saveFollowupBtn').addEventListener('click', function() {
+        const customerId = document.getElementById('followupCustomer').value;
+        const followTime = document.getElementById('followupTime').value;
+        const followMethod = document.getElementById('followupMethod').value;
+        const content = document.getElementById('followupContent').value;
+        const nextFollowReminder = document.getElementById('followupNext').value;
+
+        // 表单验证
+        if (!customerId || !followTime || !followMethod || !content) {
+            alert('客户、跟进时间、跟进方式和内容不能为空');
+            return;
+        }
+
+        fetch('http://localhost:8080/api/followups', {
+            method: 'POST',
+            headers: {
+                'Content-Type': 'application/json'
+            },
+            body: JSON.stringify({ 
+                customer_id: customerId, 
+                follow_time: followTime, 
+                follow_method: followMethod, 
+                content: content, 
+                next_follow_reminder: nextFollowReminder 
+            })
+        })
+        .then(response => response.json())
+        .then(data => {
+            if (data.code === 200) {
+                alert('保存成功');
+                document.getElementById('followupModal').classList.add('hidden');
+                loadFollowups();
+            } else {
+                alert(data.message);
+            }
+        })
+        .catch(error => {
+            console.error('保存跟进记录失败:', error);
+            alert('保存跟进记录失败，请检查网络连接');
+        });
+    });
+
+    // 客户查询
+    document.getElementById('searchCustomerBtn').addEventListener('click', function() {
+        loadCustomers(1);
+    });
+
+    // 导出客户列表为Excel
+    document.getElementById('exportCustomerBtn').addEventListener('click', function() {
+        const name = document.getElementById('filterName').value;
+        const phone = document.getElementById('filterPhone').value;
+        const source = document.getElementById('filterSource').value;
+
+        // 构建导出URL
+        let url = `http://localhost:8080/api/customers/export?`;
+        if (name) url += `name=${encodeURIComponent(name)}&`;
+        if (phone) url += `phone=${encodeURIComponent(phone)}&`;
+        if (source) url += `source=${encodeURIComponent(source)}&`;
+
+        // 移除末尾的&符号
+        url = url.replace(/&$/, '');
+
+        // 创建隐藏的a标签并点击下载
+        const a = document.createElement('a');
+        a.href = url;
+        a.style.display = 'none';
+        document.body.appendChild(a);
+        a.click();
+        document.body.removeChild(a);
+    });
+
+    // 跟进记录查询
+    document.getElementById('searchFollowupBtn').addEventListener('click', function() {
+        loadFollowups(1);
+    });
+
+    // 个人信息保存
+    document.getElementById('userForm').addEventListener('submit', function(e) {
+        e.preventDefault();
+
+        const nickname = document.getElementById('userNicknameInput').value;
+        const password = document.getElementById('userPassword').value;
+
+        fetch('http://localhost:8080/api/user/update', {
+            method: 'POST',
+            headers: {
+                'Content-Type': 'application/json'
+            },
+            body: JSON.stringify({ nickname, password })
+        })
+        .then(response => response.json())
+        .then(data => {
+            if (data.code === 200) {
+                alert('保存成功');
+                // 更新本地存储的用户信息
+                const userInfo = JSON.parse(localStorage.getItem('userInfo'));
+                userInfo.nickname = nickname;
+                localStorage.setItem('userInfo', JSON.stringify(userInfo));
+                // 更新页面显示
+                document.getElementById('userNickname').textContent = nickname;
+            } else {
+                alert(data.message);
+            }
+        })
+        .catch(error => {
+            console.error('保存个人信息失败:', error);
+            alert('保存个人信息失败，请检查网络连接');
+        });
+    });
+}
+
+// 编辑客户
+function editCustomer(id) {
+    fetch(`http://localhost:8080/api/customers/${id}`)
+        .then(response => response.json())
+        .then(data => {
+            if (data.code === 200) {
+                const customer = data.data;
+                document.getElementById('customerModalTitle').textContent = '编辑客户';
+                document.getElementById('customerId').value = customer.id;
+                document.getElementById('customerName').value = customer.name;
+                document.getElementById('customerPhone').value = customer.phone;
+                document.getElementById('customerEmail').value = customer.email || '';
+                document.getElementById('customerCompany').value = customer.company || '';
+                document.getElementById('customerPosition').value = customer.position || '';
+                document.getElementById('customerSource').value = customer.source || '网络';
+                document.getElementById('customerNotes').value = customer.notes || '';
+                document.getElementById('customerModal').classList.remove('hidden');
+            } else {
+                alert(data.message);
+            }
+        })
+        .catch(error => {
+            console.error('获取客户详情失败:', error);
+            alert('获取客户详情失败，请检查网络连接');
+        });
+}
+
+// 删除客户
+function deleteCustomer(id) {
+    if (confirm('确定要删除这个客户吗？删除后相关的跟进记录也会被删除')) {
+        fetch(`http://localhost:8080/api/customers/${id}`, {
+            method: 'DELETE'
+        })
+        .then(response => response.json())
+        .then(data => {
+            if (data.code === 200) {
+                alert('删除成功');
+                loadCustomers();
+            } else {
+                alert(data.message);
+            }
+        })
+        .catch(error => {
+            console.error('删除客户失败:', error);
+            alert('删除客户失败，请检查网络连接');
+        });
+    }
+}
+
+// 查看客户跟进记录
+function viewFollowups(customerId) {
+    // 切换到跟进记录模块
+    document.querySelectorAll('.menu-item').forEach(menuItem => {
+        menuItem.classList.remove('active');
+    });
+    document.querySelector('[data-target="followup-module"]').classList.add('active');
+
+    document.querySelectorAll('.module-content').forEach(module => {
+        module.classList.add('hidden');
+    });
+    document.getElementById('followup-module').classList.remove('hidden');
+
+    // 设置客户筛选
+    document.getElementById('filterCustomer').value = customerId;
+    // 加载跟进记录
+    loadFollowups();
+}
+
+// 删除跟进记录
+function deleteFollowup(id) {
+    if (confirm('确定要删除这条跟进记录吗？')) {
+        fetch(`http://localhost:8080/api/followups/${id}`, {
+            method: 'DELETE'
+        })
+        .then(response => response.json())
+        .then(data => {
+            if (data.code === 200) {
+                alert('删除成功');
+                loadFollowups();
+            } else {
+                alert(data.message);
+            }
+        })
+        .catch(error => {
+            console.error('删除跟进记录失败:', error);
+            alert('删除跟进记录失败，请检查网络连接');
+        });
+    }
+}
+
+// 加载统计数据
+function loadStatistics() {
+    const days = document.getElementById('statisticsDays').value;
+
+    // 加载客户来源分布统计
+    fetch(`http://localhost:8080/api/statistics/customer/source`)
+        .then(response => response.json())
+        .then(data => {
+            if (data.code === 200) {
+                renderCustomerSourceChart(data.data);
+            } else {
+                alert(data.message);
+            }
+        })
+        .catch(error => {
+            console.error('获取客户来源分布统计失败:', error);
+            alert('获取客户来源分布统计失败，请检查网络连接');
+        });
+
+    // 加载跟进方式分布统计
+    fetch(`http://localhost:8080/api/statistics/followup/method`)
+        .then(response => response.json())
+        .then(data => {
+            if (data.code === 200) {
+                renderFollowupMethodChart(data.data);
+            } else {
+                alert(data.message);
+            }
+        })
+        .catch(error => {
+            console.error('获取跟进方式分布统计失败:', error);
+            alert('获取跟进方式分布统计失败，请检查网络连接');
+        });
+
+    // 加载客户数量统计
+    fetch(`http://localhost:8080/api/statistics/customer/count?days=${days}`)
+        .then(response => response.json())
+        .then(data => {
+            if (data.code === 200) {
+                renderCustomerCountChart(data.data);
+            } else {
+                alert(data.message);
+            }
+        })
+        .catch(error => {
+            console.error('获取客户数量统计失败:', error);
+            alert('获取客户数量统计失败，请检查网络连接');
+        });
+
+    // 加载跟进记录数量统计
+    fetch(`http://localhost:8080/api/statistics/followup/count?days=${days}`)
+        .then(response => response.json())
+        .then(data => {
+            if (data.code === 200) {
+                renderFollowupCountChart(data.data);
+            } else {
+                alert(data.message);
+            }
+        })
+        .catch(error => {
+            console.error('获取跟进记录数量统计失败:', error);
+            alert('获取跟进记录数量统计失败，请检查网络连接');
+        });
+}
+
+// 订阅实时统计推送（SSE），客户或跟进记录变更后自动刷新分布图表
+let statisticsSource = null;
+function subscribeStatistics() {
+    if (statisticsSource || typeof EventSource === 'undefined') {
+        return;
+    }
+    statisticsSource = new EventSource('http://localhost:8080/api/statistics/stream');
+    statisticsSource.addEventListener('statistics', function(event) {
+        const snapshot = JSON.parse(event.data);
+        renderCustomerSourceChart(snapshot.customerSource);
+        renderFollowupMethodChart(snapshot.followupMethod);
+    });
+    statisticsSource.onerror = function() {
+        statisticsSource.close();
+        statisticsSource = null;
+    };
+}
+
+// 渲染客户来源分布图表
+function renderCustomerSourceChart(data) {
+    const chart = echarts.init(document.getElementById('customerSourceChart'));
+    const sources = Object.keys(data);
+    const counts = Object.values(data);
+
+    const option = {
+        tooltip: {
+            trigger: 'item',
+            formatter: '{a} <br/>{b}: {c} ({d}%)'
+        },
+        legend: {
+            orient: 'vertical',
+            left: 'left',
+            data: sources
+        },
+        series: [
+            {
+                name: '客户来源',
+                type: 'pie',
+                radius: '50%',
+                data: sources.map((source, index) => ({
+                    value: counts[index],
+                    name: source
+                })),
+                emphasis: {
+                    itemStyle: {
+                        shadowBlur: 10,
+                        shadowOffsetX: 0,
+                        shadowColor: 'rgba(0, 0, 0, 0.5)'
+                    }
+                }
+            }
+        ]
+    };
+
+    chart.setOption(option);
+
+    // 窗口大小变化时，重新调整图表大小
+    window.addEventListener('resize', function() {
+        chart.resize();
+    });
+}
+
+// 渲染跟进方式分布图表
+function renderFollowupMethodChart(data) {
+    const chart = echarts.init(document.getElementById('followupMethodChart'));
+    const methods = Object.keys(data);
+    const counts = Object.values(data);
+
+    const option = {
+        tooltip: {
+            trigger: 'item',
+            formatter: '{a} <br/>{b}: {c} ({d}%)'
+        },
+        legend: {
+            orient: 'vertical',
+            left: 'left',
+            data: methods
+        },
+        series: [
+            {
+                name: '跟进方式',
+                type: 'pie',
+                radius: '50%',
+                data: methods.map((method, index) => ({
+                    value: counts[index],
+                    name: method
+                })),
+                emphasis: {
+                    itemStyle: {
+                        shadowBlur: 10,
+                        shadowOffsetX: 0,
+                        shadowColor: 'rgba(0, 0, 0, 0.5)'
+                    }
+                }
+            }
+        ]
+    };
+
+    chart.setOption(option);
+
+    // 窗口大小变化时，重新调整图表大小
+    window.addEventListener('resize', function() {
+        chart.resize();
+    });
+}
+
+// 渲染客户数量趋势图表
+function renderCustomerCountChart(data) {
+    const chart = echarts.init(document.getElementById('customerCountChart'));
+    const dates = Object.keys(data);
+    const counts = Object.values(data);
+
+    const option = {
+        tooltip: {
+            trigger: 'axis',
+            formatter: '{b}<br/>客户数量: {c}'
+        },
+        grid: {
+            left: '3%',
+            right: '4%',
+            bottom: '3%',
+            containLabel: true
+        },
+        xAxis: {
+            type: 'category',
+            boundaryGap: false,
+            data: dates
+        },
+        yAxis: {
+            type: 'value',
+            minInterval: 1
+        },
+        series: [
+            {
+                name: '客户数量',
+                type: 'line',
+                stack: 'Total',
+                data: counts,
+                areaStyle: {
+                    opacity: 0.3
+                },
+                emphasis: {
+                    focus: 'series'
+                }
+            }
+        ]
+    };
+
+    chart.setOption(option);
+
+    // 窗口大小变化时，重新调整图表大小
+    window.addEventListener('resize', function() {
+        chart.resize();
+    });
+}
+
+// 渲染跟进记录数量趋势图表
+function renderFollowupCountChart(data) {
+    const chart = echarts.init(document.getElementById('followupCountChart'));
+    const dates = Object.keys(data);
+    const counts = Object.values(data);
+
+    const option = {
+        tooltip: {
+            trigger: 'axis',
+            formatter: '{b}<br/>跟进记录: {c}'
+        },
+        grid: {
+            left: '3%',
+            right: '4%',
+            bottom: '3%',
+            containLabel: true
+        },
+        xAxis: {
+            type: 'category',
+            boundaryGap: false,
+            data: dates
+        },
+        yAxis: {
+            type: 'value',
+            minInterval: 1
+        },
+        series: [
+            {
+                name: '跟进记录',
+                type: 'line',
+                stack: 'Total',
+                data: counts,
+                areaStyle: {
+                    opacity: 0.3
+                },
+                emphasis: {
+                    focus: 'series'
+                }
+            }
+        ]
+    };
+
+    chart.setOption(option);
+
+    // 窗口大小变化时，重新调整图表大小
+    window.addEventListener('resize', function() {
+        chart.resize();
+    });
+}
@@ -0,0 +1,37 @@
+// 登录表单提交
+document.getElementById('loginForm').addEventListener('submit', function(e) {
+    e.preventDefault();
+
+    const username = document.getElementById('username').value;
+    const password = document.getElementById('password').value;
+
+    // 表单验证
+    if (!username || !password) {
+        alert('用户名和密码不能为空');
+        return;
+    }
+
+    // 发送登录请求
+    fetch('http://localhost:8080/api/login', {
+        method: 'POST',
+        headers: {
+            'Content-Type': 'application/json'
+        },
+        body: JSON.stringify({ username, password })
+    })
+    .then(response => response.json())
+    .then(data => {
+        if (data.code === 200) {
+            // 登录成功，存储用户信息到本地存储
+            localStorage.setItem('userInfo', JSON.stringify(data.data));
+            // 跳转到主页面
+            window.location.href = 'index.html';
+        } else {
+            alert(data.message);
+        }
+    })
+    .catch(error => {
+        console.error('登录失败:', error);
+        alert('登录失败，请检查网络连接');
+    });
+});
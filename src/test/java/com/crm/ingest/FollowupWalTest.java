@@ -0,0 +1,130 @@
+package com.crm.ingest;
+
+import com.crm.model.Followup;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 跟进记录预写日志的编码、重放和尾部截断
+ */
+class FollowupWalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replayReturnsEncodedRecords() throws IOException {
+        Path path = dir.resolve("followups.wal");
+        Followup first = followup(1, "电话", "首次联系，客户对报价有疑问");
+        first.setNextFollowReminder(LocalDateTime.of(2024, 3, 2, 9, 30));
+        Followup second = followup(2, null, null);
+        try (FollowupWal wal = new FollowupWal(path)) {
+            wal.append(encode(new FollowupWal.Record(1, first), new FollowupWal.Record(2, second)));
+        }
+
+        List<FollowupWal.Record> records = new ArrayList<>();
+        try (FollowupWal wal = new FollowupWal(path)) {
+            assertEquals(2, wal.replay(records::add));
+        }
+        assertEquals(1, records.get(0).getSeq());
+        Followup replayed = records.get(0).getFollowup();
+        assertEquals(first.getCustomerId(), replayed.getCustomerId());
+        assertEquals(first.getUserId(), replayed.getUserId());
+        assertEquals(first.getFollowTime(), replayed.getFollowTime());
+        assertEquals("电话", replayed.getFollowMethod());
+        assertEquals("首次联系，客户对报价有疑问", replayed.getContent());
+        assertEquals(first.getNextFollowReminder(), replayed.getNextFollowReminder());
+        assertEquals(first.getCreatedAt(), replayed.getCreatedAt());
+        assertEquals(first.getCreatedAt(), replayed.getUpdatedAt());
+
+        assertEquals(2, records.get(1).getSeq());
+        assertNull(records.get(1).getFollowup().getFollowMethod());
+        assertNull(records.get(1).getFollowup().getContent());
+        assertNull(records.get(1).getFollowup().getNextFollowReminder());
+    }
+
+    @Test
+    void replayTruncatesTornTail() throws IOException {
+        Path path = dir.resolve("followups.wal");
+        byte[] complete = encode(new FollowupWal.Record(1, followup(1, "上门", "拜访")));
+        byte[] torn = encode(new FollowupWal.Record(2, followup(2, "微信", "发送资料")));
+        try (FollowupWal wal = new FollowupWal(path)) {
+            wal.append(complete);
+            // 模拟写入第二条记录时断电：只有一部分字节落盘
+            wal.append(Arrays.copyOf(torn, torn.length / 2));
+        }
+
+        try (FollowupWal wal = new FollowupWal(path)) {
+            List<FollowupWal.Record> records = new ArrayList<>();
+            assertEquals(1, wal.replay(records::add));
+            assertEquals(1, records.get(0).getSeq());
+            assertEquals(complete.length, Files.size(path));
+
+            // 截断后追加的记录可以正常重放
+            wal.append(torn);
+            records.clear();
+            assertEquals(2, wal.replay(records::add));
+            assertEquals(2, records.get(1).getSeq());
+        }
+    }
+
+    @Test
+    void replayTruncatesRecordWithBadChecksum() throws IOException {
+        Path path = dir.resolve("followups.wal");
+        byte[] complete = encode(new FollowupWal.Record(1, followup(1, "电话", "确认需求")));
+        byte[] corrupted = encode(new FollowupWal.Record(2, followup(2, "电话", "确认合同")));
+        corrupted[corrupted.length - 6] ^= 0x5A;  // 负载中的一个字节损坏
+        try (FollowupWal wal = new FollowupWal(path)) {
+            wal.append(complete);
+            wal.append(corrupted);
+        }
+
+        try (FollowupWal wal = new FollowupWal(path)) {
+            assertEquals(1, wal.replay(record -> { }));
+            assertEquals(complete.length, wal.size());
+        }
+    }
+
+    @Test
+    void truncateDiscardsAllRecords() throws IOException {
+        Path path = dir.resolve("followups.wal");
+        try (FollowupWal wal = new FollowupWal(path)) {
+            wal.append(encode(new FollowupWal.Record(1, followup(1, "电话", "回访"))));
+            wal.truncate();
+            assertEquals(0, wal.size());
+            assertEquals(0, wal.replay(record -> { }));
+        }
+    }
+
+    private static Followup followup(int customerId, String method, String content) {
+        Followup followup = new Followup();
+        followup.setCustomerId(customerId);
+        followup.setUserId(7);
+        followup.setFollowTime(LocalDateTime.of(2024, 3, 1, 14, 0));
+        followup.setFollowMethod(method);
+        followup.setContent(content);
+        followup.setCreatedAt(LocalDateTime.of(2024, 3, 1, 14, 5, 12));
+        return followup;
+    }
+
+    private static byte[] encode(FollowupWal.Record... records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (FollowupWal.Record record : records) {
+            FollowupWal.encode(record, bytes);
+        }
+        return bytes.toByteArray();
+    }
+
+}